@@ -0,0 +1,148 @@
+package com.example.voward;
+
+import android.accessibilityservice.AccessibilityServiceInfo;
+import android.view.accessibility.AccessibilityEvent;
+
+import java.util.Arrays;
+
+/**
+ * Chooses the narrowest accessibility subscription that still serves the enforcement state.
+ *
+ * <p>Click events, and the flags that expose unimportant views and view IDs, are only
+ * needed while a browser address bar or a guarded Settings screen is being inspected. While
+ * protection is active, content events are always delivered for every package: the platform
+ * keeps only the last pending event of each type, so a foreground change that is followed by
+ * an overlay, keyboard or dialog state change is only seen through the content events that
+ * the foreground debounce falls back on. They cannot be narrowed to the foreground package
+ * either, because the package list filters window-state events too and the next launch
+ * would go unseen. Instead, until a restricted app is in the foreground they are coalesced
+ * over the longer idle timeout. While protection is inactive only Voward's own events are
+ * delivered. The platform never reports events it coalesced or filtered out, so the avoided
+ * count is an estimate from the content-event rate observed at the watching timeout.</p>
+ */
+final class AccessibilitySubscription {
+    static final long WATCHING_TIMEOUT_MS = 100;
+    static final long IDLE_TIMEOUT_MS = 250;
+    static final long INACTIVE_TIMEOUT_MS = 500;
+
+    private static final int CONTENT_EVENTS = AccessibilityEvent.TYPE_WINDOW_CONTENT_CHANGED
+            | AccessibilityEvent.TYPE_VIEW_CLICKED;
+    private static final int INSPECTION_FLAGS =
+            AccessibilityServiceInfo.FLAG_INCLUDE_NOT_IMPORTANT_VIEWS
+                    | AccessibilityServiceInfo.FLAG_REPORT_VIEW_IDS;
+
+    /** One subscription; a null package list means every package. */
+    static final class Config {
+        final int eventTypes;
+        final int flags;
+        final long notificationTimeout;
+        final String[] packageNames;
+
+        Config(int eventTypes, int flags, long notificationTimeout, String[] packageNames) {
+            this.eventTypes = eventTypes;
+            this.flags = flags;
+            this.notificationTimeout = notificationTimeout;
+            this.packageNames = packageNames;
+        }
+
+        boolean receivesAllContentEvents() {
+            return packageNames == null && notificationTimeout <= WATCHING_TIMEOUT_MS
+                    && (eventTypes & AccessibilityEvent.TYPE_WINDOW_CONTENT_CHANGED) != 0;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (!(other instanceof Config)) return false;
+            Config that = (Config) other;
+            return eventTypes == that.eventTypes && flags == that.flags
+                    && notificationTimeout == that.notificationTimeout
+                    && Arrays.equals(packageNames, that.packageNames);
+        }
+
+        @Override
+        public int hashCode() {
+            return (eventTypes * 31 + flags) * 31 + Arrays.hashCode(packageNames);
+        }
+    }
+
+    /**
+     * @param inspecting a browser address bar or guarded screen is read from the window tree
+     * @param restrictedForeground a restricted app is in the foreground, metered or on its way
+     *                             out, so its changes are reported without the idle delay
+     */
+    static Config configFor(boolean active, boolean inspecting, boolean restrictedForeground,
+            String ownPackage) {
+        int stateChanges = AccessibilityEvent.TYPE_WINDOW_STATE_CHANGED;
+        if (!active) {
+            // Own-package events keep the notification current and notice activation.
+            return new Config(stateChanges | AccessibilityEvent.TYPE_WINDOW_CONTENT_CHANGED,
+                    0, INACTIVE_TIMEOUT_MS, new String[] {ownPackage});
+        }
+        if (inspecting) {
+            return new Config(stateChanges | CONTENT_EVENTS, INSPECTION_FLAGS,
+                    WATCHING_TIMEOUT_MS, null);
+        }
+        return new Config(stateChanges | AccessibilityEvent.TYPE_WINDOW_CONTENT_CHANGED,
+                0, restrictedForeground ? WATCHING_TIMEOUT_MS : IDLE_TIMEOUT_MS, null);
+    }
+
+    private Config current;
+    private long currentSince;
+    private long delivered;
+    private int changes;
+    // Content events seen while every package's content events were delivered at the
+    // watching timeout, and for how long; narrowed time is the rest, and narrowedEvents the
+    // content events that still arrived in it.
+    private long sampledEvents;
+    private long sampledMs;
+    private long narrowedEvents;
+    private long narrowedMs;
+
+    /** Returns {@code wanted} when it has to be applied, or null when it already is. */
+    Config update(Config wanted, long now) {
+        if (wanted.equals(current)) return null;
+        closeInterval(now);
+        current = wanted;
+        currentSince = now;
+        changes++;
+        return wanted;
+    }
+
+    void recordEvent(int eventType) {
+        delivered++;
+        if (eventType != AccessibilityEvent.TYPE_WINDOW_CONTENT_CHANGED || current == null) {
+            return;
+        }
+        if (current.receivesAllContentEvents()) sampledEvents++;
+        else narrowedEvents++;
+    }
+
+    long delivered() {
+        return delivered;
+    }
+
+    int changes() {
+        return changes;
+    }
+
+    /** Content events the full subscription would have delivered during narrowed time. */
+    long estimatedAvoided(long now) {
+        long sampled = sampledMs;
+        long narrowed = narrowedMs;
+        if (current != null) {
+            long open = Math.max(0, now - currentSince);
+            if (current.receivesAllContentEvents()) sampled += open;
+            else narrowed += open;
+        }
+        if (sampled == 0) return 0;
+        return Math.max(0,
+                Math.round((double) sampledEvents * narrowed / sampled) - narrowedEvents);
+    }
+
+    private void closeInterval(long now) {
+        if (current == null) return;
+        long elapsed = Math.max(0, now - currentSince);
+        if (current.receivesAllContentEvents()) sampledMs += elapsed;
+        else narrowedMs += elapsed;
+    }
+}
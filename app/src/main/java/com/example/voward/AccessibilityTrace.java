@@ -0,0 +1,253 @@
+package com.example.voward;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * A recorded sequence of accessibility events, for replaying production event storms off
+ * the device with {@link TraceReplayer}.
+ *
+ * <p>Each event keeps what enforcement decided on: type, package, class and window, its
+ * timestamps, the package facts and preference state at the time, and a minimal shape of
+ * the window tree (root package, root child count, address-bar text and focus). Addresses
+ * are sanitized before they are stored: user info, query and fragment are dropped, so a
+ * trace holds hosts and paths only. Nothing else from the screen is recorded.</p>
+ *
+ * <p>Layout: magic, version and event count, then per event a flags byte, varint deltas of
+ * the timestamps, and strings as varint indexes into a table that grows as new values
+ * appear (index {@code size + 1} introduces one in modified UTF-8, 0 is null). Feed
+ * scrolling repeats the same few packages and classes, so most events take a few bytes.</p>
+ */
+final class AccessibilityTrace {
+    private static final int MAGIC = 0x56575452; // "VWTR"
+    private static final int VERSION = 1;
+
+    /** Preference state at the time of the event. */
+    static final int STATE_BLOCKER_ACTIVE = 1;
+    static final int STATE_TEMP_ALLOW = 1 << 1;
+    /** The event came from Voward itself, which enforcement ignores. */
+    static final int STATE_OWN_PACKAGE = 1 << 2;
+
+    private static final int HAS_ADDRESS = 1;
+    private static final int ADDRESS_FOCUSED = 1 << 1;
+
+    /** One recorded event. Times are in milliseconds on the capturing device's clocks. */
+    static final class Event {
+        final int eventType;
+        final String packageName;
+        final String className;
+        final int windowId;
+        /** {@code SystemClock.uptimeMillis()} when the event was queued. */
+        final long enqueuedAt;
+        /** How long it waited in the handoff before enforcement picked it up. */
+        final long waitMs;
+        /** {@code EnforcementStateMachine.PACKAGE_*} bits for {@link #packageName}. */
+        final int packageFlags;
+        /** {@code STATE_*} bits. */
+        final int state;
+        /** Age of the pending temp-allow approval; meaningful with {@link #STATE_TEMP_ALLOW}. */
+        final long tempAllowAgeMs;
+        final String rootPackage;
+        final int rootChildCount;
+        /** Sanitized address-bar text, or null when no bar was read. */
+        final String address;
+        final boolean addressFocused;
+
+        Event(int eventType, String packageName, String className, int windowId,
+              long enqueuedAt, long waitMs, int packageFlags, int state, long tempAllowAgeMs,
+              String rootPackage, int rootChildCount, String address, boolean addressFocused) {
+            this.eventType = eventType;
+            this.packageName = packageName;
+            this.className = className;
+            this.windowId = windowId;
+            this.enqueuedAt = enqueuedAt;
+            this.waitMs = waitMs;
+            this.packageFlags = packageFlags;
+            this.state = state;
+            this.tempAllowAgeMs = tempAllowAgeMs;
+            this.rootPackage = rootPackage;
+            this.rootChildCount = rootChildCount;
+            this.address = address == null ? null : sanitizeAddress(address);
+            this.addressFocused = addressFocused;
+        }
+
+        boolean hasState(int bit) {
+            return (state & bit) != 0;
+        }
+    }
+
+    /** Bounded in-memory capture; recording stops once it is full. */
+    static final class Recorder {
+        private final int capacity;
+        private final List<Event> events = new ArrayList<>();
+        private long dropped;
+
+        Recorder(int capacity) {
+            this.capacity = capacity;
+        }
+
+        /** False once the capture is full. */
+        boolean record(Event event) {
+            if (events.size() >= capacity) {
+                dropped++;
+                return false;
+            }
+            events.add(event);
+            return true;
+        }
+
+        List<Event> events() {
+            return Collections.unmodifiableList(events);
+        }
+
+        long dropped() {
+            return dropped;
+        }
+    }
+
+    private AccessibilityTrace() {}
+
+    /** Keeps scheme, host and path; drops user info, query and fragment. */
+    static String sanitizeAddress(String address) {
+        String text = address.trim().toLowerCase(Locale.ROOT);
+        int end = text.length();
+        int query = text.indexOf('?');
+        if (query >= 0) end = query;
+        int fragment = text.indexOf('#');
+        if (fragment >= 0 && fragment < end) end = fragment;
+        text = text.substring(0, end);
+        int hostStart = text.indexOf("://");
+        hostStart = hostStart < 0 ? 0 : hostStart + 3;
+        int hostEnd = text.indexOf('/', hostStart);
+        if (hostEnd < 0) hostEnd = text.length();
+        int at = text.lastIndexOf('@', hostEnd - 1);
+        if (at >= hostStart) text = text.substring(0, hostStart) + text.substring(at + 1);
+        return text;
+    }
+
+    static void write(List<Event> events, OutputStream target) throws IOException {
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(target));
+        out.writeInt(MAGIC);
+        out.writeByte(VERSION);
+        writeVarint(out, events.size());
+        Map<String, Integer> strings = new HashMap<>();
+        long previousAt = 0;
+        for (Event event : events) {
+            int flags = (event.address != null ? HAS_ADDRESS : 0)
+                    | (event.addressFocused ? ADDRESS_FOCUSED : 0);
+            out.writeByte(flags);
+            writeVarint(out, event.eventType);
+            writeString(out, strings, event.packageName);
+            writeString(out, strings, event.className);
+            writeVarint(out, zigzag(event.windowId));
+            writeVarint(out, zigzag(event.enqueuedAt - previousAt));
+            previousAt = event.enqueuedAt;
+            writeVarint(out, Math.max(0, event.waitMs));
+            writeVarint(out, event.packageFlags);
+            writeVarint(out, event.state);
+            if (event.hasState(STATE_TEMP_ALLOW)) writeVarint(out, zigzag(event.tempAllowAgeMs));
+            writeString(out, strings, event.rootPackage);
+            writeVarint(out, Math.max(0, event.rootChildCount));
+            if (event.address != null) writeString(out, strings, event.address);
+        }
+        out.flush();
+    }
+
+    static List<Event> read(InputStream source) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(source));
+        if (in.readInt() != MAGIC) throw new IOException("Not an accessibility trace");
+        int version = in.readUnsignedByte();
+        if (version != VERSION) throw new IOException("Unsupported trace version " + version);
+        int count = (int) readVarint(in);
+        List<Event> events = new ArrayList<>(Math.min(count, 1 << 16));
+        List<String> strings = new ArrayList<>();
+        long at = 0;
+        for (int i = 0; i < count; i++) {
+            int flags = in.readUnsignedByte();
+            int eventType = (int) readVarint(in);
+            String packageName = readString(in, strings);
+            String className = readString(in, strings);
+            int windowId = (int) unzigzag(readVarint(in));
+            at += unzigzag(readVarint(in));
+            long waitMs = readVarint(in);
+            int packageFlags = (int) readVarint(in);
+            int state = (int) readVarint(in);
+            long tempAllowAgeMs = (state & STATE_TEMP_ALLOW) != 0
+                    ? unzigzag(readVarint(in)) : 0;
+            String rootPackage = readString(in, strings);
+            int rootChildCount = (int) readVarint(in);
+            String address = (flags & HAS_ADDRESS) != 0 ? readString(in, strings) : null;
+            events.add(new Event(eventType, packageName, className, windowId, at, waitMs,
+                    packageFlags, state, tempAllowAgeMs, rootPackage, rootChildCount, address,
+                    (flags & ADDRESS_FOCUSED) != 0));
+        }
+        return events;
+    }
+
+    private static void writeString(DataOutputStream out, Map<String, Integer> strings,
+                                    String value) throws IOException {
+        if (value == null) {
+            writeVarint(out, 0);
+            return;
+        }
+        Integer index = strings.get(value);
+        if (index != null) {
+            writeVarint(out, index);
+            return;
+        }
+        int added = strings.size() + 1;
+        strings.put(value, added);
+        writeVarint(out, added);
+        out.writeUTF(value);
+    }
+
+    private static String readString(DataInputStream in, List<String> strings)
+            throws IOException {
+        long index = readVarint(in);
+        if (index == 0) return null;
+        if (index == strings.size() + 1) {
+            String value = in.readUTF();
+            strings.add(value);
+            return value;
+        }
+        if (index > strings.size()) throw new IOException("Corrupt trace string table");
+        return strings.get((int) index - 1);
+    }
+
+    private static void writeVarint(DataOutputStream out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.writeByte((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+
+    private static long readVarint(DataInputStream in) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = in.readUnsignedByte();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) return value;
+        }
+        throw new IOException("Corrupt trace varint");
+    }
+
+    private static long zigzag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static long unzigzag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+}
@@ -0,0 +1,102 @@
+package com.example.voward;
+
+import android.view.accessibility.AccessibilityNodeInfo;
+
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Resolved browser address bars kept across events, one per browser package.
+ *
+ * <p>An entry is only reused for the window it was found in and only after
+ * {@link AccessibilityNodeInfo#refresh()} confirms the view still exists, so a URL read costs
+ * one refresh instead of a view-ID search. Only editable bars are kept: a read-only bar is
+ * clicked by the redirect path and has to be looked up again once the editor replaces it.
+ * The cache owns its nodes and recycles them when entries are dropped.</p>
+ */
+final class AddressBarCache {
+    /** How a bar was found. */
+    enum Strategy { LEARNED_ID, VIEW_ID, CONTENT_DESCRIPTION }
+
+    private static final class Entry {
+        final AccessibilityNodeInfo bar;
+        final int windowId;
+
+        Entry(AccessibilityNodeInfo bar, int windowId) {
+            this.bar = bar;
+            this.windowId = windowId;
+        }
+    }
+
+    private final Map<String, Entry> entries = new HashMap<>();
+    private final long[] found = new long[Strategy.values().length];
+    private long hits;
+    private long misses;
+    private long dropped;
+
+    boolean contains(String packageName) {
+        return entries.containsKey(packageName);
+    }
+
+    /** The refreshed bar of {@code packageName} in {@code windowId}, or null. */
+    AccessibilityNodeInfo get(String packageName, int windowId) {
+        Entry entry = entries.get(packageName);
+        if (entry == null) {
+            misses++;
+            return null;
+        }
+        if (entry.windowId != windowId || !entry.bar.refresh() || !entry.bar.isEditable()) {
+            invalidate(packageName);
+            dropped++;
+            misses++;
+            return null;
+        }
+        hits++;
+        return entry.bar;
+    }
+
+    /**
+     * Records a freshly resolved bar. Returns true when the cache took ownership of it;
+     * otherwise the caller still owns {@code bar}.
+     */
+    boolean put(String packageName, int windowId, AccessibilityNodeInfo bar,
+                Strategy strategy) {
+        found[strategy.ordinal()]++;
+        if (!bar.isEditable()) return false;
+        invalidate(packageName);
+        entries.put(packageName, new Entry(bar, windowId));
+        return true;
+    }
+
+    void invalidate(String packageName) {
+        Entry entry = entries.remove(packageName);
+        if (entry != null) entry.bar.recycle();
+    }
+
+    void clear() {
+        for (Entry entry : entries.values()) entry.bar.recycle();
+        entries.clear();
+    }
+
+    long hits() {
+        return hits;
+    }
+
+    long misses() {
+        return misses;
+    }
+
+    long found(Strategy strategy) {
+        return found[strategy.ordinal()];
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.ROOT,
+                "%d hits, %d misses, %d dropped; found by learned ID %d, view ID %d, "
+                        + "description %d",
+                hits, misses, dropped, found(Strategy.LEARNED_ID), found(Strategy.VIEW_ID),
+                found(Strategy.CONTENT_DESCRIPTION));
+    }
+}
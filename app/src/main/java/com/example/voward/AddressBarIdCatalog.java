@@ -0,0 +1,125 @@
+package com.example.voward;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.content.pm.PackageInfo;
+import android.content.pm.PackageManager;
+import android.os.Build;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Address-bar view IDs learned from the content-description search, per browser version.
+ *
+ * <p>When a browser update renames its toolbar, none of the configured IDs match and every
+ * event would fall back to a recursive tree walk. The ID and class of the node that walk
+ * finds are persisted under the browser's package with its {@code versionCode}, and tried
+ * before the configured IDs from then on. An entry whose version no longer matches the
+ * installed one is dropped, so the walk runs once per browser update.</p>
+ */
+final class AddressBarIdCatalog {
+    private static final String PREFS = "address_bar_ids";
+    static final long UNKNOWN_VERSION = -1;
+
+    /** One learned bar: the browser version it was found in and the node's ID and class. */
+    static final class Entry {
+        final long versionCode;
+        final String viewId;
+        final String className;
+
+        Entry(long versionCode, String viewId, String className) {
+            this.versionCode = versionCode;
+            this.viewId = viewId;
+            this.className = className;
+        }
+
+        String encode() {
+            return versionCode + "\n" + viewId + "\n" + className;
+        }
+
+        /** The entry stored as {@code value}, or null when it is malformed. */
+        static Entry decode(String value) {
+            if (value == null) return null;
+            String[] parts = value.split("\n", -1);
+            if (parts.length != 3 || parts[1].isEmpty()) return null;
+            try {
+                return new Entry(Long.parseLong(parts[0]), parts[1], parts[2]);
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+    }
+
+    private final SharedPreferences prefs;
+    private final PackageManager packageManager;
+    private final Map<String, Entry> entries = new HashMap<>();
+    // Installed versions looked up so far; a package broadcast forgets one.
+    private final Map<String, Long> installedVersions = new HashMap<>();
+
+    AddressBarIdCatalog(Context context) {
+        Context appContext = context.getApplicationContext();
+        this.prefs = appContext.getSharedPreferences(PREFS, Context.MODE_PRIVATE);
+        this.packageManager = appContext.getPackageManager();
+        for (Map.Entry<String, ?> stored : prefs.getAll().entrySet()) {
+            Object value = stored.getValue();
+            Entry entry = Entry.decode(value instanceof String ? (String) value : null);
+            if (entry != null) entries.put(stored.getKey(), entry);
+        }
+    }
+
+    /** The learned entry for the installed version of {@code packageName}, or null. */
+    Entry learned(String packageName) {
+        Entry entry = entries.get(packageName);
+        if (entry == null) return null;
+        if (entry.versionCode != installedVersion(packageName)) {
+            forget(packageName);
+            return null;
+        }
+        return entry;
+    }
+
+    /** Records the node the fallback search found; ignored when it carries no view ID. */
+    void learn(String packageName, String viewId, CharSequence className) {
+        if (viewId == null || viewId.isEmpty()) return;
+        long version = installedVersion(packageName);
+        if (version == UNKNOWN_VERSION) return;
+        Entry entry = new Entry(version, viewId, className == null ? "" : className.toString());
+        Entry previous = entries.put(packageName, entry);
+        if (previous != null && previous.encode().equals(entry.encode())) return;
+        prefs.edit().putString(packageName, entry.encode()).apply();
+    }
+
+    /** Drops the entry, e.g. after the learned ID stopped matching the expected class. */
+    void forget(String packageName) {
+        if (entries.remove(packageName) != null) {
+            prefs.edit().remove(packageName).apply();
+        }
+    }
+
+    /** Called when {@code packageName} was installed, updated or removed. */
+    void packageChanged(String packageName) {
+        installedVersions.remove(packageName);
+        Entry entry = entries.get(packageName);
+        if (entry != null && entry.versionCode != installedVersion(packageName)) {
+            forget(packageName);
+        }
+    }
+
+    @SuppressWarnings("deprecation")
+    private long installedVersion(String packageName) {
+        Long cached = installedVersions.get(packageName);
+        if (cached != null) return cached;
+        long version;
+        try {
+            PackageInfo info = packageManager.getPackageInfo(packageName, 0);
+            version = Build.VERSION.SDK_INT >= Build.VERSION_CODES.P
+                    ? info.getLongVersionCode()
+                    : info.versionCode;
+        } catch (PackageManager.NameNotFoundException e) {
+            version = UNKNOWN_VERSION;
+        }
+        installedVersions.put(packageName, version);
+        return version;
+    }
+}
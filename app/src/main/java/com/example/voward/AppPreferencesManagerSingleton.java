@@ -7,15 +7,28 @@ import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
 import java.nio.charset.StandardCharsets;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.security.SecureRandom;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Base64;
 import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.crypto.SecretKeyFactory;
 import javax.crypto.spec.PBEKeySpec;
@@ -84,6 +97,20 @@ public class AppPreferencesManagerSingleton {
     private static final String KEY_DAILY_ALTERNATIVE_CHOICES = "daily_alternative_choices_v1";
     private static final int PBKDF2_ITERATIONS = 100_000;
     private static final int PBKDF2_BITS = 256;
+    private static final String HOST_BLOCKLIST_FILE = "host_blocklist.img";
+    private static final int MAX_BLOCKLIST_HOSTS = 1_000_000;
+    private static final String URL_RULE_DELTA_FILE = "url_rules.delta";
+    // Logged additions or unfolded index rules that trigger a background compaction.
+    private static final int URL_RULE_COMPACTION_THRESHOLD = 32;
+    private static final int MAX_LIST_ENTRIES = 500;
+    private static final List<String> FAIL_CLOSED_URL_RULES = CompiledUrlRuleList.of(
+            Collections.singletonList(UrlPatternMatcher.FAIL_CLOSED_PATTERN));
+    // Keys whose change replaces the enforcement snapshot; a null key means cleared.
+    private static final Set<String> ENFORCEMENT_KEYS = new HashSet<>(Arrays.asList(
+            KEY_IS_BLOCKER_ACTIVE, KEY_TEMP_ALLOW_APP_LAUNCH, KEY_LAST_INTERCEPTED_APP,
+            KEY_LAST_INTERCEPTED_URL, KEY_LAST_INTERCEPTION_KIND, KEY_UNINSTALL_GUARD_ENABLED,
+            KEY_RESTRICTED_APP_LIST, KEY_STRICT_APP_LIST, KEY_RESTRICTED_URL_LIST,
+            KEY_STRICT_URL_LIST));
 
     private final SharedPreferences prefs;
     private final SharedPreferences portablePrefs;
@@ -96,6 +123,32 @@ public class AppPreferencesManagerSingleton {
     private volatile boolean restrictedAppsStorageCorrupt;
     private volatile boolean strictUrlsStorageCorrupt;
     private volatile boolean strictAppsStorageCorrupt;
+    private volatile UrlRuleIndex urlRuleIndex;
+    private volatile HostBlocklistImage hostBlocklist;
+    private volatile boolean hostBlocklistLoaded;
+    private volatile boolean hostBlocklistCorrupt;
+    // Serializes imports, which build their image without holding this instance's monitor.
+    private final Object hostBlocklistImport = new Object();
+    // Bumped after every URL rule change so cached match verdicts can be discarded.
+    private final AtomicLong urlRuleGeneration = new AtomicLong();
+    // Additions since the URL lists were last written in full; replayed on load.
+    private final UrlRuleDeltaLog urlRuleDeltaLog;
+    // Log appends, list flushes, compaction and index builds, in the order they were queued.
+    private final ExecutorService urlRuleWriter = Executors.newSingleThreadExecutor();
+    private int urlRuleDeltaEntries;
+    private boolean urlRuleCompactionQueued;
+    private final AtomicBoolean urlRuleIndexBuildQueued = new AtomicBoolean();
+    private volatile EnforcementSnapshot enforcementSnapshot;
+    private final AtomicLong enforcementVersion = new AtomicLong();
+    // Held in a field: SharedPreferences keeps only weak references to its listeners. The
+    // listener only runs on the main thread, so the setters the enforcement thread calls
+    // also bump the version themselves via enforcementStateWritten().
+    private final SharedPreferences.OnSharedPreferenceChangeListener enforcementKeyListener =
+            (changed, key) -> {
+                if (key == null || ENFORCEMENT_KEYS.contains(key)) {
+                    enforcementVersion.incrementAndGet();
+                }
+            };
 
     private AppPreferencesManagerSingleton(Context context) {
         // Use application context to avoid leaking Activity/Service contexts
@@ -103,8 +156,12 @@ public class AppPreferencesManagerSingleton {
         this.appContext = appContext;
         prefs = appContext.getSharedPreferences(PREF_NAME, Context.MODE_PRIVATE);
         portablePrefs = appContext.getSharedPreferences(PORTABLE_PREF_NAME, Context.MODE_PRIVATE);
+        urlRuleDeltaLog = new UrlRuleDeltaLog(
+                new File(appContext.getNoBackupFilesDir(), URL_RULE_DELTA_FILE));
         migratePortablePreferencesIfNeeded();
         migrateAttentionModelIfNeeded();
+        prefs.registerOnSharedPreferenceChangeListener(enforcementKeyListener);
+        portablePrefs.registerOnSharedPreferenceChangeListener(enforcementKeyListener);
     }
 
     /** Preserve settings from installs that predate the portable/device-local split. */
@@ -228,6 +285,7 @@ public class AppPreferencesManagerSingleton {
         // Activation and successful deactivation both atomically discard stale local requests.
         editor.remove(KEY_PENDING_DEACTIVATION)
                 .remove(KEY_DEACTIVATION_TERMINAL_STATE).commit();
+        enforcementStateWritten();
     }
 
     public int getDeactivationCooldownMinutes() {
@@ -314,6 +372,49 @@ public class AppPreferencesManagerSingleton {
         return prefs.getBoolean(KEY_IS_BLOCKER_ACTIVE, false);
     }
 
+    /**
+     * Immutable view of the state read on every accessibility event. It stays current until
+     * a listed preference changes or the URL rule generation moves; the next call after
+     * that builds the replacement, so unchanged events cost two counter reads. After a rule
+     * edit it keeps the previous URL index until the writer thread has compiled the new one.
+     */
+    EnforcementSnapshot getEnforcementSnapshot() {
+        EnforcementSnapshot snapshot = enforcementSnapshot;
+        long version = enforcementVersion.get();
+        long generation = urlRuleGeneration.get();
+        if (snapshot != null && snapshot.version == version
+                && snapshot.urlRuleGeneration == generation) {
+            return snapshot;
+        }
+        UrlRuleIndex rules = urlRuleIndex(false);
+        // A first or fail-closed build publishes under a new generation. Take that one,
+        // again read before the index, rather than build a snapshot that is stale at once.
+        for (long moved; (moved = urlRuleGeneration.get()) != generation; ) {
+            generation = moved;
+            rules = urlRuleIndex(false);
+        }
+        // Counters are read before the state, so a racing change leaves this one stale.
+        boolean active = getIsBlockerActive();
+        List<String> apps = getRestrictedAppPackages();
+        List<String> strictApps = getStrictRestrictedAppPackages();
+        snapshot = new EnforcementSnapshot(version, active, getTempAllowAppLaunch(),
+                getLastInterceptedApp(), getLastInterceptedUrl(), getLastInterceptionKind(),
+                isUninstallGuardEnabled(), apps, strictApps,
+                active && restrictedAppsStorageCorrupt,
+                active && (restrictedAppsStorageCorrupt || strictAppsStorageCorrupt),
+                appContext.getPackageName(), generation, rules);
+        enforcementSnapshot = snapshot;
+        return snapshot;
+    }
+
+    /**
+     * Retires the snapshot after a write. apply() updates the in-memory values at once, but
+     * a write from a background thread reaches the change listener only via the main thread.
+     */
+    private void enforcementStateWritten() {
+        enforcementVersion.incrementAndGet();
+    }
+
     private static String sha256Hex(String input) {
         if (input == null || input.isEmpty()) return "";
         try {
@@ -383,27 +484,38 @@ public class AppPreferencesManagerSingleton {
     }
 
     public List<String> getRestrictedUrls() {
+        return new ArrayList<>(loadedRestrictedUrls());
+    }
+
+    /** The published regular list, loaded on first use; shared, so never modified. */
+    private List<String> loadedRestrictedUrls() {
         List<String> cached = restrictedUrlsCache;
         if (cached == null) {
             synchronized (this) {
                 if (restrictedUrlsCache == null) {
                     DecodedStringList decoded = requireValidUrlRules(
                             readStringList(KEY_RESTRICTED_URL_LIST, ""));
-                    restrictedUrlsCache = immutableList(decoded.values);
-                    restrictedUrlsStorageCorrupt = decoded.corrupt;
+                    UrlRuleDeltaLog.Replay delta = readUrlRuleDelta();
+                    List<String> urls = decoded.values;
+                    for (UrlRuleDeltaLog.Entry entry : delta.entries) {
+                        if (urls.size() < MAX_LIST_ENTRIES
+                                && !containsIgnoreCase(urls, entry.rule)) {
+                            urls.add(entry.rule);
+                        }
+                    }
+                    restrictedUrlsCache = immutableUrlList(urls);
+                    restrictedUrlsStorageCorrupt = decoded.corrupt || delta.corrupt;
                 }
                 cached = restrictedUrlsCache;
             }
         }
-        return new ArrayList<>(cached);
+        return cached;
     }
 
     public List<String> getRestrictedUrlsSnapshot() {
-        getRestrictedUrls();
-        if (getIsBlockerActive() && restrictedUrlsStorageCorrupt) {
-            return Collections.singletonList(UrlPatternMatcher.FAIL_CLOSED_PATTERN);
-        }
-        return restrictedUrlsCache;
+        List<String> urls = loadedRestrictedUrls();
+        if (getIsBlockerActive() && restrictedUrlsStorageCorrupt) return FAIL_CLOSED_URL_RULES;
+        return urls;
     }
 
     public synchronized void setRestrictedUrls(List<String> urls) {
@@ -414,50 +526,343 @@ public class AppPreferencesManagerSingleton {
                 if (!containsIgnoreCase(updated, existing)) updated.add(existing);
             }
         }
-        restrictedUrlsCache = immutableList(updated);
+        restrictedUrlsCache = immutableUrlList(updated);
         restrictedUrlsStorageCorrupt = false;
         List<String> strict = getStrictRestrictedUrls();
         strict.removeIf(value -> !containsIgnoreCase(restrictedUrlsCache, value));
-        strictUrlsCache = immutableList(strict);
-        portablePrefs.edit()
+        strictUrlsCache = immutableUrlList(strict);
+        writeUrlRuleLists(portablePrefs.edit()
                 .putString(KEY_RESTRICTED_URL_LIST,
                         new JSONArray(restrictedUrlsCache).toString())
                 .putString(KEY_STRICT_URL_LIST,
-                        new JSONArray(strictUrlsCache).toString())
-                .apply();
+                        new JSONArray(strictUrlsCache).toString()));
+        urlRuleGeneration.incrementAndGet();
     }
 
-    /** Hot-path matcher that does not allocate a defensive copy for each accessibility event. */
+    /** Hot-path matcher backed by the compiled index; strict rules win over regular ones. */
     public String findRestrictedUrlPattern(String url) {
-        for (String pattern : getRestrictedUrlsSnapshot()) {
-            if (UrlPatternMatcher.matches(url, pattern)) return pattern;
+        BrowserUrlEnforcementPolicy.RuleMatch match = getUrlRuleIndex().find(url);
+        return match == null ? null : match.pattern;
+    }
+
+    /**
+     * Compiled view of the effective strict and regular URL snapshots. It is rebuilt only
+     * when either snapshot is replaced, including the switch to fail-closed rules, and this
+     * waits for the rebuild.
+     */
+    UrlRuleIndex getUrlRuleIndex() {
+        return urlRuleIndex(true);
+    }
+
+    /**
+     * The compiled index, built here when {@code wait} is set, when there is none yet, or
+     * for the switch to fail-closed rules. Otherwise a stale index keeps serving while the
+     * writer thread compiles its replacement: glob rules can take a while to compile, and
+     * the enforcement snapshot must not hold up an event for that.
+     */
+    private UrlRuleIndex urlRuleIndex(boolean wait) {
+        List<String> strict = getStrictRestrictedUrlsSnapshot();
+        List<String> regular = getRestrictedUrlsSnapshot();
+        HostBlocklistImage blocklist = getHostBlocklist();
+        if (getIsBlockerActive() && hostBlocklistCorrupt) {
+            // An unreadable imported blocklist fails closed exactly like corrupt rule storage.
+            strict = FAIL_CLOSED_URL_RULES;
+            regular = FAIL_CLOSED_URL_RULES;
+        }
+        UrlRuleIndex index = urlRuleIndex;
+        if (index != null && index.isBuiltFrom(strict, regular, blocklist)) return index;
+        if (!wait && index != null && regular != FAIL_CLOSED_URL_RULES) {
+            if (urlRuleIndexBuildQueued.compareAndSet(false, true)) {
+                urlRuleWriter.execute(() -> {
+                    urlRuleIndexBuildQueued.set(false);
+                    urlRuleIndex(true);
+                });
+            }
+            return index;
+        }
+        UrlRuleIndex built = UrlRuleIndex.build(strict, regular, blocklist);
+        synchronized (this) {
+            // A build that raced another keeps the one published first.
+            if (urlRuleIndex == index) {
+                urlRuleIndex = built;
+                // Lazy loads and fail-closed switches change the effective rules too.
+                urlRuleGeneration.incrementAndGet();
+            }
+            return urlRuleIndex;
         }
-        return null;
     }
 
-    public void addRestrictedUrl(String url) {
-        List<String> urls = getRestrictedUrls();
-        String clean = sanitizeItem(url);
-        if (!clean.isEmpty() && !containsIgnoreCase(urls, clean)) {
-            urls.add(clean);
-            setRestrictedUrls(urls);
+    /**
+     * Changes whenever the effective URL rules may have changed. Callers caching verdicts
+     * read it before {@link #getUrlRuleIndex()}, and it only ever moves after a change.
+     */
+    long getUrlRuleGeneration() {
+        return urlRuleGeneration.get();
+    }
+
+    /** Imported third-party hosts, mapped on first use; null when nothing was imported. */
+    HostBlocklistImage getHostBlocklist() {
+        if (!hostBlocklistLoaded) {
+            synchronized (this) {
+                if (!hostBlocklistLoaded) {
+                    File file = hostBlocklistFile();
+                    try {
+                        hostBlocklist = file.exists() ? HostBlocklistImage.open(file) : null;
+                        hostBlocklistCorrupt = false;
+                    } catch (IOException | RuntimeException unreadable) {
+                        hostBlocklist = null;
+                        hostBlocklistCorrupt = true;
+                    }
+                    hostBlocklistLoaded = true;
+                }
+            }
+        }
+        return hostBlocklist;
+    }
+
+    public int getHostBlocklistSize() {
+        HostBlocklistImage blocklist = getHostBlocklist();
+        return blocklist == null ? 0 : blocklist.size();
+    }
+
+    /**
+     * Imports a hosts file or domain-per-line list into the blocklist, merged with the hosts
+     * imported before, and returns how many hosts were newly added. The source is parsed line
+     * by line, but its keys are collected and sorted in memory, bounded by
+     * {@code MAX_BLOCKLIST_HOSTS}; only the merge with the existing image, which is read from
+     * its mapping, and the write of the new one are streamed. The image is written beside the
+     * live one and renamed over it, so a failed import changes nothing. Only that rename and
+     * the swap take this instance's monitor, so rule edits and budget updates are not held up
+     * by a long import; an import that finds the blocklist cleared meanwhile fails. Imports
+     * only ever add hosts, so they remain available while protection is active.
+     */
+    public int importHostBlocklist(BufferedReader source) throws IOException {
+        synchronized (hostBlocklistImport) {
+            return importHostBlocklistLocked(source);
         }
     }
 
+    private int importHostBlocklistLocked(BufferedReader source) throws IOException {
+        HostBlocklistImage existing = getHostBlocklist();
+        if (getIsBlockerActive() && hostBlocklistCorrupt) {
+            throw new IOException("The existing host blocklist is unreadable");
+        }
+        List<String> added = new ArrayList<>();
+        new HostListParser().parse(source, key -> {
+            if (added.size() >= MAX_BLOCKLIST_HOSTS) {
+                throw new IOException("Host blocklist is too large");
+            }
+            added.add(key);
+        });
+        Collections.sort(added);
+
+        File target = hostBlocklistFile();
+        File temp = new File(target.getPath() + ".tmp");
+        HostBlocklistImage updated;
+        try {
+            try (FileOutputStream output = new FileOutputStream(temp);
+                 HostBlocklistImage.Writer writer = new HostBlocklistImage.Writer(output)) {
+                Iterator<String> previous = existing == null
+                        ? Collections.<String>emptyIterator() : existing.keys();
+                writeMergedHosts(previous, added.iterator(), writer);
+                if (writer.size() > MAX_BLOCKLIST_HOSTS) {
+                    throw new IOException("Host blocklist is too large");
+                }
+                writer.finish();
+                output.getFD().sync();
+            }
+            updated = HostBlocklistImage.open(temp);
+            synchronized (this) {
+                if (hostBlocklist != existing) {
+                    throw new IOException("The host blocklist changed during the import");
+                }
+                if (!temp.renameTo(target)) {
+                    throw new IOException("Could not replace host blocklist");
+                }
+                hostBlocklist = updated;
+                hostBlocklistCorrupt = false;
+                hostBlocklistLoaded = true;
+                urlRuleGeneration.incrementAndGet();
+            }
+        } catch (IOException | RuntimeException failed) {
+            //noinspection ResultOfMethodCallIgnored
+            temp.delete();
+            throw failed;
+        }
+        return updated.size() - (existing == null ? 0 : existing.size());
+    }
+
+    /** Removes every imported host; refused while protection is active. */
+    public synchronized boolean clearHostBlocklist() {
+        if (getIsBlockerActive()) return false;
+        File file = hostBlocklistFile();
+        if (file.exists() && !file.delete()) return false;
+        hostBlocklist = null;
+        hostBlocklistCorrupt = false;
+        hostBlocklistLoaded = true;
+        urlRuleGeneration.incrementAndGet();
+        return true;
+    }
+
+    private File hostBlocklistFile() {
+        return new File(appContext.getNoBackupFilesDir(), HOST_BLOCKLIST_FILE);
+    }
+
+    private static void writeMergedHosts(Iterator<String> first, Iterator<String> second,
+                                         HostBlocklistImage.Writer writer) throws IOException {
+        String a = first.hasNext() ? first.next() : null;
+        String b = second.hasNext() ? second.next() : null;
+        // Both inputs are sorted; the writer drops the duplicates this merge produces.
+        while (a != null || b != null) {
+            if (b == null || (a != null && a.compareTo(b) <= 0)) {
+                writer.add(a);
+                a = first.hasNext() ? first.next() : null;
+            } else {
+                writer.add(b);
+                b = second.hasNext() ? second.next() : null;
+            }
+        }
+    }
+
+    public void addRestrictedUrl(String url) {
+        addRestrictedUrl(url, false);
+    }
+
     public synchronized void addRestrictedUrl(String url, boolean strict) {
         if (getIsBlockerActive() && restrictedUrlsStorageCorrupt) return;
         String clean = sanitizeItem(url);
         if (clean.isEmpty()) return;
+        if (appendUrlRule(clean, strict)) return;
         List<String> urls = getRestrictedUrls();
         if (!containsIgnoreCase(urls, clean)) urls.add(clean);
         List<String> strictUrls = getStrictRestrictedUrls();
         if (strict && !containsIgnoreCase(strictUrls, clean)) strictUrls.add(clean);
-        restrictedUrlsCache = immutableList(sanitizeList(urls));
-        strictUrlsCache = immutableList(sanitizeList(strictUrls));
-        portablePrefs.edit()
+        restrictedUrlsCache = immutableUrlList(sanitizeList(urls));
+        strictUrlsCache = immutableUrlList(sanitizeList(strictUrls));
+        writeUrlRuleLists(portablePrefs.edit()
                 .putString(KEY_RESTRICTED_URL_LIST, new JSONArray(restrictedUrlsCache).toString())
-                .putString(KEY_STRICT_URL_LIST, new JSONArray(strictUrlsCache).toString())
-                .apply();
+                .putString(KEY_STRICT_URL_LIST, new JSONArray(strictUrlsCache).toString()));
+        urlRuleGeneration.incrementAndGet();
+    }
+
+    /**
+     * Adds one URL rule by extending the published lists and index in place and queueing its
+     * log append, so the cost on the calling thread follows the rule rather than the list
+     * sizes, and the disk is only touched by the writer thread. Returns false when the full
+     * rewrite must handle the change: unreadable storage or a full list.
+     */
+    private boolean appendUrlRule(String clean, boolean strict) {
+        CompiledUrlRuleList regularRules = (CompiledUrlRuleList) loadedRestrictedUrls();
+        CompiledUrlRuleList strictRules = (CompiledUrlRuleList) loadedStrictUrls();
+        if (restrictedUrlsStorageCorrupt || strictUrlsStorageCorrupt) return false;
+        boolean addRegular = !regularRules.containsIgnoreCase(clean);
+        boolean addStrict = strict && !strictRules.containsIgnoreCase(clean);
+        if (!addRegular && !addStrict) return true;
+        if ((addRegular && regularRules.size() >= MAX_LIST_ENTRIES)
+                || (addStrict && strictRules.size() >= MAX_LIST_ENTRIES)) {
+            return false;
+        }
+        char kind = addStrict ? UrlRuleDeltaLog.STRICT : UrlRuleDeltaLog.REGULAR;
+        urlRuleWriter.execute(() -> appendToUrlRuleLog(kind, clean));
+        urlRuleDeltaEntries++;
+        if (addRegular) restrictedUrlsCache = regularRules.appended(clean);
+        if (addStrict) strictUrlsCache = strictRules.appended(clean);
+        UrlRuleIndex index = urlRuleIndex;
+        if (index != null && index.isBuiltFrom(strictRules, regularRules, hostBlocklist)) {
+            index = index.withAppended(strictUrlsCache, restrictedUrlsCache);
+            urlRuleIndex = index;
+        }
+        urlRuleGeneration.incrementAndGet();
+        if (urlRuleDeltaEntries >= URL_RULE_COMPACTION_THRESHOLD
+                || (index != null && index.pendingCount() >= URL_RULE_COMPACTION_THRESHOLD)) {
+            scheduleUrlRuleCompaction();
+        }
+        return true;
+    }
+
+    /**
+     * Runs on the writer thread. An addition that cannot be logged is already published, so
+     * the full lists, which include it, are written instead.
+     */
+    private void appendToUrlRuleLog(char kind, String rule) {
+        try {
+            urlRuleDeltaLog.append(kind, rule);
+        } catch (IOException e) {
+            synchronized (this) {
+                writeCurrentUrlRuleLists();
+            }
+        }
+    }
+
+    private void scheduleUrlRuleCompaction() {
+        if (urlRuleCompactionQueued) return;
+        urlRuleCompactionQueued = true;
+        urlRuleWriter.execute(this::compactUrlRules);
+    }
+
+    /**
+     * Folds logged additions back into the stored lists and appended rules into the index
+     * trie. Runs on the writer thread; lookups keep using the current index meanwhile.
+     */
+    void compactUrlRules() {
+        UrlRuleIndex index;
+        synchronized (this) {
+            urlRuleCompactionQueued = false;
+            if (!urlRuleDeltaLog.isEmpty()) writeCurrentUrlRuleLists();
+            index = urlRuleIndex;
+        }
+        if (index == null || index.pendingCount() == 0) return;
+        UrlRuleIndex rebuilt = index.rebuilt();
+        synchronized (this) {
+            // Matches are unchanged, so the rule generation stays where it is.
+            if (urlRuleIndex == index) urlRuleIndex = rebuilt;
+        }
+    }
+
+    /** Writes the published lists in full, unless their storage is unreadable. */
+    private void writeCurrentUrlRuleLists() {
+        if (restrictedUrlsCache == null || strictUrlsCache == null
+                || restrictedUrlsStorageCorrupt || strictUrlsStorageCorrupt) {
+            return;
+        }
+        writeUrlRuleLists(portablePrefs.edit()
+                .putString(KEY_RESTRICTED_URL_LIST, new JSONArray(restrictedUrlsCache).toString())
+                .putString(KEY_STRICT_URL_LIST, new JSONArray(strictUrlsCache).toString()));
+    }
+
+    /**
+     * Persists full URL lists. The edit is applied at once; logged additions are part of the
+     * lists, so the writer thread drops the log only once they are known to be on disk. An
+     * empty {@code commit()} returns after every earlier {@code apply()} has been written,
+     * which gives that signal without blocking the thread that edited the rules. Appends
+     * queued after this write land after the drop, so no addition is lost.
+     */
+    private void writeUrlRuleLists(SharedPreferences.Editor editor) {
+        editor.apply();
+        urlRuleDeltaEntries = 0;
+        urlRuleWriter.execute(() -> {
+            if (!urlRuleDeltaLog.isEmpty() && portablePrefs.edit().commit()) {
+                urlRuleDeltaLog.clear();
+            }
+        });
+    }
+
+    /** Blocks until every queued log append and list write has run; for tests. */
+    void awaitUrlRuleWrites() throws InterruptedException, ExecutionException {
+        urlRuleWriter.submit(() -> { }).get();
+    }
+
+    /** Reads logged additions; an unreadable log or rule is treated as corrupt storage. */
+    private UrlRuleDeltaLog.Replay readUrlRuleDelta() {
+        UrlRuleDeltaLog.Replay delta = urlRuleDeltaLog.read();
+        for (UrlRuleDeltaLog.Entry entry : delta.entries) {
+            if (!entry.rule.equals(sanitizeItem(entry.rule)) || entry.rule.isEmpty()
+                    || !UrlPatternMatcher.isValidPattern(entry.rule)) {
+                return new UrlRuleDeltaLog.Replay(Collections.emptyList(), true);
+            }
+        }
+        urlRuleDeltaEntries = delta.entries.size();
+        return delta;
     }
 
     public void removeUrl(String url) {
@@ -468,6 +873,11 @@ public class AppPreferencesManagerSingleton {
     }
 
     public List<String> getStrictRestrictedUrls() {
+        return new ArrayList<>(loadedStrictUrls());
+    }
+
+    /** The published strict list, loaded on first use; shared, so never modified. */
+    private List<String> loadedStrictUrls() {
         List<String> cached = strictUrlsCache;
         if (cached == null) {
             synchronized (this) {
@@ -476,25 +886,30 @@ public class AppPreferencesManagerSingleton {
                             readStringList(KEY_STRICT_URL_LIST, ""));
                     List<String> strict = decoded.values;
                     strictUrlsStorageCorrupt = decoded.corrupt;
-                    strict.removeIf(value -> !containsIgnoreCase(getRestrictedUrls(), value));
-                    strictUrlsCache = immutableList(strict);
+                    for (UrlRuleDeltaLog.Entry entry : readUrlRuleDelta().entries) {
+                        if (entry.isStrict() && strict.size() < MAX_LIST_ENTRIES
+                                && !containsIgnoreCase(strict, entry.rule)) {
+                            strict.add(entry.rule);
+                        }
+                    }
+                    List<String> urls = loadedRestrictedUrls();
+                    strict.removeIf(value -> !containsIgnoreCase(urls, value));
+                    strictUrlsCache = immutableUrlList(strict);
                 }
                 cached = strictUrlsCache;
             }
         }
-        return new ArrayList<>(cached);
+        return cached;
     }
 
     public List<String> getStrictRestrictedUrlsSnapshot() {
-        getRestrictedUrls();
-        getStrictRestrictedUrls();
+        List<String> urls = loadedRestrictedUrls();
+        List<String> strict = loadedStrictUrls();
         if (getIsBlockerActive()) {
-            if (restrictedUrlsStorageCorrupt) {
-                return Collections.singletonList(UrlPatternMatcher.FAIL_CLOSED_PATTERN);
-            }
-            if (strictUrlsStorageCorrupt) return restrictedUrlsCache;
+            if (restrictedUrlsStorageCorrupt) return FAIL_CLOSED_URL_RULES;
+            if (strictUrlsStorageCorrupt) return urls;
         }
-        return strictUrlsCache;
+        return strict;
     }
 
     public boolean isStrictRestrictedUrlPattern(String pattern) {
@@ -505,14 +920,20 @@ public class AppPreferencesManagerSingleton {
         if (getIsBlockerActive() && strictUrlsStorageCorrupt) return;
         if (getIsBlockerActive() && !strict) return;
         String clean = sanitizeItem(url);
-        if (!containsIgnoreCase(getRestrictedUrls(), clean)) return;
+        if (!containsIgnoreCase(loadedRestrictedUrls(), clean)) return;
+        if (strict && !containsIgnoreCase(loadedStrictUrls(), clean)
+                && appendUrlRule(clean, true)) {
+            return;
+        }
         List<String> strictUrls = getStrictRestrictedUrls();
         strictUrls.removeIf(value -> value.equalsIgnoreCase(clean));
         if (strict) strictUrls.add(clean);
-        strictUrlsCache = immutableList(strictUrls);
+        strictUrlsCache = immutableUrlList(strictUrls);
         strictUrlsStorageCorrupt = false;
-        portablePrefs.edit().putString(KEY_STRICT_URL_LIST,
-                new JSONArray(strictUrlsCache).toString()).apply();
+        writeUrlRuleLists(portablePrefs.edit()
+                .putString(KEY_RESTRICTED_URL_LIST, new JSONArray(restrictedUrlsCache).toString())
+                .putString(KEY_STRICT_URL_LIST, new JSONArray(strictUrlsCache).toString()));
+        urlRuleGeneration.incrementAndGet();
     }
 
     public List<String> getRestrictedAppPackages() {
@@ -648,7 +1069,7 @@ public class AppPreferencesManagerSingleton {
         return Math.max(0, prefs.getLong(KEY_REMAINING_BUDGET_SECONDS, 0));
     }
 
-    public void setRemainingBudgetSeconds(long seconds) {
+    public synchronized void setRemainingBudgetSeconds(long seconds) {
         prefs.edit().putLong(KEY_REMAINING_BUDGET_SECONDS, Math.max(0, seconds)).apply();
     }
 
@@ -656,7 +1077,7 @@ public class AppPreferencesManagerSingleton {
         return prefs.getString(KEY_LAST_BUDGET_RESET_DATE, "");
     }
 
-    public void setLastBudgetResetDate(String date) {
+    public synchronized void setLastBudgetResetDate(String date) {
         prefs.edit().putString(KEY_LAST_BUDGET_RESET_DATE, date).apply();
     }
 
@@ -664,7 +1085,7 @@ public class AppPreferencesManagerSingleton {
         return prefs.getLong(KEY_LAST_BUDGET_RESET_EPOCH_DAY, Long.MIN_VALUE);
     }
 
-    public void setLastBudgetResetEpochDay(long epochDay) {
+    public synchronized void setLastBudgetResetEpochDay(long epochDay) {
         prefs.edit().putLong(KEY_LAST_BUDGET_RESET_EPOCH_DAY, epochDay).apply();
     }
 
@@ -674,6 +1095,7 @@ public class AppPreferencesManagerSingleton {
 
     public void setTempAllowAppLaunch(boolean allowed) {
         prefs.edit().putBoolean(KEY_TEMP_ALLOW_APP_LAUNCH, allowed).apply();
+        enforcementStateWritten();
     }
 
     public String getLastInterceptedApp() {
@@ -682,6 +1104,7 @@ public class AppPreferencesManagerSingleton {
 
     public void setLastInterceptedApp(String packageName) {
         prefs.edit().putString(KEY_LAST_INTERCEPTED_APP, packageName == null ? "" : packageName).apply();
+        enforcementStateWritten();
     }
 
     public String getLastInterceptedUrl() {
@@ -690,6 +1113,7 @@ public class AppPreferencesManagerSingleton {
 
     public void setLastInterceptedUrl(String url) {
         prefs.edit().putString(KEY_LAST_INTERCEPTED_URL, url == null ? "" : url).apply();
+        enforcementStateWritten();
     }
 
     public String getLastInterceptionKind() {
@@ -699,6 +1123,7 @@ public class AppPreferencesManagerSingleton {
     public void setLastInterceptionKind(String kind) {
         prefs.edit().putString(KEY_LAST_INTERCEPTION_KIND,
                 "URL".equals(kind) ? "URL" : "APP").apply();
+        enforcementStateWritten();
     }
 
     public int getPendingSessionSeconds() {
@@ -723,7 +1148,7 @@ public class AppPreferencesManagerSingleton {
         return prefs.getInt(KEY_DAILY_SESSION_COUNT, 0);
     }
 
-    public void setDailySessionCount(int count) {
+    public synchronized void setDailySessionCount(int count) {
         prefs.edit().putInt(KEY_DAILY_SESSION_COUNT, Math.max(0, count)).apply();
     }
 
@@ -900,19 +1325,19 @@ public class AppPreferencesManagerSingleton {
     }
 
     // Metric increments
-    public void incrementFrictionShown() {
+    public synchronized void incrementFrictionShown() {
         int val = prefs.getInt(KEY_METRIC_FRICTION_SHOWN, 0);
         prefs.edit().putInt(KEY_METRIC_FRICTION_SHOWN, val + 1).apply();
     }
-    public void incrementFrictionEndured() {
+    public synchronized void incrementFrictionEndured() {
         int val = prefs.getInt(KEY_METRIC_FRICTION_ENDURED, 0);
         prefs.edit().putInt(KEY_METRIC_FRICTION_ENDURED, val + 1).apply();
     }
-    public void incrementFrictionAborted() {
+    public synchronized void incrementFrictionAborted() {
         int val = prefs.getInt(KEY_METRIC_FRICTION_ABORTED, 0);
         prefs.edit().putInt(KEY_METRIC_FRICTION_ABORTED, val + 1).apply();
     }
-    public void recordRetryLatency(long ms) {
+    public synchronized void recordRetryLatency(long ms) {
         long sum = prefs.getLong(KEY_METRIC_RETRY_LATENCY_SUM, 0);
         int count = prefs.getInt(KEY_METRIC_RETRY_COUNT, 0);
         prefs.edit().putLong(KEY_METRIC_RETRY_LATENCY_SUM, sum + ms)
@@ -932,7 +1357,7 @@ public class AppPreferencesManagerSingleton {
         return prefs.getInt(KEY_METRIC_SESSION_LIMIT_REACHED, 0);
     }
 
-    public void recordSessionOutcome(boolean limitReached) {
+    public synchronized void recordSessionOutcome(boolean limitReached) {
         String key = limitReached ? KEY_METRIC_SESSION_LIMIT_REACHED : KEY_METRIC_SESSIONS_ENDED_EARLY;
         prefs.edit().putInt(key, prefs.getInt(key, 0) + 1).apply();
     }
@@ -946,7 +1371,7 @@ public class AppPreferencesManagerSingleton {
         }
     }
 
-    public void incrementSessionStartHour(int hour) {
+    public synchronized void incrementSessionStartHour(int hour) {
         if (hour < 0 || hour > 23) return;
         int[] counts = getDailySessionHourCounts();
         counts[hour]++;
@@ -962,7 +1387,7 @@ public class AppPreferencesManagerSingleton {
         }
     }
 
-    public void incrementAlternativeChoice(int index) {
+    public synchronized void incrementAlternativeChoice(int index) {
         if (index < 0 || index >= 3) return;
         int[] counts = getDailyAlternativeChoiceCounts();
         counts[index]++;
@@ -999,7 +1424,7 @@ public class AppPreferencesManagerSingleton {
     }
 
     /** Archives the completed day, then applies the next day's reset state. */
-    public void applyResetBatch(long remaining, int sessionCount, String date, long epochDay) {
+    public synchronized void applyResetBatch(long remaining, int sessionCount, String date, long epochDay) {
         if (epochDay > getLastBudgetResetEpochDay()) archiveCurrentDayIfPresent();
         prefs.edit()
                 .putLong(KEY_REMAINING_BUDGET_SECONDS, Math.max(0, remaining))
@@ -1015,7 +1440,7 @@ public class AppPreferencesManagerSingleton {
     }
 
     /** Records only the incremental portion of an active session not saved previously. */
-    public void applyUsageDelta(long durationDeltaMs, long usedSecondsDelta) {
+    public synchronized void applyUsageDelta(long durationDeltaMs, long usedSecondsDelta) {
         prefs.edit()
                 .putLong(KEY_DAILY_RESTRICTED_TIME_MS,
                         getDailyRestrictedTimeMs() + Math.max(0, durationDeltaMs))
@@ -1026,7 +1451,7 @@ public class AppPreferencesManagerSingleton {
     }
 
     /** Clears today's usage metrics without changing the remaining allowance or reset marker. */
-    public void resetTodayStatistics() {
+    public synchronized void resetTodayStatistics() {
         prefs.edit()
                 .putInt(KEY_DAILY_SESSION_COUNT, 0)
                 .putLong(KEY_DAILY_RESTRICTED_TIME_MS, 0)
@@ -1097,7 +1522,7 @@ public class AppPreferencesManagerSingleton {
         requireAllowedJson(cooldownMinutes, ALLOWED_COOLDOWN_MINUTES,
                 "deactivationCooldownMinutes");
         requireAllowedJson(windowHours, ALLOWED_WINDOW_HOURS, "deactivationWindowHours");
-        portablePrefs.edit()
+        SharedPreferences.Editor editor = portablePrefs.edit()
                 .putString(KEY_RESTRICTED_URL_LIST, new JSONArray(urls).toString())
                 .putString(KEY_RESTRICTED_APP_LIST, new JSONArray(apps).toString())
                 .putString(KEY_STRICT_URL_LIST, new JSONArray(strictUrls).toString())
@@ -1115,16 +1540,17 @@ public class AppPreferencesManagerSingleton {
                 .putInt(KEY_DEACTIVATION_COOLDOWN_MINUTES, cooldownMinutes)
                 .remove(KEY_DEACTIVATION_COOLDOWN_HOURS)
                 .putInt(KEY_DEACTIVATION_WINDOW_HOURS, windowHours)
-                .putBoolean(KEY_PORTABLE_MIGRATION_COMPLETE, true)
-                .apply();
-        restrictedUrlsCache = immutableList(urls);
+                .putBoolean(KEY_PORTABLE_MIGRATION_COMPLETE, true);
+        writeUrlRuleLists(editor);
+        restrictedUrlsCache = immutableUrlList(urls);
         restrictedAppsCache = immutableList(apps);
-        strictUrlsCache = immutableList(strictUrls);
+        strictUrlsCache = immutableUrlList(strictUrls);
         strictAppsCache = immutableList(strictApps);
         restrictedUrlsStorageCorrupt = false;
         restrictedAppsStorageCorrupt = false;
         strictUrlsStorageCorrupt = false;
         strictAppsStorageCorrupt = false;
+        urlRuleGeneration.incrementAndGet();
     }
 
     private void validateImportedUrls(List<String> urls) throws JSONException {
@@ -1237,12 +1663,15 @@ public class AppPreferencesManagerSingleton {
         for (String value : values) {
             String clean = sanitizeItem(value);
             if (!clean.isEmpty() && !result.contains(clean)) result.add(clean);
-            if (result.size() >= 500) break;
+            if (result.size() >= MAX_LIST_ENTRIES) break;
         }
         return result;
     }
 
     private static boolean containsIgnoreCase(List<String> values, String candidate) {
+        if (values instanceof CompiledUrlRuleList) {
+            return ((CompiledUrlRuleList) values).containsIgnoreCase(candidate);
+        }
         if (candidate == null) return false;
         for (String value : values) {
             if (value.equalsIgnoreCase(candidate)) return true;
@@ -1254,6 +1683,11 @@ public class AppPreferencesManagerSingleton {
         return Collections.unmodifiableList(new ArrayList<>(values));
     }
 
+    /** URL snapshots carry their compiled patterns so matching never parses a rule. */
+    private static List<String> immutableUrlList(List<String> values) {
+        return CompiledUrlRuleList.of(values);
+    }
+
     private static String sanitizeItem(String value) {
         if (value == null) return "";
         String clean = value.trim();
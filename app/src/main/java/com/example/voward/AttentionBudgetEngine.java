@@ -10,6 +10,10 @@ import java.time.format.DateTimeParseException;
 /**
  * Coordinates the transparent attention budget. One stored unit is exactly one second of
  * approved restricted use; the engine does not infer any psychological or biological state.
+ *
+ * <p>The service's enforcement thread and the activities on the main thread each hold an
+ * engine. Every read-modify-write holds the shared preferences manager's lock, so the daily
+ * grant and usage updates from the two threads cannot interleave.</p>
  */
 public class AttentionBudgetEngine {
 
@@ -23,11 +27,14 @@ public class AttentionBudgetEngine {
     public void resetBudgetIfNeeded() {
         LocalDate today = LocalDate.now();
         long todayEpochDay = today.toEpochDay();
-        long lastEpochDay = getMigratedLastResetEpochDay(today);
+        synchronized (preferences) {
+            long lastEpochDay = getMigratedLastResetEpochDay(today);
 
-        // Never move the marker backwards. This prevents duplicate grants after a clock rollback.
-        if (todayEpochDay > lastEpochDay) {
-            applyDailyAllowance(today, todayEpochDay - lastEpochDay);
+            // Never move the marker backwards. This prevents duplicate grants after a clock
+            // rollback, and the lock prevents a second grant from the other thread.
+            if (todayEpochDay > lastEpochDay) {
+                applyDailyAllowance(today, todayEpochDay - lastEpochDay);
+            }
         }
     }
 
@@ -60,15 +67,20 @@ public class AttentionBudgetEngine {
 
     public void updateRemainingBudgetForAllowanceChange(int oldAllowance, int newAllowance) {
         long delta = (long) newAllowance - oldAllowance;
-        long adjusted = BudgetMath.addSignedDelta(preferences.getRemainingBudgetSeconds(), delta);
-        preferences.setRemainingBudgetSeconds(BudgetMath.addDailyAllowancesBounded(
-                adjusted, newAllowance, 0, preferences.getCarryoverCapDays()));
+        synchronized (preferences) {
+            long adjusted = BudgetMath.addSignedDelta(
+                    preferences.getRemainingBudgetSeconds(), delta);
+            preferences.setRemainingBudgetSeconds(BudgetMath.addDailyAllowancesBounded(
+                    adjusted, newAllowance, 0, preferences.getCarryoverCapDays()));
+        }
     }
 
     public void normalizeBalanceToCurrentLimits() {
-        preferences.setRemainingBudgetSeconds(BudgetMath.addDailyAllowancesBounded(
-                preferences.getRemainingBudgetSeconds(), preferences.getDailyAllowanceSeconds(), 0,
-                preferences.getCarryoverCapDays()));
+        synchronized (preferences) {
+            preferences.setRemainingBudgetSeconds(BudgetMath.addDailyAllowancesBounded(
+                    preferences.getRemainingBudgetSeconds(),
+                    preferences.getDailyAllowanceSeconds(), 0, preferences.getCarryoverCapDays()));
+        }
     }
 
     public void resetTodayStatistics() {
@@ -96,8 +108,10 @@ public class AttentionBudgetEngine {
     }
 
     public void recordUsageDelta(long timeSpentMillis, long usedSeconds) {
-        resetBudgetIfNeeded();
-        preferences.applyUsageDelta(Math.max(0, timeSpentMillis), Math.max(0, usedSeconds));
+        synchronized (preferences) {
+            resetBudgetIfNeeded();
+            preferences.applyUsageDelta(Math.max(0, timeSpentMillis), Math.max(0, usedSeconds));
+        }
     }
 
     public long getRemainingBudget() {
@@ -105,8 +119,10 @@ public class AttentionBudgetEngine {
     }
 
     public void incrementSessionCount() {
-        resetBudgetIfNeeded();
-        preferences.setDailySessionCount(preferences.getDailySessionCount() + 1);
-        preferences.incrementSessionStartHour(LocalTime.now().getHour());
+        synchronized (preferences) {
+            resetBudgetIfNeeded();
+            preferences.setDailySessionCount(preferences.getDailySessionCount() + 1);
+            preferences.incrementSessionStartHour(LocalTime.now().getHour());
+        }
     }
 }
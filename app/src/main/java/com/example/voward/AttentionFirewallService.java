@@ -1,5 +1,6 @@
 package com.example.voward;
 
+import android.Manifest;
 import android.accessibilityservice.AccessibilityService;
 import android.accessibilityservice.AccessibilityServiceInfo;
 import android.app.Notification;
@@ -10,17 +11,21 @@ import android.content.Context;
 import android.content.BroadcastReceiver;
 import android.content.Intent;
 import android.content.IntentFilter;
+import android.content.pm.ApplicationInfo;
 import android.content.pm.PackageManager;
 import android.content.pm.ResolveInfo;
+import android.content.res.Configuration;
 import android.graphics.Rect;
 import android.os.Build;
 import android.os.Bundle;
 import android.os.Handler;
+import android.os.HandlerThread;
 import android.os.Looper;
 import android.os.SystemClock;
 import android.util.Log;
 import android.view.accessibility.AccessibilityEvent;
 import android.view.accessibility.AccessibilityNodeInfo;
+import android.view.inputmethod.InputMethod;
 import android.view.inputmethod.InputMethodInfo;
 import android.view.inputmethod.InputMethodManager;
 import android.widget.Toast;
@@ -28,14 +33,21 @@ import android.widget.Toast;
 import androidx.annotation.NonNull;
 import androidx.core.app.NotificationCompat;
 
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
 import java.util.Arrays;
-import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Locale;
 import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 
 public class AttentionFirewallService extends AccessibilityService {
 
@@ -59,42 +71,94 @@ public class AttentionFirewallService extends AccessibilityService {
         }
     };
     
-    // Sticky Session State
-    private String activeStickyPackage = null;
-    
-    // Usage tracking: accumulate only time spent in the restricted target.
-    private final Set<String> sessionApprovedPatterns = new HashSet<>();
-    private long accumulatedRestrictedTimeMs = 0;
-    // Monotonic timestamp; wall-clock changes must not change session duration.
-    private long restrictedSegmentStartedAt = 0;
-    private long persistedRestrictedTimeMs = 0;
-    private long persistedUsageSeconds = 0;
-    private boolean restrictedUseConfirmed = false;
-    private long lastCheckpointAt = 0;
-    private long lastActiveNotificationAt = 0;
-    private static final long CHECKPOINT_INTERVAL_MS = 5000;
+    private boolean packageChangeReceiverRegistered;
+    // Package and input-method changes can add or drop an input method or a home app, and
+    // a browser update may rename its toolbar: drop what was classified, learned or cached.
+    private final BroadcastReceiver packageChangeReceiver = new BroadcastReceiver() {
+        @Override public void onReceive(Context context, Intent intent) {
+            if (packageClasses == null) return;
+            String packageName = intent.getData() == null
+                    ? null : intent.getData().getSchemeSpecificPart();
+            // The removal half of an update is followed by PACKAGE_REPLACED.
+            boolean removed = Intent.ACTION_PACKAGE_REMOVED.equals(intent.getAction())
+                    && !intent.getBooleanExtra(Intent.EXTRA_REPLACING, false);
+            // Until the browsers stage is ready, its first load reads the package anyway.
+            if (warmUp.isReady(ServiceWarmUp.Stage.BROWSERS)) queryPackage(packageName, removed);
+            if (packageName == null) return;
+            packageClasses.packageChanged(packageName);
+            if (Intent.ACTION_PACKAGE_CHANGED.equals(intent.getAction())) return;
+            addressBarIds.packageChanged(packageName);
+            addressBarCache.invalidate(packageName);
+        }
+    };
 
-    // Forced Cleanup / Lockout Logic
-    private boolean isBudgetLockedOut = false;
-    // MEDIUM-05: Snapshot of remaining budget at session start so mid-session exhaustion
-    // is measured against the allowance for this specific approved session, not the
-    // cumulative stored value (which may already be negative from prior sessions).
-    private long sessionLimitSeconds = 0;
-    private boolean sessionLimitReached = false;
+    // Sticky session, foreground, cooldown and forced-eviction state. Times are
+    // elapsedRealtime, so wall-clock changes cannot change a session's duration.
+    private final EnforcementStateMachine enforcement = new EnforcementStateMachine(
+            new EnforcementStateMachine.Budget() {
+                @Override
+                public boolean hasRemaining() {
+                    attentionBudgetEngine.resetBudgetIfNeeded();
+                    return attentionBudgetEngine.getRemainingBudget() > 0;
+                }
 
-    // Foreground Ownership Tracking
-    private String lastForegroundPackage = null;
-    private long lastForegroundChangeTime = 0;
-    private static final long FOREGROUND_DEBOUNCE_MS = 300;
+                @Override
+                public long quoteSessionSeconds() {
+                    return attentionBudgetEngine.quoteSessionSeconds(
+                            appPreferencesManager.getPendingQuotedSessionSeconds());
+                }
+            });
+    private long lastActiveNotificationAt = 0;
 
     // URL Stability & Cooldown Logic
     private final Map<String, String> lastObservedUrls = new HashMap<>();
     private final Map<String, Long> lastUrlChangeTimes = new HashMap<>();
-    private static final long URL_STABLE_MS = 800;
-
-    // Deferred URL checks: fire after stability window even if no further events arrive
-    private final Handler urlCheckHandler = new Handler(Looper.getMainLooper());
-    private final Map<String, Runnable> pendingUrlChecks = new HashMap<>();
+    private final UrlVerdictCache urlVerdicts = new UrlVerdictCache(URL_VERDICT_CACHE_SIZE);
+    private final AccessibilitySubscription subscription = new AccessibilitySubscription();
+    // Address bars found by earlier events; reused after a refresh while the window stays.
+    private final AddressBarCache addressBarCache = new AddressBarCache();
+    private AddressBarIdCatalog addressBarIds;
+    // Shares one root and address-bar lookup among the checks of an event or watchdog tick.
+    // Created with the ID catalog in onServiceConnected.
+    private EventTreeContext.Scope treeScope;
+    // The watchdog and re-checks revisit a handful of addresses; a few dozen covers tabs.
+    private static final int URL_VERDICT_CACHE_SIZE = 64;
+
+    // Enforcement runs on its own thread, which owns all mutable session state: the main
+    // thread only copies events into the bounded handoff and shows the UI posted back to it.
+    private HandlerThread enforcementThread;
+    private Handler enforcementHandler;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final EventHandoff eventHandoff = new EventHandoff(EventHandoff.DEFAULT_CAPACITY);
+    private final Runnable eventDrain = this::drainEventHandoff;
+    // Debug builds record the handled events when files/traces exists, for TraceReplayer.
+    private AccessibilityTrace.Recorder traceRecorder;
+    private static final int TRACE_CAPACITY = 50_000;
+    private static final long TEARDOWN_TIMEOUT_MS = 1000;
+    // Browser discovery and the notification channel warm up side by side.
+    private static final int WARM_UP_THREADS = 2;
+    // Stage readiness and timings since the connect; enforcement thread only.
+    private ServiceWarmUp warmUp;
+    // Every delayed task (watchdog polls, URL re-checks, redirect retries and the session
+    // ticker) shares one deadline queue and one wakeup on the enforcement thread. Keyed, so
+    // rescheduling a task replaces it.
+    private final DeadlineScheduler timers = new DeadlineScheduler(new DeadlineScheduler.Alarm() {
+        @Override public void set(long at) {
+            enforcementHandler.removeCallbacks(timerWakeup);
+            enforcementHandler.postAtTime(timerWakeup, at);
+        }
+
+        @Override public void cancel() {
+            enforcementHandler.removeCallbacks(timerWakeup);
+        }
+    });
+    private final Runnable timerWakeup = () -> timers.runDue(SystemClock.uptimeMillis());
+    // Task keys for one-off browser work, suffixed with the browser package. Deferred URL
+    // checks fire after the stability window even if no further events arrive.
+    private static final String URL_CHECK = "url-check:";
+    private static final String BROWSER_REDIRECT = "browser-redirect:";
+    private static final String SAFE_ADDRESS_SUBMIT = "safe-address-submit:";
+    private static final String ADDRESS_CLEAR = "address-clear:";
     private final Map<String, Integer> browserRedirectAttempts = new HashMap<>();
     private static final int MAX_BROWSER_REDIRECT_ATTEMPTS = 4;
 
@@ -102,74 +166,21 @@ public class AttentionFirewallService extends AccessibilityService {
     // app. Keep verifying an exhausted target until it has actually left the screen. For
     // browsers we first preserve the tab by navigating it to the local block page, then
     // fall back to Home if the browser does not commit that navigation promptly.
-    private final Handler forcedEvictionHandler = new Handler(Looper.getMainLooper());
     private static final long FORCED_EVICTION_RECHECK_MS = 350;
-    private static final long BROWSER_REDIRECT_FALLBACK_MS = 4000;
-    private String forcedEvictionPackage = null;
-    private long forcedEvictionStartedAt = 0;
 
     private final Runnable forcedEvictionCheck = new Runnable() {
         @Override
         public void run() {
-            if (destroyed || forcedEvictionPackage == null
+            if (destroyed || enforcement.evictionPackage() == null
                     || appPreferencesManager == null
-                    || !appPreferencesManager.getIsBlockerActive()) {
+                    || !appPreferencesManager.getEnforcementSnapshot().blockerActive) {
                 clearForcedEviction();
                 return;
             }
 
-            AccessibilityNodeInfo root = getRootInActiveWindow();
-            if (root == null || root.getPackageName() == null) {
-                if (root != null) root.recycle();
-                forcedEvictionHandler.postDelayed(this, FORCED_EVICTION_RECHECK_MS);
-                return;
+            try (EventTreeContext tree = treeScope.open()) {
+                verifyForcedEviction(tree);
             }
-
-            String foregroundPackage = root.getPackageName().toString();
-            if (!forcedEvictionPackage.equals(foregroundPackage)) {
-                root.recycle();
-                if (isTransientSystemOverlay(foregroundPackage)) {
-                    forcedEvictionHandler.postDelayed(this, FORCED_EVICTION_RECHECK_MS);
-                } else {
-                    clearForcedEviction();
-                }
-                return;
-            }
-
-            BrowserSupport.Config browser = findBrowserConfig(forcedEvictionPackage);
-            if (browser == null) {
-                root.recycle();
-                performGlobalAction(GLOBAL_ACTION_HOME);
-                forcedEvictionHandler.postDelayed(this, FORCED_EVICTION_RECHECK_MS);
-                return;
-            }
-
-            AccessibilityNodeInfo bar = findAddressBar(root, browser);
-            boolean committedToBlockPage = bar != null
-                    && bar.getText() != null
-                    && !bar.isFocused()
-                    && BrowserSupport.isConfiguredSafeAddress(
-                            browser, bar.getText().toString());
-            if (bar != null) bar.recycle();
-            root.recycle();
-
-            if (committedToBlockPage) {
-                clearForcedEviction();
-                return;
-            }
-
-            if (SystemClock.elapsedRealtime() - forcedEvictionStartedAt
-                    >= BROWSER_REDIRECT_FALLBACK_MS) {
-                // Do not leave the forbidden page usable when a browser version refuses
-                // accessibility-based omnibox submission.
-                performGlobalAction(GLOBAL_ACTION_HOME);
-            } else if (!browserRedirectAttempts.containsKey(browser.packageName)) {
-                // The previous bounded redirect sequence either finished inserting text or
-                // exhausted its retries. Restart it while verification still says the page
-                // has not navigated.
-                beginBrowserRedirect(browser);
-            }
-            forcedEvictionHandler.postDelayed(this, FORCED_EVICTION_RECHECK_MS);
         }
     };
 
@@ -179,51 +190,38 @@ public class AttentionFirewallService extends AccessibilityService {
             UninstallGuardPolicy.GuardTarget.NONE;
     private long suppressedGuardTargetUntil;
     private static final long GUARD_BACK_TRANSITION_GRACE_MS = 2500;
-    private final Handler guardWatchdogHandler = new Handler(Looper.getMainLooper());
     private boolean guardWatchdogRunning;
     private String guardWatchdogPackage;
     private long guardWatchdogRootMismatchSince;
     private static final long GUARD_WATCHDOG_INTERVAL_MS = 400;
     private static final long GUARD_WATCHDOG_TRANSIENT_GRACE_MS = 2000;
+    // Settings pages have a few hundred nodes; the budgets only stop pathological trees.
+    private static final int GUARD_SCAN_MAX_NODES = GuardScreenScanner.DEFAULT_MAX_NODES;
+    private static final long GUARD_SCAN_MAX_NANOS = GuardScreenScanner.DEFAULT_MAX_NANOS;
+    private final GuardScreenScanner guardScanner =
+            new GuardScreenScanner(GUARD_SCAN_MAX_NODES, GUARD_SCAN_MAX_NANOS);
+    private final GuardScanTree guardScanTree = new GuardScanTree();
+    private boolean guardScanTargetSet;
+    private final GuardVerdictCache guardVerdicts =
+            new GuardVerdictCache(GUARD_VERDICT_CACHE_SIZE);
+    // Settings and the installer show a few windows at a time; back navigation revisits them.
+    private static final int GUARD_VERDICT_CACHE_SIZE = 8;
+    // Guard-host content events handled, and handoff drops, since the scanner's kept window
+    // was last brought up to date.
+    private int guardChangesSinceScan;
+    private long guardDropsAtScan;
     private final Runnable guardWatchdog = new Runnable() {
         @Override public void run() {
             if (!guardWatchdogRunning
                     || appPreferencesManager == null
-                    || !appPreferencesManager.getIsBlockerActive()
+                    || !appPreferencesManager.getEnforcementSnapshot().blockerActive
                     || guardWatchdogPackage == null) {
                 stopGuardWatchdog();
                 return;
             }
 
-            String activeRootPackage = getActiveRootPackageName();
-            if (!guardWatchdogPackage.equals(activeRootPackage)) {
-                long now = SystemClock.elapsedRealtime();
-                if (guardWatchdogRootMismatchSince == 0) {
-                    guardWatchdogRootMismatchSince = now;
-                }
-                if ((activeRootPackage != null
-                        && !isTransientSystemOverlay(activeRootPackage))
-                        || now - guardWatchdogRootMismatchSince
-                        >= GUARD_WATCHDOG_TRANSIENT_GRACE_MS) {
-                    stopGuardWatchdog();
-                    return;
-                }
-                guardWatchdogHandler.postDelayed(this, GUARD_WATCHDOG_INTERVAL_MS);
-                return;
-            }
-            guardWatchdogRootMismatchSince = 0;
-
-            UninstallGuardPolicy.GuardTarget guardTarget = classifyGuardScreen(
-                    guardWatchdogPackage, lastWindowId);
-            if (guardTarget == UninstallGuardPolicy.GuardTarget.NONE) {
-                clearGuardBackSuppression();
-            }
-            if (UninstallGuardPolicy.shouldBlock(
-                    guardTarget, appPreferencesManager.isUninstallGuardEnabled())) {
-                blockGuardedSystemScreen(guardTarget);
-            }
-            if (guardWatchdogRunning) {
-                guardWatchdogHandler.postDelayed(this, GUARD_WATCHDOG_INTERVAL_MS);
+            try (EventTreeContext tree = treeScope.open()) {
+                checkGuardWatchdog(tree);
             }
         }
     };
@@ -233,30 +231,21 @@ public class AttentionFirewallService extends AccessibilityService {
     // fixed timer, so it works regardless of whether the user pressed Home before Cancel.
     private BrowserSupport.Config pendingBrowserAddressClear = null;
 
-    // Restricted/safe state hysteresis
-    private long lastRestrictedSeenAt = 0;
-    private long lastSafeSeenAt = 0;
-    private static final long SAFE_CONFIRM_MS = 1500;
-    
-    // Shared cooldown to prevent browser loops
-    private static long lastDecisionGateTime = 0;
-    private static final long DECISION_COOLDOWN_MS = 5000;
-
-    // Stabilization interval so transient overlays do not cancel an approved launch.
-    private static long tempAllowGrantedAt = 0;
-    private static final long TEMP_ALLOW_STABILIZATION_MS = 4000;
-
-    private final Set<String> installedImePackages = new HashSet<>();
-    private final Set<String> launcherPackages = new HashSet<>();
-    private List<BrowserSupport.Config> supportedBrowsers;
-    private final Map<String, BrowserSupport.Config> supportedBrowserByPackage = new HashMap<>();
+    // When the gate granted the pending approval; transient overlays cannot cancel it
+    // during the stabilization interval. Written from the gate on the main thread.
+    private static volatile long tempAllowGrantedAt = 0;
+
+    // Transient, launcher, browser and critical flags by package; enforcement thread only.
+    private PackageClassifier packageClasses;
+    // Installed input methods, launchers and browsers; enforcement thread only.
+    private PackageRegistry packages;
+    private final InstalledPackages installedPackages = new InstalledPackages();
+    // Package-manager queries for broadcasts; one thread keeps them in broadcast order.
+    private final ExecutorService packageQueries = Executors.newSingleThreadExecutor();
     private StaticBlockPageServer blockPageServer;
 
     private static final long BROWSER_URL_WATCHDOG_MS = 1000;
 
-    private final Handler browserWatchdogHandler =
-            new Handler(Looper.getMainLooper());
-
     private BrowserSupport.Config watchedBrowser = null;
 
     private final Runnable browserUrlWatchdog = new Runnable() {
@@ -264,55 +253,55 @@ public class AttentionFirewallService extends AccessibilityService {
         public void run() {
             if (destroyed
                     || appPreferencesManager == null
-                    || !appPreferencesManager.getIsBlockerActive()
+                    || !appPreferencesManager.getEnforcementSnapshot().blockerActive
                     || watchedBrowser == null) {
                 return;
             }
 
             BrowserSupport.Config config = watchedBrowser;
 
-            AccessibilityNodeInfo root = getRootInActiveWindow();
-
-            if (root == null) {
-                browserWatchdogHandler.postDelayed(
-                        this, BROWSER_URL_WATCHDOG_MS);
-                return;
-            }
-
-            boolean browserStillForeground;
+            // The check below reuses this tick's root and address-bar lookup.
+            try (EventTreeContext tree = treeScope.open()) {
+                String foregroundPackage = tree.rootPackageName();
+                if (foregroundPackage == null) {
+                    schedule(this, BROWSER_URL_WATCHDOG_MS);
+                    return;
+                }
 
-            try {
-                browserStillForeground =
-                        root.getPackageName() != null
-                                && config.packageName.equals(
-                                root.getPackageName().toString());
-            } finally {
-                root.recycle();
-            }
+                if (!config.packageName.equals(foregroundPackage)) {
+                    watchedBrowser = null;
+                    updateSubscription();
+                    return;
+                }
 
-            if (!browserStillForeground) {
-                watchedBrowser = null;
-                return;
+                /*
+                 * Treat this as a committed-state inspection.
+                 *
+                 * We are not reacting to text being typed; checkBrowserUrl()
+                 * still checks bar.isFocused() before accepting a restricted
+                 * URL as committed.
+                 */
+                checkBrowserUrl(
+                        config,
+                        AccessibilityEvent.TYPE_WINDOW_STATE_CHANGED);
             }
 
-            /*
-             * Treat this as a committed-state inspection.
-             *
-             * We are not reacting to text being typed; checkBrowserUrl()
-             * still checks bar.isFocused() before accepting a restricted
-             * URL as committed.
-             */
-            checkBrowserUrl(
-                    config,
-                    AccessibilityEvent.TYPE_WINDOW_STATE_CHANGED);
-
             if (watchedBrowser != null) {
-                browserWatchdogHandler.postDelayed(
-                        this, BROWSER_URL_WATCHDOG_MS);
+                schedule(this, BROWSER_URL_WATCHDOG_MS);
             }
         }
     };
 
+    /** Runs {@code task} after {@code delayMs}, replacing the task pending under {@code key}. */
+    private void schedule(Object key, long delayMs, Runnable task) {
+        timers.schedule(key, SystemClock.uptimeMillis() + delayMs, task);
+    }
+
+    /** Schedules a recurring task under its own key. */
+    private void schedule(Runnable task, long delayMs) {
+        schedule(task, delayMs, task);
+    }
+
     private void startBrowserUrlWatchdog(BrowserSupport.Config config) {
         if (config == null) {
             stopBrowserUrlWatchdog();
@@ -324,37 +313,36 @@ public class AttentionFirewallService extends AccessibilityService {
             return;
         }
 
-        browserWatchdogHandler.removeCallbacks(browserUrlWatchdog);
+        timers.cancel(browserUrlWatchdog);
 
         watchedBrowser = config;
+        updateSubscription();
 
         // Check immediately, then periodically.
-        browserWatchdogHandler.post(browserUrlWatchdog);
+        schedule(browserUrlWatchdog, 0);
     }
 
     private void stopBrowserUrlWatchdog() {
         watchedBrowser = null;
-        browserWatchdogHandler.removeCallbacks(browserUrlWatchdog);
+        timers.cancel(browserUrlWatchdog);
+        updateSubscription();
     }
 
-    private final Handler notificationHandler = new Handler(Looper.getMainLooper());
     private final Runnable notificationTicker = new Runnable() {
         @Override
         public void run() {
             if (destroyed) return;
-            checkpointSessionUsage(false);
-            checkLiveBudgetExhaustion();
             long now = SystemClock.elapsedRealtime();
-            if (now - lastActiveNotificationAt >= CHECKPOINT_INTERVAL_MS) {
+            applyEnforcementActions(enforcement.onSessionTick(now), null, null, null);
+            if (now - lastActiveNotificationAt
+                    >= EnforcementStateMachine.CHECKPOINT_INTERVAL_MS) {
                 lastActiveNotificationAt = now;
                 updateStatsNotification();
             }
-            if (restrictedSegmentStartedAt != 0 && activeStickyPackage != null) {
-                notificationHandler.postDelayed(this, 1000);
-            }
+            if (enforcement.isRestrictedTimeRunning()) schedule(this, 1000);
         }
     };
-    private boolean destroyed = false;
+    private volatile boolean destroyed = false;
 
     public static void notifyGateClosed() {
         Log.d(TAG, "Gate closed (cancelled).");
@@ -365,8 +353,9 @@ public class AttentionFirewallService extends AccessibilityService {
     }
 
     public static void notifyGateCancelled() {
-        if (instance != null) {
-            instance.handleGateCancelled();
+        AttentionFirewallService service = instance;
+        if (service != null && service.enforcementHandler != null) {
+            service.enforcementHandler.post(service::handleGateCancelled);
         }
     }
 
@@ -375,22 +364,21 @@ public class AttentionFirewallService extends AccessibilityService {
         // For browser URL interceptions: don't go back in history. Instead, wait for
         // the gate's finish() to complete and Chrome to return to the foreground, then
         // navigate to the local block page so the restricted URL is gone.
-        String interceptedApp = appPreferencesManager.getLastInterceptedApp();
-        if ("URL".equals(appPreferencesManager.getLastInterceptionKind())
-                && interceptedApp != null && !interceptedApp.isEmpty() && supportedBrowsers != null) {
-            for (BrowserSupport.Config config : supportedBrowsers) {
-                if (interceptedApp.equals(config.packageName)) {
-                    // Closing the gate exposes the still-restricted page before the delayed
-                    // in-place redirect runs. Refresh the cooldown now so that foreground/
-                    // content events from that brief window cannot open a second gate.
-                    lastDecisionGateTime = SystemClock.elapsedRealtime();
-                    // Keep the browser usable: replace the blocked page instead of sending
-                    // the entire browser to Home. This also gives the user access to the
-                    // tab switcher if browser-specific navigation is unavailable.
-                    urlCheckHandler.postDelayed(() -> beginBrowserRedirect(config), 500);
-                    return;
-                }
-            }
+        EnforcementSnapshot snapshot = appPreferencesManager.getEnforcementSnapshot();
+        String interceptedApp = snapshot.lastInterceptedApp;
+        BrowserSupport.Config config = "URL".equals(snapshot.lastInterceptionKind)
+                ? findBrowserConfig(interceptedApp) : null;
+        if (config != null) {
+            // Closing the gate exposes the still-restricted page before the delayed
+            // in-place redirect runs. Refresh the cooldown now so that foreground/
+            // content events from that brief window cannot open a second gate.
+            enforcement.armCooldown(SystemClock.elapsedRealtime());
+            // Keep the browser usable: replace the blocked page instead of sending
+            // the entire browser to Home. This also gives the user access to the
+            // tab switcher if browser-specific navigation is unavailable.
+            schedule(BROWSER_REDIRECT + config.packageName, 500,
+                    () -> beginBrowserRedirect(config));
+            return;
         }
         performGlobalAction(GLOBAL_ACTION_HOME);
     }
@@ -399,39 +387,147 @@ public class AttentionFirewallService extends AccessibilityService {
     @Override
     protected void onServiceConnected() {
         super.onServiceConnected();
+        long connectedAt = SystemClock.elapsedRealtimeNanos();
         instance = this;
-        appPreferencesManager = AppPreferencesManagerSingleton.getInstance(this);
-        deactivationValidationThrottle.recordForcedRun(SystemClock.elapsedRealtime());
-        DeactivationRequestValidator.validate(this, appPreferencesManager);
-        registerReceiver(timeChangeReceiver, new IntentFilter(Intent.ACTION_TIME_CHANGED));
+        warmUp = new ServiceWarmUp(connectedAt);
+        enforcementThread = new HandlerThread("VowardEnforcement");
+        enforcementThread.start();
+        enforcementHandler = new Handler(enforcementThread.getLooper());
+        // Events handed off from here on queue behind the core stage on the same thread,
+        // so nothing is dropped and nothing is enforced before the rules are loaded.
+        enforcementHandler.post(this::warmUpCore);
+        blockPageServer = new StaticBlockPageServer();
+        ExecutorService warmUpExecutor = Executors.newFixedThreadPool(WARM_UP_THREADS);
+        warmUpExecutor.execute(this::warmUpBrowsers);
+        warmUpExecutor.execute(this::warmUpNotifications);
+        warmUpExecutor.shutdown();
+        // Receivers run on the enforcement thread, after the core stage.
+        registerReceiver(timeChangeReceiver, new IntentFilter(Intent.ACTION_TIME_CHANGED),
+                null, enforcementHandler);
         timeChangeReceiverRegistered = true;
+        IntentFilter packageChanges = new IntentFilter();
+        packageChanges.addAction(Intent.ACTION_PACKAGE_ADDED);
+        packageChanges.addAction(Intent.ACTION_PACKAGE_REPLACED);
+        packageChanges.addAction(Intent.ACTION_PACKAGE_REMOVED);
+        // Enabling or disabling a home activity changes the launchers.
+        packageChanges.addAction(Intent.ACTION_PACKAGE_CHANGED);
+        packageChanges.addDataScheme("package");
+        registerReceiver(packageChangeReceiver, packageChanges, null, enforcementHandler);
+        registerReceiver(packageChangeReceiver,
+                new IntentFilter(Intent.ACTION_INPUT_METHOD_CHANGED), null, enforcementHandler);
+        packageChangeReceiverRegistered = true;
+        long connectEnd = SystemClock.elapsedRealtimeNanos();
+        enforcementHandler.post(() -> warmUpStageFinished(
+                ServiceWarmUp.Stage.CONNECT, connectedAt, connectEnd));
+    }
+
+    /** Enforcement thread: everything app rules need, ahead of the first event. */
+    private void warmUpCore() {
+        long start = SystemClock.elapsedRealtimeNanos();
+        appPreferencesManager = AppPreferencesManagerSingleton.getInstance(this);
         // CRITICAL-01: Clear any stale temp-allow flag that survived a process death so a
         // previous gate approval can never silently bypass enforcement after restart.
         appPreferencesManager.setTempAllowAppLaunch(false);
+        // The validation stage runs the check; keep the events ahead of it from running it
+        // again inline.
+        deactivationValidationThrottle.recordForcedRun(SystemClock.elapsedRealtime());
+        addressBarIds = new AddressBarIdCatalog(this);
+        treeScope = new EventTreeContext.Scope(this, addressBarCache, addressBarIds);
+        packageClasses = new PackageClassifier(getPackageName(), PackageClassifier.DEFAULT_CAPACITY);
+        if ((getApplicationInfo().flags & ApplicationInfo.FLAG_DEBUGGABLE) != 0
+                && new File(getFilesDir(), "traces").isDirectory()) {
+            traceRecorder = new AccessibilityTrace.Recorder(TRACE_CAPACITY);
+        }
         attentionBudgetEngine = new AttentionBudgetEngine(this);
         grayscaleController = new GrayscaleController(this);
-        blockPageServer = new StaticBlockPageServer();
-        String blockPageAddress = blockPageServer.start();
-        this.supportedBrowsers = getSupportedBrowsers(blockPageAddress);
-        supportedBrowserByPackage.clear();
-        for (BrowserSupport.Config browser : supportedBrowsers) {
-            supportedBrowserByPackage.put(browser.packageName, browser);
+        // Maps the imported host blocklist, compiles the rules and reads the per-event
+        // preferences once before the first event.
+        appPreferencesManager.getEnforcementSnapshot();
+        updateSubscription();
+        warmUpStageFinished(ServiceWarmUp.Stage.CORE, start, SystemClock.elapsedRealtimeNanos());
+        // Behind the events queued so far: a pending request only ever keeps the blocker on.
+        enforcementHandler.post(this::warmUpValidation);
+    }
+
+    /** Enforcement thread: the deactivation check, serialized with the per-event one. */
+    private void warmUpValidation() {
+        if (destroyed) return;
+        long start = SystemClock.elapsedRealtimeNanos();
+        DeactivationRequestValidator.validate(this, appPreferencesManager);
+        warmUpStageFinished(ServiceWarmUp.Stage.VALIDATION, start,
+                SystemClock.elapsedRealtimeNanos());
+    }
+
+    /** Warm-up thread: opens the block page and reads the installed packages. */
+    private void warmUpBrowsers() {
+        long start = SystemClock.elapsedRealtimeNanos();
+        StaticBlockPageServer server = blockPageServer;
+        String blockPageAddress = server.start();
+        // The teardown may have closed the server before it was started.
+        if (destroyed) {
+            server.close();
+            return;
         }
-        
-        refreshImeList();
-        refreshLauncherList();
+        PackageRegistry registry = new PackageRegistry(installedPackages, blockPageAddress);
+        registry.load();
+        long end = SystemClock.elapsedRealtimeNanos();
+        enforcementHandler.post(() -> {
+            packages = registry;
+            updatePackageClasses();
+            warmUpStageFinished(ServiceWarmUp.Stage.BROWSERS, start, end);
+        });
+    }
+
+    /** Warm-up thread: creates the channel before the first status notification. */
+    private void warmUpNotifications() {
+        long start = SystemClock.elapsedRealtimeNanos();
         createNotificationChannel();
+        long end = SystemClock.elapsedRealtimeNanos();
+        enforcementHandler.post(() -> {
+            warmUpStageFinished(ServiceWarmUp.Stage.NOTIFICATIONS, start, end);
+            updateStatsNotification();
+        });
+    }
+
+    /** Enforcement thread: marks {@code stage} ready and logs once every stage is. */
+    private void warmUpStageFinished(ServiceWarmUp.Stage stage, long start, long end) {
+        warmUp.stageFinished(stage, start, end);
+        if (warmUp.allReady()) Log.i(TAG, "Warm-up: " + warmUp);
+    }
+
+    @Override
+    public void onConfigurationChanged(@NonNull Configuration newConfig) {
+        super.onConfigurationChanged(newConfig);
+        // The guard scanner matches the translated labels; pick up the new ones.
+        if (enforcementHandler != null) {
+            enforcementHandler.post(() -> guardScanTargetSet = false);
+        }
+    }
 
+    /**
+     * Applies the narrowest subscription the current state needs. Called after every
+     * transition that changes it; setServiceInfo runs only when the result differs.
+     */
+    private void updateSubscription() {
+        if (destroyed || appPreferencesManager == null) return;
+        boolean inspecting = watchedBrowser != null || guardWatchdogRunning
+                || enforcement.evictionPackage() != null;
+        boolean restrictedForeground = enforcement.sessionPackage() != null
+                || enforcement.evictionPackage() != null;
+        AccessibilitySubscription.Config wanted = AccessibilitySubscription.configFor(
+                appPreferencesManager.getEnforcementSnapshot().blockerActive, inspecting,
+                restrictedForeground, getPackageName());
+        AccessibilitySubscription.Config changed =
+                subscription.update(wanted, SystemClock.elapsedRealtime());
+        if (changed == null) return;
         AccessibilityServiceInfo info = new AccessibilityServiceInfo();
-        info.eventTypes = AccessibilityEvent.TYPE_WINDOW_STATE_CHANGED |
-                         AccessibilityEvent.TYPE_WINDOW_CONTENT_CHANGED |
-                         AccessibilityEvent.TYPE_VIEW_CLICKED;
+        info.eventTypes = changed.eventTypes;
         info.feedbackType = AccessibilityServiceInfo.FEEDBACK_GENERIC;
-        info.flags = AccessibilityServiceInfo.FLAG_INCLUDE_NOT_IMPORTANT_VIEWS | AccessibilityServiceInfo.FLAG_REPORT_VIEW_IDS;
-        info.notificationTimeout = 100; // Coalesce bursts of scroll/content-change events.
+        info.flags = changed.flags;
+        // Coalesces bursts of scroll/content-change events.
+        info.notificationTimeout = changed.notificationTimeout;
+        info.packageNames = changed.packageNames;
         setServiceInfo(info);
-        
-        updateStatsNotification();
     }
 
     private void createNotificationChannel() {
@@ -446,11 +542,12 @@ public class AttentionFirewallService extends AccessibilityService {
     }
 
     private void updateStatsNotification() {
+        if (!warmUp.isReady(ServiceWarmUp.Stage.NOTIFICATIONS)) return;
         if (attentionBudgetEngine != null) {
             attentionBudgetEngine.resetBudgetIfNeeded();
         }
         
-        boolean active = appPreferencesManager.getIsBlockerActive();
+        boolean active = appPreferencesManager.getEnforcementSnapshot().blockerActive;
         lastNotifiedActive = active;
         NotificationManager manager = getSystemService(NotificationManager.class);
         if (manager == null || !manager.areNotificationsEnabled()) return;
@@ -458,11 +555,8 @@ public class AttentionFirewallService extends AccessibilityService {
         
         long sessionUsageSeconds = 0;
         
-        if (activeStickyPackage != null) {
-            long currentSegmentMs = (restrictedSegmentStartedAt == 0) ? 0
-                    : (SystemClock.elapsedRealtime() - restrictedSegmentStartedAt);
-            long totalMs = accumulatedRestrictedTimeMs + currentSegmentMs;
-            
+        if (enforcement.sessionPackage() != null) {
+            long totalMs = enforcement.restrictedTimeMs(SystemClock.elapsedRealtime());
             sessionUsageSeconds = attentionBudgetEngine.calculateUsageSeconds(totalMs);
         }
 
@@ -495,30 +589,109 @@ public class AttentionFirewallService extends AccessibilityService {
         return negative ? "-" + value : value;
     }
 
-    private void refreshImeList() {
-        try {
-            InputMethodManager imm = (InputMethodManager) getSystemService(Context.INPUT_METHOD_SERVICE);
-            if (imm != null) {
-                List<InputMethodInfo> imis = imm.getInputMethodList();
-                for (InputMethodInfo imi : imis) {
-                    installedImePackages.add(imi.getPackageName());
+    /**
+     * Enforcement thread: re-reads one package, or the input methods when {@code packageName}
+     * is null, on the package-query thread, and applies the answer back here. Events keep
+     * being enforced against the previous sets meanwhile.
+     */
+    private void queryPackage(String packageName, boolean removed) {
+        PackageRegistry registry = packages;
+        packageQueries.execute(() -> {
+            if (packageName == null) {
+                Collection<String> installed = installedPackages.inputMethods();
+                enforcementHandler.post(() -> {
+                    if (registry.inputMethodsChanged(installed)) updatePackageClasses();
+                });
+            } else {
+                PackageRegistry.Change change = registry.query(packageName, removed);
+                enforcementHandler.post(() -> {
+                    if (registry.apply(change)) updatePackageClasses();
+                });
+            }
+        });
+    }
+
+    /** Enforcement thread: hands the registry's sets to the classification cache. */
+    private void updatePackageClasses() {
+        packageClasses.setInputMethods(packages.inputMethods());
+        packageClasses.setLaunchers(packages.launchers());
+        packageClasses.setBrowsers(packages.browserPackages());
+    }
+
+    // The package-manager side of the registry; every call blocks on the system server.
+    private final class InstalledPackages implements PackageRegistry.Source {
+        @Override public Collection<String> inputMethods() {
+            Set<String> installedImePackages = new HashSet<>();
+            try {
+                InputMethodManager imm = (InputMethodManager) getSystemService(Context.INPUT_METHOD_SERVICE);
+                if (imm != null) {
+                    List<InputMethodInfo> imis = imm.getInputMethodList();
+                    for (InputMethodInfo imi : imis) {
+                        installedImePackages.add(imi.getPackageName());
+                    }
                 }
+            } catch (Exception e) {
+                Log.e(TAG, "Failed to refresh IME list", e);
             }
-        } catch (Exception e) {
-            Log.e(TAG, "Failed to refresh IME list", e);
+            return installedImePackages;
         }
-    }
 
-    private void refreshLauncherList() {
-        launcherPackages.clear();
-        Intent intent = new Intent(Intent.ACTION_MAIN);
-        intent.addCategory(Intent.CATEGORY_HOME);
-        List<ResolveInfo> resolveInfos = getPackageManager().queryIntentActivities(intent, PackageManager.MATCH_DEFAULT_ONLY);
-        for (ResolveInfo info : resolveInfos) {
-            if (info.activityInfo != null) {
-                launcherPackages.add(info.activityInfo.packageName);
+        @Override public Collection<String> launchers() {
+            return activityPackages(homeIntent());
+        }
+
+        @Override public Collection<String> browsers() {
+            return activityPackages(browserIntent());
+        }
+
+        @Override public boolean isInstalled(String packageName) {
+            try {
+                getPackageManager().getApplicationInfo(packageName, 0);
+                return true;
+            } catch (PackageManager.NameNotFoundException e) {
+                return false;
             }
         }
+
+        @Override public boolean isInputMethod(String packageName) {
+            // The same services InputMethodManager lists, but for this package alone.
+            Intent intent = new Intent(InputMethod.SERVICE_INTERFACE).setPackage(packageName);
+            for (ResolveInfo info : getPackageManager().queryIntentServices(intent, 0)) {
+                if (info.serviceInfo != null && Manifest.permission.BIND_INPUT_METHOD
+                        .equals(info.serviceInfo.permission)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        @Override public boolean isLauncher(String packageName) {
+            return !activityPackages(homeIntent().setPackage(packageName)).isEmpty();
+        }
+
+        @Override public boolean isBrowser(String packageName) {
+            return !activityPackages(browserIntent().setPackage(packageName)).isEmpty();
+        }
+
+        private Intent homeIntent() {
+            return new Intent(Intent.ACTION_MAIN).addCategory(Intent.CATEGORY_HOME);
+        }
+
+        private Intent browserIntent() {
+            return new Intent(Intent.ACTION_MAIN).addCategory(Intent.CATEGORY_APP_BROWSER);
+        }
+
+        private Set<String> activityPackages(Intent intent) {
+            Set<String> packageNames = new HashSet<>();
+            List<ResolveInfo> resolveInfos = getPackageManager().queryIntentActivities(
+                    intent, PackageManager.MATCH_DEFAULT_ONLY);
+            for (ResolveInfo info : resolveInfos) {
+                if (info.activityInfo != null && info.activityInfo.packageName != null) {
+                    packageNames.add(info.activityInfo.packageName);
+                }
+            }
+            return packageNames;
+        }
     }
 
     // Current window class tracking for danger-zone detection
@@ -533,20 +706,132 @@ public class AttentionFirewallService extends AccessibilityService {
 
     @Override
     public void onAccessibilityEvent(AccessibilityEvent event) {
-        // Guard: managers are initialised in onServiceConnected; ignore any events
-        // that arrive before that callback completes.
-        if (appPreferencesManager == null || attentionBudgetEngine == null) return;
+        // Guard: the enforcement thread starts in onServiceConnected; ignore any events
+        // that arrive before it. Later ones queue behind the core warm-up stage.
+        if (enforcementHandler == null || destroyed) {
+            return;
+        }
+        // The event is recycled when this returns; hand over a copy.
+        int eventType = event.getEventType();
+        CharSequence name = event.getPackageName();
+        String packageName = name == null ? null : name.toString();
+        CharSequence className = event.getClassName();
+        // Guard screens re-read only the changed subtree, so keep what finds the source.
+        AccessibilityEvent sourceEvent =
+                eventType == AccessibilityEvent.TYPE_WINDOW_CONTENT_CHANGED
+                        && UninstallGuardPolicy.isGuardHostPackage(packageName)
+                        ? copyEvent(event) : null;
+        EventHandoff.Record record = new EventHandoff.Record(eventType, packageName,
+                className == null ? null : className.toString(), event.getWindowId(),
+                event.getContentChangeTypes(), sourceEvent, SystemClock.uptimeMillis());
+        if (eventHandoff.offer(record)) enforcementHandler.post(eventDrain);
+    }
+
+    private static AccessibilityEvent copyEvent(AccessibilityEvent event) {
+        return Build.VERSION.SDK_INT >= Build.VERSION_CODES.R
+                ? new AccessibilityEvent(event) : AccessibilityEvent.obtain(event);
+    }
+
+    /** Enforcement thread: handles the queued events in arrival order. */
+    private void drainEventHandoff() {
+        EventHandoff.Record record;
+        long now;
+        while (!destroyed
+                && (record = eventHandoff.poll(now = SystemClock.uptimeMillis())) != null) {
+            // The checks below open the same context, so they share one root fetch and one
+            // address-bar lookup per browser.
+            try (EventTreeContext tree = treeScope.open()) {
+                // The trace keeps the state enforcement decided on, but reads the tree only
+                // after handling: a window change drops cached bars before the first lookup.
+                EnforcementSnapshot traced = traceRecorder == null
+                        ? null : appPreferencesManager.getEnforcementSnapshot();
+                long sinceGrant = SystemClock.elapsedRealtime() - tempAllowGrantedAt;
+                handleAccessibilityEvent(record);
+                if (traced != null && traceRecorder != null) {
+                    recordTrace(tree, record, now, traced, sinceGrant);
+                }
+            } finally {
+                record.release();
+            }
+            if (warmUp.firstEnforcementNanos() < 0) {
+                // The handoff stamps uptime millis; carry the wait over to the warm-up clock.
+                long handledAt = SystemClock.elapsedRealtimeNanos();
+                long waitedMs = SystemClock.uptimeMillis() - record.enqueuedAt;
+                warmUp.firstEnforcement(handledAt - waitedMs * 1_000_000L, handledAt);
+                Log.i(TAG, "Warm-up: " + warmUp);
+            }
+        }
+    }
+
+    /**
+     * Captures what enforcement decided on, from the state read before the event was handled;
+     * see {@link AccessibilityTrace}.
+     */
+    private void recordTrace(EventTreeContext tree, EventHandoff.Record record, long now,
+            EnforcementSnapshot snapshot, long sinceGrant) {
+        String packageName = record.packageName;
+        int state = (snapshot.blockerActive ? AccessibilityTrace.STATE_BLOCKER_ACTIVE : 0)
+                | (snapshot.tempAllowAppLaunch ? AccessibilityTrace.STATE_TEMP_ALLOW : 0)
+                | (getPackageName().equals(packageName) ? AccessibilityTrace.STATE_OWN_PACKAGE : 0);
+        int flags = packageName == null ? 0 : packageFlags(snapshot, packageName);
+        String rootPackage = tree.rootPackageName();
+        AccessibilityNodeInfo root = rootPackage == null ? null : tree.root();
+        String address = null;
+        boolean focused = false;
+        BrowserSupport.Config browser =
+                packageName == null ? null : findBrowserConfig(packageName);
+        if (browser != null && packageName.equals(rootPackage)) {
+            AccessibilityNodeInfo bar = tree.addressBar(browser);
+            if (bar != null && bar.getText() != null) {
+                address = bar.getText().toString();
+                focused = bar.isFocused();
+            }
+        }
+        traceRecorder.record(new AccessibilityTrace.Event(record.eventType, packageName,
+                record.className, record.windowId, record.enqueuedAt, now - record.enqueuedAt,
+                flags, state, sinceGrant, rootPackage,
+                root == null ? 0 : root.getChildCount(), address, focused));
+    }
+
+    private void writeTrace() {
+        if (traceRecorder == null || traceRecorder.events().isEmpty()) return;
+        File file = new File(new File(getFilesDir(), "traces"),
+                "trace-" + System.currentTimeMillis() + ".vtr");
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            AccessibilityTrace.write(traceRecorder.events(), out);
+            Log.d(TAG, "Trace: " + traceRecorder.events().size() + " events ("
+                    + traceRecorder.dropped() + " dropped) written to " + file);
+        } catch (IOException e) {
+            Log.w(TAG, "Trace not written", e);
+        }
+        traceRecorder = null;
+    }
+
+    private void handleAccessibilityEvent(EventHandoff.Record event) {
+        subscription.recordEvent(event.eventType);
         long eventTime = SystemClock.elapsedRealtime();
         if (deactivationValidationThrottle.acquire(eventTime)) {
             DeactivationRequestValidator.validate(this, appPreferencesManager);
         }
-        if (event.getPackageName() == null) return;
-        String packageName = event.getPackageName().toString();
-        int eventType = event.getEventType();
+        if (event.packageName == null) return;
+        String packageName = event.packageName;
+        int eventType = event.eventType;
+        if (eventType == AccessibilityEvent.TYPE_WINDOW_STATE_CHANGED) {
+            // A new window or pane may have replaced the toolbar; find the bar again.
+            addressBarCache.invalidate(packageName);
+        }
+        if (event.sourceEvent != null
+                && (event.windowId == lastWindowId || event.windowId == -1)) {
+            guardChangesSinceScan++;
+        }
+        // One volatile read replaces the per-event preference lookups below.
+        EnforcementSnapshot snapshot = appPreferencesManager.getEnforcementSnapshot();
+        // Activation and deactivation are noticed here; the other transitions update it.
+        updateSubscription();
 
         if (packageName.equals(getPackageName())) {
             stopGuardWatchdog();
-            boolean activeNow = appPreferencesManager.getIsBlockerActive();
+            boolean activeNow = snapshot.blockerActive;
             if (lastNotifiedActive == null || activeNow != lastNotifiedActive
                     || eventTime - lastNotificationUpdateTime >= NOTIFICATION_THROTTLE_MS) {
                 lastNotificationUpdateTime = eventTime;
@@ -558,102 +843,144 @@ public class AttentionFirewallService extends AccessibilityService {
         boolean guardHost = UninstallGuardPolicy.isGuardHostPackage(packageName);
         if (guardHost
                 && eventType == AccessibilityEvent.TYPE_WINDOW_STATE_CHANGED
-                && event.getClassName() != null) {
-            lastWindowClassName = event.getClassName().toString();
+                && event.className != null) {
+            lastWindowClassName = event.className;
             lastWindowPackageName = packageName;
-            lastWindowId = event.getWindowId();
+            lastWindowId = event.windowId;
+            // Only a window-state change scans a guard window from its root again.
+            guardScanner.forgetWindow(guardScanTree);
         }
 
-        if (appPreferencesManager.getIsBlockerActive() && guardHost) {
+        if (snapshot.blockerActive && guardHost) {
             startGuardWatchdog(packageName);
             UninstallGuardPolicy.GuardTarget guardTarget = classifyGuardScreen(
-                    packageName, event.getWindowId());
+                    packageName, event.windowId, event);
             if (guardTarget == UninstallGuardPolicy.GuardTarget.NONE) {
                 clearGuardBackSuppression();
             }
-            if (UninstallGuardPolicy.shouldBlock(
-                    guardTarget, appPreferencesManager.isUninstallGuardEnabled())) {
+            if (UninstallGuardPolicy.shouldBlock(guardTarget, snapshot.uninstallGuardEnabled)) {
                 blockGuardedSystemScreen(guardTarget);
                 return;
             }
         }
 
-        if (!appPreferencesManager.getIsBlockerActive()) {
+        if (!snapshot.blockerActive) {
             stopGuardWatchdog();
             return;
         }
 
-        long now = eventTime;
-        boolean isNewForeground = lastForegroundPackage == null || !packageName.equals(lastForegroundPackage);
-
-        // Consume an intentional-open approval before normal foreground interception.
-        // Otherwise the returning restricted app reaches handleAppInterception() first and
-        // briefly opens a second decision gate before the approval can start its session.
-        if (appPreferencesManager.getTempAllowAppLaunch()) {
-            if (isApprovedPackage(packageName)) {
-                if (isNewForeground) {
-                    lastForegroundPackage = packageName;
-                    lastForegroundChangeTime = now;
-                }
-                appPreferencesManager.setTempAllowAppLaunch(false);
-                startStickySession(packageName);
-                return;
-            }
-            if (isTransientSystemOverlay(packageName) || isLauncherPackage(packageName)) return;
-            if (eventType == AccessibilityEvent.TYPE_WINDOW_STATE_CHANGED) {
-                // Do not cancel an approved launch during the stabilization interval.
-                // This prevents brief system overlays (e.g. permission prompts) from killing
-                // the approval before the target app has reached the foreground.
-                if (SystemClock.elapsedRealtime() - tempAllowGrantedAt > TEMP_ALLOW_STABILIZATION_MS) {
-                    appPreferencesManager.setTempAllowAppLaunch(false);
-                }
-            }
+        boolean windowStateChanged = eventType == AccessibilityEvent.TYPE_WINDOW_STATE_CHANGED;
+        int packageFlags = packageFlags(snapshot, packageName);
+        int actions = enforcement.onEvent(eventTime, packageName, windowStateChanged,
+                packageFlags, snapshot.tempAllowAppLaunch, tempAllowGrantedAt);
+        if ((actions & EnforcementStateMachine.ACTION_APPROVED_LAUNCH) != 0) {
+            actions |= enforcement.startSession(eventTime, packageName, packageFlags,
+                    snapshot.lastInterceptedUrl, snapshot.lastInterceptionKind);
         }
+        applyEnforcementActions(actions, packageName, null, null);
+        if ((actions & EnforcementStateMachine.ACTION_CONSUMED) != 0) return;
 
-        if (isNewForeground && (eventType == AccessibilityEvent.TYPE_WINDOW_STATE_CHANGED
-                || now - lastForegroundChangeTime > FOREGROUND_DEBOUNCE_MS)) {
-            lastForegroundPackage = packageName;
-            lastForegroundChangeTime = now;
-            onForegroundAppChanged(packageName);
-        }
-
-        if (eventType == AccessibilityEvent.TYPE_WINDOW_STATE_CHANGED) {
-            boolean isTransient = isTransientSystemOverlay(packageName);
-            boolean isLauncher = isLauncherPackage(packageName);
-            boolean isRestricted = appPreferencesManager.isRestrictedApp(packageName);
-            
-            if (activeStickyPackage != null) {
-                if (!packageName.equals(activeStickyPackage) && !isTransient) {
-                    endStickySession();
-                    if (!isRestricted && !isLauncher) isBudgetLockedOut = false;
-                }
-            } else if (!isTransient && !isLauncher && !isRestricted) {
-                isBudgetLockedOut = false;
-            }
-            
-            if (!isRestricted) updateStatsNotification();
+        if (windowStateChanged
+                && (packageFlags & EnforcementStateMachine.PACKAGE_RESTRICTED) == 0) {
+            updateStatsNotification();
         }
 
-        if (eventType == AccessibilityEvent.TYPE_WINDOW_CONTENT_CHANGED || eventType == AccessibilityEvent.TYPE_WINDOW_STATE_CHANGED) {
+        // Content changes of other kinds (state descriptions, drags, errors) leave the
+        // address bar as it was.
+        if (windowStateChanged || (eventType == AccessibilityEvent.TYPE_WINDOW_CONTENT_CHANGED
+                && BrowserUrlEnforcementPolicy.mayChangeAddress(event.contentChangeTypes))) {
             handleUrlInterception(packageName, eventType);
         }
 
-        if (activeStickyPackage != null) {
-            checkpointSessionUsage(false);
-            checkLiveBudgetExhaustion();
+        if (enforcement.sessionPackage() != null) {
+            applyEnforcementActions(enforcement.onSessionTick(SystemClock.elapsedRealtime()),
+                    null, null, null);
         }
 
         // Throttle notification updates: the 1-second ticker handles updates while
         // restricted time is actively running; outside of that, cap at once per second
         // to avoid SharedPreferences reads + NotificationManager.notify() on every scroll.
         long now2 = SystemClock.elapsedRealtime();
-        if (restrictedSegmentStartedAt == 0
+        if (!enforcement.isRestrictedTimeRunning()
                 && now2 - lastNotificationUpdateTime >= NOTIFICATION_THROTTLE_MS) {
             lastNotificationUpdateTime = now2;
             updateStatsNotification();
         }
     }
 
+    /** The facts about {@code packageName} the state machine decides on. */
+    private int packageFlags(EnforcementSnapshot snapshot, String packageName) {
+        // Transient, launcher, browser and critical come from the cache; the rest from rules.
+        int flags = packageClasses.flags(packageName);
+        if (snapshot.isRestrictedApp(packageName)) {
+            flags |= EnforcementStateMachine.PACKAGE_RESTRICTED;
+            if (snapshot.isStrictRestrictedApp(packageName)) {
+                flags |= EnforcementStateMachine.PACKAGE_STRICT;
+            }
+        }
+        if (snapshot.tempAllowAppLaunch && snapshot.isApprovedPackage(packageName)) {
+            flags |= EnforcementStateMachine.PACKAGE_APPROVED;
+        }
+        return flags;
+    }
+
+    /**
+     * Performs the side effects the state machine asked for, in bit order. {@code pattern}
+     * is the matched rule of a browser interception and null for an app interception;
+     * {@code bar} is the address bar a browser eviction may reuse.
+     */
+    private void applyEnforcementActions(
+            int actions, String packageName, String pattern, AccessibilityNodeInfo bar) {
+        if (actions == EnforcementStateMachine.ACTION_NONE) return;
+        if ((actions & EnforcementStateMachine.ACTION_CLEAR_TEMP_ALLOW) != 0) {
+            appPreferencesManager.setTempAllowAppLaunch(false);
+        }
+        if ((actions & EnforcementStateMachine.ACTION_FOREGROUND_CHANGED) != 0) {
+            onForegroundAppChanged(packageName);
+        }
+        if ((actions & EnforcementStateMachine.ACTION_RECORD_INTERCEPTION) != 0) {
+            // Persisted before any gate opens: the gate's cancel callback may arrive after
+            // the browser stopped producing events, and needs to know what was blocked.
+            appPreferencesManager.setLastInterceptedApp(packageName);
+            appPreferencesManager.setLastInterceptedUrl(pattern == null ? "" : pattern);
+            appPreferencesManager.setLastInterceptionKind(pattern == null ? "APP" : "URL");
+        }
+        if ((actions & EnforcementStateMachine.ACTION_RECORD_USAGE) != 0) {
+            attentionBudgetEngine.recordUsageDelta(
+                    enforcement.pendingUsageMs(), enforcement.pendingUsageSeconds());
+            enforcement.usageRecorded();
+        }
+        if ((actions & EnforcementStateMachine.ACTION_RECORD_OUTCOME) != 0) {
+            appPreferencesManager.recordSessionOutcome(enforcement.endedAtLimit());
+        }
+        if ((actions & EnforcementStateMachine.ACTION_SESSION_ENDED) != 0) {
+            grayscaleController.setGrayscaleEnabled(false);
+            updateSubscription();
+            timers.cancel(notificationTicker);
+            if (!destroyed) updateStatsNotification();
+        }
+        if ((actions & EnforcementStateMachine.ACTION_SESSION_STARTED) != 0) {
+            grayscaleController.setGrayscaleEnabled(true);
+            updateSubscription();
+            attentionBudgetEngine.incrementSessionCount();
+        }
+        if ((actions & EnforcementStateMachine.ACTION_START_TICKER) != 0) {
+            schedule(notificationTicker, 0);
+        }
+        if ((actions & EnforcementStateMachine.ACTION_STOP_TICKER) != 0) {
+            timers.cancel(notificationTicker);
+        }
+        if ((actions & EnforcementStateMachine.ACTION_OPEN_GATE) != 0) {
+            openDecisionGate((actions & EnforcementStateMachine.ACTION_STRICT) != 0);
+        }
+        if ((actions & EnforcementStateMachine.ACTION_EVICT) != 0) {
+            startForcedEviction(bar);
+        }
+        if ((actions & EnforcementStateMachine.ACTION_SHOW_SESSION_COMPLETE) != 0) {
+            showSessionCompleteRedirectMessage();
+        }
+    }
+
     private void onForegroundAppChanged(String packageName) {
         BrowserSupport.Config browserConfig = findBrowserConfig(packageName);
 
@@ -675,42 +1002,17 @@ public class AttentionFirewallService extends AccessibilityService {
                 && packageName.equals(pendingBrowserAddressClear.packageName)) {
             final BrowserSupport.Config config = pendingBrowserAddressClear;
             pendingBrowserAddressClear = null;
-            lastDecisionGateTime = SystemClock.elapsedRealtime();
+            enforcement.armCooldown(SystemClock.elapsedRealtime());
             // Small delay so the window is fully rendered before touching the URL bar.
-            urlCheckHandler.postDelayed(() -> {
+            schedule(ADDRESS_CLEAR + config.packageName, 1000, () -> {
                 String observed = lastObservedUrls.get(config.packageName);
                 if (observed != null
                         && !BrowserSupport.isConfiguredSafeAddress(config, observed)) {
-                    boolean stillRestricted = false;
-                    stillRestricted = appPreferencesManager.findRestrictedUrlPattern(observed) != null;
+                    boolean stillRestricted = appPreferencesManager.getEnforcementSnapshot()
+                            .urlRules.find(observed) != null;
                     if (stillRestricted) beginBrowserRedirect(config);
                 }
-            }, 1000);
-        }
-
-        handleAppInterception(packageName);
-    }
-
-    private void handleAppInterception(String packageName) {
-        if (appPreferencesManager.isRestrictedApp(packageName)
-                && !SafetyPolicy.isCriticalPackage(packageName, getPackageName())) {
-            appPreferencesManager.setLastInterceptedApp(packageName);
-            appPreferencesManager.setLastInterceptedUrl("");
-            appPreferencesManager.setLastInterceptionKind("APP");
-            if (appPreferencesManager.isStrictRestrictedApp(packageName)) {
-                triggerDecisionGate(true);
-                return;
-            }
-            if (activeStickyPackage != null && packageName.equals(activeStickyPackage)) {
-                updateRestrictedTimer(true);
-                return;
-            }
-            attentionBudgetEngine.resetBudgetIfNeeded();
-            if (attentionBudgetEngine.getRemainingBudget() <= 0) {
-                beginForcedEviction(packageName, null);
-                return;
-            }
-            triggerDecisionGate();
+            });
         }
     }
 
@@ -722,25 +1024,17 @@ public class AttentionFirewallService extends AccessibilityService {
     }
 
     private void checkBrowserUrl(BrowserSupport.Config config, int eventType) {
-        AccessibilityNodeInfo root = getRootInActiveWindow();
-        if (root == null) return;
-
-        if (root.getPackageName() == null ||
-            !root.getPackageName().toString().equals(config.packageName)) {
-            root.recycle();
-            return;
+        try (EventTreeContext tree = treeScope.open()) {
+            checkBrowserUrl(tree, config, eventType);
         }
+    }
 
-        AccessibilityNodeInfo bar = null;
-        for (String id : config.addressBarIds) {
-            List<AccessibilityNodeInfo> nodes = root.findAccessibilityNodeInfosByViewId(id);
-            if (nodes != null && !nodes.isEmpty()) {
-                bar = nodes.get(0);
-                for (int i = 1; i < nodes.size(); i++) nodes.get(i).recycle();
-                break;
-            }
-        }
-        if (bar == null) bar = findUrlBarByContentDescription(root);
+    private void checkBrowserUrl(
+            EventTreeContext tree, BrowserSupport.Config config, int eventType) {
+        if (!config.packageName.equals(tree.rootPackageName())) return;
+
+        // Owned by the context, like the root: nothing here recycles it.
+        AccessibilityNodeInfo bar = tree.addressBar(config);
 
         long now = SystemClock.elapsedRealtime();
 
@@ -748,21 +1042,19 @@ public class AttentionFirewallService extends AccessibilityService {
         // 1. URL missing → uncertainty
         // -----------------------------
         if (bar == null || bar.getText() == null) {
-            if (bar != null) bar.recycle();
-            root.recycle();
             return;
         }
 
-        String currentUrl = bar.getText().toString().toLowerCase(Locale.ROOT).trim();
+        // Parsed once; the commit check, rule lookup and safe-page checks share this value.
+        ObservedUrl observed = ObservedUrl.parse(bar.getText().toString());
+        String currentUrl = observed.text;
 
         // The local block page is always safe, even if the user has added a broad
         // loopback/localhost pattern to the restricted list. Browsers may hide the scheme.
         if (BrowserSupport.isConfiguredSafeAddress(config, currentUrl)
                 && !bar.isFocused()) {
             lastObservedUrls.put(config.packageName, currentUrl);
-            confirmSafeState(config.packageName);
-            bar.recycle();
-            root.recycle();
+            applyEnforcementActions(enforcement.confirmSafe(now), config.packageName, null, null);
             return;
         }
 
@@ -777,18 +1069,14 @@ public class AttentionFirewallService extends AccessibilityService {
             // committed — don't skip; fall through to the restricted check below.
             if (eventType != AccessibilityEvent.TYPE_WINDOW_STATE_CHANGED) {
                 // Schedule a deferred check so it fires even if no further events arrive
-                scheduleDeferredUrlCheck(config, currentUrl);
-                bar.recycle();
-                root.recycle();
+                scheduleDeferredUrlCheck(config, observed);
                 return;
             }
         }
 
         long lastChange = lastUrlChangeTimes.getOrDefault(config.packageName, 0L);
         if (eventType != AccessibilityEvent.TYPE_WINDOW_STATE_CHANGED
-                && now - lastChange < URL_STABLE_MS) {
-            bar.recycle();
-            root.recycle();
+                && now - lastChange < BrowserUrlEnforcementPolicy.URL_STABLE_MS) {
             return;
         }
 
@@ -800,119 +1088,79 @@ public class AttentionFirewallService extends AccessibilityService {
         // 3. Restricted match
         // -----------------------------
         BrowserUrlEnforcementPolicy.RuleMatch matched =
-                BrowserUrlEnforcementPolicy.findCommittedRestrictedMatch(
-                currentUrl, currentUrl, bar.isFocused(),
-                appPreferencesManager.getStrictRestrictedUrlsSnapshot(),
-                appPreferencesManager.getRestrictedUrlsSnapshot());
+                findCommittedRestrictedMatch(observed, observed, bar.isFocused());
 
         if (matched != null) {
             enforceCommittedRestrictedUrl(
                     config, bar, matched.pattern, matched.strict, now);
-            bar.recycle();
-            root.recycle();
             return;
         }
 
         // -----------------------------
         // 4. Explicit SAFE detection
         // -----------------------------
-        if (committed && activeStickyPackage != null && config.packageName.equals(activeStickyPackage)) {
-            if (isKnownSafeNewTab(currentUrl)) {
-                confirmSafeState(config.packageName);
-            } else {
-                if (lastSafeSeenAt == 0) lastSafeSeenAt = now;
-
-                if (restrictedUseConfirmed && (now - lastSafeSeenAt > SAFE_CONFIRM_MS)) {
-                    confirmSafeState(config.packageName);
-                }
-            }
-        } else {
-            lastSafeSeenAt = 0;
-        }
-
-        bar.recycle();
-        root.recycle();
+        applyEnforcementActions(enforcement.onUnrestrictedUrl(now, config.packageName,
+                committed, BrowserUrlEnforcementPolicy.isKnownSafeNewTab(currentUrl)),
+                config.packageName, null, null);
     }
 
-    private void scheduleDeferredUrlCheck(BrowserSupport.Config config, String url) {
-        // Cancel any previously scheduled check for this browser (URL may have changed again)
-        Runnable existing = pendingUrlChecks.get(config.packageName);
-        if (existing != null) urlCheckHandler.removeCallbacks(existing);
+    private BrowserUrlEnforcementPolicy.RuleMatch findCommittedRestrictedMatch(
+            ObservedUrl observed, ObservedUrl visible, boolean addressBarFocused) {
+        // The snapshot read its generation before its index, so a racing rule change can
+        // only discard the cached verdict.
+        EnforcementSnapshot snapshot = appPreferencesManager.getEnforcementSnapshot();
+        return BrowserUrlEnforcementPolicy.findCommittedRestrictedMatch(
+                observed, visible, addressBarFocused, snapshot.urlRuleGeneration,
+                snapshot.urlRules, urlVerdicts);
+    }
 
+    private void scheduleDeferredUrlCheck(BrowserSupport.Config config, ObservedUrl url) {
+        // Replaces any previously scheduled check for this browser (URL may have changed again)
         Runnable check = () -> {
-            pendingUrlChecks.remove(config.packageName);
-            AccessibilityNodeInfo root = getRootInActiveWindow();
-            if (root == null || root.getPackageName() == null
-                    || !config.packageName.equals(root.getPackageName().toString())) {
-                if (root != null) root.recycle();
-                return;
-            }
-
-            AccessibilityNodeInfo bar = findAddressBar(root, config);
-            if (bar == null || bar.getText() == null) {
-                if (bar != null) bar.recycle();
-                root.recycle();
-                return;
-            }
-
-            String visibleUrl = bar.getText().toString();
-            BrowserUrlEnforcementPolicy.RuleMatch match =
-                    BrowserUrlEnforcementPolicy.findCommittedRestrictedMatch(
-                    url, visibleUrl, bar.isFocused(),
-                    appPreferencesManager.getStrictRestrictedUrlsSnapshot(),
-                    appPreferencesManager.getRestrictedUrlsSnapshot());
-            if (match != null) {
-                lastObservedUrls.put(config.packageName,
-                        visibleUrl.toLowerCase(Locale.ROOT).trim());
-                enforceCommittedRestrictedUrl(
-                        config, bar, match.pattern, match.strict,
-                        SystemClock.elapsedRealtime());
+            try (EventTreeContext tree = treeScope.open()) {
+                if (!config.packageName.equals(tree.rootPackageName())) return;
+
+                AccessibilityNodeInfo bar = tree.addressBar(config);
+                if (bar == null || bar.getText() == null) return;
+
+                ObservedUrl visibleUrl = ObservedUrl.parse(bar.getText().toString());
+                BrowserUrlEnforcementPolicy.RuleMatch match =
+                        findCommittedRestrictedMatch(url, visibleUrl, bar.isFocused());
+                if (match != null) {
+                    lastObservedUrls.put(config.packageName, visibleUrl.text);
+                    enforceCommittedRestrictedUrl(
+                            config, bar, match.pattern, match.strict,
+                            SystemClock.elapsedRealtime());
+                }
             }
-            bar.recycle();
-            root.recycle();
         };
-        pendingUrlChecks.put(config.packageName, check);
-        urlCheckHandler.postDelayed(check, URL_STABLE_MS);
+        schedule(URL_CHECK + config.packageName,
+                BrowserUrlEnforcementPolicy.URL_STABLE_MS, check);
     }
 
     private void scheduleUrlRecheckAfterCooldown(
             BrowserSupport.Config config,
             long delayMs) {
 
-        Runnable existing = pendingUrlChecks.get(config.packageName);
-        if (existing != null) {
-            urlCheckHandler.removeCallbacks(existing);
-        }
-
         Runnable check = () -> {
-            pendingUrlChecks.remove(config.packageName);
-
             if (destroyed || appPreferencesManager == null) {
                 return;
             }
 
-            AccessibilityNodeInfo root = getRootInActiveWindow();
-            if (root == null) {
-                return;
-            }
-
-            try {
-                if (root.getPackageName() == null ||
-                        !config.packageName.equals(root.getPackageName().toString())) {
+            try (EventTreeContext tree = treeScope.open()) {
+                if (!config.packageName.equals(tree.rootPackageName())) {
                     return;
                 }
-            } finally {
-                root.recycle();
-            }
 
-            // Re-read the CURRENT URL and run the normal enforcement path.
-            checkBrowserUrl(
-                    config,
-                    AccessibilityEvent.TYPE_WINDOW_STATE_CHANGED);
+                // Re-read the CURRENT URL and run the normal enforcement path.
+                checkBrowserUrl(
+                        tree,
+                        config,
+                        AccessibilityEvent.TYPE_WINDOW_STATE_CHANGED);
+            }
         };
 
-        pendingUrlChecks.put(config.packageName, check);
-        urlCheckHandler.postDelayed(check, delayMs);
+        schedule(URL_CHECK + config.packageName, delayMs, check);
     }
 
     private void enforceCommittedRestrictedUrl(
@@ -921,62 +1169,12 @@ public class AttentionFirewallService extends AccessibilityService {
             String matchedPattern,
             boolean strict,
             long now) {
-        lastRestrictedSeenAt = now;
-        lastSafeSeenAt = 0;
-
-        boolean approvedWholeBrowser = InterceptionPolicy.isApprovedWholeBrowserSession(
-                appPreferencesManager.getLastInterceptionKind(),
-                config.packageName.equals(activeStickyPackage), true);
-        if (approvedWholeBrowser && !strict) return;
-
-        // Prevent a second action while a gate is closing or an in-place redirect is
-        // changing the omnibox.
-        long elapsed = SystemClock.elapsedRealtime() - lastDecisionGateTime;
-
-        if (elapsed < DECISION_COOLDOWN_MS) {
-            long remaining = DECISION_COOLDOWN_MS - elapsed;
-
-            scheduleUrlRecheckAfterCooldown(config, remaining + 100);
-            return;
-        }
-
-        if (strict) {
-            rememberBrowserInterception(config, matchedPattern);
-            triggerDecisionGate(true);
-            return;
-        }
-
-        attentionBudgetEngine.resetBudgetIfNeeded();
-        if (attentionBudgetEngine.getRemainingBudget() <= 0) {
-            rememberBrowserInterception(config, matchedPattern);
-            lastDecisionGateTime = SystemClock.elapsedRealtime();
-            beginForcedEviction(config.packageName, bar);
-            showSessionCompleteRedirectMessage();
-            return;
+        int actions = enforcement.onRestrictedUrl(now, config.packageName, matchedPattern,
+                strict, appPreferencesManager.getEnforcementSnapshot().lastInterceptionKind);
+        if ((actions & EnforcementStateMachine.ACTION_RECHECK_AFTER_COOLDOWN) != 0) {
+            scheduleUrlRecheckAfterCooldown(config, enforcement.cooldownRemainingMs(now) + 100);
         }
-
-        if (activeStickyPackage != null && config.packageName.equals(activeStickyPackage)) {
-            updateRestrictedTimer(true);
-            if (!sessionApprovedPatterns.contains(matchedPattern)) {
-                rememberBrowserInterception(config, matchedPattern);
-                triggerDecisionGate();
-            }
-        } else if (activeStickyPackage == null) {
-            rememberBrowserInterception(config, matchedPattern);
-            triggerDecisionGate();
-        }
-    }
-
-    /**
-     * Persists the browser context before opening any gate. DecisionGateActivity lives in
-     * a separate task, so the accessibility service may receive its close callback only
-     * after the browser has stopped producing events. Without this handoff the cancel path
-     * cannot distinguish a blocked URL from a blocked app and incorrectly goes Home.
-     */
-    private void rememberBrowserInterception(BrowserSupport.Config config, String pattern) {
-        appPreferencesManager.setLastInterceptedApp(config.packageName);
-        appPreferencesManager.setLastInterceptedUrl(pattern);
-        appPreferencesManager.setLastInterceptionKind("URL");
+        applyEnforcementActions(actions, config.packageName, matchedPattern, bar);
     }
 
     /**
@@ -998,25 +1196,22 @@ public class AttentionFirewallService extends AccessibilityService {
     }
 
     private void redirectCurrentBrowserTab(BrowserSupport.Config config) {
-        AccessibilityNodeInfo root = getRootInActiveWindow();
-        if (root == null || root.getPackageName() == null
-                || !config.packageName.equals(root.getPackageName().toString())) {
-            if (root != null) root.recycle();
-            pendingBrowserAddressClear = config;
-            return;
-        }
+        boolean redirected;
+        try (EventTreeContext tree = treeScope.open()) {
+            if (!config.packageName.equals(tree.rootPackageName())) {
+                pendingBrowserAddressClear = config;
+                return;
+            }
 
-        AccessibilityNodeInfo bar = findAddressBar(root, config);
-        if (bar == null) {
-            root.recycle();
-            pendingBrowserAddressClear = config;
-            Log.w(TAG, "Could not find the active browser address bar for in-place redirect");
-            return;
-        }
+            AccessibilityNodeInfo bar = tree.addressBar(config);
+            if (bar == null) {
+                pendingBrowserAddressClear = config;
+                Log.w(TAG, "Could not find the active browser address bar for in-place redirect");
+                return;
+            }
 
-        boolean redirected = redirectAddressBarInPlace(config, bar);
-        bar.recycle();
-        root.recycle();
+            redirected = redirectAddressBarInPlace(config, bar);
+        }
         if (redirected) {
             browserRedirectAttempts.remove(config.packageName);
             if (pendingBrowserAddressClear == config) pendingBrowserAddressClear = null;
@@ -1034,37 +1229,8 @@ public class AttentionFirewallService extends AccessibilityService {
             return;
         }
         browserRedirectAttempts.put(config.packageName, attempts + 1);
-        urlCheckHandler.postDelayed(() -> redirectCurrentBrowserTab(config), 250);
-    }
-
-    private AccessibilityNodeInfo findAddressBar(
-            AccessibilityNodeInfo root, BrowserSupport.Config config) {
-        AccessibilityNodeInfo fallback = null;
-        for (String id : config.addressBarIds) {
-            List<AccessibilityNodeInfo> nodes = root.findAccessibilityNodeInfosByViewId(id);
-            if (nodes == null) continue;
-            AccessibilityNodeInfo editable = null;
-            for (AccessibilityNodeInfo node : nodes) {
-                if (node.isEditable()) {
-                    editable = node;
-                    break;
-                }
-            }
-            if (editable != null) {
-                if (fallback != null) fallback.recycle();
-                // Recycle every returned node except the editable result.
-                for (AccessibilityNodeInfo other : nodes) {
-                    if (other != editable) other.recycle();
-                }
-                return editable;
-            }
-            for (AccessibilityNodeInfo node : nodes) {
-                if (fallback == null) fallback = node;
-                else node.recycle();
-            }
-        }
-        if (fallback != null) return fallback;
-        return findUrlBarByContentDescription(root);
+        schedule(BROWSER_REDIRECT + config.packageName, 250,
+                () -> redirectCurrentBrowserTab(config));
     }
 
     private boolean redirectAddressBarInPlace(
@@ -1100,30 +1266,28 @@ public class AttentionFirewallService extends AccessibilityService {
             // Android 8-10 lack the IME-enter action, and some newer Chromium builds
             // expose it but reject it. Retry through the browser's exact safe suggestion.
             Log.w(TAG, "Safe address inserted; retrying through the exact omnibox suggestion");
-            urlCheckHandler.postDelayed(() -> retrySafeAddressSubmission(config, safeUrl), 200);
+            schedule(SAFE_ADDRESS_SUBMIT + config.packageName, 200,
+                    () -> retrySafeAddressSubmission(config, safeUrl));
         }
         return true;
     }
 
     private void retrySafeAddressSubmission(BrowserSupport.Config config, String safeUrl) {
-        AccessibilityNodeInfo root = getRootInActiveWindow();
-        if (root == null || root.getPackageName() == null
-                || !config.packageName.equals(root.getPackageName().toString())) {
-            if (root != null) root.recycle();
-            pendingBrowserAddressClear = config;
-            return;
-        }
-        AccessibilityNodeInfo bar = findAddressBar(root, config);
         boolean submitted = false;
-        if (bar != null && bar.getText() != null
-                && safeUrl.contentEquals(bar.getText())
-                && Build.VERSION.SDK_INT >= Build.VERSION_CODES.R) {
-            submitted = bar.performAction(
-                    AccessibilityNodeInfo.AccessibilityAction.ACTION_IME_ENTER.getId());
+        try (EventTreeContext tree = treeScope.open()) {
+            if (!config.packageName.equals(tree.rootPackageName())) {
+                pendingBrowserAddressClear = config;
+                return;
+            }
+            AccessibilityNodeInfo bar = tree.addressBar(config);
+            if (bar != null && bar.getText() != null
+                    && safeUrl.contentEquals(bar.getText())
+                    && Build.VERSION.SDK_INT >= Build.VERSION_CODES.R) {
+                submitted = bar.performAction(
+                        AccessibilityNodeInfo.AccessibilityAction.ACTION_IME_ENTER.getId());
+            }
+            if (!submitted) submitted = clickExactAddressSuggestion(tree, safeUrl);
         }
-        if (bar != null) bar.recycle();
-        if (!submitted) submitted = clickExactAddressSuggestion(root, safeUrl);
-        root.recycle();
 
         if (submitted) {
             browserRedirectAttempts.remove(config.packageName);
@@ -1142,8 +1306,8 @@ public class AttentionFirewallService extends AccessibilityService {
      * Their omnibox does expose the exact safe address as a suggestion, so click its
      * nearest clickable ancestor. Exact equality prevents selecting search/history noise.
      */
-    private boolean clickExactAddressSuggestion(AccessibilityNodeInfo root, String safeUrl) {
-        List<AccessibilityNodeInfo> matches = root.findAccessibilityNodeInfosByText(safeUrl);
+    private boolean clickExactAddressSuggestion(EventTreeContext tree, String safeUrl) {
+        List<AccessibilityNodeInfo> matches = tree.findByText(safeUrl);
         if (matches == null) return false;
         boolean clicked = false;
         for (AccessibilityNodeInfo match : matches) {
@@ -1159,7 +1323,7 @@ public class AttentionFirewallService extends AccessibilityService {
                         candidate = null;
                         break;
                     }
-                    AccessibilityNodeInfo parent = candidate.getParent();
+                    AccessibilityNodeInfo parent = tree.parent(candidate);
                     candidate.recycle();
                     candidate = parent;
                 }
@@ -1171,83 +1335,19 @@ public class AttentionFirewallService extends AccessibilityService {
     }
 
     private void showSessionCompleteRedirectMessage() {
-        Toast.makeText(this, R.string.session_complete_redirect_message, Toast.LENGTH_SHORT).show();
-    }
-
-    private boolean isKnownSafeNewTab(String url) {
-        if (url == null) return true;
-        String u = url.toLowerCase(Locale.ROOT);
-        return u.equals("about:blank") ||
-               u.contains("newtab") ||
-               u.contains("chrome://newtab") ||
-               u.contains("brave://newtab") ||
-               u.contains("about:home");
-    }
-
-    private void confirmSafeState(String packageName) {
-        if (!restrictedUseConfirmed) return;
-        restrictedUseConfirmed = false;
-        lastRestrictedSeenAt = 0;
-        lastSafeSeenAt = 0;
-        updateRestrictedTimer(false);
-    }
-
-    private void updateRestrictedTimer(boolean isRestricted) {
-        if (activeStickyPackage == null) isRestricted = false;
-        long now = SystemClock.elapsedRealtime();
-
-        if (isRestricted) {
-            if (!restrictedUseConfirmed) {
-                restrictedUseConfirmed = true;
-            }
-            if (restrictedSegmentStartedAt == 0) {
-                restrictedSegmentStartedAt = now;
-                notificationHandler.post(notificationTicker);
-            }
-        } else {
-            if (restrictedSegmentStartedAt != 0) {
-                accumulatedRestrictedTimeMs += (now - restrictedSegmentStartedAt);
-                restrictedSegmentStartedAt = 0;
-                notificationHandler.removeCallbacks(notificationTicker);
-            }
-            restrictedUseConfirmed = false;
-        }
+        mainHandler.post(() -> Toast.makeText(
+                this, R.string.session_complete_redirect_message, Toast.LENGTH_SHORT).show());
     }
 
-    private void checkLiveBudgetExhaustion() {
-        if (activeStickyPackage == null || isBudgetLockedOut) return;
-        if (sessionLimitSeconds <= 0) return;
-
-        long totalRestrictedTimeMs = getCurrentRestrictedTimeMs();
-        long usedSeconds = attentionBudgetEngine.calculateUsageSeconds(totalRestrictedTimeMs);
-
-        if (usedSeconds >= sessionLimitSeconds) {
-            isBudgetLockedOut = true;
-            sessionLimitReached = true;
-            String exhaustedPackage = activeStickyPackage;
-
-            // Arm the interception guard before ending the session. endStickySession()
-            // clears activeStickyPackage, and the accessibility events produced while
-            // focusing/editing the browser address bar would otherwise see an unapproved
-            // restricted URL and open another decision gate before the redirect completes.
-            if (isBrowserPackage(exhaustedPackage)) {
-                lastDecisionGateTime = SystemClock.elapsedRealtime();
-            }
-            endStickySession();
-            if (isBrowserPackage(exhaustedPackage)) {
-                beginForcedEviction(exhaustedPackage, null);
-                showSessionCompleteRedirectMessage();
-            } else {
-                beginForcedEviction(exhaustedPackage, null);
-            }
-        }
-    }
-
-    private void beginForcedEviction(
-            String packageName, AccessibilityNodeInfo currentBrowserBar) {
-        forcedEvictionHandler.removeCallbacks(forcedEvictionCheck);
-        forcedEvictionPackage = packageName;
-        forcedEvictionStartedAt = SystemClock.elapsedRealtime();
+    /**
+     * Carries out the eviction the state machine began: browsers are redirected to the
+     * local block page in place, other apps are sent Home, and a verifier keeps checking
+     * until the target has left the screen.
+     */
+    private void startForcedEviction(AccessibilityNodeInfo currentBrowserBar) {
+        String packageName = enforcement.evictionPackage();
+        timers.cancel(forcedEvictionCheck);
+        updateSubscription();
 
         BrowserSupport.Config browser = findBrowserConfig(packageName);
         if (browser != null) {
@@ -1261,178 +1361,151 @@ public class AttentionFirewallService extends AccessibilityService {
         } else {
             performGlobalAction(GLOBAL_ACTION_HOME);
         }
-        forcedEvictionHandler.postDelayed(
-                forcedEvictionCheck, FORCED_EVICTION_RECHECK_MS);
+        schedule(forcedEvictionCheck, FORCED_EVICTION_RECHECK_MS);
     }
 
-    private void clearForcedEviction() {
-        forcedEvictionHandler.removeCallbacks(forcedEvictionCheck);
-        forcedEvictionPackage = null;
-        forcedEvictionStartedAt = 0;
-    }
-
-    private void startStickySession(String packageName) {
-        isBudgetLockedOut = false;
-        sessionLimitSeconds = attentionBudgetEngine.quoteSessionSeconds(
-                appPreferencesManager.getPendingQuotedSessionSeconds());
-        if (sessionLimitSeconds <= 0) {
-            isBudgetLockedOut = true;
-            beginForcedEviction(packageName, null);
-            return;
+    /** One verification tick; reschedules itself until the target has left the screen. */
+    private void verifyForcedEviction(EventTreeContext tree) {
+        String target = enforcement.evictionPackage();
+        String foregroundPackage = tree.rootPackageName();
+        BrowserSupport.Config browser = findBrowserConfig(target);
+        boolean onBlockPage = false;
+        if (browser != null && target.equals(foregroundPackage)) {
+            AccessibilityNodeInfo bar = tree.addressBar(browser);
+            onBlockPage = bar != null
+                    && bar.getText() != null
+                    && !bar.isFocused()
+                    && BrowserSupport.isConfiguredSafeAddress(
+                            browser, bar.getText().toString());
         }
-        sessionLimitReached = false;
-        grayscaleController.setGrayscaleEnabled(true);
+        int foregroundFlags = isTransientSystemOverlay(foregroundPackage)
+                ? EnforcementStateMachine.PACKAGE_TRANSIENT : 0;
 
-        activeStickyPackage = packageName;
-        sessionApprovedPatterns.clear();
-        String interceptedUrl = appPreferencesManager.getLastInterceptedUrl();
-        if (!interceptedUrl.isEmpty()) sessionApprovedPatterns.add(interceptedUrl);
-
-        accumulatedRestrictedTimeMs = 0;
-        persistedRestrictedTimeMs = 0;
-        persistedUsageSeconds = 0;
-        restrictedUseConfirmed = false;
-        restrictedSegmentStartedAt = 0;
-        lastCheckpointAt = 0;
-
-        attentionBudgetEngine.incrementSessionCount();
-
-        // Interception kind is explicit: a blocked browser app is metered as an app, while
-        // a URL-only browser session pauses metering as soon as the user leaves that URL.
-        if (InterceptionPolicy.shouldStartSessionTimer(
-                appPreferencesManager.getLastInterceptionKind(), isBrowserPackage(packageName),
-                !interceptedUrl.isEmpty())) {
-            updateRestrictedTimer(true);
+        int actions = enforcement.onEvictionCheck(SystemClock.elapsedRealtime(),
+                foregroundPackage, foregroundFlags, browser != null, onBlockPage,
+                browser != null && browserRedirectAttempts.containsKey(browser.packageName));
+        if ((actions & EnforcementStateMachine.ACTION_EVICTION_DONE) != 0) {
+            evictionCleared();
+        }
+        if ((actions & EnforcementStateMachine.ACTION_GO_HOME) != 0) {
+            performGlobalAction(GLOBAL_ACTION_HOME);
+        }
+        if ((actions & EnforcementStateMachine.ACTION_RESTART_REDIRECT) != 0) {
+            beginBrowserRedirect(browser);
         }
+        if ((actions & EnforcementStateMachine.ACTION_RECHECK_EVICTION) != 0) {
+            schedule(forcedEvictionCheck, FORCED_EVICTION_RECHECK_MS);
+        }
+    }
+
+    private void clearForcedEviction() {
+        if (enforcement.clearEviction()) evictionCleared();
+        else timers.cancel(forcedEvictionCheck);
     }
 
-    private boolean isBrowserPackage(String packageName) {
-        return findBrowserConfig(packageName) != null;
+    private void evictionCleared() {
+        timers.cancel(forcedEvictionCheck);
+        updateSubscription();
     }
 
     private BrowserSupport.Config findBrowserConfig(String packageName) {
-        if (packageName == null) return null;
-        return supportedBrowserByPackage.get(packageName);
+        return packages == null ? null : packages.browser(packageName);
     }
 
+    /** Ends the sticky session, if any, recording its remaining usage. */
     private void endStickySession() {
-        updateRestrictedTimer(false);
-        checkpointSessionUsage(true);
-        if (persistedRestrictedTimeMs > 0) {
-            appPreferencesManager.recordSessionOutcome(sessionLimitReached);
-        }
-        grayscaleController.setGrayscaleEnabled(false);
-        activeStickyPackage = null;
-        sessionApprovedPatterns.clear();
-        accumulatedRestrictedTimeMs = 0;
-        persistedRestrictedTimeMs = 0;
-        persistedUsageSeconds = 0;
-        sessionLimitSeconds = 0;
-        sessionLimitReached = false;
-        restrictedSegmentStartedAt = 0;
-        restrictedUseConfirmed = false;
-        notificationHandler.removeCallbacks(notificationTicker);
-        if (!destroyed) updateStatsNotification();
-    }
-
-    private long getCurrentRestrictedTimeMs() {
-        long currentSegment = restrictedSegmentStartedAt == 0
-                ? 0 : Math.max(0, SystemClock.elapsedRealtime() - restrictedSegmentStartedAt);
-        return Math.max(0, accumulatedRestrictedTimeMs + currentSegment);
+        applyEnforcementActions(enforcement.endSession(SystemClock.elapsedRealtime()),
+                null, null, null);
     }
 
     /** Checkpoint in small batches; a final forced write runs at every session boundary. */
     private void checkpointSessionUsage(boolean force) {
-        if (activeStickyPackage == null || attentionBudgetEngine == null) return;
-        long now = SystemClock.elapsedRealtime();
-        if (!force && now - lastCheckpointAt < CHECKPOINT_INTERVAL_MS) return;
-        long totalTime = getCurrentRestrictedTimeMs();
-        if (totalTime <= persistedRestrictedTimeMs) return;
-        long totalUsedSeconds = attentionBudgetEngine.calculateUsageSeconds(totalTime);
-        long durationDelta = totalTime - persistedRestrictedTimeMs;
-        long usageDeltaSeconds = Math.max(0, totalUsedSeconds - persistedUsageSeconds);
-        attentionBudgetEngine.recordUsageDelta(durationDelta, usageDeltaSeconds);
-        persistedRestrictedTimeMs = totalTime;
-        persistedUsageSeconds = totalUsedSeconds;
-        lastCheckpointAt = now;
-    }
-
-    private boolean isApprovedPackage(String packageName) {
-        String lastApp = appPreferencesManager.getLastInterceptedApp();
-        return packageName.equals(lastApp);
+        if (attentionBudgetEngine == null) return;
+        applyEnforcementActions(enforcement.checkpoint(SystemClock.elapsedRealtime(), force),
+                null, null, null);
     }
 
     private boolean isTransientSystemOverlay(String packageName) {
-        if (packageName == null) return false;
-        if (installedImePackages.contains(packageName)) return true;
-        return isSystemUiOverlay(packageName) || 
-               packageName.contains("permissioncontroller") || packageName.contains("inputmethod") || 
-               packageName.contains("latin") || packageName.contains("keyboard") || 
-               packageName.contains("board") || packageName.contains("ime");
-    }
-
-    private boolean isSystemUiOverlay(String packageName) {
-        if (packageName == null) return false;
-        String p = packageName.toLowerCase(Locale.ROOT);
-        return p.equals("android") || p.contains("systemui") || p.contains("statusbar") || 
-               p.contains("notification") || p.contains("quicksettings");
+        return (packageClasses.flags(packageName) & EnforcementStateMachine.PACKAGE_TRANSIENT)
+                != 0;
     }
 
     private boolean isLauncherPackage(String packageName) {
-        if (packageName == null) return false;
-        if (launcherPackages.contains(packageName)) return true;
-        String p = packageName.toLowerCase(Locale.ROOT);
-        return p.contains("launcher") || p.contains("trebuchet") || p.contains("home") || 
-               p.contains("nexuslauncher") || p.contains("miui.home") || p.contains("pixel") ||
-               p.contains("launcher3") || p.contains("launcher2");
+        return (packageClasses.flags(packageName) & EnforcementStateMachine.PACKAGE_LAUNCHER)
+                != 0;
     }
 
-    private void triggerDecisionGate() {
-        triggerDecisionGate(false);
+    /**
+     * Launches the gate. The state machine has already ended the session, armed the
+     * cooldown and forgotten the foreground app, so the app is re-detected when it returns
+     * however the gate is dismissed.
+     */
+    private void openDecisionGate(boolean strict) {
+        pendingBrowserAddressClear = null;
+        Intent intent = new Intent(this, DecisionGateActivity.class);
+        intent.putExtra(DecisionGateActivity.EXTRA_STRICT_BLOCK, strict);
+        intent.addFlags(Intent.FLAG_ACTIVITY_NEW_TASK | Intent.FLAG_ACTIVITY_SINGLE_TOP | Intent.FLAG_ACTIVITY_CLEAR_TOP);
+        mainHandler.post(() -> startActivity(intent));
     }
 
-    private void triggerDecisionGate(boolean strict) {
-        lastDecisionGateTime = SystemClock.elapsedRealtime();
-        pendingBrowserAddressClear = null;
+    // Reads AccessibilityNodeInfo trees for the guard scanner through the open context.
+    private static final class GuardScanTree
+            implements GuardScreenScanner.Tree<AccessibilityNodeInfo> {
+        private final Rect rect = new Rect();
+        EventTreeContext context;
 
-        if (activeStickyPackage != null) {
-            endStickySession();
+        @Override public int childCount(AccessibilityNodeInfo node) {
+            return node.getChildCount();
         }
 
-        // Reset foreground tracking so the restricted app is always re-detected when
-        // it returns to foreground, regardless of how the gate was dismissed (Cancel
-        // button, hardware back, or system navigation). Without this, the gate never
-        // re-fires if lastForegroundPackage still equals the restricted app's package.
-        lastForegroundPackage = null;
+        @Override public AccessibilityNodeInfo child(AccessibilityNodeInfo node, int index) {
+            return context.child(node, index);
+        }
 
-        Intent intent = new Intent(this, DecisionGateActivity.class);
-        intent.putExtra(DecisionGateActivity.EXTRA_STRICT_BLOCK, strict);
-        intent.addFlags(Intent.FLAG_ACTIVITY_NEW_TASK | Intent.FLAG_ACTIVITY_SINGLE_TOP | Intent.FLAG_ACTIVITY_CLEAR_TOP);
-        startActivity(intent);
-    }
-
-    // Evidence gathered from the current Settings or installer accessibility tree.
-    private static final class GuardScreenScan {
-        boolean targetVisible;
-        boolean appControlVisible;
-        boolean deviceAdminControlVisible;
-        boolean targetAccessibilityToggleVisible;
-        boolean checkableControlVisible;
-        int targetBottom = -1;
-        final List<Integer> actionButtonTopPositions = new ArrayList<>();
-
-        int actionButtonsBelowTarget() {
-            if (targetBottom < 0) return 0;
-            int count = 0;
-            for (int top : actionButtonTopPositions) {
-                if (top >= targetBottom) count++;
-            }
-            return count;
+        @Override public void release(AccessibilityNodeInfo node) {
+            node.recycle();
+        }
+
+        @Override public CharSequence text(AccessibilityNodeInfo node) {
+            return node.getText();
+        }
+
+        @Override public CharSequence description(AccessibilityNodeInfo node) {
+            return node.getContentDescription();
+        }
+
+        @Override public CharSequence viewId(AccessibilityNodeInfo node) {
+            return node.getViewIdResourceName();
+        }
+
+        @Override public CharSequence className(AccessibilityNodeInfo node) {
+            return node.getClassName();
+        }
+
+        @Override public boolean isCheckable(AccessibilityNodeInfo node) {
+            return node.isCheckable();
+        }
+
+        @Override public boolean bounds(AccessibilityNodeInfo node, int[] topBottom) {
+            node.getBoundsInScreen(rect);
+            topBottom[0] = rect.top;
+            topBottom[1] = rect.bottom;
+            return !rect.isEmpty();
+        }
+
+        @Override public AccessibilityNodeInfo copy(AccessibilityNodeInfo node) {
+            return AccessibilityNodeInfo.obtain(node);
         }
     }
 
+    /**
+     * Classifies the guard host's window for an event, or for a watchdog tick when
+     * {@code event} is null. A content change in the window the scanner keeps is merged by
+     * re-reading its source; anything else fingerprints the window and scans it on a
+     * verdict-cache miss.
+     */
     private UninstallGuardPolicy.GuardTarget classifyGuardScreen(
-            String eventPackageName, int eventWindowId) {
+            String eventPackageName, int eventWindowId, EventHandoff.Record event) {
         if (!UninstallGuardPolicy.isGuardHostPackage(eventPackageName)) {
             return UninstallGuardPolicy.GuardTarget.NONE;
         }
@@ -1447,117 +1520,76 @@ public class AttentionFirewallService extends AccessibilityService {
             return UninstallGuardPolicy.GuardTarget.NONE;
         }
 
-        AccessibilityNodeInfo root = getRootInActiveWindow();
-        if (root == null) return UninstallGuardPolicy.GuardTarget.NONE;
-        try {
+        try (EventTreeContext tree = treeScope.open()) {
+            AccessibilityNodeInfo root = tree.root();
+            if (root == null) return UninstallGuardPolicy.GuardTarget.NONE;
             CharSequence rootPackage = root.getPackageName();
             if (rootPackage != null && !eventPackageName.contentEquals(rootPackage)) {
                 return UninstallGuardPolicy.GuardTarget.NONE;
             }
 
-            GuardScreenScan scan = new GuardScreenScan();
-            List<String> targetIdentifiers = Arrays.asList(
-                    getPackageName().toLowerCase(Locale.ROOT),
-                    getString(R.string.app_name).toLowerCase(Locale.ROOT),
-                    getString(R.string.accessibility_service_label).toLowerCase(Locale.ROOT)
-            );
-            String accessibilityServiceLabel = getString(R.string.accessibility_service_label)
-                    .toLowerCase(Locale.ROOT);
-            scanGuardScreen(root, targetIdentifiers, accessibilityServiceLabel, scan, 0);
-
-            return UninstallGuardPolicy.classify(
-                    eventPackageName,
-                    lastWindowClassName,
-                    new UninstallGuardPolicy.ScreenEvidence(
-                            scan.targetVisible,
-                            scan.appControlVisible,
-                            scan.deviceAdminControlVisible,
-                            scan.targetAccessibilityToggleVisible
-                                    && scan.checkableControlVisible,
-                            scan.actionButtonsBelowTarget() >= 2));
-        } finally {
-            root.recycle();
-        }
-    }
-
-    // Depth-limited to protect against malformed or unusually deep OEM Settings trees.
-    private void scanGuardScreen(
-            AccessibilityNodeInfo node,
-            List<String> targetIdentifiers,
-            String accessibilityServiceLabel,
-            GuardScreenScan scan,
-            int depth) {
-        if (node == null || depth > 30) return;
-
-        String text = node.getText() == null ? "" : node.getText().toString();
-        String description = node.getContentDescription() == null
-                ? ""
-                : node.getContentDescription().toString();
-        String viewId = node.getViewIdResourceName() == null
-                ? ""
-                : node.getViewIdResourceName();
-        String combined = (text + " " + description + " " + viewId)
-                .toLowerCase(Locale.ROOT);
-
-        for (String identifier : targetIdentifiers) {
-            if (!identifier.isEmpty() && combined.contains(identifier)) {
-                scan.targetVisible = true;
-                Rect bounds = new Rect();
-                node.getBoundsInScreen(bounds);
-                if (!bounds.isEmpty()) scan.targetBottom = Math.max(scan.targetBottom, bounds.bottom);
-                break;
+            UninstallGuardPolicy.Evidence needed =
+                    UninstallGuardPolicy.evidenceNeeded(lastWindowClassName);
+            if (needed == UninstallGuardPolicy.Evidence.NONE) {
+                return UninstallGuardPolicy.GuardTarget.NONE;
             }
-        }
-
-        String normalizedViewId = viewId.toLowerCase(Locale.ROOT);
-        if (UninstallGuardPolicy.isTargetAccessibilityControl(
-                combined, normalizedViewId, accessibilityServiceLabel)) {
-            // Android 14 hosts this page in a generic SubSettings activity. The
-            // service-specific "Use Voward protection service" switch label is the
-            // narrow evidence that distinguishes it from the general Accessibility
-            // list and from settings pages belonging to other services.
-            scan.targetAccessibilityToggleVisible = true;
-        }
-
-        if (UninstallGuardPolicy.isAppControlSignal(combined, normalizedViewId)) {
-            scan.appControlVisible = true;
-        }
-        if (UninstallGuardPolicy.isDeviceAdminSignal(combined, normalizedViewId)) {
-            scan.deviceAdminControlVisible = true;
-        }
-        CharSequence className = node.getClassName();
-        String normalizedClass = className == null
-                ? ""
-                : className.toString().toLowerCase(Locale.ROOT);
-        if (node.isCheckable()
-                || normalizedClass.contains("switch")
-                || normalizedClass.contains("togglebutton")
-                || normalizedViewId.contains("switch")) {
-            scan.checkableControlVisible = true;
-        }
-
-        // App-info pages normally expose at least Open/Uninstall/Force stop as real
-        // buttons. Count semantic button widgets as a fallback for OEMs that report a
-        // generic Settings activity and translate every visible caption.
-        boolean semanticButton = normalizedClass.endsWith(".button")
-                || normalizedClass.contains("materialbutton");
-        boolean genericActionButtonId = normalizedViewId.endsWith(":id/button1")
-                || normalizedViewId.endsWith(":id/button2")
-                || normalizedViewId.endsWith(":id/button3");
-        if (!node.isCheckable() && (semanticButton || genericActionButtonId)) {
-            Rect bounds = new Rect();
-            node.getBoundsInScreen(bounds);
-            if (!bounds.isEmpty()) scan.actionButtonTopPositions.add(bounds.top);
-        }
-
-        for (int i = 0; i < node.getChildCount(); i++) {
-            AccessibilityNodeInfo child = node.getChild(i);
-            if (child == null) continue;
+            if (!guardScanTargetSet) {
+                // Set on first use and again after a locale change, with the labels.
+                guardScanTargetSet = true;
+                guardVerdicts.clear();
+                guardScanner.forgetWindow(guardScanTree);
+                String serviceLabel = getString(R.string.accessibility_service_label)
+                        .toLowerCase(Locale.ROOT);
+                guardScanner.setTarget(Arrays.asList(
+                        getPackageName().toLowerCase(Locale.ROOT),
+                        getString(R.string.app_name).toLowerCase(Locale.ROOT),
+                        serviceLabel), serviceLabel);
+            }
+            guardScanTree.context = tree;
             try {
-                scanGuardScreen(
-                        child, targetIdentifiers, accessibilityServiceLabel, scan, depth + 1);
+                if (guardScanner.hasWindow(lastWindowId, lastWindowClassName)) {
+                    // The kept nodes are current only while every change since the scan was
+                    // merged: a dropped or unhandled event would leave them stale.
+                    boolean undropped = eventHandoff.dropped() == guardDropsAtScan;
+                    AccessibilityNodeInfo source = event != null && undropped
+                            && guardChangesSinceScan == 1 ? tree.eventSource(event) : null;
+                    if (source != null) {
+                        UninstallGuardPolicy.ScreenEvidence evidence = guardScanner.rescan(
+                                guardScanTree, source,
+                                GuardScreenScanner.changesSubtree(event.contentChangeTypes),
+                                lastWindowId, lastWindowClassName);
+                        if (evidence != null) {
+                            guardChangesSinceScan = 0;
+                            return UninstallGuardPolicy.classify(
+                                    eventPackageName, lastWindowClassName, evidence);
+                        }
+                    } else if (!undropped || guardChangesSinceScan != 0) {
+                        guardScanner.forgetWindow(guardScanTree);
+                    }
+                }
+                // An unchanged screen costs one hashing pass; only a new one is scanned. The
+                // hash reads the whole window, while a scan of an app-info, device-admin or
+                // accessibility-detail window stops at the first target: those are scanned
+                // directly rather than paying for both walks on a miss.
+                boolean fingerprinted = needed == UninstallGuardPolicy.Evidence.TARGET_AND_CONTROLS
+                        && guardScanner.fingerprint(guardScanTree, root);
+                int nodes = guardScanner.fingerprintNodes();
+                long hash = guardScanner.fingerprintHash();
+                UninstallGuardPolicy.GuardTarget verdict = fingerprinted
+                        ? guardVerdicts.find(lastWindowId, lastWindowClassName, nodes, hash)
+                        : null;
+                if (verdict != null) return verdict;
+                verdict = UninstallGuardPolicy.classify(eventPackageName, lastWindowClassName,
+                        guardScanner.scanWindow(guardScanTree, root, lastWindowId,
+                                lastWindowClassName));
+                guardChangesSinceScan = 0;
+                guardDropsAtScan = eventHandoff.dropped();
+                if (fingerprinted) {
+                    guardVerdicts.put(lastWindowId, lastWindowClassName, nodes, hash, verdict);
+                }
+                return verdict;
             } finally {
-                child.recycle();
+                guardScanTree.context = null;
             }
         }
     }
@@ -1569,7 +1601,8 @@ public class AttentionFirewallService extends AccessibilityService {
         lastUninstallGuardActionAt = now;
 
         Log.i(TAG, "Blocked guarded system screen: " + guardTarget);
-        Toast.makeText(this, R.string.uninstall_guard_blocked_message, Toast.LENGTH_LONG).show();
+        mainHandler.post(() -> Toast.makeText(
+                this, R.string.uninstall_guard_blocked_message, Toast.LENGTH_LONG).show());
 
         boolean backedOut = performGlobalAction(GLOBAL_ACTION_BACK);
         // A successful BACK request is the least disruptive escape from a guarded
@@ -1591,26 +1624,51 @@ public class AttentionFirewallService extends AccessibilityService {
         guardWatchdogRootMismatchSince = 0;
         if (guardWatchdogRunning) return;
         guardWatchdogRunning = true;
-        guardWatchdogHandler.postDelayed(guardWatchdog, GUARD_WATCHDOG_INTERVAL_MS);
+        updateSubscription();
+        schedule(guardWatchdog, GUARD_WATCHDOG_INTERVAL_MS);
     }
 
-    private String getActiveRootPackageName() {
-        AccessibilityNodeInfo root = getRootInActiveWindow();
-        if (root == null) return null;
-        try {
-            CharSequence packageName = root.getPackageName();
-            return packageName == null ? null : packageName.toString();
-        } finally {
-            root.recycle();
+    private void checkGuardWatchdog(EventTreeContext tree) {
+        String activeRootPackage = tree.rootPackageName();
+        if (!guardWatchdogPackage.equals(activeRootPackage)) {
+            long now = SystemClock.elapsedRealtime();
+            if (guardWatchdogRootMismatchSince == 0) {
+                guardWatchdogRootMismatchSince = now;
+            }
+            if ((activeRootPackage != null
+                    && !isTransientSystemOverlay(activeRootPackage))
+                    || now - guardWatchdogRootMismatchSince
+                    >= GUARD_WATCHDOG_TRANSIENT_GRACE_MS) {
+                stopGuardWatchdog();
+                return;
+            }
+            schedule(guardWatchdog, GUARD_WATCHDOG_INTERVAL_MS);
+            return;
+        }
+        guardWatchdogRootMismatchSince = 0;
+
+        UninstallGuardPolicy.GuardTarget guardTarget = classifyGuardScreen(
+                guardWatchdogPackage, lastWindowId, null);
+        if (guardTarget == UninstallGuardPolicy.GuardTarget.NONE) {
+            clearGuardBackSuppression();
+        }
+        if (UninstallGuardPolicy.shouldBlock(guardTarget,
+                appPreferencesManager.getEnforcementSnapshot().uninstallGuardEnabled)) {
+            blockGuardedSystemScreen(guardTarget);
+        }
+        if (guardWatchdogRunning) {
+            schedule(guardWatchdog, GUARD_WATCHDOG_INTERVAL_MS);
         }
     }
 
     private void stopGuardWatchdog() {
+        boolean wasRunning = guardWatchdogRunning;
         guardWatchdogRunning = false;
         guardWatchdogPackage = null;
         guardWatchdogRootMismatchSince = 0;
-        guardWatchdogHandler.removeCallbacks(guardWatchdog);
+        timers.cancel(guardWatchdog);
         clearGuardBackSuppression();
+        if (wasRunning) updateSubscription();
     }
 
     private void clearGuardBackSuppression() {
@@ -1618,31 +1676,8 @@ public class AttentionFirewallService extends AccessibilityService {
         suppressedGuardTargetUntil = 0;
     }
 
-    private AccessibilityNodeInfo findUrlBarByContentDescription(AccessibilityNodeInfo root) {
-        return findNodeByContentDescription(root, Arrays.asList("address", "url", "search bar"), 0);
-    }
-
-    private AccessibilityNodeInfo findNodeByContentDescription(
-            AccessibilityNodeInfo node, List<String> hints, int depth) {
-        if (node == null || depth > 30) return null;
-        CharSequence desc = node.getContentDescription();
-        if (desc != null) {
-            String d = desc.toString().toLowerCase(Locale.ROOT);
-            for (String hint : hints) {
-                if (d.contains(hint)) return AccessibilityNodeInfo.obtain(node);
-            }
-        }
-        for (int i = 0; i < node.getChildCount(); i++) {
-            AccessibilityNodeInfo child = node.getChild(i);
-            AccessibilityNodeInfo result = findNodeByContentDescription(child, hints, depth + 1);
-            if (child != null) child.recycle();
-            if (result != null) return result;
-        }
-        return null;
-    }
-
     @Override public void onInterrupt() {
-        checkpointSessionUsage(true);
+        if (enforcementHandler != null) enforcementHandler.post(() -> checkpointSessionUsage(true));
     }
 
     @Override public void onDestroy() {
@@ -1651,42 +1686,71 @@ public class AttentionFirewallService extends AccessibilityService {
             unregisterReceiver(timeChangeReceiver);
             timeChangeReceiverRegistered = false;
         }
-        notificationHandler.removeCallbacksAndMessages(null);
-        urlCheckHandler.removeCallbacksAndMessages(null);
-        guardWatchdogHandler.removeCallbacksAndMessages(null);
-        forcedEvictionHandler.removeCallbacksAndMessages(null);
-        forcedEvictionPackage = null;
+        if (packageChangeReceiverRegistered) {
+            unregisterReceiver(packageChangeReceiver);
+            packageChangeReceiverRegistered = false;
+        }
+        if (enforcementHandler != null) {
+            // Session state belongs to the enforcement thread: tear it down there, ahead of
+            // queued work, and wait briefly so nothing touches it after onDestroy returns.
+            CountDownLatch tornDown = new CountDownLatch(1);
+            enforcementHandler.postAtFrontOfQueue(() -> {
+                tearDownEnforcement();
+                tornDown.countDown();
+            });
+            try {
+                if (!tornDown.await(TEARDOWN_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+                    Log.w(TAG, "Enforcement thread did not finish its teardown in time");
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            enforcementThread.quitSafely();
+        }
+        packageQueries.shutdownNow();
+        Log.d(TAG, "Event handoff: " + eventHandoff);
+        instance = null;
+        super.onDestroy();
+    }
+
+    private void tearDownEnforcement() {
+        Log.d(TAG, "Timers: " + timers.describe(SystemClock.uptimeMillis()));
+        timers.cancelAll();
+        enforcementHandler.removeCallbacksAndMessages(null);
+        int undelivered = eventHandoff.clear();
+        if (undelivered > 0) Log.d(TAG, "Discarded " + undelivered + " queued events at teardown");
+        enforcement.clearEviction();
         guardWatchdogRunning = false;
         guardWatchdogPackage = null;
         guardWatchdogRootMismatchSince = 0;
         clearGuardBackSuppression();
-        pendingUrlChecks.clear();
+        Log.d(TAG, "URL verdict cache: " + urlVerdicts.hits() + " hits, "
+                + urlVerdicts.misses() + " misses");
+        Log.d(TAG, "Accessibility events: " + subscription.delivered() + " delivered, about "
+                + subscription.estimatedAvoided(SystemClock.elapsedRealtime())
+                + " content events avoided, " + subscription.changes()
+                + " subscription changes");
+        if (treeScope != null) Log.d(TAG, "Window tree: " + treeScope.stats());
+        Log.d(TAG, "Guard scans: " + guardScanner + "; verdict cache: " + guardVerdicts);
+        guardVerdicts.clear();
+        guardScanner.forgetWindow(guardScanTree);
+        writeTrace();
+        Log.d(TAG, "Address bar cache: " + addressBarCache);
+        addressBarCache.clear();
+        if (packageClasses != null) {
+            Log.d(TAG, "Package classes: " + packageClasses);
+            packageClasses.clear();
+        }
         browserRedirectAttempts.clear();
-        supportedBrowserByPackage.clear();
+        if (packages != null) Log.d(TAG, "Packages: " + packages);
+        if (warmUp != null) Log.d(TAG, "Warm-up: " + warmUp);
         if (blockPageServer != null) {
             blockPageServer.close();
             blockPageServer = null;
         }
-        if (activeStickyPackage != null) endStickySession();
+        if (enforcement.sessionPackage() != null) endStickySession();
         else if (grayscaleController != null) grayscaleController.setGrayscaleEnabled(false);
         NotificationManager manager = getSystemService(NotificationManager.class);
         if (manager != null) manager.cancel(NOTIFICATION_ID);
-        instance = null;
-        super.onDestroy();
-    }
-
-    @NonNull
-    private List<BrowserSupport.Config> getSupportedBrowsers(String blockPageAddress) {
-        Set<String> discoveredPackages = new HashSet<>();
-        Intent browserIntent = new Intent(Intent.ACTION_MAIN);
-        browserIntent.addCategory(Intent.CATEGORY_APP_BROWSER);
-        List<ResolveInfo> browsers = getPackageManager().queryIntentActivities(
-                browserIntent, PackageManager.MATCH_DEFAULT_ONLY);
-        for (ResolveInfo browser : browsers) {
-            if (browser.activityInfo != null && browser.activityInfo.packageName != null) {
-                discoveredPackages.add(browser.activityInfo.packageName);
-            }
-        }
-        return BrowserSupport.withDiscoveredPackages(discoveredPackages, blockPageAddress);
     }
 }
@@ -97,6 +97,19 @@ final class BrowserSupport {
         return canonicalAddress(config.safeAddress).equals(canonicalAddress(visibleAddress));
     }
 
+    /**
+     * The config of one installed browser: its catalog entry, or the generic one for a
+     * package Android reports as a browser, redirected to {@code sharedSafeAddress} when
+     * one is given.
+     */
+    static Config forPackage(String packageName, String sharedSafeAddress) {
+        Config config = find(packageName);
+        if (config == null) config = generic(packageName);
+        if (sharedSafeAddress == null || sharedSafeAddress.isBlank()) return config;
+        return new Config(config.packageName, sharedSafeAddress,
+                new ArrayList<>(config.addressBarIds));
+    }
+
     static List<Config> withDiscoveredPackages(Iterable<String> packageNames) {
         return withDiscoveredPackages(packageNames, null);
     }
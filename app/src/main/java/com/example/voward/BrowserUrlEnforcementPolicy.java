@@ -5,6 +5,14 @@ import java.util.Locale;
 
 /** Pure commit policy shared by immediate and deferred browser URL observations. */
 public final class BrowserUrlEnforcementPolicy {
+    /** How long an address must stay unchanged before a content event may act on it. */
+    static final long URL_STABLE_MS = 800;
+
+    // AccessibilityEvent content-change types up to PANE_DISAPPEARED: subtree, text,
+    // description and pane changes. The later types (state description, drag, error,
+    // enabled, ...) never carry a new address.
+    private static final int ADDRESS_CHANGE_TYPES = 0x3F;
+
     private BrowserUrlEnforcementPolicy() {}
 
     /** A committed URL rule match, including whether budget can ever unlock it. */
@@ -41,28 +49,77 @@ public final class BrowserUrlEnforcementPolicy {
             List<String> restrictedPatterns) {
         if (addressBarFocused) return null;
 
-        String observed = normalize(observedUrl);
-        String visible = normalize(currentlyVisibleUrl);
-        if (observed.isEmpty() || !observed.equals(visible)) return null;
+        ObservedUrl observed = ObservedUrl.parse(observedUrl);
+        ObservedUrl visible = ObservedUrl.parse(currentlyVisibleUrl);
+        if (observed.isEmpty() || !observed.text.equals(visible.text)) return null;
 
-        if (strictPatterns != null) {
-            for (String pattern : strictPatterns) {
-                if (UrlPatternMatcher.matches(visible, pattern)) {
-                    return new RuleMatch(pattern, true);
-                }
-            }
-        }
-        if (restrictedPatterns != null) {
-            for (String pattern : restrictedPatterns) {
-                if (UrlPatternMatcher.matches(visible, pattern)) {
-                    return new RuleMatch(pattern, false);
-                }
-            }
+        // The visible address is tokenized once and shared by every rule comparison.
+        RuleMatch strict = firstMatch(strictPatterns, visible, true);
+        return strict != null ? strict : firstMatch(restrictedPatterns, visible, false);
+    }
+
+    private static RuleMatch firstMatch(List<String> patterns, ObservedUrl visible,
+                                        boolean strict) {
+        if (patterns == null) return null;
+        // Preference snapshots carry compiled patterns; other lists are compiled once here.
+        CompiledUrlRuleList compiled = CompiledUrlRuleList.compiled(patterns);
+        for (int i = 0; i < compiled.size(); i++) {
+            if (compiled.pattern(i).matches(visible)) return new RuleMatch(compiled.get(i), strict);
         }
         return null;
     }
 
-    private static String normalize(String value) {
-        return value == null ? "" : value.trim().toLowerCase(Locale.ROOT);
+    /** Same commit rules as the list form, resolved through a compiled rule index. */
+    static RuleMatch findCommittedRestrictedMatch(
+            ObservedUrl observedUrl,
+            ObservedUrl currentlyVisibleUrl,
+            boolean addressBarFocused,
+            UrlRuleIndex rules) {
+        if (rules == null
+                || !isCommitted(observedUrl, currentlyVisibleUrl, addressBarFocused)) {
+            return null;
+        }
+        return rules.find(currentlyVisibleUrl);
+    }
+
+    /** Index form that reuses verdicts computed under the same rule generation. */
+    static RuleMatch findCommittedRestrictedMatch(
+            ObservedUrl observedUrl,
+            ObservedUrl currentlyVisibleUrl,
+            boolean addressBarFocused,
+            long ruleGeneration,
+            UrlRuleIndex rules,
+            UrlVerdictCache verdicts) {
+        if (rules == null
+                || !isCommitted(observedUrl, currentlyVisibleUrl, addressBarFocused)) {
+            return null;
+        }
+        return verdicts.find(currentlyVisibleUrl, rules, ruleGeneration);
+    }
+
+    /**
+     * Whether a window-content event with these change types can have changed the address
+     * bar. Undefined (0) can, since the framework merges coalesced events into a subtree
+     * change but older views report nothing.
+     */
+    static boolean mayChangeAddress(int contentChangeTypes) {
+        return contentChangeTypes == 0 || (contentChangeTypes & ADDRESS_CHANGE_TYPES) != 0;
+    }
+
+    /** Blank and new-tab pages, which end restricted time inside a session at once. */
+    static boolean isKnownSafeNewTab(String url) {
+        if (url == null) return true;
+        String u = url.toLowerCase(Locale.ROOT);
+        return u.equals("about:blank") ||
+               u.contains("newtab") ||
+               u.contains("chrome://newtab") ||
+               u.contains("brave://newtab") ||
+               u.contains("about:home");
+    }
+
+    private static boolean isCommitted(
+            ObservedUrl observedUrl, ObservedUrl currentlyVisibleUrl, boolean addressBarFocused) {
+        return !addressBarFocused && observedUrl != null && currentlyVisibleUrl != null
+                && !observedUrl.isEmpty() && observedUrl.text.equals(currentlyVisibleUrl.text);
     }
 }
@@ -0,0 +1,118 @@
+package com.example.voward;
+
+import java.util.Locale;
+
+/**
+ * One configured URL rule, parsed once when the rule list changes.
+ *
+ * <p>Host rules keep their canonical host, optional exact path with its subtree prefix, and
+ * optional exact raw query, so matching an observed address never re-parses the pattern.
+ * {@code glob:} rules keep their lower-cased body and a single-rule {@link GlobAutomaton}.
+ * Malformed rules compile to {@link Kind#NEVER} and fail safe exactly as they did when the
+ * pattern was parsed on every comparison.</p>
+ */
+final class CompiledUrlPattern {
+    enum Kind { NEVER, FAIL_CLOSED, KEYWORD, GLOB, HOST }
+
+    /** The rule as configured; reported back as the matched pattern. */
+    final String source;
+    final Kind kind;
+    /** Lower-cased keyword for {@link Kind#KEYWORD}, or glob body for {@link Kind#GLOB}. */
+    final String keyword;
+    /** Canonical host for {@link Kind#HOST}. */
+    final String host;
+    /** Exact path, or null when the rule covers every path on the host. */
+    final String path;
+    /** {@link #path} with a trailing '/', matching everything below it. */
+    final String subtree;
+    /** Exact raw query the address must carry, or null when any query matches. */
+    final String query;
+    private final GlobAutomaton glob;
+
+    private CompiledUrlPattern(String source, Kind kind, String keyword,
+                               String host, String path, String query, GlobAutomaton glob) {
+        this.source = source;
+        this.kind = kind;
+        this.keyword = keyword;
+        this.host = host;
+        this.path = path;
+        this.subtree = path == null ? null : path.endsWith("/") ? path : path + "/";
+        this.query = query;
+        this.glob = glob;
+    }
+
+    static CompiledUrlPattern compile(String configuredPattern) {
+        if (configuredPattern == null) return never(null);
+        if (UrlPatternMatcher.FAIL_CLOSED_PATTERN.equals(configuredPattern)) {
+            return new CompiledUrlPattern(configuredPattern, Kind.FAIL_CLOSED,
+                    null, null, null, null, null);
+        }
+        String pattern = configuredPattern.trim().toLowerCase(Locale.ROOT);
+        if (pattern.isEmpty()) return never(configuredPattern);
+        if (pattern.startsWith("keyword:")) {
+            String keyword = pattern.substring("keyword:".length()).trim();
+            if (keyword.isEmpty()) return never(configuredPattern);
+            return new CompiledUrlPattern(configuredPattern, Kind.KEYWORD,
+                    keyword, null, null, null, null);
+        }
+        if (pattern.startsWith("glob:")) {
+            String body = pattern.substring("glob:".length()).trim();
+            // Globs that could blow up the combined DFA are rejected, not approximated. The
+            // support check builds the rule's own automaton, which is kept.
+            GlobAutomaton glob = GlobAutomaton.single(body);
+            if (glob == null) return never(configuredPattern);
+            return new CompiledUrlPattern(configuredPattern, Kind.GLOB, body, null, null, null,
+                    glob);
+        }
+
+        ObservedUrl parsed = ObservedUrl.parse(pattern);
+        String host = parsed.host();
+        if (host == null) return never(configuredPattern);
+        String path = parsed.path();
+        if (path != null && (path.isEmpty() || path.equals("/"))) path = null;
+        return new CompiledUrlPattern(configuredPattern, Kind.HOST,
+                null, host, path, parsed.rawQuery(), null);
+    }
+
+    private static CompiledUrlPattern never(String source) {
+        return new CompiledUrlPattern(source, Kind.NEVER, null, null, null, null, null);
+    }
+
+    /** Whether a user may save this rule; the internal fail-closed rule is never valid. */
+    boolean isValid() {
+        if (kind == Kind.KEYWORD || kind == Kind.GLOB) return true;
+        if (kind != Kind.HOST || host.isEmpty()) return false;
+        return host.contains(".") || host.equals("localhost") || host.contains(":");
+    }
+
+    boolean matches(ObservedUrl current) {
+        if (current == null || current.isEmpty()) return false;
+        switch (kind) {
+            case FAIL_CLOSED:
+                return true;
+            case KEYWORD:
+                return current.text.contains(keyword);
+            case GLOB:
+                return glob.find(current.text) == 0;
+            case HOST:
+                return matchesHost(current);
+            default:
+                return false;
+        }
+    }
+
+    private boolean matchesHost(ObservedUrl current) {
+        String currentHost = current.host();
+        if (currentHost == null) return false;
+        boolean hostMatches = currentHost.equals(host)
+                || (currentHost.length() > host.length()
+                        && currentHost.endsWith(host)
+                        && currentHost.charAt(currentHost.length() - host.length() - 1) == '.');
+        if (!hostMatches) return false;
+        if (query != null && !query.equals(current.rawQuery())) return false;
+        if (path == null) return true;
+        String currentPath = current.path();
+        if (currentPath == null) return false;
+        return currentPath.equals(path) || currentPath.startsWith(subtree);
+    }
+}
@@ -0,0 +1,115 @@
+package com.example.voward;
+
+import java.util.AbstractList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.RandomAccess;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Immutable URL rule list that carries the compiled form of every entry.
+ *
+ * <p>The preference caches publish these in place of plain unmodifiable lists, so swapping
+ * one volatile reference replaces the raw rules and their compiled patterns together.</p>
+ *
+ * <p>{@link #appended} shares storage with the list it extends: each list is a fixed-length
+ * view of an append-only array, so adding a rule compiles only that rule and never copies
+ * earlier entries unless the array has to grow. Case-insensitive membership is answered
+ * from a shared first-occurrence table instead of a scan.</p>
+ */
+final class CompiledUrlRuleList extends AbstractList<String> implements RandomAccess {
+    private final Storage storage;
+    private final String[] values;
+    private final CompiledUrlPattern[] patterns;
+    private final int size;
+
+    private CompiledUrlRuleList(Storage storage, int size) {
+        this.storage = storage;
+        this.values = storage.values;
+        this.patterns = storage.patterns;
+        this.size = size;
+    }
+
+    static CompiledUrlRuleList of(Collection<String> values) {
+        Storage storage = new Storage(Math.max(values.size(), 4));
+        for (String value : values) storage.append(value);
+        return new CompiledUrlRuleList(storage, storage.used);
+    }
+
+    /** Reuses the compiled patterns of a published snapshot instead of compiling again. */
+    static CompiledUrlRuleList compiled(List<String> values) {
+        if (values instanceof CompiledUrlRuleList) return (CompiledUrlRuleList) values;
+        return values == null ? of(Collections.<String>emptyList()) : of(values);
+    }
+
+    /** Returns this list plus {@code value}; this list and its readers are unaffected. */
+    CompiledUrlRuleList appended(String value) {
+        synchronized (storage) {
+            // Slots past the newest view are invisible to every published list.
+            if (storage.used == size && size < storage.values.length) {
+                storage.append(value);
+                return new CompiledUrlRuleList(storage, size + 1);
+            }
+        }
+        Storage copy = new Storage(Math.max(size * 2, 4));
+        for (int i = 0; i < size; i++) copy.append(values[i], patterns[i]);
+        copy.append(value);
+        return new CompiledUrlRuleList(copy, size + 1);
+    }
+
+    /** Same result as an {@link String#equalsIgnoreCase} scan over this list. */
+    boolean containsIgnoreCase(String candidate) {
+        if (candidate == null) return false;
+        Integer first = storage.firstIndex.get(foldCase(candidate));
+        return first != null && first < size;
+    }
+
+    @Override
+    public String get(int index) {
+        if (index < 0 || index >= size) throw new IndexOutOfBoundsException("Index: " + index);
+        return values[index];
+    }
+
+    CompiledUrlPattern pattern(int index) {
+        if (index < 0 || index >= size) throw new IndexOutOfBoundsException("Index: " + index);
+        return patterns[index];
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /** Per-char case folding under which equal keys are exactly equalsIgnoreCase-equal. */
+    private static String foldCase(String value) {
+        char[] folded = new char[value.length()];
+        for (int i = 0; i < folded.length; i++) {
+            folded[i] = Character.toLowerCase(Character.toUpperCase(value.charAt(i)));
+        }
+        return new String(folded);
+    }
+
+    private static final class Storage {
+        final String[] values;
+        final CompiledUrlPattern[] patterns;
+        final ConcurrentHashMap<String, Integer> firstIndex = new ConcurrentHashMap<>();
+        int used;
+
+        Storage(int capacity) {
+            values = new String[capacity];
+            patterns = new CompiledUrlPattern[capacity];
+        }
+
+        void append(String value) {
+            append(value, CompiledUrlPattern.compile(value));
+        }
+
+        void append(String value, CompiledUrlPattern pattern) {
+            values[used] = value;
+            patterns[used] = pattern;
+            if (value != null) firstIndex.putIfAbsent(foldCase(value), used);
+            used++;
+        }
+    }
+}
@@ -0,0 +1,167 @@
+package com.example.voward;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * One deadline-ordered queue for every delayed task of the accessibility service.
+ *
+ * <p>Tasks are keyed: scheduling a key that is already pending replaces it, which is how
+ * the watchdogs and URL re-checks reschedule themselves. A single {@link Alarm} is kept set
+ * to the earliest deadline, and each wakeup also runs every task due within
+ * {@link #BATCH_WINDOW_MS} of it, so polls that line up share one wakeup. Times are in the
+ * alarm's clock; the service uses {@code SystemClock.uptimeMillis()} to match its Handler.
+ * Not thread-safe; the service only uses it on its enforcement thread.</p>
+ */
+final class DeadlineScheduler {
+    static final long BATCH_WINDOW_MS = 10;
+
+    /** Wakes the owner at a given time so it can call {@link #runDue}. */
+    interface Alarm {
+        void set(long at);
+
+        void cancel();
+    }
+
+    private static final class Task implements Comparable<Task> {
+        final Object key;
+        final long dueAt;
+        final long sequence;
+        final Runnable action;
+        boolean cancelled;
+
+        Task(Object key, long dueAt, long sequence, Runnable action) {
+            this.key = key;
+            this.dueAt = dueAt;
+            this.sequence = sequence;
+            this.action = action;
+        }
+
+        @Override
+        public int compareTo(Task other) {
+            if (dueAt != other.dueAt) return Long.compare(dueAt, other.dueAt);
+            return Long.compare(sequence, other.sequence);
+        }
+    }
+
+    private final Alarm alarm;
+    // Cancelled tasks stay in the queue until they reach its head.
+    private final PriorityQueue<Task> queue = new PriorityQueue<>();
+    private final Map<Object, Task> pending = new HashMap<>();
+    private long sequence;
+    private long armedAt = Long.MIN_VALUE;
+    private long firstScheduledAt = -1;
+    private long wakeups;
+    private long tasksRun;
+    private long totalLatenessMs;
+    private long maxLatenessMs;
+
+    DeadlineScheduler(Alarm alarm) {
+        this.alarm = alarm;
+    }
+
+    /** Runs {@code action} at {@code dueAt}, replacing any task pending under {@code key}. */
+    void schedule(Object key, long dueAt, Runnable action) {
+        if (firstScheduledAt < 0) firstScheduledAt = dueAt;
+        Task previous = pending.remove(key);
+        if (previous != null) previous.cancelled = true;
+        Task task = new Task(key, dueAt, sequence++, action);
+        pending.put(key, task);
+        queue.add(task);
+        rearm();
+    }
+
+    void cancel(Object key) {
+        Task task = pending.remove(key);
+        if (task == null) return;
+        task.cancelled = true;
+        rearm();
+    }
+
+    boolean isScheduled(Object key) {
+        return pending.containsKey(key);
+    }
+
+    void cancelAll() {
+        for (Task task : pending.values()) task.cancelled = true;
+        pending.clear();
+        queue.clear();
+        rearm();
+    }
+
+    /**
+     * Runs the tasks due by {@code now} plus the batch window, in deadline order. Tasks they
+     * schedule wait for a later wakeup, so a task that reschedules itself cannot starve the
+     * others.
+     */
+    void runDue(long now) {
+        wakeups++;
+        List<Task> due = new ArrayList<>();
+        while (!queue.isEmpty()) {
+            Task head = queue.peek();
+            if (!head.cancelled && head.dueAt > now + BATCH_WINDOW_MS) break;
+            queue.poll();
+            if (!head.cancelled) due.add(head);
+        }
+        // Force the alarm to be set again for whatever the tasks leave pending.
+        armedAt = Long.MIN_VALUE;
+        for (Task task : due) {
+            // An earlier task in this batch may have cancelled or replaced it.
+            if (task.cancelled) continue;
+            pending.remove(task.key);
+            long lateness = Math.max(0, now - task.dueAt);
+            totalLatenessMs += lateness;
+            maxLatenessMs = Math.max(maxLatenessMs, lateness);
+            tasksRun++;
+            task.action.run();
+        }
+        rearm();
+    }
+
+    long wakeups() {
+        return wakeups;
+    }
+
+    long tasksRun() {
+        return tasksRun;
+    }
+
+    long maxLatenessMs() {
+        return maxLatenessMs;
+    }
+
+    double meanLatenessMs() {
+        return tasksRun == 0 ? 0 : (double) totalLatenessMs / tasksRun;
+    }
+
+    /** Wakeups per minute since the first task's deadline. */
+    double wakeupsPerMinute(long now) {
+        if (firstScheduledAt < 0) return 0;
+        long elapsed = Math.max(1, now - firstScheduledAt);
+        return wakeups * 60_000.0 / elapsed;
+    }
+
+    String describe(long now) {
+        return String.format(Locale.ROOT,
+                "%d wakeups (%.1f/min), %d tasks, lateness %.1f ms mean, %d ms max",
+                wakeups, wakeupsPerMinute(now), tasksRun, meanLatenessMs(), maxLatenessMs);
+    }
+
+    private void rearm() {
+        while (!queue.isEmpty() && queue.peek().cancelled) queue.poll();
+        if (queue.isEmpty()) {
+            if (armedAt != Long.MAX_VALUE) alarm.cancel();
+            armedAt = Long.MAX_VALUE;
+            return;
+        }
+        long next = queue.peek().dueAt;
+        if (next != armedAt) {
+            alarm.set(next);
+            armedAt = next;
+        }
+    }
+}
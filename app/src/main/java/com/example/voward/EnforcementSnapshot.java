@@ -0,0 +1,73 @@
+package com.example.voward;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Everything the accessibility service consults on every event, read once from preferences.
+ *
+ * <p>{@link AppPreferencesManagerSingleton} publishes one instance through a volatile field
+ * and replaces it after a relevant preference or URL rule change, so an event reads plain
+ * final fields instead of performing SharedPreferences lookups. Fail-closed storage states
+ * are folded in when the snapshot is built.</p>
+ */
+final class EnforcementSnapshot {
+    final boolean blockerActive;
+    final boolean tempAllowAppLaunch;
+    final String lastInterceptedApp;
+    final String lastInterceptedUrl;
+    final String lastInterceptionKind;
+    final boolean uninstallGuardEnabled;
+    final UrlRuleIndex urlRules;
+    // Generation read before urlRules; pairs with the service's verdict cache.
+    final long urlRuleGeneration;
+    private final Set<String> restrictedApps;
+    private final Set<String> strictApps;
+    // Corrupt app rules while active: every non-critical package is restricted and strict.
+    private final boolean appRulesFailClosed;
+    private final boolean strictAppRulesFailClosed;
+    private final String ownPackage;
+    // Preference change count this snapshot was built after.
+    final long version;
+
+    EnforcementSnapshot(long version, boolean blockerActive, boolean tempAllowAppLaunch,
+                        String lastInterceptedApp, String lastInterceptedUrl,
+                        String lastInterceptionKind, boolean uninstallGuardEnabled,
+                        Collection<String> restrictedApps, Collection<String> strictApps,
+                        boolean appRulesFailClosed, boolean strictAppRulesFailClosed,
+                        String ownPackage, long urlRuleGeneration, UrlRuleIndex urlRules) {
+        this.version = version;
+        this.blockerActive = blockerActive;
+        this.tempAllowAppLaunch = tempAllowAppLaunch;
+        this.lastInterceptedApp = lastInterceptedApp;
+        this.lastInterceptedUrl = lastInterceptedUrl;
+        this.lastInterceptionKind = lastInterceptionKind;
+        this.uninstallGuardEnabled = uninstallGuardEnabled;
+        this.restrictedApps = Collections.unmodifiableSet(new HashSet<>(restrictedApps));
+        this.strictApps = Collections.unmodifiableSet(new HashSet<>(strictApps));
+        this.appRulesFailClosed = appRulesFailClosed;
+        this.strictAppRulesFailClosed = strictAppRulesFailClosed;
+        this.ownPackage = ownPackage;
+        this.urlRuleGeneration = urlRuleGeneration;
+        this.urlRules = urlRules;
+    }
+
+    /** Same answer as {@link AppPreferencesManagerSingleton#isRestrictedApp}. */
+    boolean isRestrictedApp(String packageName) {
+        if (appRulesFailClosed) return !SafetyPolicy.isCriticalPackage(packageName, ownPackage);
+        return restrictedApps.contains(packageName);
+    }
+
+    /** Same answer as {@link AppPreferencesManagerSingleton#isStrictRestrictedApp}. */
+    boolean isStrictRestrictedApp(String packageName) {
+        if (strictAppRulesFailClosed) return isRestrictedApp(packageName);
+        return strictApps.contains(packageName);
+    }
+
+    /** Whether {@code packageName} is the app the last approved gate was opened for. */
+    boolean isApprovedPackage(String packageName) {
+        return packageName.equals(lastInterceptedApp);
+    }
+}
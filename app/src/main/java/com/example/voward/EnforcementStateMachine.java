@@ -0,0 +1,434 @@
+package com.example.voward;
+
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Session, cooldown and forced-eviction state of the accessibility service, driven only by
+ * explicit inputs.
+ *
+ * <p>Every input takes the current {@code SystemClock.elapsedRealtime()} and what the caller
+ * knows about the package as {@code PACKAGE_*} bits, and returns the side effects the
+ * service must perform as {@code ACTION_*} bits. The service applies them in bit order,
+ * which is the order the old inline code performed them. Budget reads go through
+ * {@link Budget}, so the whole state can be driven on the JVM with synthetic events. Apart
+ * from recording a session's approved pattern, inputs do not allocate. Not thread-safe; the
+ * service uses it on its enforcement thread.</p>
+ */
+final class EnforcementStateMachine {
+    static final long FOREGROUND_DEBOUNCE_MS = 300;
+    static final long SAFE_CONFIRM_MS = 1500;
+    static final long DECISION_COOLDOWN_MS = 5000;
+    static final long TEMP_ALLOW_STABILIZATION_MS = 4000;
+    static final long CHECKPOINT_INTERVAL_MS = 5000;
+    static final long BROWSER_REDIRECT_FALLBACK_MS = 4000;
+
+    /** What the caller knows about the event's package. */
+    static final int PACKAGE_TRANSIENT = 1;
+    static final int PACKAGE_LAUNCHER = 1 << 1;
+    static final int PACKAGE_RESTRICTED = 1 << 2;
+    static final int PACKAGE_STRICT = 1 << 3;
+    /** The package a pending temp-allow approval was granted for. */
+    static final int PACKAGE_APPROVED = 1 << 4;
+    static final int PACKAGE_BROWSER = 1 << 5;
+    static final int PACKAGE_CRITICAL = 1 << 6;
+
+    static final int ACTION_NONE = 0;
+    static final int ACTION_CLEAR_TEMP_ALLOW = 1;
+    /** The approved package reached the foreground; call {@link #startSession}. */
+    static final int ACTION_APPROVED_LAUNCH = 1 << 1;
+    /** Nothing else is to be done for this event. */
+    static final int ACTION_CONSUMED = 1 << 2;
+    static final int ACTION_FOREGROUND_CHANGED = 1 << 3;
+    /** Persist the interception before any gate opens. */
+    static final int ACTION_RECORD_INTERCEPTION = 1 << 4;
+    /** Record {@link #pendingUsageMs()} and {@link #pendingUsageSeconds()}. */
+    static final int ACTION_RECORD_USAGE = 1 << 5;
+    /** Record a session outcome; {@link #endedAtLimit()} says how it ended. */
+    static final int ACTION_RECORD_OUTCOME = 1 << 6;
+    static final int ACTION_SESSION_ENDED = 1 << 7;
+    static final int ACTION_SESSION_STARTED = 1 << 8;
+    static final int ACTION_START_TICKER = 1 << 9;
+    static final int ACTION_STOP_TICKER = 1 << 10;
+    static final int ACTION_OPEN_GATE = 1 << 11;
+    /** Set with {@link #ACTION_OPEN_GATE} for a strict rule. */
+    static final int ACTION_STRICT = 1 << 12;
+    /** Remove {@link #evictionPackage()} from the screen. */
+    static final int ACTION_EVICT = 1 << 13;
+    static final int ACTION_SHOW_SESSION_COMPLETE = 1 << 14;
+    /** Check the URL again after {@link #cooldownRemainingMs}. */
+    static final int ACTION_RECHECK_AFTER_COOLDOWN = 1 << 15;
+    static final int ACTION_EVICTION_DONE = 1 << 16;
+    static final int ACTION_GO_HOME = 1 << 17;
+    static final int ACTION_RESTART_REDIRECT = 1 << 18;
+    static final int ACTION_RECHECK_EVICTION = 1 << 19;
+
+    /** Budget reads; the service backs them with {@code AttentionBudgetEngine}. */
+    interface Budget {
+        boolean hasRemaining();
+
+        /** Seconds the pending approval may use, or zero when nothing is left. */
+        long quoteSessionSeconds();
+    }
+
+    private final Budget budget;
+
+    private String foregroundPackage;
+    private long foregroundChangedAt;
+    private long lastDecisionAt;
+
+    // Sticky session
+    private String sessionPackage;
+    private int sessionFlags;
+    private final Set<String> sessionApprovedPatterns = new HashSet<>();
+    // Snapshot of the quote at session start, so mid-session exhaustion is measured against
+    // the allowance for this session rather than the stored balance.
+    private long sessionLimitSeconds;
+    private boolean sessionLimitReached;
+    private boolean budgetLockedOut;
+    private boolean endedAtLimit;
+
+    // Usage: only time spent on the restricted target counts.
+    private long accumulatedRestrictedMs;
+    private long restrictedSegmentStartedAt;
+    private boolean restrictedUseConfirmed;
+    private long lastSafeSeenAt;
+    private long persistedRestrictedMs;
+    private long persistedUsageSeconds;
+    private long lastCheckpointAt;
+    private long pendingUsageMs;
+    private long pendingUsageSeconds;
+
+    private String evictionPackage;
+    private long evictionStartedAt;
+
+    EnforcementStateMachine(Budget budget) {
+        this.budget = budget;
+    }
+
+    /**
+     * An accessibility event from {@code packageName} while the blocker is active: consumes
+     * a pending approval, debounces foreground changes, intercepts restricted apps and ends
+     * the session when another app takes over the screen.
+     */
+    int onEvent(long now, String packageName, boolean windowStateChanged, int packageFlags,
+                boolean tempAllowPending, long tempAllowGrantedAt) {
+        boolean newForeground = foregroundPackage == null
+                || !packageName.equals(foregroundPackage);
+        boolean overlay = (packageFlags & (PACKAGE_TRANSIENT | PACKAGE_LAUNCHER)) != 0;
+        int actions = ACTION_NONE;
+
+        // Consume an approval before normal interception; otherwise the returning app would
+        // open a second gate before its session starts.
+        if (tempAllowPending) {
+            if ((packageFlags & PACKAGE_APPROVED) != 0) {
+                if (newForeground) {
+                    foregroundPackage = packageName;
+                    foregroundChangedAt = now;
+                }
+                return ACTION_CLEAR_TEMP_ALLOW | ACTION_APPROVED_LAUNCH | ACTION_CONSUMED;
+            }
+            if (overlay) return ACTION_CONSUMED;
+            // Brief system windows such as permission prompts must not cancel the approval
+            // before the target app reaches the foreground.
+            if (windowStateChanged
+                    && now - tempAllowGrantedAt > TEMP_ALLOW_STABILIZATION_MS) {
+                actions |= ACTION_CLEAR_TEMP_ALLOW;
+            }
+        }
+
+        if (newForeground && (windowStateChanged
+                || now - foregroundChangedAt > FOREGROUND_DEBOUNCE_MS)) {
+            foregroundPackage = packageName;
+            foregroundChangedAt = now;
+            actions |= ACTION_FOREGROUND_CHANGED;
+            if (!overlay) actions |= interceptApp(now, packageName, packageFlags);
+        }
+
+        if (windowStateChanged) {
+            boolean transientWindow = (packageFlags & PACKAGE_TRANSIENT) != 0;
+            boolean unrestricted = (packageFlags & (PACKAGE_RESTRICTED | PACKAGE_LAUNCHER)) == 0;
+            if (sessionPackage != null) {
+                if (!packageName.equals(sessionPackage) && !transientWindow) {
+                    actions |= endSession(now);
+                    if (unrestricted) budgetLockedOut = false;
+                }
+            } else if (!transientWindow && unrestricted) {
+                budgetLockedOut = false;
+            }
+        }
+        return actions;
+    }
+
+    /** Starts the sticky session an approval granted. */
+    int startSession(long now, String packageName, int packageFlags, String approvedPattern,
+                     String interceptionKind) {
+        budgetLockedOut = false;
+        sessionLimitSeconds = budget.quoteSessionSeconds();
+        if (sessionLimitSeconds <= 0) {
+            budgetLockedOut = true;
+            return beginEviction(now, packageName);
+        }
+        sessionLimitReached = false;
+        sessionPackage = packageName;
+        sessionFlags = packageFlags;
+        sessionApprovedPatterns.clear();
+        boolean hasPattern = approvedPattern != null && !approvedPattern.isEmpty();
+        if (hasPattern) sessionApprovedPatterns.add(approvedPattern);
+        accumulatedRestrictedMs = 0;
+        persistedRestrictedMs = 0;
+        persistedUsageSeconds = 0;
+        restrictedUseConfirmed = false;
+        restrictedSegmentStartedAt = 0;
+        lastCheckpointAt = 0;
+
+        int actions = ACTION_SESSION_STARTED;
+        // A blocked browser app is metered as an app; a URL-only browser session pauses
+        // metering as soon as the user leaves that URL.
+        if (InterceptionPolicy.shouldStartSessionTimer(interceptionKind,
+                (packageFlags & PACKAGE_BROWSER) != 0, hasPattern)) {
+            actions |= restrict(now, true);
+        }
+        return actions;
+    }
+
+    /** Ends the sticky session, flushing its usage; nothing when none is active. */
+    int endSession(long now) {
+        if (sessionPackage == null) return ACTION_NONE;
+        int actions = restrict(now, false) | checkpoint(now, true);
+        if (persistedRestrictedMs > 0) {
+            endedAtLimit = sessionLimitReached;
+            actions |= ACTION_RECORD_OUTCOME;
+        }
+        sessionPackage = null;
+        sessionFlags = 0;
+        sessionApprovedPatterns.clear();
+        accumulatedRestrictedMs = 0;
+        persistedRestrictedMs = 0;
+        persistedUsageSeconds = 0;
+        sessionLimitSeconds = 0;
+        sessionLimitReached = false;
+        restrictedSegmentStartedAt = 0;
+        restrictedUseConfirmed = false;
+        return actions | ACTION_SESSION_ENDED;
+    }
+
+    /** Periodic work while a session runs: batched usage checkpoints and live exhaustion. */
+    int onSessionTick(long now) {
+        return checkpoint(now, false) | checkBudget(now);
+    }
+
+    /** Checkpoints usage in small batches; {@code force} writes whatever is unrecorded. */
+    int checkpoint(long now, boolean force) {
+        if (sessionPackage == null) return ACTION_NONE;
+        if (!force && now - lastCheckpointAt < CHECKPOINT_INTERVAL_MS) return ACTION_NONE;
+        long total = restrictedTimeMs(now);
+        if (total <= persistedRestrictedMs) return ACTION_NONE;
+        long usedSeconds = BudgetMath.elapsedCostSeconds(total);
+        pendingUsageMs += total - persistedRestrictedMs;
+        pendingUsageSeconds += Math.max(0, usedSeconds - persistedUsageSeconds);
+        persistedRestrictedMs = total;
+        persistedUsageSeconds = usedSeconds;
+        lastCheckpointAt = now;
+        return ACTION_RECORD_USAGE;
+    }
+
+    /** A committed address matched a rule in a browser. */
+    int onRestrictedUrl(long now, String packageName, String pattern, boolean strict,
+                        String interceptionKind) {
+        lastSafeSeenAt = 0;
+        boolean inSession = packageName.equals(sessionPackage);
+        if (!strict && InterceptionPolicy.isApprovedWholeBrowserSession(
+                interceptionKind, inSession, true)) {
+            return ACTION_NONE;
+        }
+        // No second action while a gate is closing or a redirect is changing the omnibox.
+        if (now - lastDecisionAt < DECISION_COOLDOWN_MS) return ACTION_RECHECK_AFTER_COOLDOWN;
+
+        if (strict) return ACTION_RECORD_INTERCEPTION | openGate(now, true);
+        if (!budget.hasRemaining()) {
+            lastDecisionAt = now;
+            return ACTION_RECORD_INTERCEPTION | beginEviction(now, packageName)
+                    | ACTION_SHOW_SESSION_COMPLETE;
+        }
+        if (inSession) {
+            int actions = restrict(now, true);
+            if (!sessionApprovedPatterns.contains(pattern)) {
+                actions |= ACTION_RECORD_INTERCEPTION | openGate(now, false);
+            }
+            return actions;
+        }
+        if (sessionPackage == null) return ACTION_RECORD_INTERCEPTION | openGate(now, false);
+        return ACTION_NONE;
+    }
+
+    /**
+     * A browser shows an address no rule matches. Inside a session, restricted time stops
+     * at once for a known-safe page and otherwise only after {@link #SAFE_CONFIRM_MS}.
+     */
+    int onUnrestrictedUrl(long now, String packageName, boolean committed,
+                          boolean knownSafePage) {
+        if (!committed || !packageName.equals(sessionPackage)) {
+            lastSafeSeenAt = 0;
+            return ACTION_NONE;
+        }
+        if (knownSafePage) return confirmSafe(now);
+        if (lastSafeSeenAt == 0) lastSafeSeenAt = now;
+        if (restrictedUseConfirmed && now - lastSafeSeenAt > SAFE_CONFIRM_MS) {
+            return confirmSafe(now);
+        }
+        return ACTION_NONE;
+    }
+
+    /** The browser shows the local block page or another configured safe address. */
+    int confirmSafe(long now) {
+        if (!restrictedUseConfirmed) return ACTION_NONE;
+        lastSafeSeenAt = 0;
+        return restrict(now, false);
+    }
+
+    /** Holds off new gates for {@link #DECISION_COOLDOWN_MS}, e.g. while a gate closes. */
+    void armCooldown(long now) {
+        lastDecisionAt = now;
+    }
+
+    long cooldownRemainingMs(long now) {
+        return Math.max(0, DECISION_COOLDOWN_MS - (now - lastDecisionAt));
+    }
+
+    /**
+     * One verification tick of a forced eviction. The caller reports the foreground
+     * package and, when that is the target browser, whether it shows the block page.
+     */
+    int onEvictionCheck(long now, String foreground, int foregroundFlags, boolean browser,
+                        boolean onBlockPage, boolean redirectPending) {
+        if (evictionPackage == null) return ACTION_NONE;
+        if (foreground == null) return ACTION_RECHECK_EVICTION;
+        if (!evictionPackage.equals(foreground)) {
+            if ((foregroundFlags & PACKAGE_TRANSIENT) != 0) return ACTION_RECHECK_EVICTION;
+            clearEviction();
+            return ACTION_EVICTION_DONE;
+        }
+        if (!browser) return ACTION_GO_HOME | ACTION_RECHECK_EVICTION;
+        if (onBlockPage) {
+            clearEviction();
+            return ACTION_EVICTION_DONE;
+        }
+        // Do not leave the page usable when a browser refuses the omnibox submission.
+        if (now - evictionStartedAt >= BROWSER_REDIRECT_FALLBACK_MS) {
+            return ACTION_GO_HOME | ACTION_RECHECK_EVICTION;
+        }
+        // A finished or exhausted redirect sequence is restarted while the page stays.
+        if (!redirectPending) return ACTION_RESTART_REDIRECT | ACTION_RECHECK_EVICTION;
+        return ACTION_RECHECK_EVICTION;
+    }
+
+    /** Stops a forced eviction; true when one was running. */
+    boolean clearEviction() {
+        boolean wasEvicting = evictionPackage != null;
+        evictionPackage = null;
+        evictionStartedAt = 0;
+        return wasEvicting;
+    }
+
+    /** Called after {@link #ACTION_RECORD_USAGE} has been applied. */
+    void usageRecorded() {
+        pendingUsageMs = 0;
+        pendingUsageSeconds = 0;
+    }
+
+    String sessionPackage() {
+        return sessionPackage;
+    }
+
+    String evictionPackage() {
+        return evictionPackage;
+    }
+
+    boolean isRestrictedTimeRunning() {
+        return sessionPackage != null && restrictedSegmentStartedAt != 0;
+    }
+
+    long restrictedTimeMs(long now) {
+        long segment = restrictedSegmentStartedAt == 0
+                ? 0 : Math.max(0, now - restrictedSegmentStartedAt);
+        return Math.max(0, accumulatedRestrictedMs + segment);
+    }
+
+    long pendingUsageMs() {
+        return pendingUsageMs;
+    }
+
+    long pendingUsageSeconds() {
+        return pendingUsageSeconds;
+    }
+
+    boolean endedAtLimit() {
+        return endedAtLimit;
+    }
+
+    private int interceptApp(long now, String packageName, int packageFlags) {
+        if ((packageFlags & PACKAGE_RESTRICTED) == 0
+                || (packageFlags & PACKAGE_CRITICAL) != 0) {
+            return ACTION_NONE;
+        }
+        if ((packageFlags & PACKAGE_STRICT) != 0) {
+            return ACTION_RECORD_INTERCEPTION | openGate(now, true);
+        }
+        if (packageName.equals(sessionPackage)) {
+            return ACTION_RECORD_INTERCEPTION | restrict(now, true);
+        }
+        if (!budget.hasRemaining()) {
+            return ACTION_RECORD_INTERCEPTION | beginEviction(now, packageName);
+        }
+        return ACTION_RECORD_INTERCEPTION | openGate(now, false);
+    }
+
+    private int openGate(long now, boolean strict) {
+        lastDecisionAt = now;
+        int actions = endSession(now);
+        // Forget the foreground so the app is re-detected when it returns, however the gate
+        // was dismissed.
+        foregroundPackage = null;
+        return actions | ACTION_OPEN_GATE | (strict ? ACTION_STRICT : 0);
+    }
+
+    private int beginEviction(long now, String packageName) {
+        evictionPackage = packageName;
+        evictionStartedAt = now;
+        return ACTION_EVICT;
+    }
+
+    private int checkBudget(long now) {
+        if (sessionPackage == null || budgetLockedOut || sessionLimitSeconds <= 0) {
+            return ACTION_NONE;
+        }
+        if (BudgetMath.elapsedCostSeconds(restrictedTimeMs(now)) < sessionLimitSeconds) {
+            return ACTION_NONE;
+        }
+        budgetLockedOut = true;
+        sessionLimitReached = true;
+        String exhausted = sessionPackage;
+        boolean browser = (sessionFlags & PACKAGE_BROWSER) != 0;
+        // Arm the cooldown before the session ends: the events produced while the redirect
+        // edits the address bar would otherwise open another gate.
+        if (browser) lastDecisionAt = now;
+        int actions = endSession(now) | beginEviction(now, exhausted);
+        return browser ? actions | ACTION_SHOW_SESSION_COMPLETE : actions;
+    }
+
+    private int restrict(long now, boolean restricted) {
+        if (sessionPackage == null) restricted = false;
+        if (restricted) {
+            restrictedUseConfirmed = true;
+            if (restrictedSegmentStartedAt != 0) return ACTION_NONE;
+            restrictedSegmentStartedAt = now;
+            return ACTION_START_TICKER;
+        }
+        restrictedUseConfirmed = false;
+        if (restrictedSegmentStartedAt == 0) return ACTION_NONE;
+        accumulatedRestrictedMs += now - restrictedSegmentStartedAt;
+        restrictedSegmentStartedAt = 0;
+        return ACTION_STOP_TICKER;
+    }
+}
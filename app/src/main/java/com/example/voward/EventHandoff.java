@@ -0,0 +1,130 @@
+package com.example.voward;
+
+import android.view.accessibility.AccessibilityEvent;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.Locale;
+
+/**
+ * Bounded queue carrying accessibility events from the main thread to the enforcement thread.
+ *
+ * <p>The framework recycles an {@code AccessibilityEvent} once the callback returns, so the
+ * main thread copies the few fields enforcement reads into an immutable {@link Record}. When
+ * the queue is full the oldest window-content event is dropped first: a later event from
+ * the same browser or app re-reads the same window anyway. Depth, drops and the time each
+ * record waited are measured. A record may carry a copy of the event, kept so the consumer
+ * can fetch its source node; the consumer, a drop or {@link #clear()} recycles it.</p>
+ */
+final class EventHandoff {
+    static final int DEFAULT_CAPACITY = 64;
+
+    /** The fields of one accessibility event that enforcement reads. */
+    static final class Record {
+        final int eventType;
+        final String packageName;
+        final String className;
+        final int windowId;
+        final int contentChangeTypes;
+        /** A copy of the event for fetching its source, or null when none was kept. */
+        final AccessibilityEvent sourceEvent;
+        final long enqueuedAt;
+
+        Record(int eventType, String packageName, String className, int windowId,
+               int contentChangeTypes, AccessibilityEvent sourceEvent, long enqueuedAt) {
+            this.eventType = eventType;
+            this.packageName = packageName;
+            this.className = className;
+            this.windowId = windowId;
+            this.contentChangeTypes = contentChangeTypes;
+            this.sourceEvent = sourceEvent;
+            this.enqueuedAt = enqueuedAt;
+        }
+
+        /** Recycles the kept event copy, once the record is handled or dropped. */
+        void release() {
+            if (sourceEvent != null) sourceEvent.recycle();
+        }
+    }
+
+    private final int capacity;
+    private final ArrayDeque<Record> queue;
+    private int maxDepth;
+    private long handedOver;
+    private long dropped;
+    private long totalWaitMs;
+    private long maxWaitMs;
+
+    EventHandoff(int capacity) {
+        this.capacity = capacity;
+        this.queue = new ArrayDeque<>(capacity);
+    }
+
+    /** Queues {@code record}; true when the queue was empty and the consumer needs waking. */
+    synchronized boolean offer(Record record) {
+        boolean wasEmpty = queue.isEmpty();
+        if (queue.size() >= capacity) dropOne();
+        queue.addLast(record);
+        maxDepth = Math.max(maxDepth, queue.size());
+        return wasEmpty;
+    }
+
+    /** The oldest record, or null when the queue is empty. */
+    synchronized Record poll(long now) {
+        Record record = queue.pollFirst();
+        if (record == null) return null;
+        long waited = Math.max(0, now - record.enqueuedAt);
+        handedOver++;
+        totalWaitMs += waited;
+        maxWaitMs = Math.max(maxWaitMs, waited);
+        return record;
+    }
+
+    /** Discards every queued record, recycling its kept event copy; returns how many. */
+    synchronized int clear() {
+        int discarded = queue.size();
+        for (Record record; (record = queue.pollFirst()) != null; ) record.release();
+        return discarded;
+    }
+
+    synchronized int depth() {
+        return queue.size();
+    }
+
+    synchronized int maxDepth() {
+        return maxDepth;
+    }
+
+    synchronized long dropped() {
+        return dropped;
+    }
+
+    synchronized long maxWaitMs() {
+        return maxWaitMs;
+    }
+
+    synchronized double meanWaitMs() {
+        return handedOver == 0 ? 0 : (double) totalWaitMs / handedOver;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format(Locale.ROOT,
+                "%d handed over, %d dropped, depth %d max, wait %.1f ms mean, %d ms max",
+                handedOver, dropped, maxDepth, meanWaitMs(), maxWaitMs);
+    }
+
+    private void dropOne() {
+        dropped++;
+        for (Iterator<Record> it = queue.iterator(); it.hasNext(); ) {
+            Record record = it.next();
+            if (record.eventType == AccessibilityEvent.TYPE_WINDOW_CONTENT_CHANGED) {
+                it.remove();
+                record.release();
+                return;
+            }
+        }
+        Record oldest = queue.pollFirst();
+        if (oldest != null) oldest.release();
+    }
+}
@@ -0,0 +1,278 @@
+package com.example.voward;
+
+import android.accessibilityservice.AccessibilityService;
+import android.view.accessibility.AccessibilityNodeInfo;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Window-tree lookups shared by every check run for one accessibility event or watchdog tick.
+ *
+ * <p>The active root is fetched at most once and each browser's address bar is resolved at
+ * most once, however many checks ask for them; a bar still in the {@link AddressBarCache}
+ * from an earlier event is only refreshed. Nodes returned by {@link #root()},
+ * {@link #eventSource} and {@link #addressBar} belong to the context or the cache and are
+ * never recycled by callers; nodes from {@link #child} and {@link #findByText} are the
+ * caller's to recycle, as they would be from the framework. Every call that can cross the
+ * binder is counted into {@link Stats}.</p>
+ */
+final class EventTreeContext implements AutoCloseable {
+    private static final List<String> ADDRESS_BAR_HINTS =
+            Arrays.asList("address", "url", "search bar");
+    private static final int MAX_SEARCH_DEPTH = 30;
+
+    /** Binder calls per context, accumulated over the service's lifetime. */
+    static final class Stats {
+        private long contexts;
+        private long binderCalls;
+        private int maxPerContext;
+
+        void record(int calls) {
+            contexts++;
+            binderCalls += calls;
+            maxPerContext = Math.max(maxPerContext, calls);
+        }
+
+        long contexts() {
+            return contexts;
+        }
+
+        long binderCalls() {
+            return binderCalls;
+        }
+
+        int maxPerContext() {
+            return maxPerContext;
+        }
+
+        @Override
+        public String toString() {
+            double average = contexts == 0 ? 0 : (double) binderCalls / contexts;
+            return String.format(Locale.ROOT, "%d tree contexts, %.1f binder calls each, %d max",
+                    contexts, average, maxPerContext);
+        }
+    }
+
+    /** Hands out one shared context at a time; opening while one is open reuses it. */
+    static final class Scope {
+        private final AccessibilityService service;
+        private final AddressBarCache addressBarCache;
+        private final AddressBarIdCatalog addressBarIds;
+        private final Stats stats = new Stats();
+        private EventTreeContext open;
+
+        Scope(AccessibilityService service, AddressBarCache addressBarCache,
+              AddressBarIdCatalog addressBarIds) {
+            this.service = service;
+            this.addressBarCache = addressBarCache;
+            this.addressBarIds = addressBarIds;
+        }
+
+        EventTreeContext open() {
+            if (open == null) open = new EventTreeContext(this);
+            open.depth++;
+            return open;
+        }
+
+        Stats stats() {
+            return stats;
+        }
+    }
+
+    private final Scope scope;
+    private final List<AccessibilityNodeInfo> owned = new ArrayList<>();
+    // Resolved bars by browser package; a present null means none was found.
+    private final Map<String, AccessibilityNodeInfo> addressBars = new HashMap<>();
+    private int depth;
+    private boolean rootFetched;
+    private AccessibilityNodeInfo root;
+    private EventHandoff.Record sourceRecord;
+    private AccessibilityNodeInfo source;
+    private int binderCalls;
+
+    private EventTreeContext(Scope scope) {
+        this.scope = scope;
+    }
+
+    /** The active window's root, or null; owned by the context. */
+    AccessibilityNodeInfo root() {
+        if (!rootFetched) {
+            rootFetched = true;
+            binderCalls++;
+            root = own(scope.service.getRootInActiveWindow());
+        }
+        return root;
+    }
+
+    /** The source node of {@code record}'s event, or null; owned by the context. */
+    AccessibilityNodeInfo eventSource(EventHandoff.Record record) {
+        if (record.sourceEvent == null) return null;
+        if (sourceRecord != record) {
+            sourceRecord = record;
+            binderCalls++;
+            source = own(record.sourceEvent.getSource());
+        }
+        return source;
+    }
+
+    String rootPackageName() {
+        AccessibilityNodeInfo node = root();
+        CharSequence packageName = node == null ? null : node.getPackageName();
+        return packageName == null ? null : packageName.toString();
+    }
+
+    /**
+     * The address bar of {@code config} in the active root: an ID learned for the installed
+     * browser version first, then an editable node among the configured view IDs, then a
+     * content-description search whose result is learned. Callers check that the root
+     * belongs to the browser first.
+     */
+    AccessibilityNodeInfo addressBar(BrowserSupport.Config config) {
+        if (addressBars.containsKey(config.packageName)) {
+            return addressBars.get(config.packageName);
+        }
+        AccessibilityNodeInfo bar = lookUpAddressBar(config);
+        addressBars.put(config.packageName, bar);
+        return bar;
+    }
+
+    /** Like {@link AccessibilityNodeInfo#getChild}; the caller recycles the result. */
+    AccessibilityNodeInfo child(AccessibilityNodeInfo parent, int index) {
+        binderCalls++;
+        return parent.getChild(index);
+    }
+
+    /** Like {@link AccessibilityNodeInfo#getParent}; the caller recycles the result. */
+    AccessibilityNodeInfo parent(AccessibilityNodeInfo node) {
+        binderCalls++;
+        return node.getParent();
+    }
+
+    /** Text search from the root; the caller recycles every result. */
+    List<AccessibilityNodeInfo> findByText(String text) {
+        AccessibilityNodeInfo node = root();
+        if (node == null) return null;
+        binderCalls++;
+        return node.findAccessibilityNodeInfosByText(text);
+    }
+
+    @Override
+    public void close() {
+        if (--depth > 0) return;
+        for (AccessibilityNodeInfo node : owned) node.recycle();
+        owned.clear();
+        addressBars.clear();
+        root = null;
+        sourceRecord = null;
+        source = null;
+        scope.open = null;
+        scope.stats.record(binderCalls);
+    }
+
+    private AccessibilityNodeInfo own(AccessibilityNodeInfo node) {
+        if (node != null) owned.add(node);
+        return node;
+    }
+
+    private AccessibilityNodeInfo lookUpAddressBar(BrowserSupport.Config config) {
+        AccessibilityNodeInfo node = root();
+        if (node == null) return null;
+        AddressBarCache cache = scope.addressBarCache;
+        int windowId = node.getWindowId();
+        if (cache.contains(config.packageName)) binderCalls++;
+        AccessibilityNodeInfo cached = cache.get(config.packageName, windowId);
+        if (cached != null) return cached;
+
+        AddressBarCache.Strategy strategy = AddressBarCache.Strategy.LEARNED_ID;
+        AccessibilityNodeInfo bar = findByLearnedId(node, config.packageName);
+        if (bar == null) {
+            strategy = AddressBarCache.Strategy.VIEW_ID;
+            bar = findByViewIds(node, config);
+        }
+        if (bar == null) {
+            strategy = AddressBarCache.Strategy.CONTENT_DESCRIPTION;
+            bar = findByContentDescription(node, 0);
+            if (bar != null) {
+                scope.addressBarIds.learn(
+                        config.packageName, bar.getViewIdResourceName(), bar.getClassName());
+            }
+        }
+        if (bar == null) return null;
+        return cache.put(config.packageName, windowId, bar, strategy) ? bar : own(bar);
+    }
+
+    private AccessibilityNodeInfo findByLearnedId(
+            AccessibilityNodeInfo node, String packageName) {
+        AddressBarIdCatalog.Entry learned = scope.addressBarIds.learned(packageName);
+        if (learned == null) return null;
+        binderCalls++;
+        List<AccessibilityNodeInfo> nodes = node.findAccessibilityNodeInfosByViewId(learned.viewId);
+        if (nodes == null || nodes.isEmpty()) return null;
+        AccessibilityNodeInfo match = null;
+        for (AccessibilityNodeInfo candidate : nodes) {
+            CharSequence className = candidate.getClassName();
+            if (match == null && learned.className.contentEquals(
+                    className == null ? "" : className)) {
+                match = candidate;
+            } else {
+                candidate.recycle();
+            }
+        }
+        // The ID now names another kind of view; learn again from the next search.
+        if (match == null) scope.addressBarIds.forget(packageName);
+        return match;
+    }
+
+    private AccessibilityNodeInfo findByViewIds(
+            AccessibilityNodeInfo node, BrowserSupport.Config config) {
+        AccessibilityNodeInfo fallback = null;
+        for (String id : config.addressBarIds) {
+            binderCalls++;
+            List<AccessibilityNodeInfo> nodes = node.findAccessibilityNodeInfosByViewId(id);
+            if (nodes == null) continue;
+            AccessibilityNodeInfo editable = null;
+            for (AccessibilityNodeInfo candidate : nodes) {
+                if (candidate.isEditable()) {
+                    editable = candidate;
+                    break;
+                }
+            }
+            if (editable != null) {
+                if (fallback != null) fallback.recycle();
+                // Recycle every returned node except the editable result.
+                for (AccessibilityNodeInfo other : nodes) {
+                    if (other != editable) other.recycle();
+                }
+                return editable;
+            }
+            for (AccessibilityNodeInfo candidate : nodes) {
+                if (fallback == null) fallback = candidate;
+                else candidate.recycle();
+            }
+        }
+        return fallback;
+    }
+
+    private AccessibilityNodeInfo findByContentDescription(AccessibilityNodeInfo node, int depth) {
+        if (node == null || depth > MAX_SEARCH_DEPTH) return null;
+        CharSequence desc = node.getContentDescription();
+        if (desc != null) {
+            String d = desc.toString().toLowerCase(Locale.ROOT);
+            for (String hint : ADDRESS_BAR_HINTS) {
+                if (d.contains(hint)) return AccessibilityNodeInfo.obtain(node);
+            }
+        }
+        for (int i = 0; i < node.getChildCount(); i++) {
+            AccessibilityNodeInfo child = child(node, i);
+            AccessibilityNodeInfo result = findByContentDescription(child, depth + 1);
+            if (child != null) child.recycle();
+            if (result != null) return result;
+        }
+        return null;
+    }
+}
@@ -0,0 +1,393 @@
+package com.example.voward;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * Deterministic automaton over a fixed list of {@code glob:} rule bodies.
+ *
+ * <p>A glob must match the whole normalized address: {@code *} matches any run of characters
+ * and {@code ?} exactly one; every other character is literal. All globs are compiled by
+ * subset construction into one table-driven DFA, so a lookup reads each character once and
+ * never backtracks. If the combined DFA would exceed {@value #MAX_STATES} states it is split
+ * into consecutive runs of globs, each its own DFA; a lookup then costs one pass per run.
+ * Globs are identified by their insertion index and lower indexes take priority.</p>
+ */
+final class GlobAutomaton {
+    static final int MAX_GLOB_LENGTH = 256;
+    static final int MAX_WILDCARDS = 8;
+    static final int MAX_STATES = 1024;
+
+    private static final byte LITERAL = 0;
+    private static final byte ANY = 1;
+    private static final byte STAR = 2;
+    private static final byte END = 3;
+
+    // Consecutive glob ranges in priority order.
+    private final Dfa[] parts;
+
+    private GlobAutomaton(Dfa[] parts) {
+        this.parts = parts;
+    }
+
+    /** Returns the lowest index of a glob matching the whole text, or -1 when none does. */
+    int find(CharSequence text) {
+        if (text == null) return -1;
+        for (Dfa part : parts) {
+            int glob = part.find(text);
+            if (glob >= 0) return glob;
+        }
+        return -1;
+    }
+
+    /** Number of separate DFAs the globs were split into. */
+    int partCount() {
+        return parts.length;
+    }
+
+    /**
+     * Whether {@code glob} is within the length and wildcard limits, has a literal character,
+     * and compiles to a DFA within the state limit on its own.
+     */
+    static boolean isSupported(String glob) {
+        return single(glob) != null;
+    }
+
+    /** The automaton for {@code glob} alone, or null when it is not {@link #isSupported}. */
+    static GlobAutomaton single(String glob) {
+        if (!withinLimits(glob)) return null;
+        Dfa dfa = Dfa.build(Arrays.asList(glob), 0, 1);
+        return dfa == null ? null : new GlobAutomaton(new Dfa[] {dfa});
+    }
+
+    private static boolean withinLimits(String glob) {
+        if (glob == null || glob.isEmpty() || glob.length() > MAX_GLOB_LENGTH) return false;
+        int wildcards = 0;
+        boolean literal = false;
+        for (int i = 0; i < glob.length(); i++) {
+            char c = glob.charAt(i);
+            if (c == '*') {
+                if (i == 0 || glob.charAt(i - 1) != '*') wildcards++;
+            } else if (c != '?') {
+                literal = true;
+            }
+        }
+        return literal && wildcards <= MAX_WILDCARDS;
+    }
+
+    static final class Builder {
+        private final List<String> globs = new ArrayList<>();
+
+        /** Adds a supported glob and returns its priority index. */
+        int add(String glob) {
+            if (!isSupported(glob)) throw new IllegalArgumentException("Unsupported glob: " + glob);
+            return addChecked(glob);
+        }
+
+        /**
+         * Adds a glob that already passed {@link #isSupported}, such as the body of a compiled
+         * {@code glob:} rule, without building its DFA again.
+         */
+        int addChecked(String glob) {
+            globs.add(glob);
+            return globs.size() - 1;
+        }
+
+        /**
+         * Packs the globs greedily: each DFA takes the longest run from where the last one
+         * ended that fits the state limit. Adding globs never removes states, so the longest
+         * run is found by search. The first search tries every glob at once and each later
+         * one the previous run's length, since neighbouring rules tend to be alike; it then
+         * grows a step at a time, doubling the step, or bisects back once a run fails. A
+         * failed build is the expensive one, so similar runs cost one fit and one failure.
+         */
+        GlobAutomaton build() {
+            List<Dfa> parts = new ArrayList<>();
+            int count = globs.size();
+            int start = 0;
+            int run = count;
+            while (start < count) {
+                Dfa fit = null;
+                int fitEnd = start;
+                int failEnd = count + 1;
+                int step = 1;
+                int end = start + Math.min(run, count - start);
+                while (true) {
+                    Dfa dfa = Dfa.build(globs, start, end);
+                    if (dfa != null) {
+                        fit = dfa;
+                        fitEnd = end;
+                    } else {
+                        failEnd = end;
+                    }
+                    if (failEnd - fitEnd <= 1) break;
+                    if (failEnd > count) {
+                        end = Math.min(count, fitEnd + step);
+                        step *= 2;
+                    } else {
+                        end = (fitEnd + failEnd) >>> 1;
+                    }
+                }
+                if (fit == null) {
+                    throw new IllegalArgumentException("Unsupported glob: " + globs.get(start));
+                }
+                parts.add(fit);
+                run = fitEnd - start;
+                start = fitEnd;
+            }
+            return new GlobAutomaton(parts.toArray(new Dfa[0]));
+        }
+    }
+
+    private static final class Dfa {
+        // Character classes: 0 for characters no glob mentions, then one per literal.
+        private final int[] asciiClass;
+        private final char[] otherLiterals;
+        private final int[] otherClass;
+        private final int classCount;
+        private final int[] next;
+        // Lowest glob whose END is in the state, or -1.
+        private final int[] accept;
+        // Lowest glob that became certain to match on entering the state, or -1.
+        private final int[] settled;
+        // No position is left that could still reach an END.
+        private final boolean[] dead;
+
+        private Dfa(int[] asciiClass, char[] otherLiterals, int[] otherClass, int classCount,
+                    int[] next, int[] accept, int[] settled, boolean[] dead) {
+            this.asciiClass = asciiClass;
+            this.otherLiterals = otherLiterals;
+            this.otherClass = otherClass;
+            this.classCount = classCount;
+            this.next = next;
+            this.accept = accept;
+            this.settled = settled;
+            this.dead = dead;
+        }
+
+        int find(CharSequence text) {
+            int state = 0;
+            int best = settled[0];
+            if (dead[0]) return best;
+            for (int i = 0; i < text.length(); i++) {
+                state = next[state * classCount + classOf(text.charAt(i))];
+                best = better(best, settled[state]);
+                if (dead[state]) return best;
+            }
+            return better(best, accept[state]);
+        }
+
+        private static int better(int a, int b) {
+            return a < 0 || (b >= 0 && b < a) ? b : a;
+        }
+
+        private int classOf(char c) {
+            if (c < 128) return asciiClass[c];
+            int found = Arrays.binarySearch(otherLiterals, c);
+            return found >= 0 ? otherClass[found] : 0;
+        }
+
+        /** Subset construction over globs [start, end); null if it exceeds MAX_STATES. */
+        static Dfa build(List<String> globs, int start, int end) {
+            // One NFA position per glob token plus an END position per glob.
+            TreeSet<Character> literals = new TreeSet<>();
+            List<Byte> kinds = new ArrayList<>();
+            List<Character> chars = new ArrayList<>();
+            List<Integer> owners = new ArrayList<>();
+            BitSet initial = new BitSet();
+            for (int glob = start; glob < end; glob++) {
+                String pattern = globs.get(glob);
+                initial.set(kinds.size());
+                for (int i = 0; i < pattern.length(); i++) {
+                    char c = pattern.charAt(i);
+                    if (c == '*' && i > 0 && pattern.charAt(i - 1) == '*') continue;
+                    kinds.add(c == '*' ? STAR : c == '?' ? ANY : LITERAL);
+                    chars.add(c);
+                    owners.add(glob);
+                    if (c != '*' && c != '?') literals.add(c);
+                }
+                kinds.add(END);
+                chars.add('\0');
+                owners.add(glob);
+            }
+
+            int[] asciiClass = new int[128];
+            List<Character> other = new ArrayList<>();
+            Map<Character, Integer> classes = new HashMap<>();
+            for (char c : literals) {
+                int cls = classes.size() + 1;
+                classes.put(c, cls);
+                if (c < 128) asciiClass[c] = cls;
+                else other.add(c);
+            }
+            int classCount = classes.size() + 1;
+            char[] otherLiterals = new char[other.size()];
+            int[] otherClass = new int[other.size()];
+            for (int i = 0; i < otherLiterals.length; i++) {
+                otherLiterals[i] = other.get(i);
+                otherClass[i] = classes.get(otherLiterals[i]);
+            }
+
+            int positions = kinds.size();
+            byte[] kind = new byte[positions];
+            int[] literalClass = new int[positions];
+            int[] owner = new int[positions];
+            for (int p = 0; p < positions; p++) {
+                kind[p] = kinds.get(p);
+                literalClass[p] = kind[p] == LITERAL ? classes.get(chars.get(p)) : -1;
+                owner[p] = owners.get(p);
+            }
+
+            Map<StateKey, Integer> ids = new HashMap<>();
+            List<BitSet> states = new ArrayList<>();
+            closure(initial, kind);
+            settle(initial, kind);
+            ids.put(new StateKey(initial), 0);
+            states.add(initial);
+            int[] next = new int[64 * classCount];
+            // Literal positions of the current state, chained per class.
+            int[] firstLiteral = new int[classCount];
+            int[] nextLiteral = new int[positions];
+            BitSet shared = new BitSet(positions);
+            BitSet target = new BitSet(positions);
+            for (int state = 0; state < states.size(); state++) {
+                BitSet current = states.get(state);
+                // Stars and wildcards advance on every class, literals on their own only.
+                // Closure and settling act on each position alone, so the shared part is
+                // closed once and each class adds its literal successors to it. Classes no
+                // literal here reads share one target, built in a reused set.
+                shared.clear();
+                Arrays.fill(firstLiteral, -1);
+                for (int p = current.nextSetBit(0); p >= 0; p = current.nextSetBit(p + 1)) {
+                    if (kind[p] == STAR) {
+                        shared.set(p);
+                    } else if (kind[p] == ANY) {
+                        shared.set(p + 1);
+                    } else if (kind[p] == LITERAL) {
+                        nextLiteral[p] = firstLiteral[literalClass[p]];
+                        firstLiteral[literalClass[p]] = p;
+                    }
+                }
+                closure(shared, kind);
+                settle(shared, kind);
+                int sharedId = -1;
+                for (int cls = 0; cls < classCount; cls++) {
+                    int id;
+                    if (firstLiteral[cls] < 0 && sharedId >= 0) {
+                        id = sharedId;
+                    } else {
+                        target.clear();
+                        target.or(shared);
+                        for (int p = firstLiteral[cls]; p >= 0; p = nextLiteral[p]) {
+                            enter(target, p + 1, kind);
+                        }
+                        StateKey key = new StateKey(target);
+                        Integer known = ids.get(key);
+                        if (known == null) {
+                            if (states.size() == MAX_STATES) return null;
+                            known = states.size();
+                            ids.put(key, known);
+                            states.add((BitSet) target.clone());
+                        }
+                        id = known;
+                        if (firstLiteral[cls] < 0) sharedId = id;
+                    }
+                    int slot = state * classCount + cls;
+                    if (slot >= next.length) next = Arrays.copyOf(next, next.length * 2);
+                    next[slot] = id;
+                }
+            }
+
+            int[] accept = new int[states.size()];
+            int[] settled = new int[states.size()];
+            boolean[] dead = new boolean[states.size()];
+            for (int state = 0; state < states.size(); state++) {
+                BitSet set = states.get(state);
+                settled[state] = -1;
+                int live = 0;
+                for (int p = set.nextSetBit(0); p >= 0; p = set.nextSetBit(p + 1)) {
+                    if (isSettledEnd(p, set, kind)) {
+                        if (settled[state] < 0) settled[state] = owner[p];
+                    } else {
+                        live++;
+                    }
+                }
+                dead[state] = live == 0;
+                accept[state] = -1;
+                // Positions are laid out in priority order, so the first END is the best glob.
+                for (int p = set.nextSetBit(0); p >= 0; p = set.nextSetBit(p + 1)) {
+                    if (kind[p] == END) {
+                        accept[state] = owner[p];
+                        break;
+                    }
+                }
+            }
+            return new Dfa(asciiClass, otherLiterals, otherClass, classCount,
+                    Arrays.copyOf(next, states.size() * classCount), accept, settled, dead);
+        }
+
+        /**
+         * A position set as a map key. {@link BitSet#hashCode} folds its words together, so
+         * the small, dense sets of a subset construction collide; this hashes them in order.
+         */
+        private static final class StateKey {
+            private final long[] words;
+            private final int hash;
+
+            StateKey(BitSet set) {
+                this.words = set.toLongArray();
+                this.hash = Arrays.hashCode(words);
+            }
+
+            @Override
+            public boolean equals(Object other) {
+                return other instanceof StateKey && Arrays.equals(words, ((StateKey) other).words);
+            }
+
+            @Override
+            public int hashCode() {
+                return hash;
+            }
+        }
+
+        /** Adds {@code position} as {@link #closure} and {@link #settle} would leave it. */
+        private static void enter(BitSet set, int position, byte[] kind) {
+            if (kind[position] != STAR) {
+                set.set(position);
+                return;
+            }
+            set.set(position + 1);
+            if (kind[position + 1] != END) set.set(position);
+        }
+
+        /** A star may match nothing, so reaching it also reaches the position after it. */
+        private static void closure(BitSet set, byte[] kind) {
+            for (int p = set.nextSetBit(0); p >= 0; p = set.nextSetBit(p + 1)) {
+                if (kind[p] == STAR) set.set(p + 1);
+            }
+        }
+
+        /**
+         * A glob that reaches its trailing star matches whatever follows. Dropping the star
+         * leaves its END as a one-step marker that {@link #find} records; kept, the star would
+         * stay in every later state, and each combination of settled globs would be a state
+         * of its own.
+         */
+        private static void settle(BitSet set, byte[] kind) {
+            for (int p = set.nextSetBit(0); p >= 0; p = set.nextSetBit(p + 1)) {
+                if (kind[p] == STAR && kind[p + 1] == END) set.clear(p);
+            }
+        }
+
+        /** Closure always sets a trailing star's END, so an END without its star is a marker. */
+        private static boolean isSettledEnd(int position, BitSet set, byte[] kind) {
+            return kind[position] == END && position > 0 && kind[position - 1] == STAR
+                    && !set.get(position - 1);
+        }
+    }
+}
@@ -0,0 +1,655 @@
+package com.example.voward;
+
+import java.text.Normalizer;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Gathers {@link UninstallGuardPolicy.ScreenEvidence} from a Settings or installer window.
+ *
+ * <p>The walk is iterative, depth first and in child order, over a fixed-size stack. Every
+ * signal table, Voward's identifiers and the class and view-ID fragments sit in one
+ * {@link KeywordAutomaton}, so a node's text, description and view ID are read once, a
+ * character at a time, without building strings. The walk stops as soon as more nodes
+ * cannot change the classification for the window class, and gives up past a node or time
+ * budget with the evidence found so far. {@link #fingerprint} walks the same nodes to tell
+ * whether a screen changed since its last scan.
+ *
+ * <p>{@link #scanWindow} also keeps what each node contributed, keyed by the node, so a
+ * content change in that window can be merged by {@link #rescan}: only the changed node, or
+ * its subtree, is read again. The kept nodes belong to the scanner until
+ * {@link #forgetWindow}. Not thread-safe; the service scans on its enforcement thread.</p>
+ */
+final class GuardScreenScanner {
+    /** Reads a window tree for the scan; {@code N} is the platform node type. */
+    interface Tree<N> {
+        int childCount(N node);
+
+        /** The child, or null when it is gone. The scanner releases what this returns. */
+        N child(N node, int index);
+
+        void release(N node);
+
+        CharSequence text(N node);
+
+        CharSequence description(N node);
+
+        CharSequence viewId(N node);
+
+        CharSequence className(N node);
+
+        boolean isCheckable(N node);
+
+        /** Writes the screen bounds as {top, bottom}; false when the bounds are empty. */
+        boolean bounds(N node, int[] topBottom);
+
+        /** A copy of a node the caller keeps owning; the scanner releases the copy. */
+        N copy(N node);
+    }
+
+    // Deeper nodes are skipped, to protect against malformed or unusually deep OEM trees.
+    static final int MAX_DEPTH = 30;
+    static final int DEFAULT_MAX_NODES = 2_000;
+    static final long DEFAULT_MAX_NANOS = 250_000_000L;
+
+    // Keyword tags, each read from one stream: Voward's identity from the lower-case text,
+    // control phrases from the accent-stripped text, IDs and class fragments from their own.
+    private static final int TARGET = 1;
+    private static final int SERVICE_LABEL = 1 << 1;
+    private static final int APP_TEXT = 1 << 2;
+    private static final int ADMIN_TEXT = 1 << 3;
+    private static final int APP_ID = 1 << 4;
+    private static final int ADMIN_ID = 1 << 5;
+    private static final int ACCESSIBILITY_ID = 1 << 6;
+    private static final int SWITCH = 1 << 7;
+    private static final int TOGGLE_BUTTON = 1 << 8;
+    private static final int MATERIAL_BUTTON = 1 << 9;
+    private static final int TEXT_TAGS = TARGET | SERVICE_LABEL;
+    private static final int FOLDED_TAGS = APP_TEXT | ADMIN_TEXT;
+    private static final int VIEW_ID_TAGS = APP_ID | ADMIN_ID | ACCESSIBILITY_ID | SWITCH;
+    private static final int CLASS_TAGS = SWITCH | TOGGLE_BUTTON | MATERIAL_BUTTON;
+
+    // Latin letters with diacritics and a few letterlike symbols decompose to an ASCII
+    // letter; elsewhere the NFD base is never ASCII, so the character itself can stand in.
+    private static final char FOLD_FIRST = 0x80;
+    private static final char[] LATIN_FOLDS = folds(FOLD_FIRST, (char) 0x24F);
+    private static final char[] LATIN_ADDITIONAL_FOLDS = folds((char) 0x1E00, (char) 0x1EFF);
+    private static final char[] LETTERLIKE_FOLDS = folds((char) 0x2100, (char) 0x214F);
+
+    private static final long FNV_OFFSET = 0xCBF29CE484222325L;
+    private static final long FNV_PRIME = 0x100000001B3L;
+
+    // AccessibilityEvent content-change types; this class must not depend on the framework.
+    private static final int CONTENT_CHANGE_TYPE_SUBTREE = 0x00000001;
+    private static final int CONTENT_CHANGE_TYPE_PANE_APPEARED = 0x00000010;
+    private static final int CONTENT_CHANGE_TYPE_PANE_DISAPPEARED = 0x00000020;
+
+    // What one node contributes to the evidence.
+    private static final int NODE_TARGET = 1;
+    private static final int NODE_SERVICE_TOGGLE = 1 << 1;
+    private static final int NODE_APP_CONTROL = 1 << 2;
+    private static final int NODE_ADMIN_CONTROL = 1 << 3;
+    private static final int NODE_CHECKABLE = 1 << 4;
+    private static final int NODE_BUTTON = 1 << 5;
+
+    /** One node of the kept window and what it contributed when last read. */
+    private static final class Facts {
+        final Object node;
+        final Facts parent;
+        final int depth;
+        int bits;
+        int targetBottom;
+        int buttonTop;
+
+        Facts(Object node, Facts parent) {
+            this.node = node;
+            this.parent = parent;
+            this.depth = parent == null ? 0 : parent.depth + 1;
+        }
+
+        boolean isUnder(Facts ancestor) {
+            Facts facts = this;
+            while (facts.depth > ancestor.depth) facts = facts.parent;
+            return facts == ancestor && this != ancestor;
+        }
+    }
+
+    private final int maxNodes;
+    private final long maxNanos;
+    private KeywordAutomaton signals;
+
+    // Reused by every scan.
+    private final Object[] stack = new Object[MAX_DEPTH + 1];
+    private final int[] nextChild = new int[MAX_DEPTH + 1];
+    private final int[] bounds = new int[2];
+    private int[] buttonTops = new int[16];
+
+    // Evidence of the scan in progress.
+    private boolean targetVisible;
+    private boolean appControlVisible;
+    private boolean deviceAdminControlVisible;
+    private boolean targetAccessibilityToggleVisible;
+    private boolean checkableControlVisible;
+    private int targetBottom;
+    private int buttonCount;
+    // Set by visit for the node just read.
+    private int nodeTargetBottom;
+    private int nodeButtonTop;
+
+    // The kept window: every node read by its last scanWindow and later rescans.
+    private final HashMap<Object, Facts> window = new HashMap<>();
+    private final Facts[] path = new Facts[MAX_DEPTH + 1];
+    private int windowId = -1;
+    private String windowClassName;
+    // False when that scan stopped before the last node, so unread nodes may hold evidence.
+    private boolean windowComplete;
+
+    private long hash;
+    private int lastNodesVisited;
+    private boolean lastTruncated;
+    private long scans;
+    private long rescans;
+    private long rescanFallbacks;
+    private long fingerprints;
+    private long nodesVisited;
+    private int maxNodesVisited;
+    private long earlyStops;
+    private long truncatedScans;
+
+    GuardScreenScanner(int maxNodes, long maxNanos) {
+        this.maxNodes = maxNodes;
+        this.maxNanos = maxNanos;
+    }
+
+    /**
+     * Sets Voward's identifiers (package, app name, service label) and the service label on
+     * its own, in lower case. Rebuilds the matcher, so call it again only when the labels
+     * change with the locale.
+     */
+    void setTarget(List<String> targetIdentifiers, String accessibilityServiceLabel) {
+        KeywordAutomaton.Builder builder = new KeywordAutomaton.Builder();
+        for (String identifier : targetIdentifiers) {
+            if (!identifier.isEmpty()) builder.add(identifier, TARGET);
+        }
+        if (!accessibilityServiceLabel.isEmpty()) {
+            builder.add(accessibilityServiceLabel, SERVICE_LABEL);
+        }
+        addAll(builder, UninstallGuardPolicy.appControlTextSignals(), APP_TEXT);
+        addAll(builder, UninstallGuardPolicy.deviceAdminTextSignals(), ADMIN_TEXT);
+        addAll(builder, UninstallGuardPolicy.appControlViewIdSignals(), APP_ID);
+        addAll(builder, UninstallGuardPolicy.deviceAdminViewIdSignals(), ADMIN_ID);
+        addAll(builder, UninstallGuardPolicy.accessibilityControlViewIdSignals(),
+                ACCESSIBILITY_ID);
+        builder.add("switch", SWITCH);
+        builder.add("togglebutton", TOGGLE_BUTTON);
+        builder.add("materialbutton", MATERIAL_BUTTON);
+        signals = builder.build();
+    }
+
+    /** Scans the tree under {@code root}, which stays owned by the caller. */
+    <N> UninstallGuardPolicy.ScreenEvidence scan(Tree<N> tree, N root, String className) {
+        clearEvidence();
+        boolean settled = walk(tree, root, UninstallGuardPolicy.evidenceNeeded(className), null);
+        scans++;
+        if (!lastTruncated && settled) earlyStops++;
+        return evidence();
+    }
+
+    /**
+     * Like {@link #scan}, and keeps every node read with what it contributed, as the model
+     * of window {@code windowId} that {@link #rescan} updates. Drops the previous model.
+     */
+    <N> UninstallGuardPolicy.ScreenEvidence scanWindow(Tree<N> tree, N root, int windowId,
+                                                       String className) {
+        forgetWindow(tree);
+        clearEvidence();
+        Facts rootFacts = null;
+        if (root != null) {
+            N copy = tree.copy(root);
+            rootFacts = new Facts(copy, null);
+            window.put(copy, rootFacts);
+        }
+        boolean settled = walk(tree, root, UninstallGuardPolicy.evidenceNeeded(className),
+                rootFacts);
+        this.windowId = windowId;
+        this.windowClassName = className;
+        windowComplete = !settled && !lastTruncated;
+        scans++;
+        if (!lastTruncated && settled) earlyStops++;
+        return evidence();
+    }
+
+    /** Whether {@link #rescan} can be tried for this window. */
+    boolean hasWindow(int windowId, String className) {
+        return !window.isEmpty() && windowId == this.windowId
+                && className.equals(windowClassName);
+    }
+
+    /**
+     * Merges a content change into the kept window: reads {@code source} again and, when
+     * {@code subtree}, replaces everything under it with a fresh walk of its subtree. Null
+     * when the kept model cannot answer: another window, a source it never read, or a
+     * change that removed the evidence of a model whose scan stopped early. The model is
+     * then dropped and the caller scans the whole window. {@code source} stays owned by
+     * the caller.
+     */
+    @SuppressWarnings("unchecked")
+    <N> UninstallGuardPolicy.ScreenEvidence rescan(Tree<N> tree, N source, boolean subtree,
+                                                   int windowId, String className) {
+        Facts changed = hasWindow(windowId, className) ? window.get(source) : null;
+        if (changed == null) {
+            rescanFallbacks++;
+            forgetWindow(tree);
+            return null;
+        }
+        UninstallGuardPolicy.Evidence needed = UninstallGuardPolicy.evidenceNeeded(className);
+        if (subtree) {
+            for (Iterator<Facts> it = window.values().iterator(); it.hasNext(); ) {
+                Facts facts = it.next();
+                if (facts.isUnder(changed)) {
+                    it.remove();
+                    tree.release((N) facts.node);
+                }
+            }
+            clearEvidence();
+            boolean settled = walk(tree, source, needed, changed);
+            if (settled || lastTruncated) windowComplete = false;
+        } else {
+            record(changed, visit(tree, source));
+            lastNodesVisited = 1;
+            nodesVisited++;
+        }
+        rescans++;
+
+        clearEvidence();
+        for (Facts facts : window.values()) {
+            merge(facts.bits, facts.targetBottom, facts.buttonTop);
+        }
+        if (!windowComplete && !isSettled(needed)) {
+            rescanFallbacks++;
+            forgetWindow(tree);
+            return null;
+        }
+        return evidence();
+    }
+
+    /** Drops the kept window and releases its nodes. */
+    @SuppressWarnings("unchecked")
+    <N> void forgetWindow(Tree<N> tree) {
+        for (Facts facts : window.values()) tree.release((N) facts.node);
+        window.clear();
+        windowId = -1;
+        windowClassName = null;
+    }
+
+    /**
+     * Whether a content change of these {@code AccessibilityEvent} types can have touched
+     * the source's descendants, rather than only the source node itself. Undefined (0)
+     * counts as a subtree change.
+     */
+    static boolean changesSubtree(int contentChangeTypes) {
+        return contentChangeTypes == 0
+                || (contentChangeTypes & (CONTENT_CHANGE_TYPE_SUBTREE
+                | CONTENT_CHANGE_TYPE_PANE_APPEARED | CONTENT_CHANGE_TYPE_PANE_DISAPPEARED)) != 0;
+    }
+
+    /**
+     * Fingerprints the tree under {@code root}: the node count and a hash of every node's
+     * depth, text, description, view ID, class, checkable state and vertical bounds, in walk
+     * order, which covers everything a scan reads. Always reads the whole window, so it only
+     * saves work over a scan that would also read to the end. False when a budget cut the
+     * walk short, in which case the fingerprint does not describe the screen.
+     */
+    <N> boolean fingerprint(Tree<N> tree, N root) {
+        hash = FNV_OFFSET;
+        walk(tree, root, null, null);
+        fingerprints++;
+        return root != null && !lastTruncated;
+    }
+
+    /** Node count of the last fingerprint. */
+    int fingerprintNodes() {
+        return lastNodesVisited;
+    }
+
+    /** Content hash of the last fingerprint. */
+    long fingerprintHash() {
+        return hash;
+    }
+
+    /** Nodes read by the last scan or fingerprint. */
+    int lastNodesVisited() {
+        return lastNodesVisited;
+    }
+
+    /** Whether the last scan or fingerprint hit the node or time budget. */
+    boolean lastScanTruncated() {
+        return lastTruncated;
+    }
+
+    @Override
+    public String toString() {
+        return scans + " scans, " + rescans + " incremental (" + rescanFallbacks
+                + " fell back), " + fingerprints + " fingerprints, " + nodesVisited
+                + " nodes (max " + maxNodesVisited + "), " + earlyStops + " stopped early, "
+                + truncatedScans + " over budget";
+    }
+
+    /**
+     * Walks depth first from {@code root}, scanning each node for {@code needed} evidence, or
+     * hashing it when {@code needed} is null. With {@code rootFacts}, every node read is
+     * kept in the window model under {@code root}'s facts instead of being released.
+     * Returns whether the scan stopped early.
+     */
+    @SuppressWarnings("unchecked")
+    private <N> boolean walk(Tree<N> tree, N root, UninstallGuardPolicy.Evidence needed,
+                             Facts rootFacts) {
+        lastTruncated = false;
+        int visited = 0;
+        boolean settled = needed == UninstallGuardPolicy.Evidence.NONE;
+        if (!settled && root != null) {
+            long start = System.nanoTime();
+            boolean keep = rootFacts != null;
+            int maxDepth = keep ? MAX_DEPTH - rootFacts.depth : MAX_DEPTH;
+            int depth = 0;
+            stack[0] = root;
+            nextChild[0] = 0;
+            path[0] = rootFacts;
+            settled = read(tree, root, 0, needed);
+            visited = 1;
+            while (depth >= 0 && !settled) {
+                N node = (N) stack[depth];
+                int index = nextChild[depth];
+                if (depth == maxDepth || index >= tree.childCount(node)) {
+                    if (depth > 0 && !keep) tree.release(node);
+                    path[depth] = null;
+                    stack[depth--] = null;
+                    continue;
+                }
+                nextChild[depth] = index + 1;
+                if (visited >= maxNodes || System.nanoTime() - start > maxNanos) {
+                    lastTruncated = true;
+                    break;
+                }
+                N child = tree.child(node, index);
+                if (child == null) continue;
+                stack[++depth] = child;
+                nextChild[depth] = 0;
+                if (keep) {
+                    Facts facts = new Facts(child, path[depth - 1]);
+                    Facts replaced = window.put(child, facts);
+                    if (replaced != null) tree.release((N) replaced.node);
+                    path[depth] = facts;
+                }
+                settled = read(tree, child, depth, needed);
+                visited++;
+            }
+            // An early stop or the budget leaves the path to the last node open.
+            for (; depth >= 0; depth--) {
+                if (depth > 0 && !keep) tree.release((N) stack[depth]);
+                path[depth] = null;
+                stack[depth] = null;
+            }
+        }
+
+        lastNodesVisited = visited;
+        nodesVisited += visited;
+        maxNodesVisited = Math.max(maxNodesVisited, visited);
+        if (lastTruncated) truncatedScans++;
+        return settled;
+    }
+
+    private <N> boolean read(Tree<N> tree, N node, int depth,
+                             UninstallGuardPolicy.Evidence needed) {
+        if (needed != null) {
+            int bits = visit(tree, node);
+            merge(bits, nodeTargetBottom, nodeButtonTop);
+            if (path[depth] != null) record(path[depth], bits);
+            return isSettled(needed);
+        }
+        mix(depth);
+        mix(tree.text(node));
+        mix(tree.description(node));
+        mix(tree.viewId(node));
+        mix(tree.className(node));
+        mix(tree.isCheckable(node) ? 1 : 0);
+        // A window scanned mid-layout, with empty bounds, must not share a later verdict.
+        if (tree.bounds(node, bounds)) {
+            mix(bounds[0]);
+            mix(bounds[1]);
+        } else {
+            mix(0xFFFF);
+        }
+        return false;
+    }
+
+    // FNV-1a over 16-bit characters, with a separator after every field.
+    private void mix(CharSequence value) {
+        if (value != null) {
+            for (int i = 0; i < value.length(); i++) mix(value.charAt(i));
+        }
+        mix(0xFFFF);
+    }
+
+    private void mix(int value) {
+        hash = (hash ^ value) * FNV_PRIME;
+    }
+
+    private boolean isSettled(UninstallGuardPolicy.Evidence needed) {
+        switch (needed) {
+            case NONE:
+                return true;
+            case TARGET:
+                return targetVisible;
+            default:
+                // Accessibility evidence outranks every other generic signal.
+                return targetVisible && targetAccessibilityToggleVisible
+                        && checkableControlVisible;
+        }
+    }
+
+    private void clearEvidence() {
+        targetVisible = false;
+        appControlVisible = false;
+        deviceAdminControlVisible = false;
+        targetAccessibilityToggleVisible = false;
+        checkableControlVisible = false;
+        targetBottom = -1;
+        buttonCount = 0;
+    }
+
+    private UninstallGuardPolicy.ScreenEvidence evidence() {
+        return new UninstallGuardPolicy.ScreenEvidence(
+                targetVisible,
+                appControlVisible,
+                deviceAdminControlVisible,
+                targetAccessibilityToggleVisible && checkableControlVisible,
+                actionButtonsBelowTarget() >= 2);
+    }
+
+    private void record(Facts facts, int bits) {
+        facts.bits = bits;
+        facts.targetBottom = nodeTargetBottom;
+        facts.buttonTop = nodeButtonTop;
+    }
+
+    /** Adds one node's contribution to the evidence in progress. */
+    private void merge(int bits, int nodeBottom, int buttonTop) {
+        if ((bits & NODE_TARGET) != 0) {
+            targetVisible = true;
+            targetBottom = Math.max(targetBottom, nodeBottom);
+        }
+        if ((bits & NODE_SERVICE_TOGGLE) != 0) targetAccessibilityToggleVisible = true;
+        if ((bits & NODE_APP_CONTROL) != 0) appControlVisible = true;
+        if ((bits & NODE_ADMIN_CONTROL) != 0) deviceAdminControlVisible = true;
+        if ((bits & NODE_CHECKABLE) != 0) checkableControlVisible = true;
+        if ((bits & NODE_BUTTON) != 0) {
+            if (buttonCount == buttonTops.length) {
+                int[] grown = new int[buttonCount * 2];
+                System.arraycopy(buttonTops, 0, grown, 0, buttonCount);
+                buttonTops = grown;
+            }
+            buttonTops[buttonCount++] = buttonTop;
+        }
+    }
+
+    /**
+     * Reads one node and returns what it contributes as {@code NODE_} bits, with the
+     * target's bottom edge and the button's top edge left in {@link #nodeTargetBottom} and
+     * {@link #nodeButtonTop}.
+     */
+    private <N> int visit(Tree<N> tree, N node) {
+        CharSequence text = tree.text(node);
+        CharSequence description = tree.description(node);
+        CharSequence viewId = tree.viewId(node);
+        CharSequence className = tree.className(node);
+
+        // "text description viewId", as the lower-case stream and the accent-stripped one.
+        // They only part ways at non-ASCII characters.
+        int state = KeywordAutomaton.START;
+        int folded = KeywordAutomaton.START;
+        int idState = KeywordAutomaton.START;
+        int textTags = 0;
+        int foldedTags = 0;
+        int idTags = 0;
+        for (int segment = 0; segment < 3; segment++) {
+            CharSequence value = segment == 0 ? text : segment == 1 ? description : viewId;
+            if (segment > 0) {
+                boolean together = folded == state;
+                state = signals.next(state, ' ');
+                folded = together ? state : signals.next(folded, ' ');
+                textTags |= signals.tags(state);
+                foldedTags |= signals.tags(folded);
+            }
+            if (value == null) continue;
+            for (int i = 0; i < value.length(); i++) {
+                char c = Character.toLowerCase(value.charAt(i));
+                int f = fold(c);
+                if (f == c && folded == state) {
+                    state = folded = signals.next(state, c);
+                    int tags = signals.tags(state);
+                    textTags |= tags;
+                    foldedTags |= tags;
+                } else {
+                    state = signals.next(state, c);
+                    textTags |= signals.tags(state);
+                    if (f >= 0) {
+                        folded = signals.next(folded, (char) f);
+                        foldedTags |= signals.tags(folded);
+                    }
+                }
+                if (segment == 2) {
+                    idState = signals.next(idState, c);
+                    idTags |= signals.tags(idState);
+                }
+            }
+        }
+        int classTags = 0;
+        int classState = KeywordAutomaton.START;
+        if (className != null) {
+            for (int i = 0; i < className.length(); i++) {
+                classState = signals.next(classState, Character.toLowerCase(className.charAt(i)));
+                classTags |= signals.tags(classState);
+            }
+        }
+        textTags &= TEXT_TAGS;
+        foldedTags &= FOLDED_TAGS;
+        idTags &= VIEW_ID_TAGS;
+        classTags &= CLASS_TAGS;
+
+        int bits = 0;
+        nodeTargetBottom = -1;
+        nodeButtonTop = 0;
+        if ((textTags & TARGET) != 0) {
+            bits |= NODE_TARGET;
+            if (tree.bounds(node, bounds)) nodeTargetBottom = bounds[1];
+        }
+        if ((textTags & SERVICE_LABEL) != 0 && (idTags & ACCESSIBILITY_ID) != 0) {
+            // Android 14 hosts this page in a generic SubSettings activity. The
+            // service-specific "Use Voward protection service" switch label is the
+            // narrow evidence that distinguishes it from the general Accessibility
+            // list and from settings pages belonging to other services.
+            bits |= NODE_SERVICE_TOGGLE;
+        }
+        if ((foldedTags & APP_TEXT) != 0 || (idTags & APP_ID) != 0) {
+            bits |= NODE_APP_CONTROL;
+        }
+        if ((foldedTags & ADMIN_TEXT) != 0 || (idTags & ADMIN_ID) != 0) {
+            bits |= NODE_ADMIN_CONTROL;
+        }
+        boolean checkable = tree.isCheckable(node);
+        if (checkable || (classTags & (SWITCH | TOGGLE_BUTTON)) != 0
+                || (idTags & SWITCH) != 0) {
+            bits |= NODE_CHECKABLE;
+        }
+
+        // App-info pages normally expose at least Open/Uninstall/Force stop as real
+        // buttons. Count semantic button widgets as a fallback for OEMs that report a
+        // generic Settings activity and translate every visible caption.
+        boolean semanticButton = endsWith(className, ".button")
+                || (classTags & MATERIAL_BUTTON) != 0;
+        boolean genericActionButtonId = endsWith(viewId, ":id/button1")
+                || endsWith(viewId, ":id/button2")
+                || endsWith(viewId, ":id/button3");
+        if (!checkable && (semanticButton || genericActionButtonId)
+                && tree.bounds(node, bounds)) {
+            bits |= NODE_BUTTON;
+            nodeButtonTop = bounds[0];
+        }
+        return bits;
+    }
+
+    private int actionButtonsBelowTarget() {
+        if (targetBottom < 0) return 0;
+        int count = 0;
+        for (int i = 0; i < buttonCount; i++) {
+            if (buttonTops[i] >= targetBottom) count++;
+        }
+        return count;
+    }
+
+    /**
+     * The accent-stripped form of a lower-case character: itself, a base letter, or -1 for
+     * a combining mark, which the stripped text drops.
+     */
+    static int fold(char c) {
+        if (c < FOLD_FIRST) return c;
+        int type = Character.getType(c);
+        if (type == Character.NON_SPACING_MARK || type == Character.ENCLOSING_MARK
+                || type == Character.COMBINING_SPACING_MARK) {
+            return -1;
+        }
+        if (c < FOLD_FIRST + LATIN_FOLDS.length) return LATIN_FOLDS[c - FOLD_FIRST];
+        if (c >= 0x1E00 && c <= 0x1EFF) return LATIN_ADDITIONAL_FOLDS[c - 0x1E00];
+        if (c >= 0x2100 && c <= 0x214F) return LETTERLIKE_FOLDS[c - 0x2100];
+        return c;
+    }
+
+    private static char[] folds(char first, char last) {
+        char[] table = new char[last - first + 1];
+        for (char c = first; c <= last; c++) {
+            String stripped = Normalizer.normalize(String.valueOf(c), Normalizer.Form.NFD)
+                    .replaceAll("\\p{M}+", "")
+                    .toLowerCase(Locale.ROOT);
+            table[c - first] = stripped.length() == 1 ? stripped.charAt(0) : c;
+        }
+        return table;
+    }
+
+    private static boolean endsWith(CharSequence value, String suffix) {
+        if (value == null) return false;
+        int offset = value.length() - suffix.length();
+        if (offset < 0) return false;
+        for (int i = 0; i < suffix.length(); i++) {
+            if (Character.toLowerCase(value.charAt(offset + i)) != suffix.charAt(i)) return false;
+        }
+        return true;
+    }
+
+    private static void addAll(KeywordAutomaton.Builder builder, List<String> keywords,
+                               int tags) {
+        for (String keyword : keywords) builder.add(keyword, tags);
+    }
+}
@@ -0,0 +1,107 @@
+package com.example.voward;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Bounded LRU of guard-screen classifications, keyed by window ID, window class and the
+ * screen's structural fingerprint (node count and content hash).
+ *
+ * <p>The guard watchdog re-classifies an open Settings or installer window every few hundred
+ * milliseconds, and the screen is usually unchanged. A verdict is reused only for the same
+ * window showing the same nodes with the same text, checkable state and bounds; anything
+ * else, including a page that finished its layout, misses and is scanned again.
+ * {@link #clear} drops every verdict when the matched labels change. Not thread-safe: the
+ * service only touches it from its enforcement thread.</p>
+ */
+final class GuardVerdictCache {
+    private final int capacity;
+    private final LinkedHashMap<Key, UninstallGuardPolicy.GuardTarget> verdicts;
+    // Lookups reuse one key; stored entries get their own copy.
+    private final Key probe = new Key();
+    private long hits;
+    private long misses;
+
+    GuardVerdictCache(int capacity) {
+        if (capacity < 1) throw new IllegalArgumentException("Capacity must be positive");
+        this.capacity = capacity;
+        this.verdicts = new LinkedHashMap<Key, UninstallGuardPolicy.GuardTarget>(
+                16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(
+                    Map.Entry<Key, UninstallGuardPolicy.GuardTarget> eldest) {
+                return size() > GuardVerdictCache.this.capacity;
+            }
+        };
+    }
+
+    /** The verdict stored for this window and fingerprint, or null on a miss. */
+    UninstallGuardPolicy.GuardTarget find(int windowId, String className, int nodeCount,
+                                          long contentHash) {
+        probe.set(windowId, className, nodeCount, contentHash);
+        UninstallGuardPolicy.GuardTarget verdict = verdicts.get(probe);
+        if (verdict != null) hits++;
+        else misses++;
+        return verdict;
+    }
+
+    void put(int windowId, String className, int nodeCount, long contentHash,
+             UninstallGuardPolicy.GuardTarget verdict) {
+        Key key = new Key();
+        key.set(windowId, className, nodeCount, contentHash);
+        verdicts.put(key, verdict);
+    }
+
+    void clear() {
+        verdicts.clear();
+    }
+
+    long hits() {
+        return hits;
+    }
+
+    long misses() {
+        return misses;
+    }
+
+    int size() {
+        return verdicts.size();
+    }
+
+    @Override
+    public String toString() {
+        long lookups = hits + misses;
+        return hits + " hits, " + misses + " misses ("
+                + (lookups == 0 ? 0 : hits * 100 / lookups) + "% hit rate)";
+    }
+
+    private static final class Key {
+        int windowId;
+        String className;
+        int nodeCount;
+        long contentHash;
+
+        void set(int windowId, String className, int nodeCount, long contentHash) {
+            this.windowId = windowId;
+            this.className = className;
+            this.nodeCount = nodeCount;
+            this.contentHash = contentHash;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (!(other instanceof Key)) return false;
+            Key key = (Key) other;
+            return windowId == key.windowId && nodeCount == key.nodeCount
+                    && contentHash == key.contentHash
+                    && Objects.equals(className, key.className);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * (31 * (31 * windowId + nodeCount) + Long.hashCode(contentHash))
+                    + Objects.hashCode(className);
+        }
+    }
+}
@@ -0,0 +1,299 @@
+package com.example.voward;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Read-only, memory-mapped table of blocked hosts imported from third-party lists.
+ *
+ * <p>Hosts are stored as reversed-label keys ({@code ads.example.com} becomes
+ * {@code com.example.ads}) in ascending byte order. Each entry keeps only the bytes that differ
+ * from the previous key; every {@value #RESTART_INTERVAL}th entry is stored in full and indexed,
+ * so a lookup is a binary search over restart points followed by a short scan. A host rule
+ * covers the host and all of its subdomains, exactly like a domain-only URL rule.</p>
+ *
+ * <p>Layout: entries ({@code u8 shared, u8 suffixLength, suffix bytes}), restart offsets
+ * ({@code int} each), then a footer of restart count, host count, data length, version and
+ * magic. Lookups only use absolute reads, so one image may be shared across threads.</p>
+ */
+final class HostBlocklistImage {
+    static final int RESTART_INTERVAL = 16;
+    /** Longest DNS name; keys never exceed it, so lengths fit in one byte. */
+    static final int MAX_KEY_LENGTH = 253;
+
+    private static final int MAGIC = 0x56574842; // "VWHB"
+    private static final int VERSION = 1;
+    private static final int FOOTER_BYTES = 5 * Integer.BYTES;
+
+    private final ByteBuffer image;
+    private final int hostCount;
+    private final int restartCount;
+    private final int dataLength;
+
+    private HostBlocklistImage(ByteBuffer image, int hostCount, int restartCount, int dataLength) {
+        this.image = image;
+        this.hostCount = hostCount;
+        this.restartCount = restartCount;
+        this.dataLength = dataLength;
+    }
+
+    /** Maps an image file read-only; the mapping stays valid after the file is replaced. */
+    static HostBlocklistImage open(File file) throws IOException {
+        try (RandomAccessFile input = new RandomAccessFile(file, "r");
+             FileChannel channel = input.getChannel()) {
+            return wrap(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    /** Validates every entry once, so later lookups can never read outside the image. */
+    static HostBlocklistImage wrap(ByteBuffer image) throws IOException {
+        int size = image.limit();
+        if (size < FOOTER_BYTES) throw corrupt();
+        int footer = size - FOOTER_BYTES;
+        int restartCount = image.getInt(footer);
+        int hostCount = image.getInt(footer + 4);
+        int dataLength = image.getInt(footer + 8);
+        if (image.getInt(footer + 16) != MAGIC || image.getInt(footer + 12) != VERSION) {
+            throw corrupt();
+        }
+        if (restartCount < 0 || hostCount < 0 || dataLength < 0
+                || restartCount != (hostCount + RESTART_INTERVAL - 1) / RESTART_INTERVAL
+                || (long) dataLength + (long) restartCount * Integer.BYTES != footer) {
+            throw corrupt();
+        }
+
+        int position = 0;
+        int previousLength = 0;
+        for (int entry = 0; entry < hostCount; entry++) {
+            if (position + 2 > dataLength) throw corrupt();
+            int shared = image.get(position) & 0xff;
+            int suffix = image.get(position + 1) & 0xff;
+            boolean restart = entry % RESTART_INTERVAL == 0;
+            if (restart && image.getInt(dataLength + entry / RESTART_INTERVAL * 4) != position) {
+                throw corrupt();
+            }
+            if ((restart ? shared != 0 : shared > previousLength)
+                    || shared + suffix == 0 || shared + suffix > MAX_KEY_LENGTH) {
+                throw corrupt();
+            }
+            position += 2 + suffix;
+            if (position > dataLength) throw corrupt();
+            previousLength = shared + suffix;
+        }
+        if (position != dataLength) throw corrupt();
+        return new HostBlocklistImage(image, hostCount, restartCount, dataLength);
+    }
+
+    int size() {
+        return hostCount;
+    }
+
+    /**
+     * Returns the listed host covering {@code canonicalHost} (the host itself or a parent
+     * domain), or null. The shortest listed parent wins, as it covers every other candidate.
+     */
+    String findCoveringHost(String canonicalHost) {
+        if (hostCount == 0 || canonicalHost == null || canonicalHost.isEmpty()
+                || canonicalHost.length() > MAX_KEY_LENGTH) {
+            return null;
+        }
+        byte[] key = reversedKey(canonicalHost);
+        if (key == null) return null;
+        byte[] scratch = new byte[MAX_KEY_LENGTH];
+        for (int end = 1; end <= key.length; end++) {
+            if ((end == key.length || key[end] == '.') && contains(key, end, scratch)) {
+                return unreversed(key, end);
+            }
+        }
+        return null;
+    }
+
+    private boolean contains(byte[] key, int keyLength, byte[] scratch) {
+        // Last restart whose full key is <= the target.
+        int low = 0;
+        int high = restartCount - 1;
+        int block = -1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int offset = restartOffset(mid);
+            int cmp = compare(offset + 2, image.get(offset + 1) & 0xff, key, keyLength);
+            if (cmp == 0) return true;
+            if (cmp < 0) {
+                block = mid;
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        if (block < 0) return false;
+
+        int position = restartOffset(block);
+        int end = block + 1 < restartCount ? restartOffset(block + 1) : dataLength;
+        while (position < end) {
+            int shared = image.get(position) & 0xff;
+            int suffix = image.get(position + 1) & 0xff;
+            for (int i = 0; i < suffix; i++) scratch[shared + i] = image.get(position + 2 + i);
+            int cmp = compare(scratch, shared + suffix, key, keyLength);
+            if (cmp == 0) return true;
+            if (cmp > 0) return false;
+            position += 2 + suffix;
+        }
+        return false;
+    }
+
+    private int restartOffset(int restart) {
+        return image.getInt(dataLength + restart * Integer.BYTES);
+    }
+
+    private int compare(int offset, int length, byte[] key, int keyLength) {
+        int common = Math.min(length, keyLength);
+        for (int i = 0; i < common; i++) {
+            int diff = (image.get(offset + i) & 0xff) - (key[i] & 0xff);
+            if (diff != 0) return diff;
+        }
+        return length - keyLength;
+    }
+
+    private static int compare(byte[] a, int aLength, byte[] b, int bLength) {
+        int common = Math.min(aLength, bLength);
+        for (int i = 0; i < common; i++) {
+            int diff = (a[i] & 0xff) - (b[i] & 0xff);
+            if (diff != 0) return diff;
+        }
+        return aLength - bLength;
+    }
+
+    /** Listed hosts as reversed-label keys, in ascending order. */
+    Iterator<String> keys() {
+        return new Iterator<String>() {
+            private final byte[] current = new byte[MAX_KEY_LENGTH];
+            private int position;
+            private int remaining = hostCount;
+
+            @Override
+            public boolean hasNext() {
+                return remaining > 0;
+            }
+
+            @Override
+            public String next() {
+                if (remaining == 0) throw new NoSuchElementException();
+                int shared = image.get(position) & 0xff;
+                int suffix = image.get(position + 1) & 0xff;
+                for (int i = 0; i < suffix; i++) current[shared + i] = image.get(position + 2 + i);
+                position += 2 + suffix;
+                remaining--;
+                return new String(current, 0, shared + suffix, StandardCharsets.US_ASCII);
+            }
+        };
+    }
+
+    /** {@code ads.example.com} becomes {@code com.example.ads}; null for non-ASCII input. */
+    static String reverseLabels(String host) {
+        byte[] key = reversedKey(host);
+        return key == null ? null : new String(key, StandardCharsets.US_ASCII);
+    }
+
+    private static byte[] reversedKey(String host) {
+        int length = host.length();
+        byte[] key = new byte[length];
+        int out = 0;
+        int end = length;
+        while (end >= 0) {
+            int start = host.lastIndexOf('.', end - 1) + 1;
+            for (int i = start; i < end; i++) {
+                char c = host.charAt(i);
+                if (c > 0x7f) return null;
+                key[out++] = (byte) c;
+            }
+            if (start > 0) key[out++] = '.';
+            end = start - 1;
+        }
+        return key;
+    }
+
+    private static String unreversed(byte[] key, int length) {
+        return reverseLabels(new String(key, 0, length, StandardCharsets.US_ASCII));
+    }
+
+    private static IOException corrupt() {
+        return new IOException("Corrupt host blocklist image");
+    }
+
+    /** Streams strictly ascending keys into a new image; equal neighbours are dropped. */
+    static final class Writer implements Closeable {
+        private final DataOutputStream out;
+        private final byte[] previous = new byte[MAX_KEY_LENGTH];
+        private int previousLength;
+        private int[] restarts = new int[64];
+        private int hostCount;
+        private int dataLength;
+
+        Writer(OutputStream out) {
+            this.out = new DataOutputStream(new BufferedOutputStream(out, 64 * 1024));
+        }
+
+        /** Appends a reversed-label key; keys must arrive in ascending order. */
+        void add(String key) throws IOException {
+            byte[] bytes = key.getBytes(StandardCharsets.US_ASCII);
+            if (bytes.length == 0 || bytes.length > MAX_KEY_LENGTH) {
+                throw new IllegalArgumentException("Invalid host key: " + key);
+            }
+            int order = hostCount == 0 ? 1 : compare(bytes, bytes.length, previous, previousLength);
+            if (order == 0) return;
+            if (order < 0) throw new IllegalArgumentException("Keys must be ascending: " + key);
+
+            int shared = 0;
+            if (hostCount % RESTART_INTERVAL == 0) {
+                int restart = hostCount / RESTART_INTERVAL;
+                if (restart == restarts.length) {
+                    int[] grown = new int[restarts.length * 2];
+                    System.arraycopy(restarts, 0, grown, 0, restarts.length);
+                    restarts = grown;
+                }
+                restarts[restart] = dataLength;
+            } else {
+                int limit = Math.min(bytes.length, previousLength);
+                while (shared < limit && bytes[shared] == previous[shared]) shared++;
+            }
+            out.writeByte(shared);
+            out.writeByte(bytes.length - shared);
+            out.write(bytes, shared, bytes.length - shared);
+            dataLength += 2 + bytes.length - shared;
+            System.arraycopy(bytes, 0, previous, 0, bytes.length);
+            previousLength = bytes.length;
+            hostCount++;
+        }
+
+        int size() {
+            return hostCount;
+        }
+
+        /** Writes the restart index and footer; the image is complete once this returns. */
+        void finish() throws IOException {
+            int restartCount = (hostCount + RESTART_INTERVAL - 1) / RESTART_INTERVAL;
+            for (int i = 0; i < restartCount; i++) out.writeInt(restarts[i]);
+            out.writeInt(restartCount);
+            out.writeInt(hostCount);
+            out.writeInt(dataLength);
+            out.writeInt(VERSION);
+            out.writeInt(MAGIC);
+            out.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            out.close();
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package com.example.voward;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Streaming reader for third-party blocklists in hosts-file or plain domain-per-line form.
+ *
+ * <p>{@code 0.0.0.0 ads.example.com tracker.example.net} and {@code ads.example.com} lines
+ * are both accepted; comments start with {@code #}. Each host is canonicalized exactly like a
+ * URL rule host and must contain a dot, so loopback names, bare IP targets and garbage are
+ * skipped rather than failing the whole import.</p>
+ */
+final class HostListParser {
+    /** Receives each accepted host as a reversed-label key. */
+    interface Sink {
+        void accept(String reversedKey) throws IOException;
+    }
+
+    // Bookkeeping names that appear in nearly every published hosts file.
+    private static final Set<String> IGNORED_HOSTS = Set.of(
+            "localhost.localdomain", "broadcasthost", "local", "ip6-localhost",
+            "ip6-loopback", "ip6-localnet", "ip6-mcastprefix", "ip6-allnodes",
+            "ip6-allrouters", "ip6-allhosts");
+    private static final int MAX_LINE_LENGTH = 4096;
+
+    private int accepted;
+    private int rejected;
+
+    /** Reads every line, handing accepted hosts to {@code sink} without buffering them. */
+    void parse(BufferedReader reader, Sink sink) throws IOException {
+        String line;
+        while ((line = reader.readLine()) != null) {
+            if (line.length() > MAX_LINE_LENGTH) {
+                rejected++;
+                continue;
+            }
+            int comment = line.indexOf('#');
+            if (comment >= 0) line = line.substring(0, comment);
+            String[] tokens = line.trim().split("\\s+");
+            if (tokens.length == 0 || tokens[0].isEmpty()) continue;
+
+            // Hosts-file lines start with the address the names resolve to.
+            int first = tokens.length > 1 && isAddress(tokens[0]) ? 1 : 0;
+            for (int i = first; i < tokens.length; i++) {
+                String key = toKey(tokens[i]);
+                if (key == null) {
+                    rejected++;
+                } else {
+                    accepted++;
+                    sink.accept(key);
+                }
+            }
+        }
+    }
+
+    int acceptedCount() {
+        return accepted;
+    }
+
+    int rejectedCount() {
+        return rejected;
+    }
+
+    /** Returns the reversed-label key for a blocklist host, or null when it is unusable. */
+    static String toKey(String token) {
+        String lower = token.toLowerCase(Locale.ROOT);
+        if (IGNORED_HOSTS.contains(lower) || isAddress(lower)) return null;
+        String host = UrlPatternMatcher.canonicalHost(lower);
+        if (host == null || host.length() > HostBlocklistImage.MAX_KEY_LENGTH
+                || host.indexOf('.') <= 0 || host.endsWith(".")) {
+            return null;
+        }
+        for (int i = 0; i < host.length(); i++) {
+            char c = host.charAt(i);
+            boolean valid = (c >= 'a' && c <= 'z') || (c >= '0' && c <= '9')
+                    || c == '-' || c == '_' || c == '.';
+            if (!valid || (c == '.' && host.charAt(i - 1) == '.')) return null;
+        }
+        return HostBlocklistImage.reverseLabels(host);
+    }
+
+    private static boolean isAddress(String token) {
+        if (token.indexOf(':') >= 0) return true;
+        for (int i = 0; i < token.length(); i++) {
+            char c = token.charAt(i);
+            if (c != '.' && (c < '0' || c > '9')) return false;
+        }
+        return !token.isEmpty();
+    }
+}
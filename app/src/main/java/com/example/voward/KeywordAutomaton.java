@@ -0,0 +1,197 @@
+package com.example.voward;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Aho-Corasick automaton over a fixed keyword list.
+ *
+ * <p>One left-to-right pass over the text recognises every keyword occurrence, so the cost of
+ * a lookup depends on the text length rather than on the number of keywords. Keywords are
+ * identified by their insertion index; lower indexes take priority, matching a loop that
+ * returns the first keyword for which {@code text.contains(keyword)} holds.</p>
+ *
+ * <p>Keywords may also carry tag bits. Callers that feed text one character at a time with
+ * {@link #next} read the tags of every keyword ending there with {@link #tags}, which lets
+ * one automaton answer several "contains any of" questions in a single pass.</p>
+ */
+final class KeywordAutomaton {
+    private static final int NONE = Integer.MAX_VALUE;
+    /** The state before any character has been read. */
+    static final int START = 0;
+
+    // Per state: sorted transition characters and their target states.
+    private final char[][] labels;
+    private final int[][] targets;
+    private final int[] failure;
+    // Lowest keyword index ending at this state, including keywords reached by failure links.
+    private final int[] output;
+    // Union of the tags of every keyword ending at this state.
+    private final int[] tags;
+    private final int lowestKeyword;
+    // Root transitions for ASCII, where mismatches fall back to most often.
+    private final int[] rootAscii = new int[128];
+
+    private KeywordAutomaton(char[][] labels, int[][] targets, int[] failure, int[] output,
+                             int[] tags) {
+        this.labels = labels;
+        this.targets = targets;
+        this.failure = failure;
+        this.output = output;
+        this.tags = tags;
+        for (int i = 0; i < labels[0].length; i++) {
+            if (labels[0][i] < rootAscii.length) rootAscii[labels[0][i]] = targets[0][i];
+        }
+        int lowest = NONE;
+        for (int value : output) lowest = Math.min(lowest, value);
+        this.lowestKeyword = lowest;
+    }
+
+    /** Returns the lowest keyword index contained in the text, or -1 when none occurs. */
+    int find(CharSequence text) {
+        if (text == null || lowestKeyword == NONE) return -1;
+        int state = 0;
+        int best = NONE;
+        for (int i = 0; i < text.length(); i++) {
+            state = step(state, text.charAt(i));
+            int recognised = output[state];
+            if (recognised < best) {
+                best = recognised;
+                // Nothing later in the text can beat the highest-priority keyword.
+                if (best == lowestKeyword) break;
+            }
+        }
+        return best == NONE ? -1 : best;
+    }
+
+    /** The state after reading {@code c} in {@code state}. */
+    int next(int state, char c) {
+        return step(state, c);
+    }
+
+    /** Tags of the keywords that end at {@code state}; 0 when none does. */
+    int tags(int state) {
+        return tags[state];
+    }
+
+    private int step(int state, char c) {
+        while (state != 0) {
+            int next = transition(state, c);
+            if (next >= 0) return next;
+            state = failure[state];
+        }
+        if (c < rootAscii.length) return rootAscii[c];
+        int next = transition(0, c);
+        return next >= 0 ? next : 0;
+    }
+
+    private int transition(int state, char c) {
+        char[] stateLabels = labels[state];
+        int low = 0;
+        int high = stateLabels.length - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            char label = stateLabels[mid];
+            if (label < c) low = mid + 1;
+            else if (label > c) high = mid - 1;
+            else return targets[state][mid];
+        }
+        return -1;
+    }
+
+    static final class Builder {
+        private final List<TreeMap<Character, Integer>> trie = new ArrayList<>();
+        private final List<Integer> terminal = new ArrayList<>();
+        private final List<Integer> terminalTags = new ArrayList<>();
+        private int keywordCount;
+
+        Builder() {
+            newState();
+        }
+
+        /** Adds a non-empty keyword and returns its priority index. */
+        int add(String keyword) {
+            return add(keyword, 0);
+        }
+
+        /** Adds a non-empty keyword carrying {@code tags} and returns its priority index. */
+        int add(String keyword, int tags) {
+            if (keyword == null || keyword.isEmpty()) {
+                throw new IllegalArgumentException("Keyword must not be empty");
+            }
+            int state = 0;
+            for (int i = 0; i < keyword.length(); i++) {
+                Integer next = trie.get(state).get(keyword.charAt(i));
+                if (next == null) {
+                    next = newState();
+                    trie.get(state).put(keyword.charAt(i), next);
+                }
+                state = next;
+            }
+            int index = keywordCount++;
+            // A duplicate keyword keeps the priority of its first occurrence.
+            if (terminal.get(state) == NONE) terminal.set(state, index);
+            terminalTags.set(state, terminalTags.get(state) | tags);
+            return index;
+        }
+
+        KeywordAutomaton build() {
+            int states = trie.size();
+            char[][] labels = new char[states][];
+            int[][] targets = new int[states][];
+            int[] failure = new int[states];
+            int[] output = new int[states];
+            int[] tags = new int[states];
+            for (int state = 0; state < states; state++) {
+                TreeMap<Character, Integer> edges = trie.get(state);
+                labels[state] = new char[edges.size()];
+                targets[state] = new int[edges.size()];
+                int i = 0;
+                for (Map.Entry<Character, Integer> edge : edges.entrySet()) {
+                    labels[state][i] = edge.getKey();
+                    targets[state][i++] = edge.getValue();
+                }
+                output[state] = terminal.get(state);
+                tags[state] = terminalTags.get(state);
+            }
+
+            // Breadth-first order guarantees every failure target is finalised first.
+            ArrayDeque<Integer> queue = new ArrayDeque<>();
+            for (int child : targets[0]) queue.add(child);
+            while (!queue.isEmpty()) {
+                int state = queue.poll();
+                for (int i = 0; i < labels[state].length; i++) {
+                    char c = labels[state][i];
+                    int child = targets[state][i];
+                    int fallback = failure[state];
+                    while (fallback != 0 && indexOf(labels[fallback], c) < 0) {
+                        fallback = failure[fallback];
+                    }
+                    int edge = indexOf(labels[fallback], c);
+                    failure[child] = edge >= 0 ? targets[fallback][edge] : 0;
+                    output[child] = Math.min(output[child], output[failure[child]]);
+                    tags[child] |= tags[failure[child]];
+                    queue.add(child);
+                }
+            }
+            return new KeywordAutomaton(labels, targets, failure, output, tags);
+        }
+
+        private int newState() {
+            trie.add(new TreeMap<>());
+            terminal.add(NONE);
+            terminalTags.add(0);
+            return trie.size() - 1;
+        }
+
+        private static int indexOf(char[] labels, char c) {
+            for (int i = 0; i < labels.length; i++) {
+                if (labels[i] == c) return i;
+            }
+            return -1;
+        }
+    }
+}
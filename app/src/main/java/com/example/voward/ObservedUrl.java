@@ -0,0 +1,151 @@
+package com.example.voward;
+
+import java.net.URI;
+import java.util.Locale;
+
+/**
+ * One address-bar observation, normalized once and split into the parts URL rules compare.
+ *
+ * <p>Plain ASCII addresses are split by a single scan instead of building a {@link URI}.
+ * Anything unusual (non-ASCII text, escapes, user info, IP literals, odd ports or illegal
+ * characters) falls back to the {@link URI}-based parse, so the host, path, and raw query are
+ * always identical to what {@link UrlPatternMatcher} derived before. Components are computed
+ * on first use and published together through one volatile reference to an immutable holder,
+ * so an instance, {@link #EMPTY} included, may be shared between threads; two threads racing
+ * on first use both compute the same components.</p>
+ */
+final class ObservedUrl {
+    static final ObservedUrl EMPTY = new ObservedUrl("");
+
+    /** Trimmed, lower-cased address text; keyword rules and commit checks compare this. */
+    final String text;
+
+    private static final Components NO_HOST = new Components(null, null, null);
+
+    private volatile Components components;
+
+    private ObservedUrl(String text) {
+        this.text = text;
+    }
+
+    static ObservedUrl parse(String value) {
+        if (value == null) return EMPTY;
+        String text = value.trim().toLowerCase(Locale.ROOT);
+        return text.isEmpty() ? EMPTY : new ObservedUrl(text);
+    }
+
+    boolean isEmpty() {
+        return text.isEmpty();
+    }
+
+    /** Canonical host without port, trailing dot, or leading www., or null when unusable. */
+    String host() {
+        return tokenize().host;
+    }
+
+    /** Decoded path; only meaningful when {@link #host()} is non-null. */
+    String path() {
+        return tokenize().path;
+    }
+
+    /** Raw query without the leading '?', or null when the address has none. */
+    String rawQuery() {
+        return tokenize().rawQuery;
+    }
+
+    private Components tokenize() {
+        Components parsed = components;
+        if (parsed != null) return parsed;
+        parsed = text.isEmpty() ? NO_HOST : tokenizePlainAscii();
+        if (parsed == null) {
+            URI uri = UrlPatternMatcher.parseWebUri(text);
+            String uriHost = UrlPatternMatcher.canonicalHost(uri);
+            parsed = uriHost == null ? NO_HOST
+                    : new Components(uriHost, uri.getPath(), uri.getRawQuery());
+        }
+        components = parsed;
+        return parsed;
+    }
+
+    /** Returns null when the address needs the full URI grammar. */
+    private Components tokenizePlainAscii() {
+        int length = text.length();
+        int fragment = -1;
+        for (int i = 0; i < length; i++) {
+            char c = text.charAt(i);
+            if (c == '#') {
+                // A second '#' is illegal in a URI; let the reference parser reject it.
+                if (fragment >= 0) return null;
+                fragment = i;
+            } else if (!isPlainChar(c)) {
+                return null;
+            }
+        }
+
+        int start = 0;
+        if (UrlPatternMatcher.hasScheme(text)) {
+            char first = text.charAt(0);
+            if (first < 'a' || first > 'z') return null;
+            start = text.indexOf("://") + 3;
+        }
+        int end = fragment >= 0 ? fragment : length;
+        int authorityEnd = start;
+        while (authorityEnd < end) {
+            char c = text.charAt(authorityEnd);
+            if (c == '/' || c == '?') break;
+            authorityEnd++;
+        }
+
+        // Without an authority there is no host to match; the path is never consulted.
+        if (authorityEnd == start) return NO_HOST;
+        int hostEnd = authorityEnd;
+        int colon = text.indexOf(':', start);
+        if (colon >= 0 && colon < authorityEnd) {
+            if (colon == start || colon == authorityEnd - 1) return null;
+            for (int i = colon + 1; i < authorityEnd; i++) {
+                char c = text.charAt(i);
+                if (c < '0' || c > '9') return null;
+            }
+            hostEnd = colon;
+        }
+
+        String plainHost = UrlPatternMatcher.canonicalHost(text.substring(start, hostEnd));
+        if (plainHost == null) return NO_HOST;
+        int query = text.indexOf('?', authorityEnd);
+        if (query >= 0 && query < end) {
+            return new Components(plainHost, text.substring(authorityEnd, query),
+                    text.substring(query + 1, end));
+        }
+        return new Components(plainHost, text.substring(authorityEnd, end), null);
+    }
+
+    /** Characters that mean the same thing to java.net.URI in every component. */
+    private static boolean isPlainChar(char c) {
+        if ((c >= 'a' && c <= 'z') || (c >= '0' && c <= '9')) return true;
+        switch (c) {
+            case '-': case '.': case '_': case '~': case '!': case '$': case '&': case '\'':
+            case '(': case ')': case '*': case '+': case ',': case ';': case '=': case ':':
+            case '/': case '?':
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return text;
+    }
+
+    private static final class Components {
+        final String host;
+        final String path;
+        final String rawQuery;
+
+        Components(String host, String path, String rawQuery) {
+            this.host = host;
+            this.path = path;
+            this.rawQuery = rawQuery;
+        }
+    }
+}
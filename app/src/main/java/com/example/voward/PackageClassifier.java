@@ -0,0 +1,151 @@
+package com.example.voward;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Bounded cache of the {@link EnforcementStateMachine} package flags that do not depend on
+ * the user's rules: transient system overlay, launcher, supported browser and critical.
+ *
+ * <p>The name heuristics lower-case and search the package name a dozen times, and nearly
+ * every accessibility event asks. A package is classified the first time it is seen and
+ * then costs one map read. The installed input methods, home apps and browsers feed the
+ * classification, so a change to any of those sets drops every entry; an installed,
+ * replaced or removed package drops its own. Not thread-safe: the service only touches it
+ * from its enforcement thread.</p>
+ */
+final class PackageClassifier {
+    static final int DEFAULT_CAPACITY = 256;
+
+    private final String ownPackage;
+    private final int capacity;
+    // Flags stay below 128, so the boxed values are the shared Integer cache.
+    private final LinkedHashMap<String, Integer> classes;
+    private Set<String> inputMethods = Collections.emptySet();
+    private Set<String> launchers = Collections.emptySet();
+    private Set<String> browsers = Collections.emptySet();
+    private long hits;
+    private long misses;
+    private long invalidations;
+
+    PackageClassifier(String ownPackage, int capacity) {
+        if (capacity < 1) throw new IllegalArgumentException("Capacity must be positive");
+        this.ownPackage = ownPackage;
+        this.capacity = capacity;
+        this.classes = new LinkedHashMap<String, Integer>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Integer> eldest) {
+                return size() > PackageClassifier.this.capacity;
+            }
+        };
+    }
+
+    /**
+     * The {@code PACKAGE_TRANSIENT}, {@code PACKAGE_LAUNCHER}, {@code PACKAGE_BROWSER} and
+     * {@code PACKAGE_CRITICAL} flags of {@code packageName}.
+     */
+    int flags(String packageName) {
+        if (packageName == null) return classify(null);
+        Integer flags = classes.get(packageName);
+        if (flags != null) {
+            hits++;
+            return flags;
+        }
+        misses++;
+        int computed = classify(packageName);
+        classes.put(packageName, computed);
+        return computed;
+    }
+
+    void setInputMethods(Collection<String> packageNames) {
+        inputMethods = replace(inputMethods, packageNames);
+    }
+
+    void setLaunchers(Collection<String> packageNames) {
+        launchers = replace(launchers, packageNames);
+    }
+
+    void setBrowsers(Collection<String> packageNames) {
+        browsers = replace(browsers, packageNames);
+    }
+
+    /** Forgets {@code packageName} after it was installed, replaced or removed. */
+    void packageChanged(String packageName) {
+        if (classes.remove(packageName) != null) invalidations++;
+    }
+
+    void clear() {
+        classes.clear();
+    }
+
+    int size() {
+        return classes.size();
+    }
+
+    long hits() {
+        return hits;
+    }
+
+    long misses() {
+        return misses;
+    }
+
+    @Override
+    public String toString() {
+        return classes.size() + " packages, " + hits + " hits, " + misses + " misses, "
+                + invalidations + " invalidated";
+    }
+
+    private Set<String> replace(Set<String> current, Collection<String> packageNames) {
+        if (current.size() == packageNames.size() && current.containsAll(packageNames)) {
+            return current;
+        }
+        if (!classes.isEmpty()) invalidations += classes.size();
+        classes.clear();
+        return Collections.unmodifiableSet(new HashSet<>(packageNames));
+    }
+
+    private int classify(String packageName) {
+        int flags = 0;
+        if (isTransientSystemOverlay(packageName)) {
+            flags |= EnforcementStateMachine.PACKAGE_TRANSIENT;
+        }
+        if (isLauncher(packageName)) flags |= EnforcementStateMachine.PACKAGE_LAUNCHER;
+        if (packageName != null && browsers.contains(packageName)) {
+            flags |= EnforcementStateMachine.PACKAGE_BROWSER;
+        }
+        if (SafetyPolicy.isCriticalPackage(packageName, ownPackage)) {
+            flags |= EnforcementStateMachine.PACKAGE_CRITICAL;
+        }
+        return flags;
+    }
+
+    private boolean isTransientSystemOverlay(String packageName) {
+        if (packageName == null) return false;
+        if (inputMethods.contains(packageName)) return true;
+        return isSystemUiOverlay(packageName) ||
+               packageName.contains("permissioncontroller") || packageName.contains("inputmethod") ||
+               packageName.contains("latin") || packageName.contains("keyboard") ||
+               packageName.contains("board") || packageName.contains("ime");
+    }
+
+    private static boolean isSystemUiOverlay(String packageName) {
+        String p = packageName.toLowerCase(Locale.ROOT);
+        return p.equals("android") || p.contains("systemui") || p.contains("statusbar") ||
+               p.contains("notification") || p.contains("quicksettings");
+    }
+
+    private boolean isLauncher(String packageName) {
+        if (packageName == null) return false;
+        if (launchers.contains(packageName)) return true;
+        String p = packageName.toLowerCase(Locale.ROOT);
+        return p.contains("launcher") || p.contains("trebuchet") || p.contains("home") ||
+               p.contains("nexuslauncher") || p.contains("miui.home") || p.contains("pixel") ||
+               p.contains("launcher3") || p.contains("launcher2");
+    }
+}
@@ -0,0 +1,168 @@
+package com.example.voward;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The installed input methods, home apps and browsers, kept current from package
+ * broadcasts.
+ *
+ * <p>{@link #load} reads all three once; after that an installed, replaced, changed or
+ * removed package only re-reads that package, so a new keyboard or launcher is known
+ * without reconnecting the service. The browser catalog is limited to browsers that are
+ * installed: a {@link BrowserSupport} entry while its package is present, and the generic
+ * config for any other package Android reports as a browser. {@link Source} does the
+ * package-manager queries, which block on the system server. The registry belongs to the
+ * service's enforcement thread; {@link #query} and {@link Source#inputMethods} only touch
+ * the source, so the service runs them on a background thread and hands the results back.
+ * Not thread-safe otherwise.</p>
+ */
+final class PackageRegistry {
+    /** Package-manager queries behind the registry. */
+    interface Source {
+        Collection<String> inputMethods();
+
+        Collection<String> launchers();
+
+        Collection<String> browsers();
+
+        boolean isInstalled(String packageName);
+
+        boolean isInputMethod(String packageName);
+
+        boolean isLauncher(String packageName);
+
+        boolean isBrowser(String packageName);
+    }
+
+    private final Source source;
+    private final String safeAddress;
+    private final Set<String> inputMethods = new HashSet<>();
+    private final Set<String> launchers = new HashSet<>();
+    private final Map<String, BrowserSupport.Config> browsers = new HashMap<>();
+    private long loads;
+    private long updates;
+
+    /** {@code safeAddress} replaces every browser's safe page when not null. */
+    PackageRegistry(Source source, String safeAddress) {
+        this.source = source;
+        this.safeAddress = safeAddress;
+    }
+
+    /** Reads every set again. */
+    void load() {
+        inputMethods.clear();
+        inputMethods.addAll(source.inputMethods());
+        launchers.clear();
+        launchers.addAll(source.launchers());
+        browsers.clear();
+        for (BrowserSupport.Config config : BrowserSupport.all()) {
+            if (source.isInstalled(config.packageName)) addBrowser(config.packageName);
+        }
+        for (String packageName : source.browsers()) {
+            if (packageName != null && !packageName.isBlank()) addBrowser(packageName);
+        }
+        loads++;
+    }
+
+    /**
+     * Re-reads {@code packageName} after a package broadcast. Returns whether any set
+     * changed.
+     */
+    boolean packageChanged(String packageName, boolean removed) {
+        return apply(query(packageName, removed));
+    }
+
+    /**
+     * Asks the source what {@code packageName} is now. Reads nothing else of the registry,
+     * so it may run on another thread while the owner keeps serving lookups.
+     */
+    Change query(String packageName, boolean removed) {
+        boolean inputMethod = !removed && source.isInputMethod(packageName);
+        boolean launcher = !removed && source.isLauncher(packageName);
+        boolean browser = !removed && (BrowserSupport.find(packageName) != null
+                ? source.isInstalled(packageName) : source.isBrowser(packageName));
+        return new Change(packageName, inputMethod, launcher, browser);
+    }
+
+    /** Applies a {@link #query} result. Returns whether any set changed. */
+    boolean apply(Change change) {
+        String packageName = change.packageName;
+        boolean changed = update(inputMethods, packageName, change.inputMethod)
+                | update(launchers, packageName, change.launcher);
+        if (change.browser != browsers.containsKey(packageName)) {
+            if (change.browser) addBrowser(packageName);
+            else browsers.remove(packageName);
+            changed = true;
+        }
+        if (changed) updates++;
+        return changed;
+    }
+
+    /** Re-reads the input methods after the system reported a change to them. */
+    boolean inputMethodsChanged() {
+        return inputMethodsChanged(source.inputMethods());
+    }
+
+    /** Replaces the input methods with {@code installed}, read from the source elsewhere. */
+    boolean inputMethodsChanged(Collection<String> installed) {
+        Set<String> current = new HashSet<>(installed);
+        if (current.equals(inputMethods)) return false;
+        inputMethods.clear();
+        inputMethods.addAll(current);
+        updates++;
+        return true;
+    }
+
+    /** The config of an installed browser, or null. */
+    BrowserSupport.Config browser(String packageName) {
+        return packageName == null ? null : browsers.get(packageName);
+    }
+
+    Set<String> inputMethods() {
+        return Collections.unmodifiableSet(inputMethods);
+    }
+
+    Set<String> launchers() {
+        return Collections.unmodifiableSet(launchers);
+    }
+
+    Set<String> browserPackages() {
+        return Collections.unmodifiableSet(browsers.keySet());
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.ROOT,
+                "%d input methods, %d launchers, %d browsers; %d loads, %d updates",
+                inputMethods.size(), launchers.size(), browsers.size(), loads, updates);
+    }
+
+    /** What one package is, as read by {@link #query}. */
+    static final class Change {
+        final String packageName;
+        final boolean inputMethod;
+        final boolean launcher;
+        final boolean browser;
+
+        Change(String packageName, boolean inputMethod, boolean launcher, boolean browser) {
+            this.packageName = packageName;
+            this.inputMethod = inputMethod;
+            this.launcher = launcher;
+            this.browser = browser;
+        }
+    }
+
+    private void addBrowser(String packageName) {
+        browsers.put(packageName, BrowserSupport.forPackage(packageName, safeAddress));
+    }
+
+    private static boolean update(Set<String> set, String packageName, boolean present) {
+        return present ? set.add(packageName) : set.remove(packageName);
+    }
+}
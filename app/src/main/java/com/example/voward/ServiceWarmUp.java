@@ -0,0 +1,111 @@
+package com.example.voward;
+
+import java.util.Locale;
+
+/**
+ * Readiness and timing of the stages that bring the service up after a connect.
+ *
+ * <p>{@code onServiceConnected} only starts the enforcement thread and hands the rest out:
+ * {@link Stage#CORE} loads the preferences and compiled rules on that thread, ahead of the
+ * first event, and is all that app rules need. Browser discovery and the notification
+ * channel run in parallel on background threads, and the deactivation check runs on the
+ * enforcement thread after the events queued during start-up. Each stage reports when it
+ * ran; a stage is ready once reported. The first handled event is the time to first
+ * enforcement. Times are {@code elapsedRealtimeNanos}, so the connect time is also the
+ * time since boot. Not thread-safe: the service reports every stage on its enforcement
+ * thread.</p>
+ */
+final class ServiceWarmUp {
+    enum Stage {
+        /** The synchronous part of {@code onServiceConnected}, on the main thread. */
+        CONNECT,
+        /** Preferences, migrations, compiled rules and the per-event helpers. */
+        CORE,
+        /** Expired or invalidated deactivation requests. */
+        VALIDATION,
+        /** The block-page server and the installed input methods, launchers and browsers. */
+        BROWSERS,
+        /** The notification channel and the first status notification. */
+        NOTIFICATIONS
+    }
+
+    private static final Stage[] STAGES = Stage.values();
+
+    private final long connectedAt;
+    private final long[] startedAt = new long[STAGES.length];
+    private final long[] finishedAt = new long[STAGES.length];
+    private final boolean[] ready = new boolean[STAGES.length];
+    private int readyCount;
+    private long firstEnforcementAt = -1;
+    private long firstEventQueuedAt = -1;
+
+    ServiceWarmUp(long connectedAtNanos) {
+        this.connectedAt = connectedAtNanos;
+    }
+
+    /** Records that {@code stage} ran from {@code startNanos} to {@code endNanos}. */
+    void stageFinished(Stage stage, long startNanos, long endNanos) {
+        int index = stage.ordinal();
+        if (ready[index]) return;
+        startedAt[index] = startNanos;
+        finishedAt[index] = endNanos;
+        ready[index] = true;
+        readyCount++;
+    }
+
+    boolean isReady(Stage stage) {
+        return ready[stage.ordinal()];
+    }
+
+    boolean allReady() {
+        return readyCount == STAGES.length;
+    }
+
+    /** How long {@code stage} ran, or -1 while it is not ready. */
+    long stageNanos(Stage stage) {
+        int index = stage.ordinal();
+        return ready[index] ? finishedAt[index] - startedAt[index] : -1;
+    }
+
+    /** Time from the connect until {@code stage} was ready, or -1 while it is not. */
+    long readyAfterNanos(Stage stage) {
+        int index = stage.ordinal();
+        return ready[index] ? finishedAt[index] - connectedAt : -1;
+    }
+
+    /**
+     * Records the first handled event, queued at {@code queuedNanos}. Returns false, and
+     * changes nothing, for every later one.
+     */
+    boolean firstEnforcement(long queuedNanos, long handledNanos) {
+        if (firstEnforcementAt >= 0) return false;
+        firstEventQueuedAt = queuedNanos;
+        firstEnforcementAt = handledNanos;
+        return true;
+    }
+
+    /** Time from the connect until the first event was handled, or -1 before that. */
+    long firstEnforcementNanos() {
+        return firstEnforcementAt < 0 ? -1 : firstEnforcementAt - connectedAt;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder out = new StringBuilder(String.format(Locale.ROOT,
+                "connected %.1f s after boot", connectedAt / 1e9));
+        for (Stage stage : STAGES) {
+            out.append(", ").append(stage.name().toLowerCase(Locale.ROOT));
+            if (!isReady(stage)) {
+                out.append(" pending");
+                continue;
+            }
+            out.append(String.format(Locale.ROOT, " %.1f ms (ready +%.1f ms)",
+                    stageNanos(stage) / 1e6, readyAfterNanos(stage) / 1e6));
+        }
+        if (firstEnforcementAt < 0) return out.append("; no event handled yet").toString();
+        return out.append(String.format(Locale.ROOT,
+                "; first event handled +%.1f ms after %.1f ms queued",
+                firstEnforcementNanos() / 1e6,
+                (firstEnforcementAt - firstEventQueuedAt) / 1e6)).toString();
+    }
+}
@@ -0,0 +1,253 @@
+package com.example.voward;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Replays an {@link AccessibilityTrace} through the pure enforcement logic on the JVM.
+ *
+ * <p>Events drive {@link EnforcementStateMachine} the way the service's event handler does,
+ * and browser events with a recorded address go through the same stability, commit and rule
+ * checks against the supplied rule index. Time comes from the trace, so decisions are the
+ * same at any speed: {@code speed} only paces the replay (0 runs flat out, 1 keeps the
+ * recorded gaps, 10 plays ten times faster). The report carries per-event processing time,
+ * allocation when an {@link AllocationMeter} is available, action counts and a digest of
+ * every decision, so two builds can be compared on one trace.</p>
+ */
+final class TraceReplayer {
+    // AccessibilityEvent constants; this class must not depend on the Android framework.
+    private static final int TYPE_WINDOW_STATE_CHANGED = 0x00000020;
+    private static final int TYPE_WINDOW_CONTENT_CHANGED = 0x00000800;
+
+    // Indexed by action bit.
+    private static final String[] ACTION_NAMES = {
+            "clearTempAllow", "approvedLaunch", "consumed", "foregroundChanged",
+            "recordInterception", "recordUsage", "recordOutcome", "sessionEnded",
+            "sessionStarted", "startTicker", "stopTicker", "openGate", "strict", "evict",
+            "showSessionComplete", "recheckAfterCooldown", "evictionDone", "goHome",
+            "restartRedirect", "recheckEviction",
+    };
+
+    /** Bytes allocated so far by the calling thread, or a negative value if unknown. */
+    interface AllocationMeter {
+        long allocatedBytes();
+    }
+
+    static final AllocationMeter NO_ALLOCATION_METER = () -> -1;
+
+    /** Outcome of one replay. */
+    static final class Report {
+        final int events;
+        final int handled;
+        final long traceSpanMs;
+        final long totalNanos;
+        final long p50Nanos;
+        final long p90Nanos;
+        final long p99Nanos;
+        final long maxNanos;
+        /** Total bytes allocated while handling events, or -1 without a meter. */
+        final long allocatedBytes;
+        final long maxEventBytes;
+        final long maxRecordedWaitMs;
+        final int[] actionCounts;
+        /** Order-sensitive hash of every event's actions; equal digests, equal decisions. */
+        final long decisionDigest;
+
+        Report(int events, int handled, long traceSpanMs, long[] nanos, long allocatedBytes,
+               long maxEventBytes, long maxRecordedWaitMs, int[] actionCounts,
+               long decisionDigest) {
+            this.events = events;
+            this.handled = handled;
+            this.traceSpanMs = traceSpanMs;
+            long total = 0;
+            for (long value : nanos) total += value;
+            this.totalNanos = total;
+            long[] sorted = nanos.clone();
+            Arrays.sort(sorted);
+            this.p50Nanos = percentile(sorted, 50);
+            this.p90Nanos = percentile(sorted, 90);
+            this.p99Nanos = percentile(sorted, 99);
+            this.maxNanos = sorted.length == 0 ? 0 : sorted[sorted.length - 1];
+            this.allocatedBytes = allocatedBytes;
+            this.maxEventBytes = maxEventBytes;
+            this.maxRecordedWaitMs = maxRecordedWaitMs;
+            this.actionCounts = actionCounts;
+            this.decisionDigest = decisionDigest;
+        }
+
+        int count(int action) {
+            return actionCounts[Integer.numberOfTrailingZeros(action)];
+        }
+
+        /** {@code key=value} lines in a fixed order, readable as a properties file. */
+        String describe() {
+            StringBuilder out = new StringBuilder();
+            line(out, "events", events);
+            line(out, "handled", handled);
+            line(out, "traceSpanMs", traceSpanMs);
+            line(out, "totalNanos", totalNanos);
+            line(out, "meanNanos", events == 0 ? 0 : totalNanos / events);
+            line(out, "p50Nanos", p50Nanos);
+            line(out, "p90Nanos", p90Nanos);
+            line(out, "p99Nanos", p99Nanos);
+            line(out, "maxNanos", maxNanos);
+            line(out, "allocatedBytes", allocatedBytes);
+            line(out, "bytesPerEvent", allocatedBytes < 0 || events == 0
+                    ? -1 : allocatedBytes / events);
+            line(out, "maxEventBytes", maxEventBytes);
+            line(out, "maxRecordedWaitMs", maxRecordedWaitMs);
+            for (int bit = 0; bit < ACTION_NAMES.length; bit++) {
+                line(out, "action." + ACTION_NAMES[bit], actionCounts[bit]);
+            }
+            out.append("decisionDigest=")
+                    .append(String.format(Locale.ROOT, "%016x", decisionDigest)).append('\n');
+            return out.toString();
+        }
+
+        private static void line(StringBuilder out, String key, long value) {
+            out.append(key).append('=').append(value).append('\n');
+        }
+
+        private static long percentile(long[] sorted, int percent) {
+            if (sorted.length == 0) return 0;
+            int index = (int) Math.ceil(percent / 100.0 * sorted.length) - 1;
+            return sorted[Math.max(0, Math.min(sorted.length - 1, index))];
+        }
+    }
+
+    private final EnforcementStateMachine.Budget budget;
+    private final UrlRuleIndex rules;
+    private final AllocationMeter meter;
+
+    // Per-replay state, mirroring the fields the service keeps beside the state machine.
+    private EnforcementStateMachine machine;
+    private final Map<String, String> lastObservedUrls = new HashMap<>();
+    private final Map<String, Long> lastUrlChangeTimes = new HashMap<>();
+    private String interceptedUrl;
+    private String interceptionKind;
+
+    /** {@code rules} may be null, in which case no address matches. */
+    TraceReplayer(EnforcementStateMachine.Budget budget, UrlRuleIndex rules,
+                  AllocationMeter meter) {
+        this.budget = budget;
+        this.rules = rules;
+        this.meter = meter;
+    }
+
+    Report replay(List<AccessibilityTrace.Event> events, double speed)
+            throws InterruptedException {
+        machine = new EnforcementStateMachine(budget);
+        lastObservedUrls.clear();
+        lastUrlChangeTimes.clear();
+        interceptedUrl = "";
+        interceptionKind = "";
+
+        long[] nanos = new long[events.size()];
+        int[] actionCounts = new int[ACTION_NAMES.length];
+        boolean metered = meter.allocatedBytes() >= 0;
+        long allocated = 0;
+        long maxEventBytes = 0;
+        long maxWait = 0;
+        long digest = 17;
+        int handled = 0;
+        long wallStart = System.nanoTime();
+        long traceStart = events.isEmpty() ? 0 : events.get(0).enqueuedAt;
+
+        for (int i = 0; i < events.size(); i++) {
+            AccessibilityTrace.Event event = events.get(i);
+            if (speed > 0) pace((event.enqueuedAt - traceStart) / speed, wallStart);
+            long bytesBefore = metered ? meter.allocatedBytes() : 0;
+            long start = System.nanoTime();
+            int actions = handle(event);
+            nanos[i] = System.nanoTime() - start;
+            if (metered) {
+                long bytes = meter.allocatedBytes() - bytesBefore;
+                allocated += bytes;
+                maxEventBytes = Math.max(maxEventBytes, bytes);
+            }
+            if (actions >= 0) handled++;
+            else actions = EnforcementStateMachine.ACTION_NONE;
+            for (int bits = actions; bits != 0; bits &= bits - 1) {
+                int bit = Integer.numberOfTrailingZeros(bits);
+                if (bit < actionCounts.length) actionCounts[bit]++;
+            }
+            digest = digest * 31 + actions;
+            maxWait = Math.max(maxWait, event.waitMs);
+        }
+        long span = events.isEmpty() ? 0
+                : events.get(events.size() - 1).enqueuedAt - traceStart;
+        return new Report(events.size(), handled, span, nanos, metered ? allocated : -1,
+                maxEventBytes, maxWait, actionCounts, digest);
+    }
+
+    /** The actions for one event, or -1 when enforcement would ignore it. */
+    private int handle(AccessibilityTrace.Event event) {
+        if (event.packageName == null || event.hasState(AccessibilityTrace.STATE_OWN_PACKAGE)
+                || !event.hasState(AccessibilityTrace.STATE_BLOCKER_ACTIVE)) {
+            return -1;
+        }
+        long now = event.enqueuedAt;
+        boolean stateChanged = event.eventType == TYPE_WINDOW_STATE_CHANGED;
+        boolean tempAllow = event.hasState(AccessibilityTrace.STATE_TEMP_ALLOW);
+        int actions = machine.onEvent(now, event.packageName, stateChanged, event.packageFlags,
+                tempAllow, now - event.tempAllowAgeMs);
+        if ((actions & EnforcementStateMachine.ACTION_APPROVED_LAUNCH) != 0) {
+            actions |= machine.startSession(now, event.packageName, event.packageFlags,
+                    interceptedUrl, interceptionKind);
+        }
+        noteInterception(actions, null);
+        if ((actions & EnforcementStateMachine.ACTION_CONSUMED) == 0) {
+            if ((stateChanged || event.eventType == TYPE_WINDOW_CONTENT_CHANGED)
+                    && (event.packageFlags & EnforcementStateMachine.PACKAGE_BROWSER) != 0
+                    && event.address != null && event.packageName.equals(event.rootPackage)) {
+                actions |= checkAddress(event, now, stateChanged);
+            }
+            if (machine.sessionPackage() != null) actions |= machine.onSessionTick(now);
+        }
+        if ((actions & EnforcementStateMachine.ACTION_RECORD_USAGE) != 0) {
+            machine.usageRecorded();
+        }
+        return actions;
+    }
+
+    /** The service's browser URL check, minus the tree reads the trace already holds. */
+    private int checkAddress(AccessibilityTrace.Event event, long now, boolean stateChanged) {
+        ObservedUrl observed = ObservedUrl.parse(event.address);
+        String previous = lastObservedUrls.put(event.packageName, observed.text);
+        if (!observed.text.equals(previous)) {
+            lastUrlChangeTimes.put(event.packageName, now);
+            // The service defers these to a timed re-check, which the trace does not hold.
+            if (!stateChanged) return EnforcementStateMachine.ACTION_NONE;
+        }
+        long lastChange = lastUrlChangeTimes.getOrDefault(event.packageName, 0L);
+        if (!stateChanged && now - lastChange < BrowserUrlEnforcementPolicy.URL_STABLE_MS) {
+            return EnforcementStateMachine.ACTION_NONE;
+        }
+        BrowserUrlEnforcementPolicy.RuleMatch match =
+                BrowserUrlEnforcementPolicy.findCommittedRestrictedMatch(
+                        observed, observed, event.addressFocused, rules);
+        if (match == null) {
+            return machine.onUnrestrictedUrl(now, event.packageName, !event.addressFocused,
+                    BrowserUrlEnforcementPolicy.isKnownSafeNewTab(observed.text));
+        }
+        int actions = machine.onRestrictedUrl(now, event.packageName, match.pattern,
+                match.strict, interceptionKind);
+        noteInterception(actions, match.pattern);
+        return actions;
+    }
+
+    private void noteInterception(int actions, String pattern) {
+        if ((actions & EnforcementStateMachine.ACTION_RECORD_INTERCEPTION) == 0) return;
+        interceptedUrl = pattern == null ? "" : pattern;
+        interceptionKind = pattern == null ? "APP" : "URL";
+    }
+
+    private static void pace(double offsetMs, long wallStart) throws InterruptedException {
+        long dueNanos = wallStart + (long) (offsetMs * 1_000_000);
+        long waitNanos = dueNanos - System.nanoTime();
+        if (waitNanos > 1_000_000) Thread.sleep(waitNanos / 1_000_000);
+    }
+}
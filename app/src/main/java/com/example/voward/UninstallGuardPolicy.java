@@ -3,6 +3,7 @@ package com.example.voward;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Locale;
 import java.util.Set;
 import java.text.Normalizer;
@@ -21,6 +22,12 @@ final class UninstallGuardPolicy {
         ACCESSIBILITY
     }
 
+    enum Evidence {
+        NONE,
+        TARGET,
+        TARGET_AND_CONTROLS
+    }
+
     static final class ScreenEvidence {
         final boolean targetVisible;
         final boolean appControlVisible;
@@ -78,6 +85,12 @@ final class UninstallGuardPolicy {
             "remove_admin", "restricted_action"
     };
 
+    // A generic switch_widget is also used for service rows on the main Accessibility
+    // dashboard, so it is deliberately not sufficient evidence.
+    private static final String[] ACCESSIBILITY_CONTROL_VIEW_ID_SIGNALS = {
+            "switch_text", "service_switch", "toggle_service"
+    };
+
     private static final Set<String> GUARD_HOST_PACKAGES = Collections.unmodifiableSet(
             new HashSet<>(Arrays.asList(
                     "com.android.settings",
@@ -201,6 +214,24 @@ final class UninstallGuardPolicy {
         return GuardTarget.NONE;
     }
 
+    /**
+     * What a screen scan still has to find once the window class is known: nothing when the
+     * class alone decides {@link #classify}, only the target for a dangerous class, and the
+     * target plus controls for a generic one.
+     */
+    static Evidence evidenceNeeded(String className) {
+        String normalizedClass = className == null ? "" : className.toLowerCase(Locale.ROOT);
+        if (containsAny(normalizedClass, ACCESSIBILITY_OVERVIEW_CLASS_FRAGMENTS)) {
+            return Evidence.NONE;
+        }
+        if (containsAny(normalizedClass, ACCESSIBILITY_DETAIL_CLASS_FRAGMENTS)
+                || containsAny(normalizedClass, DEVICE_ADMIN_CLASS_FRAGMENTS)
+                || containsAny(normalizedClass, APP_CONTROL_CLASS_FRAGMENTS)) {
+            return Evidence.TARGET;
+        }
+        return Evidence.TARGET_AND_CONTROLS;
+    }
+
     static boolean shouldBlock(GuardTarget target, boolean uninstallGuardEnabled) {
         if (target == null || target == GuardTarget.NONE) return false;
         // The accessibility service is the enforcement mechanism, so its controls
@@ -243,11 +274,29 @@ final class UninstallGuardPolicy {
         String normalizedLabel = accessibilityServiceLabel.toLowerCase(Locale.ROOT);
         if (normalizedLabel.isEmpty() || !normalizedValue.contains(normalizedLabel)) return false;
 
-        // A generic switch_widget is also used for service rows on the main
-        // Accessibility dashboard, so it is deliberately not sufficient evidence.
-        return normalizedViewId.contains("switch_text")
-                || normalizedViewId.contains("service_switch")
-                || normalizedViewId.contains("toggle_service");
+        return containsAny(normalizedViewId, ACCESSIBILITY_CONTROL_VIEW_ID_SIGNALS);
+    }
+
+    // The signal tables, for GuardScreenScanner's combined matcher. Text signals are matched
+    // against accent-stripped lower-case text, view-ID signals against the lower-case ID.
+    static List<String> appControlTextSignals() {
+        return Collections.unmodifiableList(Arrays.asList(APP_CONTROL_TEXT_SIGNALS));
+    }
+
+    static List<String> appControlViewIdSignals() {
+        return Collections.unmodifiableList(Arrays.asList(APP_CONTROL_VIEW_ID_SIGNALS));
+    }
+
+    static List<String> deviceAdminTextSignals() {
+        return Collections.unmodifiableList(Arrays.asList(DEVICE_ADMIN_TEXT_SIGNALS));
+    }
+
+    static List<String> deviceAdminViewIdSignals() {
+        return Collections.unmodifiableList(Arrays.asList(DEVICE_ADMIN_VIEW_ID_SIGNALS));
+    }
+
+    static List<String> accessibilityControlViewIdSignals() {
+        return Collections.unmodifiableList(Arrays.asList(ACCESSIBILITY_CONTROL_VIEW_ID_SIGNALS));
     }
 
     private static boolean containsViewIdSignal(String viewId, String[] signals) {
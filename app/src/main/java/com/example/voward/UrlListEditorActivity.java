@@ -1,7 +1,12 @@
 package com.example.voward;
+import android.net.Uri;
 import android.os.Bundle;
 import android.widget.Button;
+import android.widget.TextView;
+import android.widget.Toast;
 import android.view.View;
+import androidx.activity.result.ActivityResultLauncher;
+import androidx.activity.result.contract.ActivityResultContracts;
 import androidx.appcompat.app.AppCompatActivity;
 import androidx.core.view.WindowCompat;
 import androidx.recyclerview.widget.RecyclerView;
@@ -10,11 +15,21 @@ import com.google.android.material.checkbox.MaterialCheckBox;
 import com.google.android.material.textfield.TextInputEditText;
 import com.google.android.material.textfield.TextInputLayout;
 
+import java.io.BufferedReader;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
 public class UrlListEditorActivity extends AppCompatActivity {
 
     private AppPreferencesManagerSingleton appPreferencesManagerSingleton;
     private UrlListRecyclerAdapter adapter;
     private MaterialCheckBox newStrictRuleCheckbox;
+    private final ExecutorService ioExecutor = Executors.newSingleThreadExecutor();
+    private final ActivityResultLauncher<String[]> importHostBlocklistLauncher = registerForActivityResult(
+            new ActivityResultContracts.OpenDocument(), this::importHostBlocklist);
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -46,6 +61,15 @@ public class UrlListEditorActivity extends AppCompatActivity {
         findViewById(R.id.editorComposer).setVisibility(View.VISIBLE);
         refreshList();
 
+        findViewById(R.id.importHostBlocklistButton).setOnClickListener(v ->
+                importHostBlocklistLauncher.launch(new String[]{"text/*", "application/octet-stream"}));
+        findViewById(R.id.clearHostBlocklistButton).setOnClickListener(v ->
+                ioExecutor.execute(() -> {
+                    appPreferencesManagerSingleton.clearHostBlocklist();
+                    int hosts = appPreferencesManagerSingleton.getHostBlocklistSize();
+                    runOnUiThread(() -> showHostBlocklistSummary(hosts));
+                }));
+
         addButton.setOnClickListener(v -> {
             String newUrl = urlEditText.getText() != null
                     ? urlEditText.getText().toString().trim() : "";
@@ -64,6 +88,12 @@ public class UrlListEditorActivity extends AppCompatActivity {
         });
     }
 
+    @Override
+    protected void onDestroy() {
+        ioExecutor.shutdownNow();
+        super.onDestroy();
+    }
+
     @Override
     public boolean onSupportNavigateUp() {
         finish();
@@ -75,5 +105,42 @@ public class UrlListEditorActivity extends AppCompatActivity {
         findViewById(R.id.emptyState).setVisibility(
                 appPreferencesManagerSingleton.getRestrictedUrls().isEmpty()
                         ? View.VISIBLE : View.GONE);
+        // Mapping a large image is file I/O, so the count is read off the main thread.
+        ioExecutor.execute(() -> {
+            int hosts = appPreferencesManagerSingleton.getHostBlocklistSize();
+            runOnUiThread(() -> showHostBlocklistSummary(hosts));
+        });
+    }
+
+    private void showHostBlocklistSummary(int hosts) {
+        if (isFinishing() || isDestroyed()) return;
+        TextView summary = findViewById(R.id.hostBlocklistSummary);
+        summary.setText(getResources().getQuantityString(
+                R.plurals.host_blocklist_summary, hosts, hosts));
+        summary.setVisibility(hosts > 0 ? View.VISIBLE : View.GONE);
+        boolean locked = appPreferencesManagerSingleton.getIsBlockerActive();
+        findViewById(R.id.clearHostBlocklistButton).setVisibility(
+                hosts > 0 && !locked ? View.VISIBLE : View.GONE);
+    }
+
+    private void importHostBlocklist(Uri uri) {
+        if (uri == null) return;
+        ioExecutor.execute(() -> {
+            try (InputStream input = getContentResolver().openInputStream(uri);
+                 BufferedReader reader = new BufferedReader(
+                         new InputStreamReader(input, StandardCharsets.UTF_8))) {
+                int added = appPreferencesManagerSingleton.importHostBlocklist(reader);
+                int hosts = appPreferencesManagerSingleton.getHostBlocklistSize();
+                runOnUiThread(() -> {
+                    showHostBlocklistSummary(hosts);
+                    Toast.makeText(this, getResources().getQuantityString(
+                            R.plurals.host_blocklist_imported, added, added),
+                            Toast.LENGTH_SHORT).show();
+                });
+            } catch (Exception error) {
+                runOnUiThread(() -> Toast.makeText(this,
+                        R.string.host_blocklist_import_failed, Toast.LENGTH_LONG).show());
+            }
+        });
     }
 }
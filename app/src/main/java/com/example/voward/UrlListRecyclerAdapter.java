@@ -75,8 +75,11 @@ public class UrlListRecyclerAdapter extends RecyclerView.Adapter<UrlViewHolder>
 
         String url = urlList.get(position);
         holder.textView.setText(url);
-        if (url.toLowerCase(java.util.Locale.ROOT).startsWith("keyword:")) {
+        String lowerUrl = url.toLowerCase(java.util.Locale.ROOT);
+        if (lowerUrl.startsWith("keyword:")) {
             holder.typeView.setText(R.string.url_rule_keyword);
+        } else if (lowerUrl.startsWith("glob:")) {
+            holder.typeView.setText(R.string.url_rule_glob);
         } else if (url.contains("/")) {
             holder.typeView.setText(R.string.url_rule_path);
         } else {
@@ -3,64 +3,55 @@ package com.example.voward;
 import java.net.IDN;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.util.LinkedHashMap;
 import java.util.Locale;
+import java.util.Map;
 
 /** Domain-aware URL matching that avoids matching a hostname inside an unrelated host/query. */
 public final class UrlPatternMatcher {
     /** Internal-only rule used when persisted URL rules cannot be decoded safely. */
     static final String FAIL_CLOSED_PATTERN = "\u0000voward-corrupt-url-rules";
+    static final int COMPILED_CACHE_CAPACITY = 64;
+
+    // Callers of the string API repeat the same few rules; enforcement uses the rule list's
+    // own compiled patterns instead. Guarded by itself.
+    private static final Map<String, CompiledUrlPattern> COMPILED =
+            new LinkedHashMap<String, CompiledUrlPattern>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, CompiledUrlPattern> eldest) {
+                    return size() > COMPILED_CACHE_CAPACITY;
+                }
+            };
 
     private UrlPatternMatcher() {}
 
     public static boolean isValidPattern(String configuredPattern) {
-        if (configuredPattern == null) return false;
-        String pattern = configuredPattern.trim().toLowerCase(Locale.ROOT);
-        if (pattern.startsWith("keyword:")) {
-            return !pattern.substring("keyword:".length()).trim().isEmpty();
-        }
-        URI uri = parseWebUri(pattern);
-        String host = canonicalHost(uri);
-        if (host == null || host.isEmpty()) return false;
-        return host.contains(".") || host.equals("localhost") || host.contains(":");
+        return CompiledUrlPattern.compile(configuredPattern).isValid();
     }
 
     public static boolean matches(String currentUrl, String configuredPattern) {
-        if (currentUrl == null || configuredPattern == null) return false;
-        if (FAIL_CLOSED_PATTERN.equals(configuredPattern)) {
-            return !currentUrl.trim().isEmpty();
-        }
-        String current = currentUrl.trim().toLowerCase(Locale.ROOT);
-        String pattern = configuredPattern.trim().toLowerCase(Locale.ROOT);
-        if (current.isEmpty() || pattern.isEmpty()) return false;
-        if (pattern.startsWith("keyword:")) {
-            String keyword = pattern.substring("keyword:".length()).trim();
-            return !keyword.isEmpty() && current.contains(keyword);
-        }
+        if (currentUrl == null) return false;
+        return matchesObserved(ObservedUrl.parse(currentUrl), configuredPattern);
+    }
 
-        URI currentUri = parseWebUri(current);
-        URI patternUri = parseWebUri(pattern);
-        if (currentUri != null && patternUri != null) {
-            String currentHost = canonicalHost(currentUri);
-            String patternHost = canonicalHost(patternUri);
-            if (currentHost == null || patternHost == null) return false;
-            boolean hostMatches = currentHost.equals(patternHost)
-                    || currentHost.endsWith("." + patternHost);
-            if (!hostMatches) return false;
-            String patternPath = patternUri.getPath();
-            String patternQuery = patternUri.getRawQuery();
-            if (patternQuery != null && !patternQuery.equals(currentUri.getRawQuery())) return false;
-            if (patternPath == null || patternPath.isEmpty() || patternPath.equals("/")) return true;
-            String currentPath = currentUri.getPath();
-            if (currentPath == null) return false;
-            String subtree = patternPath.endsWith("/") ? patternPath : patternPath + "/";
-            return currentPath.equals(patternPath) || currentPath.startsWith(subtree);
-        }
+    /** Matches an address that has already been normalized and split into components. */
+    static boolean matchesObserved(ObservedUrl current, String configuredPattern) {
+        if (configuredPattern == null) return false;
+        return compiled(configuredPattern).matches(current);
+    }
 
-        // Malformed patterns fail safe. Generic matching must be explicitly prefixed keyword:.
-        return false;
+    private static CompiledUrlPattern compiled(String configuredPattern) {
+        synchronized (COMPILED) {
+            CompiledUrlPattern pattern = COMPILED.get(configuredPattern);
+            if (pattern == null) {
+                pattern = CompiledUrlPattern.compile(configuredPattern);
+                COMPILED.put(configuredPattern, pattern);
+            }
+            return pattern;
+        }
     }
 
-    private static URI parseWebUri(String value) {
+    static URI parseWebUri(String value) {
         try {
             String withScheme = hasScheme(value) ? value : "https://" + value;
             return new URI(withScheme);
@@ -69,7 +60,7 @@ public final class UrlPatternMatcher {
         }
     }
 
-    private static boolean hasScheme(String value) {
+    static boolean hasScheme(String value) {
         int separator = value.indexOf("://");
         if (separator <= 0) return false;
         for (int i = 0; i < separator; i++) {
@@ -81,10 +72,15 @@ public final class UrlPatternMatcher {
     }
 
     /** Returns a comparison-safe DNS hostname, including Unicode and absolute-name forms. */
-    private static String canonicalHost(URI uri) {
+    static String canonicalHost(URI uri) {
         if (uri == null) return null;
         String host = uri.getHost();
         if (host == null) host = hostFromAuthority(uri.getRawAuthority());
+        return canonicalHost(host);
+    }
+
+    /** Canonicalizes a raw host already separated from its port and user info. */
+    static String canonicalHost(String host) {
         if (host == null || host.isEmpty()) return null;
 
         String normalized = host.toLowerCase(Locale.ROOT);
@@ -0,0 +1,164 @@
+package com.example.voward;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Append-only record of URL rules added since the rule lists were last written in full.
+ *
+ * <p>Each line is a kind character, {@code R} for a regular rule or {@code S} for a strict
+ * one, followed by the escaped rule text. Adding a rule therefore writes only that rule
+ * instead of re-serializing both lists. A final line without its newline is an interrupted
+ * append and is ignored; any other malformed line marks the log corrupt.</p>
+ */
+final class UrlRuleDeltaLog {
+    static final char REGULAR = 'R';
+    static final char STRICT = 'S';
+
+    /** One logged addition. */
+    static final class Entry {
+        final char kind;
+        final String rule;
+
+        Entry(char kind, String rule) {
+            this.kind = kind;
+            this.rule = rule;
+        }
+
+        boolean isStrict() {
+            return kind == STRICT;
+        }
+    }
+
+    /** Entries read back from disk, or a corrupt marker. */
+    static final class Replay {
+        static final Replay EMPTY = new Replay(Collections.<Entry>emptyList(), false);
+
+        final List<Entry> entries;
+        final boolean corrupt;
+
+        Replay(List<Entry> entries, boolean corrupt) {
+            this.entries = entries;
+            this.corrupt = corrupt;
+        }
+    }
+
+    private final File file;
+
+    UrlRuleDeltaLog(File file) {
+        this.file = file;
+    }
+
+    /** Appends one rule and syncs it, so the addition survives a crash once this returns. */
+    void append(char kind, String rule) throws IOException {
+        if (kind != REGULAR && kind != STRICT) throw new IllegalArgumentException("Kind: " + kind);
+        byte[] line = (kind + escape(rule) + "\n").getBytes(StandardCharsets.UTF_8);
+        try (FileOutputStream out = new FileOutputStream(file, true)) {
+            out.write(line);
+            out.getFD().sync();
+        }
+    }
+
+    boolean isEmpty() {
+        return file.length() == 0;
+    }
+
+    Replay read() {
+        byte[] bytes;
+        try (InputStream in = new FileInputStream(file)) {
+            bytes = readAll(in);
+        } catch (FileNotFoundException missing) {
+            return Replay.EMPTY;
+        } catch (IOException unreadable) {
+            return new Replay(Collections.<Entry>emptyList(), true);
+        }
+
+        List<Entry> entries = new ArrayList<>();
+        String text = new String(bytes, StandardCharsets.UTF_8);
+        int start = 0;
+        int end;
+        while ((end = text.indexOf('\n', start)) >= 0) {
+            String rule = end - start < 2 ? null : unescape(text, start + 1, end);
+            char kind = start < end ? text.charAt(start) : 0;
+            if (rule == null || (kind != REGULAR && kind != STRICT)) {
+                return new Replay(Collections.<Entry>emptyList(), true);
+            }
+            entries.add(new Entry(kind, rule));
+            start = end + 1;
+        }
+        return new Replay(entries, false);
+    }
+
+    /**
+     * Discards every entry once the full lists that include them have been written. Returns
+     * false if the file could be neither deleted nor truncated.
+     */
+    boolean clear() {
+        if (!file.exists() || file.delete()) return true;
+        try {
+            // Opening without append truncates the file.
+            new FileOutputStream(file, false).close();
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    private static byte[] readAll(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int read;
+        while ((read = in.read(buffer)) > 0) out.write(buffer, 0, read);
+        return out.toByteArray();
+    }
+
+    static String escape(String rule) {
+        StringBuilder escaped = new StringBuilder(rule.length() + 8);
+        for (int i = 0; i < rule.length(); i++) {
+            char c = rule.charAt(i);
+            if (c == '\\') {
+                escaped.append("\\\\");
+            } else if (c == '\n') {
+                escaped.append("\\n");
+            } else if (c == '\r') {
+                escaped.append("\\r");
+            } else {
+                escaped.append(c);
+            }
+        }
+        return escaped.toString();
+    }
+
+    /** Returns the unescaped text of {@code line[start, end)}, or null if it is malformed. */
+    private static String unescape(String line, int start, int end) {
+        StringBuilder rule = new StringBuilder(end - start);
+        for (int i = start; i < end; i++) {
+            char c = line.charAt(i);
+            if (c != '\\') {
+                rule.append(c);
+                continue;
+            }
+            if (++i == end) return null;
+            char escaped = line.charAt(i);
+            if (escaped == '\\') {
+                rule.append('\\');
+            } else if (escaped == 'n') {
+                rule.append('\n');
+            } else if (escaped == 'r') {
+                rule.append('\r');
+            } else {
+                return null;
+            }
+        }
+        return rule.toString();
+    }
+}
@@ -0,0 +1,333 @@
+package com.example.voward;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compiled form of the strict and regular URL rule lists.
+ *
+ * <p>Host rules live in a trie of reversed DNS labels, so a lookup walks the labels of the
+ * current host once instead of re-parsing every configured pattern. Each host node keeps
+ * its whole-site, exact-path, and path-subtree leaves; a leaf may also require an exact raw
+ * query. Keyword rules share one Aho-Corasick automaton, and glob rules as few DFAs as fit
+ * the {@link GlobAutomaton} state cap.</p>
+ *
+ * <p>Strict and regular rules live in the same structures; each rule's rank carries its strict
+ * bit and list position, so a single lookup returns the winning match. Results are identical
+ * to evaluating {@link UrlPatternMatcher#matches} over the strict list and then the regular
+ * list, so a regular rule can never mask a strict one.</p>
+ *
+ * <p>Rules appended to the source lists after a build are kept as a short pending list by
+ * {@link #withAppended}, which shares the compiled trie and automata with this index. Ranks
+ * depend only on the strict bit and list position, so an appended rule never renumbers the
+ * others; callers rebuild once {@link #pendingCount} grows past a handful.</p>
+ */
+final class UrlRuleIndex {
+    // Set in the rank of every regular rule, so any strict rule outranks every regular one.
+    private static final int REGULAR_BIT = 1 << 30;
+    private static final Rule[] NO_PENDING = new Rule[0];
+
+    static final UrlRuleIndex EMPTY = build(null, null);
+
+    private final List<String> strictSource;
+    private final List<String> regularSource;
+    // Imported third-party hosts; consulted only when no configured rule matches.
+    private final HostBlocklistImage blocklist;
+    private final HostNode hosts;
+    // Keyword rules in rank order, addressed by their index in the keyword automaton.
+    private final List<Rule> keywordRules;
+    private KeywordAutomaton.Builder keywordBuilder;
+    private KeywordAutomaton keywords;
+    // Glob rules in rank order, addressed by their index in the glob automaton.
+    private final List<Rule> globRules;
+    private GlobAutomaton.Builder globBuilder;
+    private GlobAutomaton globs;
+    private Rule failClosedRule;
+    // Rules appended since the trie was built; matched one by one against the compiled form.
+    private final Rule[] pending;
+
+    private UrlRuleIndex(List<String> strictSource, List<String> regularSource,
+                         HostBlocklistImage blocklist) {
+        this.strictSource = strictSource;
+        this.regularSource = regularSource;
+        this.blocklist = blocklist;
+        this.hosts = new HostNode();
+        this.keywordRules = new ArrayList<>();
+        this.keywordBuilder = new KeywordAutomaton.Builder();
+        this.globRules = new ArrayList<>();
+        this.globBuilder = new GlobAutomaton.Builder();
+        this.pending = NO_PENDING;
+    }
+
+    private UrlRuleIndex(List<String> strictSource, List<String> regularSource, UrlRuleIndex base,
+                         Rule[] pending) {
+        this.strictSource = strictSource;
+        this.regularSource = regularSource;
+        this.blocklist = base.blocklist;
+        this.hosts = base.hosts;
+        this.keywordRules = base.keywordRules;
+        this.keywords = base.keywords;
+        this.globRules = base.globRules;
+        this.globs = base.globs;
+        this.failClosedRule = base.failClosedRule;
+        this.pending = pending;
+    }
+
+    static UrlRuleIndex build(List<String> strictPatterns, List<String> regularPatterns) {
+        return build(strictPatterns, regularPatterns, null);
+    }
+
+    /** Builds an index once per rule-set change; the source lists must not be mutated. */
+    static UrlRuleIndex build(List<String> strictPatterns, List<String> regularPatterns,
+                              HostBlocklistImage blocklist) {
+        UrlRuleIndex index = new UrlRuleIndex(strictPatterns, regularPatterns, blocklist);
+        // Published preference snapshots arrive already compiled; other lists compile here.
+        CompiledUrlRuleList strict = CompiledUrlRuleList.compiled(strictPatterns);
+        CompiledUrlRuleList regular = CompiledUrlRuleList.compiled(regularPatterns);
+        for (int i = 0; i < strict.size(); i++) {
+            index.add(strict.pattern(i), true, rank(true, i));
+        }
+        for (int i = 0; i < regular.size(); i++) {
+            index.add(regular.pattern(i), false, rank(false, i));
+        }
+        index.keywords = index.keywordRules.isEmpty() ? null : index.keywordBuilder.build();
+        index.keywordBuilder = null;
+        index.globs = index.globRules.isEmpty() ? null : index.globBuilder.build();
+        index.globBuilder = null;
+        return index;
+    }
+
+    /**
+     * Returns an index for lists that extend this index's sources by appended entries only.
+     * Just the new entries are compiled; the trie and automata are shared.
+     */
+    UrlRuleIndex withAppended(List<String> strictPatterns, List<String> regularPatterns) {
+        CompiledUrlRuleList strict = CompiledUrlRuleList.compiled(strictPatterns);
+        CompiledUrlRuleList regular = CompiledUrlRuleList.compiled(regularPatterns);
+        int strictBuilt = strictSource == null ? 0 : strictSource.size();
+        int regularBuilt = regularSource == null ? 0 : regularSource.size();
+        if (strict.size() < strictBuilt || regular.size() < regularBuilt) {
+            throw new IllegalArgumentException("Rule lists may only grow");
+        }
+        Rule[] added = Arrays.copyOf(pending,
+                pending.length + strict.size() - strictBuilt + regular.size() - regularBuilt);
+        int next = pending.length;
+        for (int i = strictBuilt; i < strict.size(); i++) {
+            added[next++] = new Rule(strict.pattern(i), true, rank(true, i));
+        }
+        for (int i = regularBuilt; i < regular.size(); i++) {
+            added[next++] = new Rule(regular.pattern(i), false, rank(false, i));
+        }
+        return new UrlRuleIndex(strictPatterns, regularPatterns, this, added);
+    }
+
+    /** Number of appended rules not yet folded into the trie by a rebuild. */
+    int pendingCount() {
+        return pending.length;
+    }
+
+    /** Same rules with every appended one folded into the trie. */
+    UrlRuleIndex rebuilt() {
+        return pending.length == 0 ? this : build(strictSource, regularSource, blocklist);
+    }
+
+    /** True when this index was compiled from exactly these immutable snapshots. */
+    boolean isBuiltFrom(List<String> strictPatterns, List<String> regularPatterns) {
+        return isBuiltFrom(strictPatterns, regularPatterns, null);
+    }
+
+    boolean isBuiltFrom(List<String> strictPatterns, List<String> regularPatterns,
+                        HostBlocklistImage blocklist) {
+        return strictSource == strictPatterns && regularSource == regularPatterns
+                && this.blocklist == blocklist;
+    }
+
+    /** Returns the first strict match, otherwise the first regular match, or null. */
+    BrowserUrlEnforcementPolicy.RuleMatch find(String currentUrl) {
+        return find(ObservedUrl.parse(currentUrl));
+    }
+
+    /** Same lookup for an address that the caller has already parsed. */
+    BrowserUrlEnforcementPolicy.RuleMatch find(ObservedUrl current) {
+        if (current == null || current.isEmpty()) return null;
+
+        Rule best = failClosedRule;
+        if (keywords != null
+                && (best == null || best.rank > keywordRules.get(0).rank)) {
+            // One automaton pass replaces a contains() scan per keyword rule.
+            int keyword = keywords.find(current.text);
+            if (keyword >= 0 && (best == null || keywordRules.get(keyword).rank < best.rank)) {
+                best = keywordRules.get(keyword);
+            }
+        }
+        if (globs != null && (best == null || best.rank > globRules.get(0).rank)) {
+            int glob = globs.find(current.text);
+            if (glob >= 0 && (best == null || globRules.get(glob).rank < best.rank)) {
+                best = globRules.get(glob);
+            }
+        }
+
+        String host = current.host();
+        if (host != null) best = findHostRule(host, current.path(), current.rawQuery(), best);
+        for (Rule rule : pending) {
+            if ((best == null || rule.rank < best.rank) && rule.compiled.matches(current)) {
+                best = rule;
+            }
+        }
+        if (best == null && host != null && blocklist != null) {
+            // Imported hosts rank after every configured rule and behave as regular rules.
+            String listed = blocklist.findCoveringHost(host);
+            if (listed != null) return new BrowserUrlEnforcementPolicy.RuleMatch(listed, false);
+        }
+        return best == null ? null : best.match;
+    }
+
+    private Rule findHostRule(String host, String path, String rawQuery, Rule best) {
+        HostNode node = hosts;
+        int end = host.length();
+        while (end >= 0) {
+            int start = host.lastIndexOf('.', end - 1) + 1;
+            node = node.children == null ? null : node.children.get(host.substring(start, end));
+            if (node == null) break;
+            // Every trie node reached here is a label-boundary suffix of the host, which is
+            // exactly the equals/endsWith("." + host) condition of the linear matcher.
+            best = node.bestMatch(path, rawQuery, best);
+            end = start - 1;
+        }
+        return best;
+    }
+
+    /**
+     * One ordering for both lists: the strict bit decides first, then list position. A lower
+     * rank wins, which is exactly "the first strict match, otherwise the first regular match".
+     */
+    private static int rank(boolean strict, int position) {
+        return strict ? position : REGULAR_BIT | position;
+    }
+
+    private void add(CompiledUrlPattern pattern, boolean strict, int rank) {
+        switch (pattern.kind) {
+            case FAIL_CLOSED:
+                if (failClosedRule == null) {
+                    failClosedRule = new Rule(pattern.source, strict, rank, null);
+                }
+                return;
+            case KEYWORD:
+                keywordBuilder.add(pattern.keyword);
+                keywordRules.add(new Rule(pattern.source, strict, rank, null));
+                return;
+            case GLOB:
+                globBuilder.addChecked(pattern.keyword);
+                globRules.add(new Rule(pattern.source, strict, rank, null));
+                return;
+            case HOST:
+                break;
+            default:
+                // Malformed patterns fail safe exactly as they do in the linear matcher.
+                return;
+        }
+
+        HostNode node = hosts;
+        String host = pattern.host;
+        int end = host.length();
+        while (end >= 0) {
+            int start = host.lastIndexOf('.', end - 1) + 1;
+            node = node.child(host.substring(start, end));
+            end = start - 1;
+        }
+        node.add(pattern.path, pattern.subtree,
+                new Rule(pattern.source, strict, rank, pattern.query));
+    }
+
+    private static final class Rule {
+        final BrowserUrlEnforcementPolicy.RuleMatch match;
+        final int rank;
+        final String query;
+        // Set only for pending rules, which are not placed in the trie.
+        final CompiledUrlPattern compiled;
+
+        Rule(String pattern, boolean strict, int rank, String query) {
+            this.match = new BrowserUrlEnforcementPolicy.RuleMatch(pattern, strict);
+            this.rank = rank;
+            this.query = query;
+            this.compiled = null;
+        }
+
+        Rule(CompiledUrlPattern pattern, boolean strict, int rank) {
+            this.match = new BrowserUrlEnforcementPolicy.RuleMatch(pattern.source, strict);
+            this.rank = rank;
+            this.query = pattern.query;
+            this.compiled = pattern;
+        }
+
+        boolean acceptsQuery(String rawQuery) {
+            return query == null || query.equals(rawQuery);
+        }
+    }
+
+    private static final class HostNode {
+        Map<String, HostNode> children;
+        // Leaves are appended in rank order, so the first accepted leaf in a list wins.
+        List<Rule> anyPath;
+        Map<String, List<Rule>> exactPath;
+        Map<String, List<Rule>> pathSubtree;
+
+        HostNode child(String label) {
+            if (children == null) children = new HashMap<>();
+            HostNode child = children.get(label);
+            if (child == null) {
+                child = new HostNode();
+                children.put(label, child);
+            }
+            return child;
+        }
+
+        void add(String path, String subtree, Rule rule) {
+            if (path == null) {
+                if (anyPath == null) anyPath = new ArrayList<>();
+                anyPath.add(rule);
+                return;
+            }
+            if (!path.equals(subtree)) {
+                if (exactPath == null) exactPath = new HashMap<>();
+                leaves(exactPath, path).add(rule);
+            }
+            if (pathSubtree == null) pathSubtree = new HashMap<>();
+            leaves(pathSubtree, subtree).add(rule);
+        }
+
+        Rule bestMatch(String path, String rawQuery, Rule best) {
+            best = better(anyPath, rawQuery, best);
+            if (path == null) return best;
+            if (exactPath != null) best = better(exactPath.get(path), rawQuery, best);
+            if (pathSubtree != null) {
+                for (int slash = path.indexOf('/'); slash >= 0;
+                        slash = path.indexOf('/', slash + 1)) {
+                    best = better(pathSubtree.get(path.substring(0, slash + 1)), rawQuery, best);
+                }
+            }
+            return best;
+        }
+
+        private static Rule better(List<Rule> rules, String rawQuery, Rule best) {
+            if (rules == null) return best;
+            for (Rule rule : rules) {
+                if (best != null && best.rank < rule.rank) return best;
+                if (rule.acceptsQuery(rawQuery)) return rule;
+            }
+            return best;
+        }
+
+        private static List<Rule> leaves(Map<String, List<Rule>> map, String key) {
+            List<Rule> rules = map.get(key);
+            if (rules == null) {
+                rules = new ArrayList<>();
+                map.put(key, rules);
+            }
+            return rules;
+        }
+    }
+}
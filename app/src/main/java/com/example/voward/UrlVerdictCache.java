@@ -0,0 +1,71 @@
+package com.example.voward;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Bounded LRU of committed-URL verdicts, stamped with the URL rule generation.
+ *
+ * <p>The browser watchdog, deferred checks and cooldown re-checks keep asking about the same
+ * few addresses. A verdict is reused only while the rule generation it was computed under is
+ * still current; any rule change empties the cache. Not thread-safe: the service only touches
+ * it from the enforcement thread.</p>
+ */
+final class UrlVerdictCache {
+    private static final BrowserUrlEnforcementPolicy.RuleMatch NO_MATCH =
+            new BrowserUrlEnforcementPolicy.RuleMatch("", false);
+
+    private final int capacity;
+    private final LinkedHashMap<String, BrowserUrlEnforcementPolicy.RuleMatch> verdicts;
+    private long generation = Long.MIN_VALUE;
+    private long hits;
+    private long misses;
+
+    UrlVerdictCache(int capacity) {
+        if (capacity < 1) throw new IllegalArgumentException("Capacity must be positive");
+        this.capacity = capacity;
+        this.verdicts = new LinkedHashMap<String, BrowserUrlEnforcementPolicy.RuleMatch>(
+                16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(
+                    Map.Entry<String, BrowserUrlEnforcementPolicy.RuleMatch> eldest) {
+                return size() > UrlVerdictCache.this.capacity;
+            }
+        };
+    }
+
+    /**
+     * Returns the rule matching {@code url}, consulting {@code rules} only on a miss. Read
+     * {@code ruleGeneration} before fetching {@code rules}, so a concurrent rule change can
+     * only ever discard a fresh verdict, never keep a stale one.
+     */
+    BrowserUrlEnforcementPolicy.RuleMatch find(
+            ObservedUrl url, UrlRuleIndex rules, long ruleGeneration) {
+        if (url == null || url.isEmpty() || rules == null) return null;
+        if (ruleGeneration != generation) {
+            verdicts.clear();
+            generation = ruleGeneration;
+        }
+        BrowserUrlEnforcementPolicy.RuleMatch verdict = verdicts.get(url.text);
+        if (verdict != null) {
+            hits++;
+            return verdict == NO_MATCH ? null : verdict;
+        }
+        misses++;
+        verdict = rules.find(url);
+        verdicts.put(url.text, verdict == null ? NO_MATCH : verdict);
+        return verdict;
+    }
+
+    long hits() {
+        return hits;
+    }
+
+    long misses() {
+        return misses;
+    }
+
+    int size() {
+        return verdicts.size();
+    }
+}
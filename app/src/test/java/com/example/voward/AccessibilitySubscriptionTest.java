@@ -0,0 +1,86 @@
+package com.example.voward;
+
+import android.accessibilityservice.AccessibilityServiceInfo;
+import android.view.accessibility.AccessibilityEvent;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class AccessibilitySubscriptionTest {
+    private static final String OWN = "com.example.voward";
+    private static final int STATE = AccessibilityEvent.TYPE_WINDOW_STATE_CHANGED;
+    private static final int CONTENT = AccessibilityEvent.TYPE_WINDOW_CONTENT_CHANGED;
+
+    @Test
+    public void subscriptionNarrowsToWhatTheStateNeeds() {
+        AccessibilitySubscription.Config inactive =
+                AccessibilitySubscription.configFor(false, true, false, OWN);
+        assertArrayEquals(new String[] {OWN}, inactive.packageNames);
+        assertEquals(0, inactive.flags);
+
+        // The foreground debounce falls back on content events, so an active subscription
+        // never drops them; it only coalesces them until a restricted app is in front.
+        AccessibilitySubscription.Config idle =
+                AccessibilitySubscription.configFor(true, false, false, OWN);
+        assertEquals(STATE | CONTENT, idle.eventTypes);
+        assertEquals(0, idle.flags);
+        assertNull(idle.packageNames);
+        assertEquals(AccessibilitySubscription.IDLE_TIMEOUT_MS, idle.notificationTimeout);
+
+        AccessibilitySubscription.Config watching =
+                AccessibilitySubscription.configFor(true, false, true, OWN);
+        assertEquals(STATE | CONTENT, watching.eventTypes);
+        assertNull(watching.packageNames);
+        assertEquals(AccessibilitySubscription.WATCHING_TIMEOUT_MS,
+                watching.notificationTimeout);
+
+        AccessibilitySubscription.Config inspecting =
+                AccessibilitySubscription.configFor(true, true, false, OWN);
+        assertEquals(STATE | CONTENT | AccessibilityEvent.TYPE_VIEW_CLICKED,
+                inspecting.eventTypes);
+        assertEquals(AccessibilityServiceInfo.FLAG_INCLUDE_NOT_IMPORTANT_VIEWS
+                | AccessibilityServiceInfo.FLAG_REPORT_VIEW_IDS, inspecting.flags);
+        assertEquals(watching.notificationTimeout, inspecting.notificationTimeout);
+    }
+
+    @Test
+    public void onlyChangedSubscriptionsAreApplied() {
+        AccessibilitySubscription subscription = new AccessibilitySubscription();
+        AccessibilitySubscription.Config idle =
+                AccessibilitySubscription.configFor(true, false, false, OWN);
+
+        assertSame(idle, subscription.update(idle, 0));
+        assertNull(subscription.update(
+                AccessibilitySubscription.configFor(true, false, false, OWN), 10));
+        assertEquals(1, subscription.changes());
+    }
+
+    @Test
+    public void avoidedEventsAreEstimatedFromTheFullySubscribedRate() {
+        AccessibilitySubscription subscription = new AccessibilitySubscription();
+        subscription.update(AccessibilitySubscription.configFor(true, true, false, OWN), 0);
+        for (int i = 0; i < 50; i++) subscription.recordEvent(CONTENT);
+        subscription.recordEvent(STATE);
+        subscription.update(AccessibilitySubscription.configFor(false, false, false, OWN), 1_000);
+
+        assertEquals(0, subscription.estimatedAvoided(1_000));
+        assertEquals(100, subscription.estimatedAvoided(3_000));
+        assertEquals(51, subscription.delivered());
+    }
+
+    @Test
+    public void coalescedEventsCountOnlyWhatTheIdleTimeoutHeldBack() {
+        AccessibilitySubscription subscription = new AccessibilitySubscription();
+        subscription.update(AccessibilitySubscription.configFor(true, false, true, OWN), 0);
+        for (int i = 0; i < 50; i++) subscription.recordEvent(CONTENT);
+        subscription.update(AccessibilitySubscription.configFor(true, false, false, OWN), 1_000);
+        for (int i = 0; i < 20; i++) subscription.recordEvent(CONTENT);
+
+        assertEquals(30, subscription.estimatedAvoided(2_000));
+        assertEquals(70, subscription.delivered());
+    }
+}
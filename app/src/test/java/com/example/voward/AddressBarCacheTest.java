@@ -0,0 +1,100 @@
+package com.example.voward;
+
+import android.view.accessibility.AccessibilityNodeInfo;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 35)
+public class AddressBarCacheTest {
+    private static final String BROWSER = "org.example.browser";
+
+    @Test
+    public void refreshedBarIsReusedInTheSameWindow() {
+        AddressBarCache cache = new AddressBarCache();
+        Bar bar = new Bar(true);
+
+        assertTrue(cache.put(BROWSER, 7, bar, AddressBarCache.Strategy.VIEW_ID));
+        assertSame(bar, cache.get(BROWSER, 7));
+        assertSame(bar, cache.get(BROWSER, 7));
+
+        assertEquals(2, bar.refreshes);
+        assertEquals(2, cache.hits());
+        assertEquals(0, cache.misses());
+        assertEquals(1, cache.found(AddressBarCache.Strategy.VIEW_ID));
+    }
+
+    @Test
+    public void otherWindowsAndVanishedViewsDropTheEntry() {
+        AddressBarCache cache = new AddressBarCache();
+        Bar moved = new Bar(true);
+        cache.put(BROWSER, 7, moved, AddressBarCache.Strategy.VIEW_ID);
+        assertNull(cache.get(BROWSER, 8));
+        assertEquals(1, moved.recycles);
+        assertFalse(cache.contains(BROWSER));
+
+        Bar gone = new Bar(true);
+        gone.attached = false;
+        cache.put(BROWSER, 7, gone, AddressBarCache.Strategy.VIEW_ID);
+        assertNull(cache.get(BROWSER, 7));
+        assertEquals(1, gone.recycles);
+        assertEquals(2, cache.misses());
+    }
+
+    @Test
+    public void readOnlyBarsAreLeftToTheCaller() {
+        AddressBarCache cache = new AddressBarCache();
+        Bar readOnly = new Bar(false);
+
+        assertFalse(cache.put(BROWSER, 7, readOnly,
+                AddressBarCache.Strategy.CONTENT_DESCRIPTION));
+        assertFalse(cache.contains(BROWSER));
+        assertEquals(0, readOnly.recycles);
+        assertEquals(1, cache.found(AddressBarCache.Strategy.CONTENT_DESCRIPTION));
+    }
+
+    @Test
+    public void invalidationAndClearRecycleCachedBars() {
+        AddressBarCache cache = new AddressBarCache();
+        Bar first = new Bar(true);
+        Bar second = new Bar(true);
+        cache.put(BROWSER, 7, first, AddressBarCache.Strategy.VIEW_ID);
+        cache.put("org.example.other", 7, second, AddressBarCache.Strategy.VIEW_ID);
+
+        cache.invalidate(BROWSER);
+        assertEquals(1, first.recycles);
+        cache.clear();
+        assertEquals(1, second.recycles);
+        assertFalse(cache.contains("org.example.other"));
+    }
+
+    private static final class Bar extends AccessibilityNodeInfo {
+        boolean attached = true;
+        int refreshes;
+        int recycles;
+
+        Bar(boolean editable) {
+            setEditable(editable);
+        }
+
+        @Override
+        public boolean refresh() {
+            refreshes++;
+            return attached;
+        }
+
+        @Override
+        public void recycle() {
+            recycles++;
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package com.example.voward;
+
+import android.app.Application;
+import android.content.Context;
+import android.content.SharedPreferences;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 35)
+public class AddressBarIdCatalogTest {
+    private static final String BAR_ID = ":id/toolbar_url";
+    private static final String EDIT_TEXT = "android.widget.EditText";
+
+    private Application application;
+    private SharedPreferences prefs;
+    private String installed;
+
+    @Before
+    public void setUp() {
+        application = RuntimeEnvironment.getApplication();
+        prefs = application.getSharedPreferences("address_bar_ids", Context.MODE_PRIVATE);
+        prefs.edit().clear().commit();
+        // Voward itself is the one package with a known version here.
+        installed = application.getPackageName();
+    }
+
+    @Test
+    public void learnedIdsSurviveARestartOfTheService() {
+        new AddressBarIdCatalog(application).learn(installed, installed + BAR_ID, EDIT_TEXT);
+
+        AddressBarIdCatalog.Entry entry = new AddressBarIdCatalog(application).learned(installed);
+        assertNotNull(entry);
+        assertEquals(installed + BAR_ID, entry.viewId);
+        assertEquals(EDIT_TEXT, entry.className);
+    }
+
+    @Test
+    public void entriesFromAnotherVersionAreDropped() {
+        prefs.edit().putString(installed,
+                new AddressBarIdCatalog.Entry(Long.MAX_VALUE, installed + BAR_ID, EDIT_TEXT)
+                        .encode()).commit();
+
+        assertNull(new AddressBarIdCatalog(application).learned(installed));
+        assertFalse(prefs.contains(installed));
+    }
+
+    @Test
+    public void nodesWithoutIdsAndUnknownPackagesAreNotLearned() {
+        AddressBarIdCatalog catalog = new AddressBarIdCatalog(application);
+        catalog.learn(installed, null, EDIT_TEXT);
+        catalog.learn("org.example.missing", "org.example.missing" + BAR_ID, EDIT_TEXT);
+
+        assertNull(catalog.learned(installed));
+        assertTrue(prefs.getAll().isEmpty());
+    }
+
+    @Test
+    public void forgottenEntriesAreRemovedFromStorage() {
+        AddressBarIdCatalog catalog = new AddressBarIdCatalog(application);
+        catalog.learn(installed, installed + BAR_ID, EDIT_TEXT);
+        catalog.forget(installed);
+
+        assertNull(catalog.learned(installed));
+        assertFalse(prefs.contains(installed));
+    }
+
+    @Test
+    public void malformedStoredEntriesAreIgnored() {
+        assertNull(AddressBarIdCatalog.Entry.decode(null));
+        assertNull(AddressBarIdCatalog.Entry.decode("12\n\nandroid.widget.EditText"));
+        assertNull(AddressBarIdCatalog.Entry.decode("twelve\nid\nclass"));
+        AddressBarIdCatalog.Entry entry = AddressBarIdCatalog.Entry.decode("12\nid\n");
+        assertNotNull(entry);
+        assertEquals(12, entry.versionCode);
+        assertEquals("", entry.className);
+    }
+}
@@ -17,8 +17,12 @@ import org.robolectric.RuntimeEnvironment;
 import org.robolectric.Shadows;
 import org.robolectric.annotation.Config;
 
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.StringReader;
 import java.lang.reflect.Field;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.security.MessageDigest;
 import java.time.LocalDate;
 import java.util.ArrayList;
@@ -28,6 +32,7 @@ import java.util.List;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertThrows;
 import static org.junit.Assert.assertTrue;
 
@@ -168,6 +173,149 @@ public class AppPreferencesManagerTest {
         assertFalse(preferences.isStrictRestrictedUrlPattern("other.test"));
     }
 
+    @Test
+    public void urlRuleGenerationMovesWithEveryEffectiveRuleChange() {
+        long initial = preferences.getUrlRuleGeneration();
+        preferences.setRestrictedUrls(List.of("example.com"));
+        long afterSet = preferences.getUrlRuleGeneration();
+        assertTrue(afterSet > initial);
+
+        UrlRuleIndex index = preferences.getUrlRuleIndex();
+        long afterBuild = preferences.getUrlRuleGeneration();
+        assertEquals(index, preferences.getUrlRuleIndex());
+        assertEquals(afterBuild, preferences.getUrlRuleGeneration());
+
+        preferences.addRestrictedUrl("other.test", false);
+        assertTrue(preferences.getUrlRuleGeneration() > afterBuild);
+        long afterAdd = preferences.getUrlRuleGeneration();
+        preferences.setRestrictedUrlStrict("other.test", true);
+        assertTrue(preferences.getUrlRuleGeneration() > afterAdd);
+    }
+
+    @Test
+    public void enforcementSnapshotIsReplacedOnlyAfterRelevantChanges() {
+        preferences.setRestrictedApps(List.of("app.one"));
+        EnforcementSnapshot first = preferences.getEnforcementSnapshot();
+        // The first index build moves the generation; the snapshot carries the moved one.
+        assertEquals(preferences.getUrlRuleGeneration(), first.urlRuleGeneration);
+        assertSame(first, preferences.getEnforcementSnapshot());
+        assertTrue(first.isRestrictedApp("app.one"));
+        assertFalse(first.tempAllowAppLaunch);
+
+        preferences.setDailySessionCount(3);
+        assertSame(first, preferences.getEnforcementSnapshot());
+
+        preferences.setTempAllowAppLaunch(true);
+        preferences.setLastInterceptedApp("app.one");
+        EnforcementSnapshot approved = preferences.getEnforcementSnapshot();
+        assertTrue(approved.tempAllowAppLaunch);
+        assertTrue(approved.isApprovedPackage("app.one"));
+
+        preferences.addRestrictedUrl("example.com", true);
+        EnforcementSnapshot withUrl = preferences.getEnforcementSnapshot();
+        assertEquals(preferences.getUrlRuleGeneration(), withUrl.urlRuleGeneration);
+        assertTrue(withUrl.urlRules.find("https://example.com/").strict);
+
+        // Writers that bypass the manager are observed through the change listener.
+        global().edit().putBoolean("is_blocker_active", true).commit();
+        assertTrue(preferences.getEnforcementSnapshot().blockerActive);
+        assertFalse(first.blockerActive);
+    }
+
+    @Test
+    public void hostBlocklistImportsMergeAndMatchAfterConfiguredRules() throws Exception {
+        preferences.setRestrictedUrls(List.of("example.com/news"));
+
+        assertEquals(2, preferences.importHostBlocklist(new BufferedReader(new StringReader(
+                "0.0.0.0 ads.example.com\n0.0.0.0 tracker.test\n"))));
+        preferences.setIsBlockerActive(true);
+        long generation = preferences.getUrlRuleGeneration();
+        assertEquals(1, preferences.importHostBlocklist(new BufferedReader(new StringReader(
+                "tracker.test\nmore.example\n"))));
+        assertTrue(preferences.getUrlRuleGeneration() > generation);
+
+        assertEquals(3, preferences.getHostBlocklistSize());
+        assertEquals("ads.example.com", preferences.findRestrictedUrlPattern(
+                "https://eu.ads.example.com/banner"));
+        assertEquals("example.com/news", preferences.findRestrictedUrlPattern(
+                "https://example.com/news/today"));
+        assertEquals(null, preferences.findRestrictedUrlPattern("https://example.com/"));
+        assertFalse(preferences.clearHostBlocklist());
+
+        preferences.setIsBlockerActive(false);
+        assertTrue(preferences.clearHostBlocklist());
+        assertEquals(0, preferences.getHostBlocklistSize());
+        assertEquals(null, preferences.findRestrictedUrlPattern("https://tracker.test/"));
+    }
+
+    @Test
+    public void urlRuleAdditionsAreLoggedReplayedAndCompacted() throws Exception {
+        preferences.setRestrictedUrls(List.of("example.com"));
+        preferences.setIsBlockerActive(true);
+        assertEquals("example.com", preferences.findRestrictedUrlPattern("https://example.com/"));
+        List<String> before = preferences.getRestrictedUrlsSnapshot();
+
+        preferences.addRestrictedUrl("news.test", false);
+        preferences.addRestrictedUrl("keyword:casino", true);
+        preferences.setRestrictedUrlStrict("example.com", true);
+        preferences.addRestrictedUrl("NEWS.TEST", false);
+
+        assertEquals(List.of("example.com"), before);
+        assertEquals(List.of("example.com", "news.test", "keyword:casino"),
+                preferences.getRestrictedUrls());
+        assertEquals(List.of("keyword:casino", "example.com"),
+                preferences.getStrictRestrictedUrls());
+        assertEquals("keyword:casino",
+                preferences.findRestrictedUrlPattern("https://example.com/casino"));
+        assertEquals("news.test", preferences.findRestrictedUrlPattern("https://a.news.test/"));
+        // Additions are appended to the log; the stored lists are not rewritten.
+        assertEquals("[\"example.com\"]", portable().getString("restricted_url_list", null));
+
+        resetSingleton();
+        preferences = AppPreferencesManagerSingleton.getInstance(application);
+        assertEquals(List.of("example.com", "news.test", "keyword:casino"),
+                preferences.getRestrictedUrls());
+        assertEquals(List.of("keyword:casino", "example.com"),
+                preferences.getStrictRestrictedUrls());
+
+        preferences.compactUrlRules();
+        preferences.awaitUrlRuleWrites();
+        assertEquals(new JSONArray(List.of("example.com", "news.test", "keyword:casino"))
+                .toString(), portable().getString("restricted_url_list", null));
+        assertEquals(new JSONArray(List.of("keyword:casino", "example.com")).toString(),
+                portable().getString("strict_restricted_url_list", null));
+        assertFalse(urlRuleDeltaFile().exists());
+    }
+
+    @Test
+    public void fullListWritesDiscardTheAdditionLog() throws Exception {
+        preferences.addRestrictedUrl("one.test", false);
+        preferences.addRestrictedUrl("two.test", false);
+        preferences.awaitUrlRuleWrites();
+        assertTrue(urlRuleDeltaFile().exists());
+
+        preferences.removeUrl("one.test");
+        assertEquals("[\"two.test\"]", portable().getString("restricted_url_list", null));
+        preferences.awaitUrlRuleWrites();
+        assertFalse(urlRuleDeltaFile().exists());
+        resetSingleton();
+        preferences = AppPreferencesManagerSingleton.getInstance(application);
+        assertEquals(List.of("two.test"), preferences.getRestrictedUrls());
+    }
+
+    @Test
+    public void unreadableAdditionLogFailsClosedWhileActive() throws Exception {
+        preferences.setRestrictedUrls(List.of("example.com"));
+        preferences.setIsBlockerActive(true);
+        Files.write(urlRuleDeltaFile().toPath(),
+                "Xnot-a-kind\n".getBytes(StandardCharsets.UTF_8));
+        resetSingleton();
+        preferences = AppPreferencesManagerSingleton.getInstance(application);
+
+        assertEquals(UrlPatternMatcher.FAIL_CLOSED_PATTERN,
+                preferences.findRestrictedUrlPattern("https://safe.test/"));
+    }
+
     @Test
     public void appRulesAreSanitizedAndStrictRulesArePrunedWithTheirParent() {
         preferences.setRestrictedApps(Arrays.asList(" app.one ", "app.one", null, "app.two"));
@@ -383,6 +531,8 @@ public class AppPreferencesManagerTest {
         assertTrue(preferences.isRestrictedApp("com.example.unlisted"));
         assertTrue(preferences.isStrictRestrictedApp("com.example.unlisted"));
         assertFalse(preferences.isRestrictedApp("com.android.settings"));
+        assertTrue(preferences.getEnforcementSnapshot()
+                .isStrictRestrictedApp("com.example.unlisted"));
         String failClosedPattern = preferences.findRestrictedUrlPattern(
                 "https://unlisted.example/page");
         assertTrue(UrlPatternMatcher.matches(
@@ -480,6 +630,10 @@ public class AppPreferencesManagerTest {
         assertFalse(global().contains("forbidden_url_list"));
     }
 
+    private File urlRuleDeltaFile() {
+        return new File(application.getNoBackupFilesDir(), "url_rules.delta");
+    }
+
     private SharedPreferences global() {
         return application.getSharedPreferences("global_preferences", Context.MODE_PRIVATE);
     }
@@ -495,6 +649,8 @@ public class AppPreferencesManagerTest {
                 .edit().clear().commit();
         application.getSharedPreferences("display_recovery_state", Context.MODE_PRIVATE)
                 .edit().clear().commit();
+        //noinspection ResultOfMethodCallIgnored
+        urlRuleDeltaFile().delete();
     }
 
     private void installPackage(String packageName) {
@@ -508,6 +664,9 @@ public class AppPreferencesManagerTest {
     private static void resetSingleton() throws Exception {
         Field field = AppPreferencesManagerSingleton.class.getDeclaredField("_instance");
         field.setAccessible(true);
+        AppPreferencesManagerSingleton previous = (AppPreferencesManagerSingleton) field.get(null);
+        // Let the old instance finish its queued writes before the next one reads them.
+        if (previous != null) previous.awaitUrlRuleWrites();
         field.set(null, null);
     }
 
@@ -0,0 +1,72 @@
+package com.example.voward;
+
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class CompiledUrlPatternTest {
+    @Test
+    public void hostRulesKeepCanonicalHostPathAndQuery() {
+        CompiledUrlPattern pattern =
+                CompiledUrlPattern.compile(" HTTPS://WWW.Example.COM/News?q=1 ");
+
+        assertEquals(CompiledUrlPattern.Kind.HOST, pattern.kind);
+        assertEquals(" HTTPS://WWW.Example.COM/News?q=1 ", pattern.source);
+        assertEquals("example.com", pattern.host);
+        assertEquals("/news", pattern.path);
+        assertEquals("/news/", pattern.subtree);
+        assertEquals("q=1", pattern.query);
+        assertTrue(pattern.isValid());
+    }
+
+    @Test
+    public void rootPathsCoverTheWholeHost() {
+        CompiledUrlPattern pattern = CompiledUrlPattern.compile("example.com/");
+
+        assertNull(pattern.path);
+        assertTrue(pattern.matches(ObservedUrl.parse("https://a.example.com/anything")));
+        assertFalse(pattern.matches(ObservedUrl.parse("https://notexample.com/")));
+    }
+
+    @Test
+    public void keywordAndMalformedRulesCompileToTheirKinds() {
+        CompiledUrlPattern keyword = CompiledUrlPattern.compile("keyword: Shorts ");
+        assertEquals(CompiledUrlPattern.Kind.KEYWORD, keyword.kind);
+        assertEquals("shorts", keyword.keyword);
+        assertTrue(keyword.matches(ObservedUrl.parse("https://safe.test/SHORTS")));
+
+        for (String malformed : new String[] {null, "", "keyword:  ", "exa mple.com", "https://"}) {
+            CompiledUrlPattern pattern = CompiledUrlPattern.compile(malformed);
+            assertEquals(CompiledUrlPattern.Kind.NEVER, pattern.kind);
+            assertFalse(pattern.isValid());
+            assertFalse(pattern.matches(ObservedUrl.parse("https://example.com")));
+        }
+    }
+
+    @Test
+    public void failClosedRuleMatchesEverythingButIsNeverUserValid() {
+        CompiledUrlPattern pattern =
+                CompiledUrlPattern.compile(UrlPatternMatcher.FAIL_CLOSED_PATTERN);
+
+        assertEquals(CompiledUrlPattern.Kind.FAIL_CLOSED, pattern.kind);
+        assertTrue(pattern.matches(ObservedUrl.parse("about:blank")));
+        assertFalse(pattern.matches(ObservedUrl.EMPTY));
+        assertFalse(pattern.isValid());
+    }
+
+    @Test
+    public void ruleListsCarryTheirCompiledPatterns() {
+        CompiledUrlRuleList rules = CompiledUrlRuleList.of(List.of("example.com", "keyword:x"));
+
+        assertEquals(List.of("example.com", "keyword:x"), rules);
+        assertEquals("example.com", rules.pattern(0).host);
+        assertSame(rules, CompiledUrlRuleList.compiled(rules));
+        assertEquals(0, CompiledUrlRuleList.compiled(null).size());
+    }
+}
@@ -0,0 +1,61 @@
+package com.example.voward;
+
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+public class CompiledUrlRuleListTest {
+    @Test
+    public void appendingLeavesEarlierSnapshotsUnchanged() {
+        CompiledUrlRuleList base = CompiledUrlRuleList.of(List.of("example.com"));
+        CompiledUrlRuleList grown = base.appended("news.test");
+        // Appending to an older snapshot must not overwrite the slot the newer one uses.
+        CompiledUrlRuleList forked = base.appended("other.test");
+
+        assertEquals(List.of("example.com"), base);
+        assertEquals(List.of("example.com", "news.test"), grown);
+        assertEquals(List.of("example.com", "other.test"), forked);
+        assertEquals("news.test", grown.pattern(1).host);
+        assertThrows(IndexOutOfBoundsException.class, () -> base.get(1));
+        assertThrows(UnsupportedOperationException.class, () -> grown.add("x.test"));
+    }
+
+    @Test
+    public void membershipIsCaseInsensitiveAndBoundedBySnapshot() {
+        CompiledUrlRuleList base = CompiledUrlRuleList.of(List.of("Example.com"));
+        CompiledUrlRuleList grown = base;
+        for (int i = 0; i < 20; i++) grown = grown.appended("site" + i + ".test");
+
+        assertTrue(base.containsIgnoreCase("EXAMPLE.COM"));
+        assertFalse(base.containsIgnoreCase("site3.test"));
+        assertTrue(grown.containsIgnoreCase("SITE3.test"));
+        assertFalse(grown.containsIgnoreCase(null));
+        assertEquals(21, grown.size());
+    }
+
+    @Test
+    public void membershipAgreesWithEqualsIgnoreCase() {
+        String[] values = {"straße.test", "İstanbul.test", "ǅ.test", "keyword:ΣΊΣΥΦΟΣ"};
+        CompiledUrlRuleList list = CompiledUrlRuleList.of(List.of(values));
+        String[] probes = {"STRASSE.test", "i̇stanbul.test", "istanbul.TEST", "ǆ.test",
+                "Ǆ.TEST", "keyword:σίσυφος", "keyword:σίσυφοσ"};
+        for (String probe : probes) {
+            boolean expected = false;
+            for (String value : values) expected |= value.equalsIgnoreCase(probe);
+            assertEquals(probe, expected, list.containsIgnoreCase(probe));
+        }
+    }
+
+    @Test
+    public void compiledReusesAnExistingList() {
+        CompiledUrlRuleList list = CompiledUrlRuleList.of(List.of("example.com"));
+        assertSame(list, CompiledUrlRuleList.compiled(list));
+        assertEquals(0, CompiledUrlRuleList.compiled(null).size());
+    }
+}
@@ -0,0 +1,105 @@
+package com.example.voward;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class DeadlineSchedulerTest {
+    private final FakeAlarm alarm = new FakeAlarm();
+    private final DeadlineScheduler scheduler = new DeadlineScheduler(alarm);
+    private final List<String> ran = new ArrayList<>();
+
+    @Test
+    public void reschedulingAKeyReplacesThePendingTask() {
+        scheduler.schedule("check", 100, () -> ran.add("first"));
+        scheduler.schedule("check", 300, () -> ran.add("second"));
+        assertEquals(300, alarm.at);
+
+        scheduler.runDue(300);
+        assertEquals(List.of("second"), ran);
+        assertFalse(scheduler.isScheduled("check"));
+        assertEquals(-1, alarm.at);
+    }
+
+    @Test
+    public void tasksDueTogetherShareOneWakeup() {
+        scheduler.schedule("guard", 400, () -> ran.add("guard"));
+        scheduler.schedule("eviction", 405, () -> ran.add("eviction"));
+        scheduler.schedule("browser", 1000, () -> ran.add("browser"));
+        assertEquals(400, alarm.at);
+
+        scheduler.runDue(400);
+        assertEquals(List.of("guard", "eviction"), ran);
+        assertEquals(1, scheduler.wakeups());
+        assertEquals(1000, alarm.at);
+    }
+
+    @Test
+    public void cancellingTheEarliestTaskMovesTheAlarm() {
+        scheduler.schedule("a", 100, () -> ran.add("a"));
+        scheduler.schedule("b", 200, () -> ran.add("b"));
+        scheduler.cancel("a");
+        assertEquals(200, alarm.at);
+
+        scheduler.cancelAll();
+        assertEquals(-1, alarm.at);
+        scheduler.runDue(500);
+        assertTrue(ran.isEmpty());
+    }
+
+    @Test
+    public void selfReschedulingTasksWaitForTheNextWakeup() {
+        Runnable[] tick = new Runnable[1];
+        tick[0] = () -> {
+            ran.add("tick");
+            scheduler.schedule("tick", 0, tick[0]);
+        };
+        scheduler.schedule("tick", 0, tick[0]);
+
+        scheduler.runDue(0);
+        assertEquals(1, ran.size());
+        assertTrue(scheduler.isScheduled("tick"));
+        assertEquals(0, alarm.at);
+    }
+
+    @Test
+    public void aTaskCancelledByAnEarlierOneInTheBatchDoesNotRun() {
+        scheduler.schedule("first", 100, () -> scheduler.cancel("second"));
+        scheduler.schedule("second", 102, () -> ran.add("second"));
+
+        scheduler.runDue(100);
+        assertTrue(ran.isEmpty());
+    }
+
+    @Test
+    public void latenessAndWakeupRateAreMeasured() {
+        scheduler.schedule("a", 1_000, () -> { });
+        scheduler.runDue(1_030);
+        scheduler.schedule("b", 2_000, () -> { });
+        scheduler.runDue(2_010);
+
+        assertEquals(2, scheduler.tasksRun());
+        assertEquals(30, scheduler.maxLatenessMs());
+        assertEquals(20.0, scheduler.meanLatenessMs(), 0.001);
+        assertEquals(2.0, scheduler.wakeupsPerMinute(61_000), 0.001);
+    }
+
+    private static final class FakeAlarm implements DeadlineScheduler.Alarm {
+        long at = -1;
+
+        @Override
+        public void set(long at) {
+            this.at = at;
+        }
+
+        @Override
+        public void cancel() {
+            at = -1;
+        }
+    }
+}
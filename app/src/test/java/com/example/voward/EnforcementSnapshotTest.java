@@ -0,0 +1,44 @@
+package com.example.voward;
+
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class EnforcementSnapshotTest {
+    private static final String OWN = "com.example.voward";
+
+    @Test
+    public void appRulesAreAnsweredFromTheCapturedLists() {
+        EnforcementSnapshot snapshot = snapshot(false, false);
+
+        assertTrue(snapshot.isRestrictedApp("app.one"));
+        assertTrue(snapshot.isRestrictedApp("app.two"));
+        assertFalse(snapshot.isRestrictedApp("app.three"));
+        assertTrue(snapshot.isStrictRestrictedApp("app.two"));
+        assertFalse(snapshot.isStrictRestrictedApp("app.one"));
+        assertTrue(snapshot.isApprovedPackage("app.one"));
+        assertFalse(snapshot.isApprovedPackage("app.two"));
+    }
+
+    @Test
+    public void failClosedAppRulesRestrictEveryNonCriticalPackage() {
+        EnforcementSnapshot regular = snapshot(true, false);
+        assertTrue(regular.isRestrictedApp("app.three"));
+        assertFalse(regular.isRestrictedApp("com.android.dialer"));
+        assertFalse(regular.isRestrictedApp(OWN));
+        assertFalse(regular.isStrictRestrictedApp("app.three"));
+
+        EnforcementSnapshot strict = snapshot(true, true);
+        assertTrue(strict.isStrictRestrictedApp("app.three"));
+        assertFalse(strict.isStrictRestrictedApp("com.android.emergency"));
+    }
+
+    private static EnforcementSnapshot snapshot(boolean failClosed, boolean strictFailClosed) {
+        return new EnforcementSnapshot(0, true, false, "app.one", "", "APP", true,
+                List.of("app.one", "app.two"), List.of("app.two"), failClosed,
+                strictFailClosed, OWN, 0, UrlRuleIndex.EMPTY);
+    }
+}
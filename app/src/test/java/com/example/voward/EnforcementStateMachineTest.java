@@ -0,0 +1,163 @@
+package com.example.voward;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class EnforcementStateMachineTest {
+    private static final String APP = "app.video";
+    private static final String BROWSER = "org.browser";
+    private static final String OTHER = "app.notes";
+    private static final int RESTRICTED = EnforcementStateMachine.PACKAGE_RESTRICTED;
+    private static final int BROWSER_FLAGS = EnforcementStateMachine.PACKAGE_BROWSER;
+
+    private final FakeBudget budget = new FakeBudget();
+    private final EnforcementStateMachine machine = new EnforcementStateMachine(budget);
+
+    @Test
+    public void aRestrictedAppOpensTheGateOnceAndIsRedetectedAfterIt() {
+        int actions = machine.onEvent(1_000, APP, true, RESTRICTED, false, 0);
+        assertTrue(has(actions, EnforcementStateMachine.ACTION_FOREGROUND_CHANGED));
+        assertTrue(has(actions, EnforcementStateMachine.ACTION_RECORD_INTERCEPTION));
+        assertTrue(has(actions, EnforcementStateMachine.ACTION_OPEN_GATE));
+        assertFalse(has(actions, EnforcementStateMachine.ACTION_STRICT));
+
+        // The gate forgot the foreground app, so its return is intercepted again.
+        actions = machine.onEvent(1_100, APP, false, RESTRICTED, false, 0);
+        assertFalse(has(actions, EnforcementStateMachine.ACTION_OPEN_GATE));
+        actions = machine.onEvent(1_500, APP, false, RESTRICTED, false, 0);
+        assertTrue(has(actions, EnforcementStateMachine.ACTION_OPEN_GATE));
+    }
+
+    @Test
+    public void anApprovalStartsAMeteredSessionThatEndsWhenAnotherAppTakesOver() {
+        int actions = machine.onEvent(1_000, APP, true,
+                RESTRICTED | EnforcementStateMachine.PACKAGE_APPROVED, true, 900);
+        assertEquals(EnforcementStateMachine.ACTION_CLEAR_TEMP_ALLOW
+                | EnforcementStateMachine.ACTION_APPROVED_LAUNCH
+                | EnforcementStateMachine.ACTION_CONSUMED, actions);
+        actions = machine.startSession(1_000, APP, RESTRICTED, "", "APP");
+        assertTrue(has(actions, EnforcementStateMachine.ACTION_SESSION_STARTED));
+        assertTrue(has(actions, EnforcementStateMachine.ACTION_START_TICKER));
+        assertEquals(APP, machine.sessionPackage());
+
+        // Overlays do not end the session; another app does, recording its usage.
+        machine.onEvent(3_000, "com.android.systemui", true,
+                EnforcementStateMachine.PACKAGE_TRANSIENT, false, 0);
+        assertEquals(APP, machine.sessionPackage());
+        actions = machine.onEvent(11_000, OTHER, true, 0, false, 0);
+        assertTrue(has(actions, EnforcementStateMachine.ACTION_RECORD_USAGE));
+        assertTrue(has(actions, EnforcementStateMachine.ACTION_RECORD_OUTCOME));
+        assertTrue(has(actions, EnforcementStateMachine.ACTION_SESSION_ENDED));
+        assertEquals(10_000, machine.pendingUsageMs());
+        assertFalse(machine.endedAtLimit());
+        assertNull(machine.sessionPackage());
+    }
+
+    @Test
+    public void overlaysCannotCancelAnApprovalDuringStabilization() {
+        assertEquals(EnforcementStateMachine.ACTION_CONSUMED, machine.onEvent(1_000,
+                "com.android.systemui", true, EnforcementStateMachine.PACKAGE_TRANSIENT,
+                true, 900));
+        assertFalse(has(machine.onEvent(2_000, OTHER, true, 0, true, 900),
+                EnforcementStateMachine.ACTION_CLEAR_TEMP_ALLOW));
+        assertTrue(has(machine.onEvent(5_000, OTHER, true, 0, true, 900),
+                EnforcementStateMachine.ACTION_CLEAR_TEMP_ALLOW));
+    }
+
+    @Test
+    public void restrictedTimeStopsOnlyAfterTheSafeConfirmationInterval() {
+        startSession(BROWSER, BROWSER_FLAGS, "video.example", "URL", 10_000);
+        machine.onRestrictedUrl(10_000, BROWSER, "video.example", false, "URL");
+        assertTrue(machine.isRestrictedTimeRunning());
+
+        assertEquals(EnforcementStateMachine.ACTION_NONE,
+                machine.onUnrestrictedUrl(11_000, BROWSER, true, false));
+        assertEquals(EnforcementStateMachine.ACTION_NONE,
+                machine.onUnrestrictedUrl(12_400, BROWSER, true, false));
+        assertEquals(EnforcementStateMachine.ACTION_STOP_TICKER,
+                machine.onUnrestrictedUrl(12_600, BROWSER, true, false));
+        assertFalse(machine.isRestrictedTimeRunning());
+        assertEquals(2_600, machine.restrictedTimeMs(20_000));
+    }
+
+    @Test
+    public void restrictedUrlsWaitForTheDecisionCooldown() {
+        int actions = machine.onRestrictedUrl(10_000, BROWSER, "video.example", false, "URL");
+        assertTrue(has(actions, EnforcementStateMachine.ACTION_OPEN_GATE));
+
+        assertEquals(EnforcementStateMachine.ACTION_RECHECK_AFTER_COOLDOWN,
+                machine.onRestrictedUrl(12_000, BROWSER, "video.example", false, "URL"));
+        assertEquals(3_000, machine.cooldownRemainingMs(12_000));
+        assertTrue(has(machine.onRestrictedUrl(15_000, BROWSER, "video.example", true, "URL"),
+                EnforcementStateMachine.ACTION_STRICT));
+    }
+
+    @Test
+    public void anExhaustedSessionEvictsTheBrowserAndArmsTheCooldown() {
+        budget.quote = 60;
+        startSession(BROWSER, BROWSER_FLAGS, "", "APP", 1_000);
+
+        assertEquals(EnforcementStateMachine.ACTION_NONE, machine.onSessionTick(2_000));
+        int actions = machine.onSessionTick(61_000);
+        assertTrue(has(actions, EnforcementStateMachine.ACTION_SESSION_ENDED));
+        assertTrue(has(actions, EnforcementStateMachine.ACTION_EVICT));
+        assertTrue(has(actions, EnforcementStateMachine.ACTION_SHOW_SESSION_COMPLETE));
+        assertTrue(machine.endedAtLimit());
+        assertEquals(BROWSER, machine.evictionPackage());
+        assertEquals(EnforcementStateMachine.DECISION_COOLDOWN_MS,
+                machine.cooldownRemainingMs(61_000));
+    }
+
+    @Test
+    public void forcedEvictionFallsBackToHomeAndEndsOnceTheTargetLeaves() {
+        budget.remaining = false;
+        assertTrue(has(machine.onEvent(1_000, BROWSER, true, RESTRICTED | BROWSER_FLAGS,
+                false, 0), EnforcementStateMachine.ACTION_EVICT));
+
+        assertEquals(EnforcementStateMachine.ACTION_RECHECK_EVICTION,
+                machine.onEvictionCheck(1_350, BROWSER, 0, true, false, true));
+        assertEquals(EnforcementStateMachine.ACTION_RESTART_REDIRECT
+                        | EnforcementStateMachine.ACTION_RECHECK_EVICTION,
+                machine.onEvictionCheck(1_700, BROWSER, 0, true, false, false));
+        assertEquals(EnforcementStateMachine.ACTION_GO_HOME
+                        | EnforcementStateMachine.ACTION_RECHECK_EVICTION,
+                machine.onEvictionCheck(5_000, BROWSER, 0, true, false, true));
+        assertEquals(EnforcementStateMachine.ACTION_RECHECK_EVICTION,
+                machine.onEvictionCheck(5_350, "com.android.systemui",
+                        EnforcementStateMachine.PACKAGE_TRANSIENT, true, false, true));
+        assertEquals(EnforcementStateMachine.ACTION_EVICTION_DONE,
+                machine.onEvictionCheck(5_700, "com.android.launcher3",
+                        EnforcementStateMachine.PACKAGE_LAUNCHER, true, false, true));
+        assertNull(machine.evictionPackage());
+    }
+
+    private void startSession(String packageName, int flags, String pattern, String kind,
+                              long now) {
+        machine.onEvent(now, packageName, true, flags | EnforcementStateMachine.PACKAGE_APPROVED,
+                true, now);
+        machine.startSession(now, packageName, flags, pattern, kind);
+    }
+
+    private static boolean has(int actions, int action) {
+        return (actions & action) != 0;
+    }
+
+    private static final class FakeBudget implements EnforcementStateMachine.Budget {
+        boolean remaining = true;
+        long quote = 600;
+
+        @Override
+        public boolean hasRemaining() {
+            return remaining;
+        }
+
+        @Override
+        public long quoteSessionSeconds() {
+            return quote;
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package com.example.voward;
+
+import android.view.accessibility.AccessibilityEvent;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class EventHandoffTest {
+    private static final int STATE = AccessibilityEvent.TYPE_WINDOW_STATE_CHANGED;
+    private static final int CONTENT = AccessibilityEvent.TYPE_WINDOW_CONTENT_CHANGED;
+
+    @Test
+    public void onlyTheFirstRecordOfABurstWakesTheConsumer() {
+        EventHandoff handoff = new EventHandoff(4);
+        assertTrue(handoff.offer(record(STATE, "app.one", 0)));
+        assertFalse(handoff.offer(record(CONTENT, "app.one", 1)));
+
+        assertEquals("app.one", handoff.poll(5).packageName);
+        assertEquals(CONTENT, handoff.poll(5).eventType);
+        assertNull(handoff.poll(5));
+        assertTrue(handoff.offer(record(STATE, "app.two", 6)));
+    }
+
+    @Test
+    public void aFullQueueDropsTheOldestContentEventFirst() {
+        EventHandoff handoff = new EventHandoff(3);
+        handoff.offer(record(STATE, "app.one", 0));
+        handoff.offer(record(CONTENT, "app.one", 1));
+        handoff.offer(record(STATE, "app.two", 2));
+        handoff.offer(record(STATE, "app.three", 3));
+
+        assertEquals(1, handoff.dropped());
+        assertEquals("app.one", handoff.poll(4).packageName);
+        assertEquals("app.two", handoff.poll(4).packageName);
+        assertEquals("app.three", handoff.poll(4).packageName);
+
+        handoff.offer(record(STATE, "app.four", 5));
+        handoff.offer(record(STATE, "app.five", 5));
+        handoff.offer(record(STATE, "app.six", 5));
+        handoff.offer(record(STATE, "app.seven", 5));
+        assertEquals("app.five", handoff.poll(6).packageName);
+        assertEquals(3, handoff.maxDepth());
+    }
+
+    @Test
+    public void waitingTimeIsMeasuredAtHandover() {
+        EventHandoff handoff = new EventHandoff(4);
+        handoff.offer(record(STATE, "app.one", 100));
+        handoff.offer(record(STATE, "app.two", 110));
+        handoff.poll(120);
+        handoff.poll(120);
+
+        assertEquals(20, handoff.maxWaitMs());
+        assertEquals(15.0, handoff.meanWaitMs(), 0.001);
+        assertEquals(0, handoff.depth());
+    }
+
+    @Test
+    public void clearDiscardsEveryQueuedRecord() {
+        EventHandoff handoff = new EventHandoff(4);
+        handoff.offer(record(STATE, "app.one", 0));
+        handoff.offer(record(CONTENT, "app.one", 1));
+
+        assertEquals(2, handoff.clear());
+        assertEquals(0, handoff.depth());
+        assertNull(handoff.poll(2));
+        assertEquals(0, handoff.dropped());
+        assertTrue(handoff.offer(record(STATE, "app.two", 3)));
+    }
+
+    private static EventHandoff.Record record(int type, String packageName, long at) {
+        return new EventHandoff.Record(type, packageName, null, 1, 0, null, at);
+    }
+}
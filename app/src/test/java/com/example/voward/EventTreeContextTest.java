@@ -0,0 +1,138 @@
+package com.example.voward;
+
+import android.accessibilityservice.AccessibilityService;
+import android.view.accessibility.AccessibilityEvent;
+import android.view.accessibility.AccessibilityNodeInfo;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 35)
+public class EventTreeContextTest {
+    private static final String BROWSER = "org.example.browser";
+
+    @Test
+    public void nestedChecksShareOneRootFetch() {
+        FakeService service = new FakeService(node(BROWSER, null));
+        EventTreeContext.Scope scope = scope(service);
+
+        try (EventTreeContext outer = scope.open()) {
+            assertEquals(BROWSER, outer.rootPackageName());
+            try (EventTreeContext inner = scope.open()) {
+                assertSame(outer, inner);
+                assertSame(outer.root(), inner.root());
+            }
+            assertEquals(BROWSER, outer.rootPackageName());
+        }
+        assertEquals(1, service.rootFetches);
+        assertEquals(1, scope.stats().contexts());
+
+        try (EventTreeContext next = scope.open()) {
+            next.root();
+        }
+        assertEquals(2, service.rootFetches);
+        assertEquals(2, scope.stats().contexts());
+    }
+
+    @Test
+    public void addressBarIsResolvedOncePerContext() {
+        FakeService service = new FakeService(node(BROWSER, "Search bar"));
+        EventTreeContext.Scope scope = scope(service);
+        BrowserSupport.Config browser = browser();
+
+        try (EventTreeContext tree = scope.open()) {
+            AccessibilityNodeInfo bar = tree.addressBar(browser);
+            assertNotNull(bar);
+            assertSame(bar, tree.addressBar(browser));
+        }
+        try (EventTreeContext tree = scope.open()) {
+            assertNotNull(tree.addressBar(browser));
+        }
+
+        EventTreeContext.Stats stats = scope.stats();
+        assertEquals(2, stats.contexts());
+        assertEquals(2L * stats.maxPerContext(), stats.binderCalls());
+    }
+
+    @Test
+    public void missingAddressBarIsRememberedToo() {
+        FakeService service = new FakeService(node(BROWSER, null));
+        EventTreeContext.Scope scope = scope(service);
+
+        try (EventTreeContext tree = scope.open()) {
+            assertNull(tree.addressBar(browser()));
+            assertNull(tree.addressBar(browser()));
+        }
+        int firstLookup = scope.stats().maxPerContext();
+        try (EventTreeContext tree = scope.open()) {
+            tree.root();
+        }
+        assertEquals(firstLookup + 1, scope.stats().binderCalls());
+    }
+
+    @Test
+    public void missingRootIsFetchedOnce() {
+        FakeService service = new FakeService(null);
+        EventTreeContext.Scope scope = scope(service);
+
+        try (EventTreeContext tree = scope.open()) {
+            assertNull(tree.rootPackageName());
+            assertNull(tree.addressBar(browser()));
+            assertNull(tree.findByText("about:blank"));
+        }
+        assertEquals(1, service.rootFetches);
+        assertEquals(1, scope.stats().binderCalls());
+    }
+
+    private static EventTreeContext.Scope scope(FakeService service) {
+        return new EventTreeContext.Scope(service, new AddressBarCache(),
+                new AddressBarIdCatalog(RuntimeEnvironment.getApplication()));
+    }
+
+    private static BrowserSupport.Config browser() {
+        List<BrowserSupport.Config> configs = BrowserSupport.withDiscoveredPackages(
+                List.of(BROWSER));
+        return configs.get(configs.size() - 1);
+    }
+
+    private static AccessibilityNodeInfo node(String packageName, String description) {
+        AccessibilityNodeInfo node = new AccessibilityNodeInfo();
+        node.setPackageName(packageName);
+        node.setContentDescription(description);
+        return node;
+    }
+
+    private static final class FakeService extends AccessibilityService {
+        private final AccessibilityNodeInfo root;
+        private int rootFetches;
+
+        FakeService(AccessibilityNodeInfo root) {
+            this.root = root;
+        }
+
+        @Override
+        public AccessibilityNodeInfo getRootInActiveWindow() {
+            rootFetches++;
+            return root == null ? null : new AccessibilityNodeInfo(root);
+        }
+
+        @Override
+        public void onAccessibilityEvent(AccessibilityEvent event) {
+        }
+
+        @Override
+        public void onInterrupt() {
+        }
+    }
+}
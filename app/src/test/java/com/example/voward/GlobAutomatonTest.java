@@ -0,0 +1,161 @@
+package com.example.voward;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+public class GlobAutomatonTest {
+    @Test
+    public void lowestMatchingGlobWins() {
+        GlobAutomaton globs = build("*/reels/*", "*/shorts/*", "https://*");
+
+        assertEquals(1, globs.find("https://youtube.com/shorts/1"));
+        assertEquals(0, globs.find("https://instagram.com/reels/2"));
+        assertEquals(2, globs.find("https://example.com/"));
+        assertEquals(-1, globs.find("http://example.com/"));
+        assertEquals(-1, globs.find(null));
+    }
+
+    @Test
+    public void agreesWithARegexForRandomGlobsAndTexts() {
+        Random random = new Random(8);
+        String alphabet = "ab/.é";
+        for (int round = 0; round < 300; round++) {
+            List<String> globs = new ArrayList<>();
+            GlobAutomaton.Builder builder = new GlobAutomaton.Builder();
+            while (globs.size() < 1 + random.nextInt(6)) {
+                String glob = randomText(random, alphabet + "*?", 1 + random.nextInt(8));
+                if (!GlobAutomaton.isSupported(glob)) continue;
+                globs.add(glob);
+                builder.add(glob);
+            }
+            GlobAutomaton automaton = builder.build();
+            for (int i = 0; i < 40; i++) {
+                String text = randomText(random, alphabet + "c", random.nextInt(12));
+                int expected = -1;
+                for (int g = 0; g < globs.size() && expected < 0; g++) {
+                    if (toRegex(globs.get(g)).matcher(text).matches()) expected = g;
+                }
+                assertEquals(globs + " " + text, expected, automaton.find(text));
+            }
+        }
+    }
+
+    @Test
+    public void globsThatDoNotFitOneDfaAreSplitWithoutChangingPriority() {
+        GlobAutomaton.Builder builder = new GlobAutomaton.Builder();
+        List<String> globs = new ArrayList<>();
+        for (int i = 0; i < 40; i++) {
+            String glob = "*" + (char) ('a' + i % 20) + "*?*" + i + "*x?y*";
+            globs.add(glob);
+            builder.add(glob);
+        }
+        GlobAutomaton automaton = builder.build();
+
+        assertTrue(automaton.partCount() > 1);
+        for (String text : List.of("qa-zz9-x1y", "t35zzxqy", "a0bx_y", "zzzz")) {
+            int expected = -1;
+            for (int g = 0; g < globs.size() && expected < 0; g++) {
+                if (toRegex(globs.get(g)).matcher(text).matches()) expected = g;
+            }
+            assertEquals(text, expected, automaton.find(text));
+        }
+    }
+
+    @Test
+    public void eachDfaTakesAsManyGlobsAsFit() {
+        List<String> globs = new ArrayList<>();
+        for (int i = 0; i < 12; i++) globs.add("*site" + i + ".example/*/watch*");
+
+        // Four of these fit the state limit together and a fifth does not.
+        assertEquals(1, build(globs.subList(0, 4).toArray(new String[0])).partCount());
+        assertEquals(2, build(globs.subList(0, 5).toArray(new String[0])).partCount());
+        GlobAutomaton automaton = build(globs.toArray(new String[0]));
+        assertEquals(3, automaton.partCount());
+        for (String text : List.of("https://www.site3.example/c/watch?v=1",
+                "https://site11.example/a/b/watch", "https://site0.example/watch",
+                "https://site9.example/x/watch/site2.example/y/watch")) {
+            int expected = -1;
+            for (int g = 0; g < globs.size() && expected < 0; g++) {
+                if (toRegex(globs.get(g)).matcher(text).matches()) expected = g;
+            }
+            assertEquals(text, expected, automaton.find(text));
+        }
+    }
+
+    @Test
+    public void manyPathGlobsShareOneDfa() {
+        GlobAutomaton.Builder builder = new GlobAutomaton.Builder();
+        List<String> globs = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            String glob = "*/g" + (i * 1000 + 7) + "/*";
+            globs.add(glob);
+            builder.add(glob);
+        }
+        GlobAutomaton automaton = builder.build();
+
+        assertEquals(1, automaton.partCount());
+        for (String text : List.of("https://a.test/g7/g1007/x", "https://a.test/g2007/g7/",
+                "https://a.test/g99007/", "https://a.test/g100007/", "https://a.test/g1007")) {
+            int expected = -1;
+            for (int g = 0; g < globs.size() && expected < 0; g++) {
+                if (toRegex(globs.get(g)).matcher(text).matches()) expected = g;
+            }
+            assertEquals(text, expected, automaton.find(text));
+        }
+    }
+
+    @Test
+    public void unsupportedGlobsAreRejected() {
+        assertTrue(GlobAutomaton.isSupported("*/shorts/*"));
+        assertTrue(GlobAutomaton.isSupported("a**********b"));
+        assertFalse(GlobAutomaton.isSupported(""));
+        assertFalse(GlobAutomaton.isSupported("**??"));
+        assertFalse(GlobAutomaton.isSupported("*a*b*c*d*e*f*g*h*i*"));
+        assertFalse(GlobAutomaton.isSupported("x".repeat(GlobAutomaton.MAX_GLOB_LENGTH + 1)));
+        assertThrows(IllegalArgumentException.class,
+                () -> new GlobAutomaton.Builder().add("*"));
+        assertNull(GlobAutomaton.single("**??"));
+    }
+
+    @Test
+    public void theSupportCheckKeepsItsAutomaton() {
+        GlobAutomaton glob = GlobAutomaton.single("*/shorts/?");
+        assertEquals(1, glob.partCount());
+        assertEquals(0, glob.find("youtube.com/shorts/x"));
+        assertEquals(-1, glob.find("youtube.com/shorts/xy"));
+    }
+
+    private static GlobAutomaton build(String... globs) {
+        GlobAutomaton.Builder builder = new GlobAutomaton.Builder();
+        for (String glob : globs) builder.add(glob);
+        return builder.build();
+    }
+
+    private static Pattern toRegex(String glob) {
+        StringBuilder regex = new StringBuilder();
+        for (char c : glob.toCharArray()) {
+            if (c == '*') regex.append(".*");
+            else if (c == '?') regex.append('.');
+            else regex.append(Pattern.quote(String.valueOf(c)));
+        }
+        return Pattern.compile(regex.toString(), Pattern.DOTALL);
+    }
+
+    private static String randomText(Random random, String alphabet, int length) {
+        StringBuilder text = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            text.append(alphabet.charAt(random.nextInt(alphabet.length())));
+        }
+        return text.toString();
+    }
+}
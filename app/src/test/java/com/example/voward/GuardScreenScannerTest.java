@@ -0,0 +1,351 @@
+package com.example.voward;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class GuardScreenScannerTest {
+    private static final String GENERIC = "com.android.settings.SubSettings";
+    private static final String APP_INFO =
+            "com.android.settings.applications.appinfo.AppInfoDashboardFragment";
+    private static final String OVERVIEW =
+            "com.android.settings.Settings$AccessibilitySettingsActivity";
+
+    private final FakeTree tree = new FakeTree();
+    private final GuardScreenScanner scanner = scanner(GuardScreenScanner.DEFAULT_MAX_NODES,
+            GuardScreenScanner.DEFAULT_MAX_NANOS);
+
+    @Test
+    public void findsAccentedAndIdSignalsWithoutStoppingEarly() {
+        Node root = node(null, null).add(
+                node("Voward", null).bounds(100, 200),
+                node("Forțați oprirea", null),
+                node(null, null).id("com.android.settings:id/admin_warning"));
+
+        UninstallGuardPolicy.ScreenEvidence evidence = scanner.scan(tree, root, GENERIC);
+
+        assertTrue(evidence.targetVisible);
+        assertTrue(evidence.appControlVisible);
+        assertTrue(evidence.deviceAdminControlVisible);
+        assertFalse(evidence.accessibilityControlVisible);
+        assertEquals(4, scanner.lastNodesVisited());
+        assertEquals(UninstallGuardPolicy.GuardTarget.DEVICE_ADMIN, UninstallGuardPolicy.classify(
+                "com.android.settings", GENERIC, evidence));
+    }
+
+    @Test
+    public void matchesTheSameTextAsThePolicyChecks() {
+        String[] samples = {
+                "Dezinstalați", "ȘTERGE DATELE", "Ștergeți spațiul de stocare", "force stop",
+                "Force Stop", "forcestop", "Remove this device administrator", "Dezactivați",
+                "Funcție dezactivată", "cleaŕ cache", "Ḋezinstal",
+        };
+        for (String sample : samples) {
+            UninstallGuardPolicy.ScreenEvidence evidence =
+                    scanner.scan(tree, node(sample, null), GENERIC);
+            assertEquals(sample, UninstallGuardPolicy.isAppControlSignal(sample),
+                    evidence.appControlVisible);
+            assertEquals(sample, UninstallGuardPolicy.isDeviceAdminSignal(sample),
+                    evidence.deviceAdminControlVisible);
+        }
+    }
+
+    @Test
+    public void theServiceSwitchNeedsItsLabelIdAndACheckableControl() {
+        Node label = node("Use Voward protection service", null)
+                .id("com.android.settings:id/toggle_service");
+        UninstallGuardPolicy.ScreenEvidence evidence =
+                scanner.scan(tree, node(null, null).add(label), GENERIC);
+        assertFalse(evidence.accessibilityControlVisible);
+
+        Node toggle = node(null, null).className("android.widget.Switch");
+        evidence = scanner.scan(tree, node(null, null).add(label, toggle, node("x", null)),
+                GENERIC);
+        assertTrue(evidence.accessibilityControlVisible);
+        // Nothing after the switch can outrank the accessibility evidence.
+        assertEquals(3, scanner.lastNodesVisited());
+    }
+
+    @Test
+    public void countsActionButtonsBelowTheTarget() {
+        Node root = node(null, null).add(
+                node("Voward", null).bounds(100, 200),
+                node("Open", null).className("android.widget.Button").bounds(300, 360),
+                node(null, null).id("com.android.settings:id/button2").bounds(300, 360),
+                node("Above", null).className("android.widget.Button").bounds(0, 50));
+
+        assertTrue(scanner.scan(tree, root, GENERIC).appInfoActionLayoutVisible);
+    }
+
+    @Test
+    public void theWindowClassDecidesHowMuchToRead() {
+        Node root = node(null, null).add(node("voward", null), node("uninstall", null));
+
+        assertFalse(scanner.scan(tree, root, OVERVIEW).targetVisible);
+        assertEquals(0, scanner.lastNodesVisited());
+        assertTrue(scanner.scan(tree, root, APP_INFO).targetVisible);
+        assertEquals(2, scanner.lastNodesVisited());
+        assertEquals(tree.fetched, tree.released);
+    }
+
+    @Test
+    public void fingerprintsChangeWithTheContentOnly() {
+        Node page = node(null, null).add(node("Storage", null), node("12 MB", null));
+        assertTrue(scanner.fingerprint(tree, page));
+        long hash = scanner.fingerprintHash();
+        assertEquals(3, scanner.fingerprintNodes());
+
+        assertTrue(scanner.fingerprint(tree,
+                node(null, null).add(node("Storage", null), node("12 MB", null))));
+        assertEquals(hash, scanner.fingerprintHash());
+        scanner.fingerprint(tree, node(null, null).add(node("Storage", null), node("13 MB", null)));
+        assertNotEquals(hash, scanner.fingerprintHash());
+        // Same text, moved one level down.
+        scanner.fingerprint(tree, node(null, null).add(node("Storage", null).add(
+                node("12 MB", null))));
+        assertNotEquals(hash, scanner.fingerprintHash());
+        assertEquals(tree.fetched, tree.released);
+
+        GuardScreenScanner small = scanner(2, GuardScreenScanner.DEFAULT_MAX_NANOS);
+        assertFalse(small.fingerprint(tree, page));
+    }
+
+    @Test
+    public void fingerprintsFollowLayoutAndCheckableState() {
+        Node target = node("Voward", null);
+        Node open = node("Open", null).className("android.widget.Button");
+        Node stop = node(null, null).id("com.android.settings:id/button2");
+        Node root = node(null, null).add(target, open, stop);
+
+        // Mid-layout: every bound is still empty, so no action button counts yet.
+        assertTrue(scanner.fingerprint(tree, root));
+        long empty = scanner.fingerprintHash();
+        assertFalse(scanner.scan(tree, root, GENERIC).appInfoActionLayoutVisible);
+
+        target.bounds(100, 200);
+        open.bounds(300, 360);
+        stop.bounds(300, 360);
+        assertTrue(scanner.fingerprint(tree, root));
+        long laidOut = scanner.fingerprintHash();
+        assertEquals(4, scanner.fingerprintNodes());
+        assertNotEquals(empty, laidOut);
+        assertTrue(scanner.scan(tree, root, GENERIC).appInfoActionLayoutVisible);
+
+        open.checkable = true;
+        scanner.fingerprint(tree, root);
+        assertNotEquals(laidOut, scanner.fingerprintHash());
+        assertEquals(tree.fetched, tree.released);
+    }
+
+    @Test
+    public void rescanMergesAChangedSubtreeIntoTheKeptWindow() {
+        Node row = node("Storage", null);
+        Node list = node(null, null).add(row, node("Notifications", null));
+        Node root = node(null, null).add(node("Voward", null), list);
+
+        UninstallGuardPolicy.ScreenEvidence evidence =
+                scanner.scanWindow(tree, root, 7, GENERIC);
+        assertTrue(evidence.targetVisible);
+        assertFalse(evidence.appControlVisible);
+        assertTrue(scanner.hasWindow(7, GENERIC));
+
+        list.children.set(1, node(null, null).add(node("Force stop", null)));
+        evidence = scanner.rescan(tree, list, true, 7, GENERIC);
+        assertTrue(evidence.targetVisible);
+        assertTrue(evidence.appControlVisible);
+        assertEquals(4, scanner.lastNodesVisited());
+
+        // A text change reads the source alone; the target elsewhere is still merged in.
+        list.children.get(1).children.get(0).text = "Details";
+        evidence = scanner.rescan(tree, list.children.get(1).children.get(0), false, 7, GENERIC);
+        assertTrue(evidence.targetVisible);
+        assertFalse(evidence.appControlVisible);
+        assertEquals(1, scanner.lastNodesVisited());
+
+        scanner.forgetWindow(tree);
+        assertFalse(scanner.hasWindow(7, GENERIC));
+        assertEquals(tree.fetched, tree.released);
+    }
+
+    @Test
+    public void rescanFallsBackWhenTheKeptWindowCannotAnswer() {
+        Node target = node("Voward", null);
+        Node root = node(null, null).add(target, node("Uninstall", null));
+        scanner.scanWindow(tree, root, 7, APP_INFO);
+        // The app-info page settles on the target, so the rest was never read.
+        assertEquals(2, scanner.lastNodesVisited());
+
+        assertNull(scanner.rescan(tree, node("new", null), true, 7, APP_INFO));
+        assertFalse(scanner.hasWindow(7, APP_INFO));
+
+        scanner.scanWindow(tree, root, 7, APP_INFO);
+        assertNull(scanner.rescan(tree, target, false, 8, APP_INFO));
+        scanner.scanWindow(tree, root, 7, APP_INFO);
+        target.text = "Storage";
+        assertNull(scanner.rescan(tree, target, false, 7, APP_INFO));
+        assertEquals(tree.fetched, tree.released);
+    }
+
+    @Test
+    public void onlySubtreeAndPaneChangesReadTheSubtree() {
+        assertTrue(GuardScreenScanner.changesSubtree(0));
+        assertTrue(GuardScreenScanner.changesSubtree(0x1 | 0x2));
+        assertTrue(GuardScreenScanner.changesSubtree(0x10));
+        assertFalse(GuardScreenScanner.changesSubtree(0x2));
+        assertFalse(GuardScreenScanner.changesSubtree(0x4 | 0x40));
+    }
+
+    @Test
+    public void stopsPastTheDepthAndNodeBudgets() {
+        Node root = node(null, null);
+        Node parent = root;
+        for (int depth = 1; depth <= GuardScreenScanner.MAX_DEPTH + 5; depth++) {
+            Node child = node(depth == GuardScreenScanner.MAX_DEPTH + 1 ? "voward" : null, null);
+            parent.add(child);
+            parent = child;
+        }
+        assertFalse(scanner.scan(tree, root, GENERIC).targetVisible);
+        assertEquals(GuardScreenScanner.MAX_DEPTH + 1, scanner.lastNodesVisited());
+        assertFalse(scanner.lastScanTruncated());
+
+        GuardScreenScanner small = scanner(10, GuardScreenScanner.DEFAULT_MAX_NANOS);
+        small.scan(tree, root, GENERIC);
+        assertEquals(10, small.lastNodesVisited());
+        assertTrue(small.lastScanTruncated());
+        assertEquals(tree.fetched, tree.released);
+    }
+
+    @Test
+    public void stopsPastTheTimeBudget() {
+        tree.childDelayMs = 5;
+        Node root = node(null, null).add(node(null, null), node(null, null), node(null, null));
+        GuardScreenScanner slow = scanner(GuardScreenScanner.DEFAULT_MAX_NODES, 1_000_000L);
+
+        slow.scan(tree, root, GENERIC);
+
+        assertTrue(slow.lastScanTruncated());
+        assertEquals(2, slow.lastNodesVisited());
+        assertEquals(tree.fetched, tree.released);
+    }
+
+    private static GuardScreenScanner scanner(int maxNodes, long maxNanos) {
+        GuardScreenScanner scanner = new GuardScreenScanner(maxNodes, maxNanos);
+        scanner.setTarget(Arrays.asList("com.example.voward", "voward",
+                "voward protection service"), "voward protection service");
+        return scanner;
+    }
+
+    private static Node node(String text, String description) {
+        Node node = new Node();
+        node.text = text;
+        node.description = description;
+        return node;
+    }
+
+    private static final class Node {
+        final List<Node> children = new ArrayList<>();
+        String text;
+        String description;
+        String viewId;
+        String className;
+        int top;
+        int bottom;
+        boolean checkable;
+
+        Node add(Node... added) {
+            children.addAll(Arrays.asList(added));
+            return this;
+        }
+
+        Node id(String value) {
+            viewId = value;
+            return this;
+        }
+
+        Node className(String value) {
+            className = value;
+            return this;
+        }
+
+        Node bounds(int nodeTop, int nodeBottom) {
+            top = nodeTop;
+            bottom = nodeBottom;
+            return this;
+        }
+    }
+
+    private static final class FakeTree implements GuardScreenScanner.Tree<Node> {
+        int fetched;
+        int released;
+        long childDelayMs;
+
+        @Override
+        public int childCount(Node node) {
+            return node.children.size();
+        }
+
+        @Override
+        public Node child(Node node, int index) {
+            if (childDelayMs > 0) {
+                try {
+                    Thread.sleep(childDelayMs);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            fetched++;
+            return node.children.get(index);
+        }
+
+        @Override
+        public void release(Node node) {
+            released++;
+        }
+
+        @Override
+        public CharSequence text(Node node) {
+            return node.text;
+        }
+
+        @Override
+        public CharSequence description(Node node) {
+            return node.description;
+        }
+
+        @Override
+        public CharSequence viewId(Node node) {
+            return node.viewId;
+        }
+
+        @Override
+        public CharSequence className(Node node) {
+            return node.className;
+        }
+
+        @Override
+        public boolean isCheckable(Node node) {
+            return node.checkable;
+        }
+
+        @Override
+        public boolean bounds(Node node, int[] topBottom) {
+            topBottom[0] = node.top;
+            topBottom[1] = node.bottom;
+            return node.bottom > node.top;
+        }
+
+        @Override
+        public Node copy(Node node) {
+            fetched++;
+            return node;
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package com.example.voward;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertThrows;
+
+public class GuardVerdictCacheTest {
+    private static final String SUB_SETTINGS = "com.android.settings.SubSettings";
+
+    @Test
+    public void anUnchangedWindowReusesItsVerdict() {
+        GuardVerdictCache cache = new GuardVerdictCache(4);
+        assertNull(cache.find(7, SUB_SETTINGS, 120, 42L));
+        cache.put(7, SUB_SETTINGS, 120, 42L, UninstallGuardPolicy.GuardTarget.APP_CONTROLS);
+
+        assertEquals(UninstallGuardPolicy.GuardTarget.APP_CONTROLS,
+                cache.find(7, SUB_SETTINGS, 120, 42L));
+        assertEquals(1, cache.hits());
+        assertEquals(1, cache.misses());
+        assertEquals("1 hits, 1 misses (50% hit rate)", cache.toString());
+    }
+
+    @Test
+    public void anyChangeToTheKeyMisses() {
+        GuardVerdictCache cache = new GuardVerdictCache(4);
+        cache.put(7, SUB_SETTINGS, 120, 42L, UninstallGuardPolicy.GuardTarget.NONE);
+
+        assertNull(cache.find(8, SUB_SETTINGS, 120, 42L));
+        assertNull(cache.find(7, "com.android.settings.Settings", 120, 42L));
+        assertNull(cache.find(7, null, 120, 42L));
+        assertNull(cache.find(7, SUB_SETTINGS, 121, 42L));
+        assertNull(cache.find(7, SUB_SETTINGS, 120, 43L));
+        assertEquals(0, cache.hits());
+    }
+
+    @Test
+    public void theLeastRecentlyUsedWindowIsEvicted() {
+        GuardVerdictCache cache = new GuardVerdictCache(2);
+        cache.put(1, SUB_SETTINGS, 10, 1L, UninstallGuardPolicy.GuardTarget.NONE);
+        cache.put(2, SUB_SETTINGS, 10, 2L, UninstallGuardPolicy.GuardTarget.ACCESSIBILITY);
+        cache.find(1, SUB_SETTINGS, 10, 1L);
+        cache.put(3, SUB_SETTINGS, 10, 3L, UninstallGuardPolicy.GuardTarget.NONE);
+
+        assertNull(cache.find(2, SUB_SETTINGS, 10, 2L));
+        assertEquals(UninstallGuardPolicy.GuardTarget.NONE, cache.find(1, SUB_SETTINGS, 10, 1L));
+        cache.clear();
+        assertEquals(0, cache.size());
+        assertThrows(IllegalArgumentException.class, () -> new GuardVerdictCache(0));
+    }
+}
@@ -0,0 +1,115 @@
+package com.example.voward;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertThrows;
+
+public class HostBlocklistImageTest {
+    @Test
+    public void listedHostsCoverThemselvesAndTheirSubdomains() throws IOException {
+        HostBlocklistImage image = image("ads.example.com", "tracker.test", "example.net");
+
+        assertEquals("ads.example.com", image.findCoveringHost("ads.example.com"));
+        assertEquals("ads.example.com", image.findCoveringHost("eu.cdn.ads.example.com"));
+        assertEquals("tracker.test", image.findCoveringHost("x.tracker.test"));
+        assertNull(image.findCoveringHost("example.com"));
+        assertNull(image.findCoveringHost("notads.example.com"));
+        assertNull(image.findCoveringHost("tracker.test.evil"));
+        assertNull(image.findCoveringHost("bücher.example"));
+        assertEquals(3, image.size());
+    }
+
+    @Test
+    public void theBroadestListedParentIsReported() throws IOException {
+        HostBlocklistImage image = image("example.com", "ads.example.com");
+
+        assertEquals("example.com", image.findCoveringHost("x.ads.example.com"));
+    }
+
+    @Test
+    public void agreesWithASetLookupAcrossManyRestartBlocks() throws IOException {
+        Random random = new Random(5);
+        Set<String> hosts = new HashSet<>();
+        while (hosts.size() < 2000) {
+            hosts.add(label(random) + "." + label(random) + (random.nextBoolean() ? ".com" : ".net"));
+        }
+        HostBlocklistImage image = image(hosts.toArray(new String[0]));
+        assertEquals(hosts.size(), image.size());
+
+        for (String host : hosts) {
+            assertEquals(host, image.findCoveringHost("www2." + host));
+        }
+        for (int i = 0; i < 2000; i++) {
+            String candidate = label(random) + "." + label(random) + ".org";
+            assertNull(candidate, image.findCoveringHost(candidate));
+        }
+    }
+
+    @Test
+    public void keysIterateInAscendingOrderWithoutDuplicates() throws IOException {
+        HostBlocklistImage image = image("b.test", "a.test", "b.test", "a.example");
+
+        List<String> keys = new ArrayList<>();
+        for (Iterator<String> it = image.keys(); it.hasNext(); ) keys.add(it.next());
+        assertEquals(List.of("example.a", "test.a", "test.b"), keys);
+    }
+
+    @Test
+    public void truncatedOrForeignImagesAreRejected() throws IOException {
+        byte[] valid = bytes("a.test", "b.test");
+        byte[] truncated = new byte[valid.length - 3];
+        System.arraycopy(valid, 0, truncated, 0, truncated.length);
+        byte[] damaged = valid.clone();
+        damaged[1] = (byte) 200;
+
+        assertThrows(IOException.class, () -> HostBlocklistImage.wrap(ByteBuffer.wrap(truncated)));
+        assertThrows(IOException.class, () -> HostBlocklistImage.wrap(ByteBuffer.wrap(damaged)));
+        assertThrows(IOException.class, () -> HostBlocklistImage.wrap(ByteBuffer.wrap(new byte[8])));
+        assertEquals(0, HostBlocklistImage.wrap(ByteBuffer.wrap(bytes())).size());
+    }
+
+    @Test
+    public void writerRejectsDescendingKeys() throws IOException {
+        HostBlocklistImage.Writer writer = new HostBlocklistImage.Writer(new ByteArrayOutputStream());
+        writer.add("test.b");
+
+        assertThrows(IllegalArgumentException.class, () -> writer.add("test.a"));
+    }
+
+    private static HostBlocklistImage image(String... hosts) throws IOException {
+        return HostBlocklistImage.wrap(ByteBuffer.wrap(bytes(hosts)));
+    }
+
+    private static byte[] bytes(String... hosts) throws IOException {
+        List<String> keys = new ArrayList<>();
+        for (String host : hosts) keys.add(HostBlocklistImage.reverseLabels(host));
+        Collections.sort(keys);
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        try (HostBlocklistImage.Writer writer = new HostBlocklistImage.Writer(output)) {
+            for (String key : keys) writer.add(key);
+            writer.finish();
+        }
+        return output.toByteArray();
+    }
+
+    private static String label(Random random) {
+        StringBuilder label = new StringBuilder();
+        int length = 1 + random.nextInt(6);
+        for (int i = 0; i < length; i++) label.append("abcdefgh-1"
+                .charAt(random.nextInt(i == 0 || i == length - 1 ? 9 : 10)));
+        return label.toString();
+    }
+}
@@ -0,0 +1,46 @@
+package com.example.voward;
+
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class HostListParserTest {
+    @Test
+    public void readsHostsFilesAndPlainDomainLists() throws IOException {
+        String source = "# Title: example list\n"
+                + "127.0.0.1 localhost\n"
+                + "0.0.0.0 0.0.0.0\n"
+                + "::1 ip6-localhost ip6-loopback\n"
+                + "0.0.0.0 Ads.Example.COM tracker.test # inline comment\n"
+                + "\n"
+                + "   www.plain.example   \n"
+                + "bücher.example\n"
+                + "exa mple\n";
+        HostListParser parser = new HostListParser();
+        List<String> keys = new ArrayList<>();
+
+        parser.parse(new BufferedReader(new StringReader(source)), keys::add);
+
+        assertEquals(List.of("com.example.ads", "test.tracker", "example.plain",
+                "example.xn--bcher-kva"), keys);
+        assertEquals(4, parser.acceptedCount());
+        assertEquals(6, parser.rejectedCount());
+    }
+
+    @Test
+    public void unusableHostsAreSkipped() {
+        assertNull(HostListParser.toKey("localhost"));
+        assertNull(HostListParser.toKey("localhost.localdomain"));
+        assertNull(HostListParser.toKey("192.168.0.1"));
+        assertNull(HostListParser.toKey("bad..example"));
+        assertNull(HostListParser.toKey("bad/example.com"));
+        assertEquals("com.example.cdn", HostListParser.toKey("cdn.example.com."));
+    }
+}
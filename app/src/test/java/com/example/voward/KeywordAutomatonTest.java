@@ -0,0 +1,101 @@
+package com.example.voward;
+
+import org.junit.Test;
+
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThrows;
+
+public class KeywordAutomatonTest {
+    @Test
+    public void reportsTheHighestPriorityKeywordAnywhereInTheText() {
+        KeywordAutomaton automaton = automaton("hers", "she", "he", "his");
+
+        assertEquals(1, automaton.find("ushe"));
+        assertEquals(0, automaton.find("ushers"));
+        assertEquals(2, automaton.find("the"));
+        assertEquals(3, automaton.find("this"));
+        assertEquals(-1, automaton.find("nothing"));
+        assertEquals(-1, automaton.find(""));
+        assertEquals(-1, automaton.find(null));
+    }
+
+    @Test
+    public void duplicateKeywordsKeepTheirFirstPriority() {
+        KeywordAutomaton automaton = automaton("shorts", "reels", "shorts");
+
+        assertEquals(0, automaton.find("https://video.test/shorts/1"));
+        assertEquals(1, automaton.find("https://video.test/reels/1"));
+    }
+
+    @Test
+    public void agreesWithAPerKeywordContainsLoop() {
+        Random random = new Random(7);
+        String alphabet = "ab/.?ü";
+        for (int round = 0; round < 200; round++) {
+            String[] keywords = new String[1 + random.nextInt(8)];
+            for (int i = 0; i < keywords.length; i++) {
+                keywords[i] = randomText(random, alphabet, 1 + random.nextInt(4));
+            }
+            KeywordAutomaton automaton = automaton(keywords);
+            for (int sample = 0; sample < 20; sample++) {
+                String text = randomText(random, alphabet, random.nextInt(24));
+                int expected = -1;
+                for (int i = 0; i < keywords.length; i++) {
+                    if (text.contains(keywords[i])) {
+                        expected = i;
+                        break;
+                    }
+                }
+                assertEquals(List.of(keywords) + " in " + text, expected, automaton.find(text));
+            }
+        }
+    }
+
+    @Test
+    public void steppingCollectsTheTagsOfEveryKeywordFound() {
+        KeywordAutomaton.Builder builder = new KeywordAutomaton.Builder();
+        builder.add("stop", 1);
+        builder.add("force stop", 2);
+        builder.add("top", 4);
+        builder.add("clear", 8);
+        KeywordAutomaton automaton = builder.build();
+
+        assertEquals(1 | 2 | 4, tagsIn(automaton, "Force stop now"));
+        assertEquals(4, tagsIn(automaton, "tops"));
+        assertEquals(0, tagsIn(automaton, "force sto p"));
+        assertEquals(0, tagsIn(automaton, "Désinstaller"));
+    }
+
+    @Test
+    public void emptyKeywordsAreRejected() {
+        assertThrows(IllegalArgumentException.class,
+                () -> new KeywordAutomaton.Builder().add(""));
+    }
+
+    private static KeywordAutomaton automaton(String... keywords) {
+        KeywordAutomaton.Builder builder = new KeywordAutomaton.Builder();
+        for (String keyword : keywords) builder.add(keyword);
+        return builder.build();
+    }
+
+    private static int tagsIn(KeywordAutomaton automaton, String text) {
+        int state = KeywordAutomaton.START;
+        int tags = 0;
+        for (int i = 0; i < text.length(); i++) {
+            state = automaton.next(state, Character.toLowerCase(text.charAt(i)));
+            tags |= automaton.tags(state);
+        }
+        return tags;
+    }
+
+    private static String randomText(Random random, String alphabet, int length) {
+        StringBuilder text = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            text.append(alphabet.charAt(random.nextInt(alphabet.length())));
+        }
+        return text.toString();
+    }
+}
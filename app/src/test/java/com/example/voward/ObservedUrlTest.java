@@ -0,0 +1,82 @@
+package com.example.voward;
+
+import org.junit.Test;
+
+import java.net.URI;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class ObservedUrlTest {
+    @Test
+    public void splitsCanonicalHostPathAndQuery() {
+        ObservedUrl url = ObservedUrl.parse("  HTTPS://WWW.Example.COM.:8443/News/?q=1#top ");
+
+        assertEquals("https://www.example.com.:8443/news/?q=1#top", url.text);
+        assertEquals("example.com", url.host());
+        assertEquals("/news/", url.path());
+        assertEquals("q=1", url.rawQuery());
+    }
+
+    @Test
+    public void schemeLessAddressesAreTreatedAsHttps() {
+        ObservedUrl url = ObservedUrl.parse("localhost:8080/admin");
+
+        assertEquals("localhost", url.host());
+        assertEquals("/admin", url.path());
+        assertNull(url.rawQuery());
+    }
+
+    @Test
+    public void blankInputIsEmpty() {
+        assertSame(ObservedUrl.EMPTY, ObservedUrl.parse(null));
+        assertSame(ObservedUrl.EMPTY, ObservedUrl.parse("   "));
+        assertTrue(ObservedUrl.EMPTY.isEmpty());
+        assertNull(ObservedUrl.EMPTY.host());
+    }
+
+    @Test
+    public void agreesWithTheUriParserOnKnownEdgeCases() {
+        for (String value : List.of(
+                "https://bücher.example/", "https://user@example.com/", "http://[::1]:8080/x",
+                "example.com:/x", "example.com:abc", "a:1:2/x", "https://", "https:///path",
+                "1http://example.com", "about:blank", "chrome://newtab", "example.com/a%2Fb",
+                "example.com/a b", "example.com/#a#b", "example.com?x=https://other.test",
+                "-bad-.example", "a..b.example", "sub_domain.example/x", "192.168.0.1:80/")) {
+            assertAgreesWithUri(value);
+        }
+    }
+
+    @Test
+    public void agreesWithTheUriParserOnRandomAddresses() {
+        Random random = new Random(11);
+        String alphabet = "ab.-_:/?#%@[]1 wxü";
+        String[] prefixes = {"", "https://", "http://www.", "x1://", "//"};
+        for (int i = 0; i < 5000; i++) {
+            StringBuilder value = new StringBuilder(prefixes[random.nextInt(prefixes.length)]);
+            int length = random.nextInt(16);
+            for (int j = 0; j < length; j++) {
+                value.append(alphabet.charAt(random.nextInt(alphabet.length())));
+            }
+            assertAgreesWithUri(value.toString());
+        }
+    }
+
+    private static void assertAgreesWithUri(String value) {
+        ObservedUrl url = ObservedUrl.parse(value);
+        String text = value.trim().toLowerCase(Locale.ROOT);
+        URI uri = text.isEmpty() ? null : UrlPatternMatcher.parseWebUri(text);
+        String host = UrlPatternMatcher.canonicalHost(uri);
+
+        assertEquals(value, host, url.host());
+        if (host != null) {
+            assertEquals(value, uri.getPath(), url.path());
+            assertEquals(value, uri.getRawQuery(), url.rawQuery());
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package com.example.voward;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThrows;
+
+public class PackageClassifierTest {
+    private static final String OWN = "com.example.voward";
+
+    @Test
+    public void classifiesByNameAndByTheInstalledSets() {
+        PackageClassifier classifier = new PackageClassifier(OWN, 16);
+        classifier.setInputMethods(Collections.singletonList("com.vendor.typing"));
+        classifier.setLaunchers(Collections.singletonList("com.vendor.desk"));
+        classifier.setBrowsers(Collections.singletonList("com.android.chrome"));
+
+        assertEquals(EnforcementStateMachine.PACKAGE_TRANSIENT,
+                classifier.flags("com.vendor.typing"));
+        assertEquals(EnforcementStateMachine.PACKAGE_TRANSIENT
+                        | EnforcementStateMachine.PACKAGE_CRITICAL,
+                classifier.flags("com.android.systemui"));
+        assertEquals(EnforcementStateMachine.PACKAGE_TRANSIENT,
+                classifier.flags("com.google.android.inputmethod.latin"));
+        assertEquals(EnforcementStateMachine.PACKAGE_LAUNCHER, classifier.flags("com.vendor.desk"));
+        assertEquals(EnforcementStateMachine.PACKAGE_LAUNCHER,
+                classifier.flags("com.miui.home"));
+        assertEquals(EnforcementStateMachine.PACKAGE_BROWSER,
+                classifier.flags("com.android.chrome"));
+        assertEquals(EnforcementStateMachine.PACKAGE_CRITICAL, classifier.flags(OWN));
+        assertEquals(EnforcementStateMachine.PACKAGE_CRITICAL, classifier.flags(null));
+        assertEquals(0, classifier.flags("com.google.android.youtube"));
+    }
+
+    @Test
+    public void aSeenPackageIsOneLookup() {
+        PackageClassifier classifier = new PackageClassifier(OWN, 16);
+        classifier.flags("com.google.android.youtube");
+        classifier.flags("com.google.android.youtube");
+        classifier.flags(null);
+
+        assertEquals(1, classifier.hits());
+        assertEquals(1, classifier.misses());
+        assertEquals(1, classifier.size());
+    }
+
+    @Test
+    public void changedPackagesAndSetsAreClassifiedAgain() {
+        PackageClassifier classifier = new PackageClassifier(OWN, 16);
+        assertEquals(0, classifier.flags("com.vendor.typing"));
+        classifier.flags("com.google.android.youtube");
+
+        classifier.setInputMethods(Collections.singletonList("com.vendor.typing"));
+        assertEquals(0, classifier.size());
+        assertEquals(EnforcementStateMachine.PACKAGE_TRANSIENT,
+                classifier.flags("com.vendor.typing"));
+
+        // An unchanged set keeps what was classified.
+        classifier.setInputMethods(Arrays.asList("com.vendor.typing"));
+        assertEquals(1, classifier.size());
+
+        classifier.packageChanged("com.vendor.typing");
+        assertEquals(0, classifier.size());
+        assertEquals("0 packages, 0 hits, 3 misses, 3 invalidated", classifier.toString());
+    }
+
+    @Test
+    public void theLeastRecentlyUsedPackageIsEvicted() {
+        PackageClassifier classifier = new PackageClassifier(OWN, 2);
+        classifier.flags("a.one");
+        classifier.flags("a.two");
+        classifier.flags("a.one");
+        classifier.flags("a.three");
+
+        assertEquals(2, classifier.size());
+        classifier.flags("a.one");
+        assertEquals(2, classifier.hits());
+        assertThrows(IllegalArgumentException.class, () -> new PackageClassifier(OWN, 0));
+    }
+}
@@ -0,0 +1,147 @@
+package com.example.voward;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class PackageRegistryTest {
+    private static final String SAFE = "http://127.0.0.1:8080/";
+
+    private final FakeSource source = new FakeSource();
+    private final PackageRegistry registry = new PackageRegistry(source, SAFE);
+
+    @Test
+    public void loadKeepsOnlyInstalledBrowsers() {
+        source.installed.add("com.android.chrome");
+        source.browsers.add("com.android.chrome");
+        source.browsers.add("com.vendor.web");
+        source.inputMethods.add("com.vendor.typing");
+        source.launchers.add("com.vendor.desk");
+
+        registry.load();
+
+        assertEquals(new HashSet<>(Arrays.asList("com.android.chrome", "com.vendor.web")),
+                registry.browserPackages());
+        assertNull(registry.browser("org.mozilla.firefox"));
+        assertNull(registry.browser(null));
+        BrowserSupport.Config chrome = registry.browser("com.android.chrome");
+        assertEquals(SAFE, chrome.safeAddress);
+        assertEquals(BrowserSupport.find("com.android.chrome").addressBarIds,
+                chrome.addressBarIds);
+        assertEquals(SAFE, registry.browser("com.vendor.web").safeAddress);
+        assertTrue(registry.inputMethods().contains("com.vendor.typing"));
+        assertTrue(registry.launchers().contains("com.vendor.desk"));
+    }
+
+    @Test
+    public void aPackageBroadcastReadsThatPackageOnly() {
+        registry.load();
+        int fullReads = source.fullReads;
+
+        source.installed.add("org.mozilla.firefox");
+        assertTrue(registry.packageChanged("org.mozilla.firefox", false));
+        assertNotNull(registry.browser("org.mozilla.firefox"));
+
+        source.launchers.add("com.vendor.desk");
+        assertTrue(registry.packageChanged("com.vendor.desk", false));
+        assertTrue(registry.launchers().contains("com.vendor.desk"));
+        assertFalse(registry.packageChanged("com.vendor.desk", false));
+
+        source.browsers.add("com.vendor.web");
+        assertTrue(registry.packageChanged("com.vendor.web", false));
+        assertTrue(registry.packageChanged("com.vendor.web", true));
+        assertNull(registry.browser("com.vendor.web"));
+
+        assertTrue(registry.packageChanged("org.mozilla.firefox", true));
+        assertNull(registry.browser("org.mozilla.firefox"));
+        assertFalse(registry.packageChanged("com.google.android.youtube", false));
+        assertEquals(fullReads, source.fullReads);
+    }
+
+    @Test
+    public void aQueryChangesNothingUntilItIsApplied() {
+        registry.load();
+        source.inputMethods.add("com.vendor.typing");
+
+        PackageRegistry.Change change = registry.query("com.vendor.typing", false);
+        assertTrue(change.inputMethod);
+        assertFalse(registry.inputMethods().contains("com.vendor.typing"));
+        assertTrue(registry.apply(change));
+        assertTrue(registry.inputMethods().contains("com.vendor.typing"));
+        assertFalse(registry.apply(change));
+
+        assertTrue(registry.inputMethodsChanged(Arrays.asList("com.vendor.swipe")));
+        assertEquals(Collections.singleton("com.vendor.swipe"), registry.inputMethods());
+    }
+
+    @Test
+    public void inputMethodChangesReplaceTheSet() {
+        source.inputMethods.add("com.vendor.typing");
+        registry.load();
+
+        assertFalse(registry.inputMethodsChanged());
+        source.inputMethods.add("com.vendor.swipe");
+        assertTrue(registry.inputMethodsChanged());
+        assertEquals(2, registry.inputMethods().size());
+        source.inputMethods.remove("com.vendor.typing");
+        assertTrue(registry.inputMethodsChanged());
+        assertEquals(1, registry.inputMethods().size());
+    }
+
+    private static final class FakeSource implements PackageRegistry.Source {
+        final Set<String> inputMethods = new HashSet<>();
+        final Set<String> launchers = new HashSet<>();
+        final Set<String> browsers = new HashSet<>();
+        final Set<String> installed = new HashSet<>();
+        int fullReads;
+
+        @Override
+        public Collection<String> inputMethods() {
+            fullReads++;
+            return new HashSet<>(inputMethods);
+        }
+
+        @Override
+        public Collection<String> launchers() {
+            fullReads++;
+            return new HashSet<>(launchers);
+        }
+
+        @Override
+        public Collection<String> browsers() {
+            fullReads++;
+            return new HashSet<>(browsers);
+        }
+
+        @Override
+        public boolean isInstalled(String packageName) {
+            return installed.contains(packageName) || launchers.contains(packageName)
+                    || browsers.contains(packageName) || inputMethods.contains(packageName);
+        }
+
+        @Override
+        public boolean isInputMethod(String packageName) {
+            return inputMethods.contains(packageName);
+        }
+
+        @Override
+        public boolean isLauncher(String packageName) {
+            return launchers.contains(packageName);
+        }
+
+        @Override
+        public boolean isBrowser(String packageName) {
+            return browsers.contains(packageName);
+        }
+    }
+}
@@ -46,6 +46,19 @@ public class PolicyTest {
         assertFalse(regular.strict);
     }
 
+    @Test
+    public void onlyTextSubtreeAndPaneChangesCanMoveTheAddress() {
+        assertTrue(BrowserUrlEnforcementPolicy.mayChangeAddress(0));
+        assertTrue(BrowserUrlEnforcementPolicy.mayChangeAddress(0x1));
+        assertTrue(BrowserUrlEnforcementPolicy.mayChangeAddress(0x2));
+        assertTrue(BrowserUrlEnforcementPolicy.mayChangeAddress(0x40 | 0x2));
+        assertTrue(BrowserUrlEnforcementPolicy.mayChangeAddress(0x20));
+        // State description, drag started, error, enabled.
+        assertFalse(BrowserUrlEnforcementPolicy.mayChangeAddress(0x40));
+        assertFalse(BrowserUrlEnforcementPolicy.mayChangeAddress(0x80));
+        assertFalse(BrowserUrlEnforcementPolicy.mayChangeAddress(0x800 | 0x1000));
+    }
+
     @Test
     public void interceptionPolicyDistinguishesWholeBrowserFromUrlSessions() {
         assertTrue(InterceptionPolicy.shouldStartSessionTimer("APP", true, false));
@@ -0,0 +1,60 @@
+package com.example.voward;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ServiceWarmUpTest {
+    private static final long MS = 1_000_000L;
+    private static final long CONNECTED = 30_000 * MS;
+
+    @Test
+    public void eachStageIsReadyOnceReported() {
+        ServiceWarmUp warmUp = new ServiceWarmUp(CONNECTED);
+        assertFalse(warmUp.isReady(ServiceWarmUp.Stage.CORE));
+        assertEquals(-1, warmUp.stageNanos(ServiceWarmUp.Stage.CORE));
+        assertEquals(-1, warmUp.readyAfterNanos(ServiceWarmUp.Stage.CORE));
+
+        warmUp.stageFinished(ServiceWarmUp.Stage.CORE, CONNECTED + 2 * MS, CONNECTED + 14 * MS);
+        assertTrue(warmUp.isReady(ServiceWarmUp.Stage.CORE));
+        assertFalse(warmUp.isReady(ServiceWarmUp.Stage.BROWSERS));
+        assertEquals(12 * MS, warmUp.stageNanos(ServiceWarmUp.Stage.CORE));
+        assertEquals(14 * MS, warmUp.readyAfterNanos(ServiceWarmUp.Stage.CORE));
+
+        // A second report keeps the first timing.
+        warmUp.stageFinished(ServiceWarmUp.Stage.CORE, CONNECTED, CONNECTED + 90 * MS);
+        assertEquals(12 * MS, warmUp.stageNanos(ServiceWarmUp.Stage.CORE));
+        assertFalse(warmUp.allReady());
+        for (ServiceWarmUp.Stage stage : ServiceWarmUp.Stage.values()) {
+            warmUp.stageFinished(stage, CONNECTED, CONNECTED + MS);
+        }
+        assertTrue(warmUp.allReady());
+    }
+
+    @Test
+    public void onlyTheFirstHandledEventCounts() {
+        ServiceWarmUp warmUp = new ServiceWarmUp(CONNECTED);
+        assertEquals(-1, warmUp.firstEnforcementNanos());
+        assertTrue(warmUp.toString().endsWith("no event handled yet"));
+
+        assertTrue(warmUp.firstEnforcement(CONNECTED + 5 * MS, CONNECTED + 20 * MS));
+        assertFalse(warmUp.firstEnforcement(CONNECTED + 30 * MS, CONNECTED + 31 * MS));
+        assertEquals(20 * MS, warmUp.firstEnforcementNanos());
+    }
+
+    @Test
+    public void describesEveryStage() {
+        ServiceWarmUp warmUp = new ServiceWarmUp(CONNECTED);
+        warmUp.stageFinished(ServiceWarmUp.Stage.CONNECT, CONNECTED, CONNECTED + 3 * MS);
+        warmUp.stageFinished(ServiceWarmUp.Stage.CORE, CONNECTED + 3 * MS, CONNECTED + 15 * MS);
+        warmUp.firstEnforcement(CONNECTED + 4 * MS, CONNECTED + 16 * MS);
+
+        assertEquals("connected 30.0 s after boot, connect 3.0 ms (ready +3.0 ms), "
+                        + "core 12.0 ms (ready +15.0 ms), validation pending, "
+                        + "browsers pending, notifications pending; "
+                        + "first event handled +16.0 ms after 12.0 ms queued",
+                warmUp.toString());
+    }
+}
@@ -0,0 +1,91 @@
+package com.example.voward;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TraceReplayerTest {
+    private static final int STATE_CHANGED = 0x20;
+    private static final int CONTENT_CHANGED = 0x800;
+    private static final String BROWSER = "org.browser";
+    private static final int ACTIVE = AccessibilityTrace.STATE_BLOCKER_ACTIVE;
+
+    private final EnforcementStateMachine.Budget budget = new EnforcementStateMachine.Budget() {
+        @Override
+        public boolean hasRemaining() {
+            return true;
+        }
+
+        @Override
+        public long quoteSessionSeconds() {
+            return 600;
+        }
+    };
+
+    @Test
+    public void aCommittedRestrictedAddressOpensTheGate() throws InterruptedException {
+        List<AccessibilityTrace.Event> events = new ArrayList<>();
+        events.add(browserEvent(STATE_CHANGED, 10_000, "https://news.example/", false));
+        events.add(browserEvent(CONTENT_CHANGED, 10_100, "video.exa", true));
+        events.add(browserEvent(CONTENT_CHANGED, 10_200, "https://video.example/watch", false));
+        events.add(browserEvent(CONTENT_CHANGED, 10_500, "https://video.example/watch", false));
+        events.add(browserEvent(CONTENT_CHANGED, 11_100, "https://video.example/watch", false));
+        events.add(new AccessibilityTrace.Event(CONTENT_CHANGED, "org.voward", null, 1, 11_200,
+                0, 0, ACTIVE | AccessibilityTrace.STATE_OWN_PACKAGE, 0, null, 0, null, false));
+
+        TraceReplayer.Report report = replayer().replay(events, 0);
+
+        assertEquals(6, report.events);
+        assertEquals(5, report.handled);
+        // Only the stable, committed address reaches the rules.
+        assertEquals(1, report.count(EnforcementStateMachine.ACTION_OPEN_GATE));
+        assertEquals(1, report.count(EnforcementStateMachine.ACTION_RECORD_INTERCEPTION));
+        assertEquals(1_200, report.traceSpanMs);
+        assertEquals(-1, report.allocatedBytes);
+        assertTrue(report.describe().contains("action.openGate=1\n"));
+    }
+
+    @Test
+    public void decisionsDoNotDependOnReplaySpeedOrRun() throws InterruptedException {
+        List<AccessibilityTrace.Event> events = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            String address = i % 3 == 0 ? "https://video.example/" : "https://news.example/";
+            events.add(browserEvent(i % 4 == 0 ? STATE_CHANGED : CONTENT_CHANGED,
+                    20_000 + i * 400L, address, false));
+        }
+        TraceReplayer replayer = replayer();
+        TraceReplayer.Report fast = replayer.replay(events, 0);
+        TraceReplayer.Report again = replayer.replay(events, 0);
+        TraceReplayer.Report paced = replayer.replay(events.subList(0, 3), 100);
+
+        assertEquals(fast.decisionDigest, again.decisionDigest);
+        assertEquals(replayer.replay(events.subList(0, 3), 0).decisionDigest,
+                paced.decisionDigest);
+    }
+
+    @Test
+    public void anEmptyTraceGivesAnEmptyReport() throws InterruptedException {
+        TraceReplayer.Report report = replayer().replay(
+                Collections.<AccessibilityTrace.Event>emptyList(), 1);
+        assertEquals(0, report.events);
+        assertEquals(0, report.p99Nanos);
+    }
+
+    private TraceReplayer replayer() {
+        UrlRuleIndex rules = UrlRuleIndex.build(Collections.<String>emptyList(),
+                Collections.singletonList("video.example"));
+        return new TraceReplayer(budget, rules, TraceReplayer.NO_ALLOCATION_METER);
+    }
+
+    private static AccessibilityTrace.Event browserEvent(int type, long at, String address,
+                                                         boolean focused) {
+        return new AccessibilityTrace.Event(type, BROWSER, "BrowserActivity", 3, at, 1,
+                EnforcementStateMachine.PACKAGE_BROWSER, ACTIVE, 0, BROWSER, 2, address,
+                focused);
+    }
+}
@@ -52,6 +52,23 @@ public class UrlPatternMatcherTest {
         assertFalse(UrlPatternMatcher.matches("example.com/search?q=noise", "example.com/search?q=focus"));
     }
 
+    @Test
+    public void globRulesMatchTheWholeAddress() {
+        assertTrue(UrlPatternMatcher.isValidPattern("glob:*/shorts/*"));
+        assertTrue(UrlPatternMatcher.matches("https://m.YouTube.com/Shorts/abc", "GLOB:*/shorts/*"));
+        assertTrue(UrlPatternMatcher.matches("youtube.com/shorts/x", "glob:*.com/shorts/?"));
+        assertFalse(UrlPatternMatcher.matches("youtube.com/shorts", "glob:*/shorts/*"));
+        assertFalse(UrlPatternMatcher.matches("youtube.com/shorts/xy", "glob:*.com/shorts/?"));
+    }
+
+    @Test
+    public void globRulesThatAreTooBroadOrTooComplexAreRejected() {
+        assertFalse(UrlPatternMatcher.isValidPattern("glob:"));
+        assertFalse(UrlPatternMatcher.isValidPattern("glob:*?*"));
+        assertFalse(UrlPatternMatcher.isValidPattern("glob:*a*b*c*d*e*f*g*h*i*"));
+        assertFalse(UrlPatternMatcher.isValidPattern("glob:" + "a".repeat(257)));
+    }
+
     @Test
     public void keywordRulesAreExplicitBroadMatches() {
         assertTrue(UrlPatternMatcher.matches("https://safe.test/Shorts?id=1", " keyword:shorts "));
@@ -0,0 +1,75 @@
+package com.example.voward;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class UrlRuleDeltaLogTest {
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void appendedRulesReadBackInOrder() throws IOException {
+        UrlRuleDeltaLog log = new UrlRuleDeltaLog(new File(folder.getRoot(), "delta"));
+        assertTrue(log.isEmpty());
+        assertEquals(0, log.read().entries.size());
+
+        log.append(UrlRuleDeltaLog.REGULAR, "example.com");
+        log.append(UrlRuleDeltaLog.STRICT, "keyword:a\\nb\nc\r");
+
+        UrlRuleDeltaLog.Replay replay = log.read();
+        assertFalse(replay.corrupt);
+        assertEquals(2, replay.entries.size());
+        assertEquals("example.com", replay.entries.get(0).rule);
+        assertFalse(replay.entries.get(0).isStrict());
+        assertEquals("keyword:a\\nb\nc\r", replay.entries.get(1).rule);
+        assertTrue(replay.entries.get(1).isStrict());
+    }
+
+    @Test
+    public void anInterruptedFinalLineIsIgnored() throws IOException {
+        File file = new File(folder.getRoot(), "delta");
+        UrlRuleDeltaLog log = new UrlRuleDeltaLog(file);
+        log.append(UrlRuleDeltaLog.REGULAR, "example.com");
+        write(file, "Snews.te");
+
+        UrlRuleDeltaLog.Replay replay = log.read();
+        assertFalse(replay.corrupt);
+        assertEquals(1, replay.entries.size());
+    }
+
+    @Test
+    public void malformedCompleteLinesMarkTheLogCorrupt() throws IOException {
+        String[] lines = {"Xexample.com\n", "R\n", "\n", "Rbad\\escape\n", "Rend\\\n"};
+        for (String line : lines) {
+            File file = folder.newFile();
+            write(file, line);
+            assertTrue(line, new UrlRuleDeltaLog(file).read().corrupt);
+        }
+    }
+
+    @Test
+    public void clearingRemovesEveryEntry() throws IOException {
+        UrlRuleDeltaLog log = new UrlRuleDeltaLog(new File(folder.getRoot(), "delta"));
+        log.append(UrlRuleDeltaLog.REGULAR, "example.com");
+
+        assertTrue(log.clear());
+        assertTrue(log.isEmpty());
+        assertEquals(0, log.read().entries.size());
+    }
+
+    private static void write(File file, String text) throws IOException {
+        try (FileOutputStream out = new FileOutputStream(file, true)) {
+            out.write(text.getBytes(StandardCharsets.UTF_8));
+        }
+    }
+}
@@ -0,0 +1,233 @@
+package com.example.voward;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class UrlRuleIndexTest {
+    private static final List<String> RULES = List.of(
+            "example.com/news", "www.example.com", "example.com/search?q=focus",
+            "keyword:shorts", "xn--bcher-kva.example", "localhost:8080/admin/",
+            "exa mple.com", "deep.sub.test", "sub.test/videos", "glob:*/videos/?",
+            "glob:https://*.test/*");
+
+    private static final List<String> URLS = List.of(
+            " HTTPS://WWW.Example.COM/ ", "https://deep.sub.example.com", "example.com./news",
+            "https://bücher.example/", "https://notexample.com", "example.com.evil.test",
+            "https://safe.test/?next=example.com", "example.com/newspaper",
+            "example.com/search?q=FOCUS&sort=new", "https://safe.test/Shorts?id=1",
+            "http://localhost:8080/admin", "http://localhost:8080/admin/users",
+            "https://x.deep.sub.test/a", "https://sub.test/videos/1", "https://sub.test/video",
+            "about:blank", "", "   ");
+
+    @Test
+    public void indexAgreesWithTheBaselineMatcherForEveryRuleAndUrl() {
+        UrlRuleIndex index = UrlRuleIndex.build(Collections.emptyList(), RULES);
+        for (String url : URLS) {
+            String expected = null;
+            for (String rule : RULES) {
+                if (BaselineUrlMatcher.matches(url, rule)) {
+                    expected = rule;
+                    break;
+                }
+            }
+            BrowserUrlEnforcementPolicy.RuleMatch match = index.find(url);
+            assertEquals(url, expected, match == null ? null : match.pattern);
+        }
+    }
+
+    @Test
+    public void strictRulesWinEvenWhenARegularRuleIsBroader() {
+        UrlRuleIndex index = UrlRuleIndex.build(
+                List.of("example.com/video"), List.of("example.com", "example.com/video"));
+
+        BrowserUrlEnforcementPolicy.RuleMatch strict = index.find("example.com/video/1");
+        assertNotNull(strict);
+        assertEquals("example.com/video", strict.pattern);
+        assertTrue(strict.strict);
+
+        BrowserUrlEnforcementPolicy.RuleMatch regular = index.find("example.com/news");
+        assertNotNull(regular);
+        assertEquals("example.com", regular.pattern);
+        assertFalse(regular.strict);
+    }
+
+    @Test
+    public void earlierRulesWinWithinTheSameStrictness() {
+        UrlRuleIndex index = UrlRuleIndex.build(null,
+                List.of("keyword:watch", "sub.example.com/a", "example.com"));
+
+        assertEquals("keyword:watch", index.find("https://sub.example.com/watch").pattern);
+        assertEquals("sub.example.com/a", index.find("https://sub.example.com/a/b").pattern);
+        assertEquals("example.com", index.find("https://sub.example.com/b").pattern);
+    }
+
+    @Test
+    public void strictKeywordRulesOutrankEarlierRegularKeywords() {
+        UrlRuleIndex index = UrlRuleIndex.build(
+                List.of("keyword:reels"), List.of("keyword:video", "keyword:reels"));
+
+        BrowserUrlEnforcementPolicy.RuleMatch match = index.find("https://video.test/reels/1");
+        assertEquals("keyword:reels", match.pattern);
+        assertTrue(match.strict);
+        assertFalse(index.find("https://video.test/watch").strict);
+    }
+
+    @Test
+    public void globRulesKeepTheirRankAmongOtherRules() {
+        UrlRuleIndex index = UrlRuleIndex.build(List.of("glob:*/shorts/*"),
+                List.of("keyword:youtube", "glob:*/reels/*", "example.com"));
+
+        BrowserUrlEnforcementPolicy.RuleMatch strict = index.find("https://youtube.com/shorts/1");
+        assertEquals("glob:*/shorts/*", strict.pattern);
+        assertTrue(strict.strict);
+        assertEquals("keyword:youtube", index.find("https://youtube.com/reels/1").pattern);
+        assertEquals("glob:*/reels/*", index.find("https://example.com/reels/1").pattern);
+        assertEquals("example.com", index.find("https://example.com/reels").pattern);
+    }
+
+    @Test
+    public void failClosedRuleMatchesAnyNonBlankAddress() {
+        List<String> failClosed = List.of(UrlPatternMatcher.FAIL_CLOSED_PATTERN);
+        UrlRuleIndex index = UrlRuleIndex.build(failClosed, failClosed);
+
+        assertTrue(index.find("https://unlisted.example/").strict);
+        assertNull(index.find(" "));
+        assertNull(index.find((String) null));
+    }
+
+    @Test
+    public void importedHostsRankAfterEveryConfiguredRule() throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        try (HostBlocklistImage.Writer writer = new HostBlocklistImage.Writer(output)) {
+            writer.add("com.example");
+            writer.add("test.tracker");
+            writer.finish();
+        }
+        HostBlocklistImage blocklist = HostBlocklistImage.wrap(ByteBuffer.wrap(output.toByteArray()));
+        List<String> regular = List.of("example.com/news");
+        UrlRuleIndex index = UrlRuleIndex.build(null, regular, blocklist);
+
+        assertEquals("example.com/news", index.find("https://example.com/news/1").pattern);
+        BrowserUrlEnforcementPolicy.RuleMatch listed = index.find("https://cdn.tracker.test/x");
+        assertEquals("tracker.test", listed.pattern);
+        assertFalse(listed.strict);
+        assertNull(index.find("https://safe.test/"));
+        assertTrue(index.isBuiltFrom(null, regular, blocklist));
+        assertFalse(index.isBuiltFrom(null, regular));
+    }
+
+    @Test
+    public void appendedRulesMatchExactlyLikeAFreshBuild() {
+        CompiledUrlRuleList strict = CompiledUrlRuleList.of(List.of("sub.test/videos"));
+        CompiledUrlRuleList regular = CompiledUrlRuleList.of(RULES.subList(0, 4));
+        UrlRuleIndex index = UrlRuleIndex.build(strict, regular);
+        for (String rule : RULES.subList(4, RULES.size())) {
+            regular = regular.appended(rule);
+            index = index.withAppended(strict, regular);
+        }
+        strict = strict.appended("keyword:shorts").appended("example.com/news");
+        index = index.withAppended(strict, regular);
+
+        UrlRuleIndex fresh = UrlRuleIndex.build(strict, regular);
+        assertEquals(RULES.size() - 4 + 2, index.pendingCount());
+        assertTrue(index.isBuiltFrom(strict, regular));
+        for (String url : URLS) {
+            BrowserUrlEnforcementPolicy.RuleMatch expected = fresh.find(url);
+            BrowserUrlEnforcementPolicy.RuleMatch actual = index.find(url);
+            assertEquals(url, expected == null ? null : expected.pattern,
+                    actual == null ? null : actual.pattern);
+            assertEquals(url, expected != null && expected.strict,
+                    actual != null && actual.strict);
+        }
+        assertEquals(0, index.rebuilt().pendingCount());
+    }
+
+    @Test
+    public void singleLookupAgreesWithTheTwoLoopMatcherOnRandomRuleSets() {
+        String[] hosts = {"example.com", "www.example.com", "sub.example.com", "news.test",
+                "xn--bcher-kva.example", "localhost:8080"};
+        String[] paths = {"", "/news", "/news/", "/a/b", "/shorts"};
+        String[] queries = {"", "?q=1"};
+        String[] broad = {"keyword:news", "keyword:.com/", "glob:*/shorts/*", "glob:*.test/*",
+                "glob:https://*/news?*", "not a rule"};
+        String[] urlHosts = {"example.com", "WWW.example.com", "a.sub.example.com",
+                "notexample.com", "news.test", "bücher.example", "localhost:8080", "example.com."};
+        String[] urlPaths = {"", "/", "/news", "/news/x", "/newsy", "/a/b/c", "/shorts/1"};
+        String[] urlQueries = {"", "?q=1", "?q=2"};
+        String[] schemes = {"", "https://", "http://"};
+
+        Random random = new Random(9);
+        for (int round = 0; round < 200; round++) {
+            List<String> strict = new ArrayList<>();
+            List<String> regular = new ArrayList<>();
+            for (int i = random.nextInt(8); i > 0; i--) {
+                String rule = random.nextInt(4) == 0 ? pick(random, broad)
+                        : pick(random, hosts) + pick(random, paths) + pick(random, queries);
+                (random.nextBoolean() ? strict : regular).add(rule);
+            }
+            // Half the rounds exercise rules appended after the build.
+            UrlRuleIndex index;
+            if (random.nextBoolean() || strict.isEmpty() || regular.isEmpty()) {
+                index = UrlRuleIndex.build(strict, regular);
+            } else {
+                index = UrlRuleIndex.build(strict.subList(0, 1), regular.subList(0, 1))
+                        .withAppended(strict, regular);
+            }
+            for (int i = 0; i < 30; i++) {
+                String url = pick(random, schemes) + pick(random, urlHosts)
+                        + pick(random, urlPaths) + pick(random, urlQueries);
+                BrowserUrlEnforcementPolicy.RuleMatch expected = twoLoopMatch(url, strict, regular);
+                BrowserUrlEnforcementPolicy.RuleMatch actual = index.find(url);
+                String message = strict + " " + regular + " " + url;
+                assertEquals(message, expected == null ? null : expected.pattern,
+                        actual == null ? null : actual.pattern);
+                assertEquals(message, expected != null && expected.strict,
+                        actual != null && actual.strict);
+            }
+        }
+    }
+
+    @Test
+    public void indexRemembersItsSourceSnapshots() {
+        List<String> strict = Collections.emptyList();
+        List<String> regular = new ArrayList<>(List.of("example.com"));
+        UrlRuleIndex index = UrlRuleIndex.build(strict, regular);
+
+        assertTrue(index.isBuiltFrom(strict, regular));
+        assertFalse(index.isBuiltFrom(strict, new ArrayList<>(regular)));
+        assertNull(UrlRuleIndex.EMPTY.find("https://example.com"));
+    }
+
+    /** The original strict-then-regular scan the index replaces, over the frozen matcher. */
+    private static BrowserUrlEnforcementPolicy.RuleMatch twoLoopMatch(
+            String url, List<String> strict, List<String> regular) {
+        for (String rule : strict) {
+            if (BaselineUrlMatcher.matches(url, rule)) {
+                return new BrowserUrlEnforcementPolicy.RuleMatch(rule, true);
+            }
+        }
+        for (String rule : regular) {
+            if (BaselineUrlMatcher.matches(url, rule)) {
+                return new BrowserUrlEnforcementPolicy.RuleMatch(rule, false);
+            }
+        }
+        return null;
+    }
+
+    private static String pick(Random random, String[] values) {
+        return values[random.nextInt(values.length)];
+    }
+}
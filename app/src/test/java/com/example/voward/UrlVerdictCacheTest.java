@@ -0,0 +1,68 @@
+package com.example.voward;
+
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertThrows;
+
+public class UrlVerdictCacheTest {
+    private static final ObservedUrl NEWS = ObservedUrl.parse("https://example.com/news");
+    private static final ObservedUrl SAFE = ObservedUrl.parse("https://safe.test/");
+
+    @Test
+    public void repeatedLookupsAreServedFromTheCache() {
+        UrlVerdictCache cache = new UrlVerdictCache(4);
+        UrlRuleIndex rules = UrlRuleIndex.build(null, List.of("example.com"));
+
+        assertEquals("example.com", cache.find(NEWS, rules, 1).pattern);
+        assertEquals("example.com", cache.find(NEWS, rules, 1).pattern);
+        assertNull(cache.find(SAFE, rules, 1));
+        assertNull(cache.find(SAFE, rules, 1));
+
+        assertEquals(2, cache.hits());
+        assertEquals(2, cache.misses());
+    }
+
+    @Test
+    public void aNewRuleGenerationDiscardsEveryVerdict() {
+        UrlVerdictCache cache = new UrlVerdictCache(4);
+        cache.find(NEWS, UrlRuleIndex.build(null, List.of("example.com")), 1);
+
+        UrlRuleIndex updated = UrlRuleIndex.build(null, List.of("safe.test"));
+        assertNull(cache.find(NEWS, updated, 2));
+        assertEquals("safe.test", cache.find(SAFE, updated, 2).pattern);
+        assertEquals(0, cache.hits());
+        assertEquals(2, cache.size());
+    }
+
+    @Test
+    public void leastRecentlyUsedAddressesAreEvicted() {
+        UrlVerdictCache cache = new UrlVerdictCache(2);
+        UrlRuleIndex rules = UrlRuleIndex.EMPTY;
+        ObservedUrl other = ObservedUrl.parse("https://other.test/");
+
+        cache.find(NEWS, rules, 0);
+        cache.find(SAFE, rules, 0);
+        cache.find(NEWS, rules, 0);
+        cache.find(other, rules, 0);
+        cache.find(NEWS, rules, 0);
+        cache.find(SAFE, rules, 0);
+
+        assertEquals(2, cache.size());
+        assertEquals(2, cache.hits());
+        assertEquals(4, cache.misses());
+    }
+
+    @Test
+    public void blankAddressesAndMissingRulesAreNotCached() {
+        UrlVerdictCache cache = new UrlVerdictCache(2);
+
+        assertNull(cache.find(ObservedUrl.EMPTY, UrlRuleIndex.EMPTY, 0));
+        assertNull(cache.find(NEWS, null, 0));
+        assertEquals(0, cache.misses());
+        assertThrows(IllegalArgumentException.class, () -> new UrlVerdictCache(0));
+    }
+}
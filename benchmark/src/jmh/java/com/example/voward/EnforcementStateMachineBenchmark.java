@@ -0,0 +1,91 @@
+package com.example.voward;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Session and interception transitions as the accessibility service drives them.
+ *
+ * <p>Each invocation feeds the next synthetic event from a fixed rotation: an approved
+ * launch that starts a session, content events and URL checks inside it, an overlay, a
+ * switch to an unrestricted app that ends the session, and a restricted app that opens the
+ * gate. The clock advances 50 ms per event. With the gc profiler, {@code gc.alloc.rate.norm}
+ * is the allocation per transition.</p>
+ */
+@State(Scope.Thread)
+public class EnforcementStateMachineBenchmark {
+    private static final String BROWSER = "com.android.chrome";
+    private static final String VIDEO = "com.example.video";
+    private static final String NOTES = "com.example.notes";
+    private static final String SYSTEM_UI = "com.android.systemui";
+    private static final String PATTERN = "video.example";
+    private static final int BROWSER_FLAGS = EnforcementStateMachine.PACKAGE_BROWSER
+            | EnforcementStateMachine.PACKAGE_RESTRICTED;
+    private static final int STEPS = 16;
+
+    private final EnforcementStateMachine.Budget budget = new EnforcementStateMachine.Budget() {
+        @Override
+        public boolean hasRemaining() {
+            return true;
+        }
+
+        @Override
+        public long quoteSessionSeconds() {
+            return 3_600;
+        }
+    };
+    private EnforcementStateMachine machine;
+    private long now;
+    private int step;
+
+    @Setup(Level.Iteration)
+    public void setUp() {
+        machine = new EnforcementStateMachine(budget);
+        now = 1_000_000L;
+        step = 0;
+    }
+
+    @Benchmark
+    public int transition() {
+        now += 50;
+        int current = step;
+        step = (step + 1) % STEPS;
+        switch (current) {
+            case 0:
+                return machine.onEvent(now, BROWSER, true,
+                        BROWSER_FLAGS | EnforcementStateMachine.PACKAGE_APPROVED, true, now)
+                        | machine.startSession(now, BROWSER, BROWSER_FLAGS, PATTERN, "URL");
+            case 1:
+            case 2:
+            case 3:
+                return machine.onEvent(now, BROWSER, false, BROWSER_FLAGS, false, 0)
+                        | machine.onRestrictedUrl(now, BROWSER, PATTERN, false, "URL")
+                        | machine.onSessionTick(now);
+            case 4:
+                return machine.onEvent(now, SYSTEM_UI, true,
+                        EnforcementStateMachine.PACKAGE_TRANSIENT, false, 0);
+            case 5:
+            case 6:
+            case 7:
+            case 8:
+                return machine.onEvent(now, BROWSER, false, BROWSER_FLAGS, false, 0)
+                        | machine.onUnrestrictedUrl(now, BROWSER, true, false)
+                        | machine.onSessionTick(now);
+            case 9:
+                return machine.onUnrestrictedUrl(now, BROWSER, true, true);
+            case 10:
+                return machine.onEvent(now, NOTES, true, 0, false, 0);
+            case 11:
+            case 12:
+                return machine.onEvent(now, NOTES, false, 0, false, 0);
+            case 13:
+                return machine.onEvent(now, VIDEO, true,
+                        EnforcementStateMachine.PACKAGE_RESTRICTED, false, 0);
+            default:
+                return machine.onEvent(now, NOTES, true, 0, false, 0);
+        }
+    }
+}
@@ -0,0 +1,151 @@
+package com.example.voward;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * One guard-screen scan of a synthetic Settings window: 40 rows of title, summary, icon and
+ * switch under a toolbar, about 200 nodes. The unrelated page is read to the end; the
+ * service page stops at its switch. A fingerprint reads the whole page, so a verdict-cache
+ * miss pays for the fingerprint and the scan; an incremental rescan reads one changed row of
+ * the kept page. Node reads are plain field reads here, so
+ * this measures the scanner's own cost, not binder calls.
+ */
+@State(Scope.Thread)
+public class GuardScreenScanBenchmark {
+    private static final String GENERIC = "com.android.settings.SubSettings";
+
+    private final GuardScreenScanner scanner = new GuardScreenScanner(
+            GuardScreenScanner.DEFAULT_MAX_NODES, Long.MAX_VALUE);
+    private final NodeTree tree = new NodeTree();
+    private final GuardScreenScanner windowScanner = new GuardScreenScanner(
+            GuardScreenScanner.DEFAULT_MAX_NODES, Long.MAX_VALUE);
+    private Node unrelatedPage;
+    private Node servicePage;
+    private Node changedRow;
+
+    @Setup
+    public void setUp() {
+        scanner.setTarget(Arrays.asList("com.example.voward", "voward",
+                "voward protection service"), "voward protection service");
+        unrelatedPage = page("Notifications · Permissions · Dezactivată");
+        servicePage = page("Use Voward protection service");
+        windowScanner.setTarget(Arrays.asList("com.example.voward", "voward",
+                "voward protection service"), "voward protection service");
+        windowScanner.scanWindow(tree, unrelatedPage, 1, GENERIC);
+        changedRow = unrelatedPage.children.get(1).children.get(20);
+    }
+
+    @Benchmark
+    public Object scanUnrelatedPage() {
+        return scanner.scan(tree, unrelatedPage, GENERIC);
+    }
+
+    @Benchmark
+    public Object scanServicePage() {
+        return scanner.scan(tree, servicePage, GENERIC);
+    }
+
+    /** The watchdog's cost on an unchanged screen, whose verdict comes from the cache. */
+    @Benchmark
+    public long fingerprintUnrelatedPage() {
+        scanner.fingerprint(tree, unrelatedPage);
+        return scanner.fingerprintHash();
+    }
+
+    /** The watchdog's cost on a changed screen: the fingerprint misses, then the scan. */
+    @Benchmark
+    public Object fingerprintMissUnrelatedPage() {
+        scanner.fingerprint(tree, unrelatedPage);
+        return scanner.scan(tree, unrelatedPage, GENERIC);
+    }
+
+    /** A content change in one row of a kept window: the row's five nodes are read. */
+    @Benchmark
+    public Object rescanChangedRow() {
+        return windowScanner.rescan(tree, changedRow, true, 1, GENERIC);
+    }
+
+    private static Node page(String lastRowTitle) {
+        Node list = new Node(null, "com.android.settings:id/recycler_view",
+                "androidx.recyclerview.widget.RecyclerView");
+        for (int row = 0; row < 40; row++) {
+            Node item = new Node(null, null, "android.widget.LinearLayout");
+            item.children.add(new Node(row == 39 ? lastRowTitle : "Setting " + row,
+                    "android:id/title", "android.widget.TextView"));
+            item.children.add(new Node("Summary text for setting " + row,
+                    "android:id/summary", "android.widget.TextView"));
+            item.children.add(new Node(null, "android:id/icon", "android.widget.ImageView"));
+            item.children.add(new Node(null, "com.android.settings:id/toggle_service",
+                    "android.widget.Switch"));
+            list.children.add(item);
+        }
+        Node root = new Node(null, null, "android.widget.FrameLayout");
+        root.children.add(new Node("Accessibility", "com.android.settings:id/action_bar",
+                "android.view.ViewGroup"));
+        root.children.add(list);
+        return root;
+    }
+
+    private static final class Node {
+        final String text;
+        final String viewId;
+        final String className;
+        final List<Node> children = new ArrayList<>();
+
+        Node(String text, String viewId, String className) {
+            this.text = text;
+            this.viewId = viewId;
+            this.className = className;
+        }
+    }
+
+    private static final class NodeTree implements GuardScreenScanner.Tree<Node> {
+        @Override public int childCount(Node node) {
+            return node.children.size();
+        }
+
+        @Override public Node child(Node node, int index) {
+            return node.children.get(index);
+        }
+
+        @Override public void release(Node node) {
+        }
+
+        @Override public CharSequence text(Node node) {
+            return node.text;
+        }
+
+        @Override public CharSequence description(Node node) {
+            return null;
+        }
+
+        @Override public CharSequence viewId(Node node) {
+            return node.viewId;
+        }
+
+        @Override public CharSequence className(Node node) {
+            return node.className;
+        }
+
+        @Override public boolean isCheckable(Node node) {
+            return "android.widget.Switch".equals(node.className);
+        }
+
+        @Override public boolean bounds(Node node, int[] topBottom) {
+            topBottom[0] = 0;
+            topBottom[1] = 1;
+            return true;
+        }
+
+        @Override public Node copy(Node node) {
+            return node;
+        }
+    }
+}
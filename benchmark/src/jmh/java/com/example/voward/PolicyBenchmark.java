@@ -0,0 +1,82 @@
+package com.example.voward;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Arrays;
+
+/** The remaining pure decisions evaluated on accessibility events and budget ticks. */
+@State(Scope.Thread)
+public class PolicyBenchmark {
+    private static final String LONG_NODE_TEXT = "Storage and cache · App battery usage · "
+            + "Notifications · Permissions · Open by default · Mobile data and Wi-Fi · "
+            + "Screen time · Installed from Play Store · Version 1.10.7 · Dezinstalați";
+
+    private final DeactivationPolicyEngine engine = new DeactivationPolicyEngine();
+    private final DeactivationPolicyEngine.Request request =
+            new DeactivationPolicyEngine.Request("bench", 1_000_000L, 50_000L, 3,
+                    24 * 60 * 60_000L, 60 * 60_000L);
+    private final UninstallGuardPolicy.ScreenEvidence appInfo =
+            new UninstallGuardPolicy.ScreenEvidence(true, false, false, false, true);
+    private final UninstallGuardPolicy.ScreenEvidence unrelated =
+            new UninstallGuardPolicy.ScreenEvidence(false, false, false, false, false);
+    private final PackageClassifier packageClasses = newPackageClassifier();
+    private long tick;
+
+    @Benchmark
+    public Object classifyGenericSettingsScreen() {
+        return UninstallGuardPolicy.classify(
+                "com.android.settings", "com.android.settings.SubSettings", appInfo);
+    }
+
+    @Benchmark
+    public Object classifyUnrelatedScreen() {
+        return UninstallGuardPolicy.classify(
+                "com.android.settings", "com.android.settings.Settings", unrelated);
+    }
+
+    /** Text signal matching, which normalizes accents before comparing. */
+    @Benchmark
+    public boolean appControlTextSignal() {
+        return UninstallGuardPolicy.isAppControlSignal(LONG_NODE_TEXT);
+    }
+
+    /** The per-event package flags of an app seen before: one map read. */
+    @Benchmark
+    public int packageFlagsCached() {
+        return packageClasses.flags("com.google.android.youtube");
+    }
+
+    /** The same package's first sighting, through every name heuristic. */
+    @Benchmark
+    public int packageFlagsClassified() {
+        packageClasses.packageChanged("com.google.android.youtube");
+        return packageClasses.flags("com.google.android.youtube");
+    }
+
+    @Benchmark
+    public void budgetTick(Blackhole blackhole) {
+        tick++;
+        long balance = BudgetMath.addDailyAllowancesBounded(1_800 + (tick & 63), 3_600, 1, 1.0);
+        blackhole.consume(BudgetMath.subtractCost(balance, BudgetMath.elapsedCostSeconds(tick)));
+        blackhole.consume(BudgetMath.calculateReentryWaitSeconds(30, 0.35, (int) (tick & 15)));
+        blackhole.consume(BudgetMath.quoteSessionSeconds(balance, 600));
+    }
+
+    @Benchmark
+    public Object evaluateDeactivation() {
+        tick++;
+        return engine.evaluateRequest(request, 1_000_000L + tick, 50_000L + tick, 3);
+    }
+
+    private static PackageClassifier newPackageClassifier() {
+        PackageClassifier classifier = new PackageClassifier("com.example.voward",
+                PackageClassifier.DEFAULT_CAPACITY);
+        classifier.setInputMethods(Arrays.asList("com.google.android.inputmethod.latin"));
+        classifier.setLaunchers(Arrays.asList("com.google.android.apps.nexuslauncher"));
+        classifier.setBrowsers(Arrays.asList("com.android.chrome", "org.mozilla.firefox"));
+        return classifier;
+    }
+}
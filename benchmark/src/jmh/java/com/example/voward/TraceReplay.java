@@ -0,0 +1,104 @@
+package com.example.voward;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringReader;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * Replays a captured {@link AccessibilityTrace} with {@link TraceReplayer} and prints the
+ * report, optionally next to a report saved from another build.
+ *
+ * <p>Arguments: {@code <trace> [--rules <file>] [--speed <factor>] [--compare <report>]}.
+ * The rules file holds one pattern per line; a leading {@code !} marks a strict rule and
+ * {@code #} starts a comment. Speed 0 (the default) replays as fast as possible. Allocation
+ * comes from the HotSpot per-thread counter when the JVM offers it.</p>
+ */
+public final class TraceReplay {
+    private TraceReplay() {}
+
+    public static void main(String[] args) throws Exception {
+        if (args.length == 0) {
+            System.err.println("usage: TraceReplay <trace> [--rules <file>] [--speed <factor>]"
+                    + " [--compare <report>]");
+            System.exit(2);
+        }
+        Path trace = Paths.get(args[0]);
+        Path rulesFile = null;
+        Path baseline = null;
+        double speed = 0;
+        for (int i = 1; i + 1 < args.length; i += 2) {
+            switch (args[i]) {
+                case "--rules": rulesFile = Paths.get(args[i + 1]); break;
+                case "--speed": speed = Double.parseDouble(args[i + 1]); break;
+                case "--compare": baseline = Paths.get(args[i + 1]); break;
+                default: throw new IllegalArgumentException("Unknown option " + args[i]);
+            }
+        }
+
+        List<AccessibilityTrace.Event> events;
+        try (InputStream in = new FileInputStream(trace.toFile())) {
+            events = AccessibilityTrace.read(in);
+        }
+        TraceReplayer replayer = new TraceReplayer(new EnforcementStateMachine.Budget() {
+            @Override
+            public boolean hasRemaining() {
+                return true;
+            }
+
+            @Override
+            public long quoteSessionSeconds() {
+                return 600;
+            }
+        }, rulesFile == null ? null : readRules(rulesFile), allocationMeter());
+        String report = replayer.replay(events, speed).describe();
+        if (baseline == null) {
+            System.out.print(report);
+            return;
+        }
+        Properties before = new Properties();
+        before.load(new StringReader(new String(Files.readAllBytes(baseline),
+                StandardCharsets.UTF_8)));
+        Properties after = new Properties();
+        after.load(new StringReader(report));
+        System.out.printf("%-28s %20s %20s%n", "", "baseline", "this build");
+        for (String line : report.split("\n")) {
+            String key = line.substring(0, line.indexOf('='));
+            String old = before.getProperty(key, "-");
+            String now = after.getProperty(key);
+            System.out.printf("%-28s %20s %20s%s%n", key, old, now, old.equals(now) ? "" : "  *");
+        }
+    }
+
+    private static UrlRuleIndex readRules(Path file) throws IOException {
+        List<String> strict = new ArrayList<>();
+        List<String> regular = new ArrayList<>();
+        for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+            String rule = line.trim();
+            if (rule.isEmpty() || rule.startsWith("#")) continue;
+            if (rule.startsWith("!")) strict.add(rule.substring(1).trim());
+            else regular.add(rule);
+        }
+        return UrlRuleIndex.build(strict, regular);
+    }
+
+    private static TraceReplayer.AllocationMeter allocationMeter() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (!(bean instanceof com.sun.management.ThreadMXBean)) {
+            return TraceReplayer.NO_ALLOCATION_METER;
+        }
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) bean;
+        if (!threads.isThreadAllocatedMemorySupported()) return TraceReplayer.NO_ALLOCATION_METER;
+        threads.setThreadAllocatedMemoryEnabled(true);
+        long thread = Thread.currentThread().getId();
+        return () -> threads.getThreadAllocatedBytes(thread);
+    }
+}
@@ -0,0 +1,154 @@
+package com.example.voward;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * URL rule matching as the accessibility service performs it, across rule-set sizes.
+ *
+ * <p>Every invocation looks up the next address from a fixed rotation of host, path, keyword
+ * and glob candidates plus misses, so branch and cache behaviour resemble real browsing
+ * rather than one repeated address. Rule sets and addresses come from a fixed seed.</p>
+ */
+@State(Scope.Thread)
+public class UrlRuleBenchmark {
+    private static final int ADDRESSES = 64;
+
+    @Param({"10", "1000", "100000"})
+    public int ruleCount;
+
+    /** {@code hosts}: domain, path and query rules; {@code mixed}: strict, keyword and globs too. */
+    @Param({"hosts", "mixed"})
+    public String ruleMix;
+
+    /** {@code short}: typical addresses; {@code longQuery}: 2 KB tracking query strings. */
+    @Param({"short", "longQuery"})
+    public String addressShape;
+
+    private List<String> strictRules;
+    private List<String> regularRules;
+    private UrlRuleIndex index;
+    private UrlVerdictCache verdicts;
+    private UrlVerdictCache evictingVerdicts;
+    private String[] rawAddresses;
+    private ObservedUrl[] addresses;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        boolean mixed = ruleMix.equals("mixed");
+        List<String> strict = new ArrayList<>();
+        List<String> regular = new ArrayList<>();
+        for (int i = 0; i < ruleCount; i++) {
+            String rule;
+            if (mixed && i % 1000 == 7) {
+                rule = "glob:*/g" + i + "/*";
+            } else if (mixed && i % 5 == 0) {
+                rule = "keyword:kw" + i + "x";
+            } else if (i % 3 == 0) {
+                rule = "site" + i + ".example";
+            } else if (i % 3 == 1) {
+                rule = "site" + i + ".example/path" + (i % 7);
+            } else {
+                rule = "site" + i + ".example/search?q=" + i;
+            }
+            (mixed && i % 10 == 1 ? strict : regular).add(rule);
+        }
+        strictRules = CompiledUrlRuleList.of(strict);
+        regularRules = CompiledUrlRuleList.of(regular);
+        index = UrlRuleIndex.build(strictRules, regularRules);
+        verdicts = new UrlVerdictCache(ADDRESSES);
+        evictingVerdicts = new UrlVerdictCache(ADDRESSES / 4);
+
+        Random random = new Random(42);
+        String query = addressShape.equals("longQuery") ? "&utm=" + "x".repeat(2048) : "";
+        rawAddresses = new String[ADDRESSES];
+        addresses = new ObservedUrl[ADDRESSES];
+        for (int a = 0; a < ADDRESSES; a++) {
+            int i = random.nextInt(ruleCount);
+            String address;
+            switch (a % 4) {
+                case 0:
+                    address = "https://www.site" + i + ".example/path" + (i % 7) + "/item?x=1";
+                    break;
+                case 1:
+                    address = "https://video.test/watch/kw" + i + "x?v=" + a;
+                    break;
+                case 2:
+                    address = "https://m.site" + i + ".example/g" + i + "/feed?x=2";
+                    break;
+                default:
+                    address = "https://unlisted" + a + ".test/watch?v=" + i;
+                    break;
+            }
+            rawAddresses[a] = address + query;
+            addresses[a] = ObservedUrl.parse(rawAddresses[a]);
+        }
+    }
+
+    private int nextSlot() {
+        next = (next + 1) & (ADDRESSES - 1);
+        return next;
+    }
+
+    /** Compiled index lookup for an already parsed address. */
+    @Benchmark
+    public Object indexFind() {
+        return index.find(addresses[nextSlot()]);
+    }
+
+    /** Index lookup including normalizing and splitting the raw address text. */
+    @Benchmark
+    public Object indexFindFromText() {
+        return index.find(rawAddresses[nextSlot()]);
+    }
+
+    /** The service path: commit check plus generation-keyed verdict cache, all hits. */
+    @Benchmark
+    public Object cachedCommittedMatch() {
+        ObservedUrl address = addresses[nextSlot()];
+        return BrowserUrlEnforcementPolicy.findCommittedRestrictedMatch(
+                address, address, false, 1, index, verdicts);
+    }
+
+    /**
+     * The service path with a cache a quarter the size of the rotation, so every lookup
+     * misses, falls through to the index and evicts the least recently used verdict.
+     */
+    @Benchmark
+    public Object cachedCommittedMatchEvicting() {
+        ObservedUrl address = addresses[nextSlot()];
+        return BrowserUrlEnforcementPolicy.findCommittedRestrictedMatch(
+                address, address, false, 1, index, evictingVerdicts);
+    }
+
+    /** The list form: strict then regular scan over precompiled patterns. */
+    @Benchmark
+    public Object linearCommittedMatch() {
+        String address = rawAddresses[nextSlot()];
+        return BrowserUrlEnforcementPolicy.findCommittedRestrictedMatch(
+                address, address, false, strictRules, regularRules);
+    }
+
+    /** Cost of compiling the index after a rule-set change. */
+    @Benchmark
+    public Object buildIndex() {
+        return UrlRuleIndex.build(strictRules, regularRules);
+    }
+
+    /** One rule compared through the public matcher and its small cache of compiled rules. */
+    @Benchmark
+    public boolean matchSingleRule() {
+        int slot = nextSlot();
+        return UrlPatternMatcher.matches(
+                rawAddresses[slot], regularRules.get(slot % regularRules.size()));
+    }
+}